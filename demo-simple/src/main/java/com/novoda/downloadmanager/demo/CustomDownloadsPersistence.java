@@ -4,9 +4,14 @@ import android.util.Log;
 
 import com.novoda.downloadmanager.CompletedDownloadBatch;
 import com.novoda.downloadmanager.DownloadBatchId;
+import com.novoda.downloadmanager.DownloadBatchQuery;
 import com.novoda.downloadmanager.DownloadBatchStatus;
+import com.novoda.downloadmanager.DownloadFileId;
 import com.novoda.downloadmanager.DownloadsBatchPersisted;
+import com.novoda.downloadmanager.DownloadsBatchProgressPersisted;
 import com.novoda.downloadmanager.DownloadsFilePersisted;
+import com.novoda.downloadmanager.DownloadsFileSegmentPersisted;
+import com.novoda.downloadmanager.DownloadsPersistedRowsCallback;
 import com.novoda.downloadmanager.DownloadsPersistence;
 
 import java.util.Collections;
@@ -59,6 +64,22 @@ public class CustomDownloadsPersistence implements DownloadsPersistence {
         return Collections.emptyList();
     }
 
+    @Override
+    public void persistFileSegment(DownloadsFileSegmentPersisted segmentPersisted) {
+        Log.v(TAG, "Persist segment " + segmentPersisted.segmentIndex() + " of file id: " + segmentPersisted.downloadFileId());
+    }
+
+    @Override
+    public List<DownloadsFileSegmentPersisted> loadFileSegments(DownloadBatchId batchId, DownloadFileId fileId) {
+        Log.v(TAG, "Load segments for batch id: " + batchId + ", file id: " + fileId);
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void loadBatchesWithFiles(DownloadsPersistedRowsCallback callback) {
+        Log.v(TAG, "Load batches with files");
+    }
+
     @Override
     public boolean delete(DownloadBatchId downloadBatchId) {
         Log.v(TAG, "Delete batch id: " + downloadBatchId.rawId());
@@ -77,6 +98,30 @@ public class CustomDownloadsPersistence implements DownloadsPersistence {
         return true;
     }
 
+    @Override
+    public List<DownloadsBatchProgressPersisted> loadBatches(DownloadBatchQuery query) {
+        Log.v(TAG, "Load batches matching: " + query);
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int countBatches(DownloadBatchQuery query) {
+        Log.v(TAG, "Count batches matching: " + query);
+        return 0;
+    }
+
+    @Override
+    public int deleteAll(List<DownloadBatchId> downloadBatchIds) {
+        Log.v(TAG, "Delete batches: " + downloadBatchIds.size());
+        return downloadBatchIds.size();
+    }
+
+    @Override
+    public int updateAll(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status) {
+        Log.v(TAG, "update batches: " + downloadBatchIds.size() + " with status: " + status);
+        return downloadBatchIds.size();
+    }
+
     @Override
     public void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
         Log.v(TAG, "Persist completed batch id: " + completedDownloadBatch.downloadBatchId());
@@ -34,7 +34,7 @@ public class CustomHttpClient implements HttpClient {
 
         Call call = httpClient.newCall(requestBuilder.build());
 
-        return new CustomHttpResponse(call.execute());
+        return new CustomHttpResponse(call, call.execute());
     }
 
 }
@@ -5,14 +5,17 @@ import com.novoda.downloadmanager.NetworkResponse;
 import java.io.IOException;
 import java.io.InputStream;
 
+import okhttp3.Call;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 
 class CustomHttpResponse implements NetworkResponse {
 
+    private final Call call;
     private final Response response;
 
-    CustomHttpResponse(Response response) {
+    CustomHttpResponse(Call call, Response response) {
+        this.call = call;
         this.response = response;
     }
 
@@ -60,4 +63,9 @@ class CustomHttpResponse implements NetworkResponse {
             return body.contentLength();
         }
     }
+
+    @Override
+    public void cancel() {
+        call.cancel();
+    }
 }
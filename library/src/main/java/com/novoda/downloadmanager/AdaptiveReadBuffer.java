@@ -0,0 +1,86 @@
+package com.novoda.downloadmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The read buffer of a single download, taken from the shared {@link ReadBufferPool}.
+ * A read returns as soon as the stream produced bytes, so that a slow link still emits its bytes regularly.
+ * The buffer doubles while reads fill it, which happens on fast links, and halves while reads fill little of it.
+ */
+class AdaptiveReadBuffer {
+
+    static final int END_OF_STREAM = -1;
+
+    private static final int LOW_FILL_RATIO_DIVISOR = 4;
+
+    private final ReadBufferPool readBufferPool;
+
+    private byte[] buffer;
+    private int nextSizeInBytes;
+
+    AdaptiveReadBuffer(ReadBufferPool readBufferPool) {
+        this.readBufferPool = readBufferPool;
+        this.buffer = readBufferPool.acquire(ReadBufferPool.MINIMUM_BUFFER_SIZE_IN_BYTES);
+        this.nextSizeInBytes = buffer.length;
+    }
+
+    // The buffer is handed out rather than copied, avoiding the copy is what the pool is for.
+    @SuppressWarnings("PMD.MethodReturnsInternalArray")
+    byte[] bytes() {
+        return buffer;
+    }
+
+    int read(InputStream inputStream) throws IOException {
+        return read(inputStream, Long.MAX_VALUE);
+    }
+
+    /**
+     * Fills {@link #bytes()} from the start, blocking only until the stream produced bytes.
+     *
+     * @return the number of bytes read, or {@link #END_OF_STREAM} when the stream ended before any byte was read.
+     */
+    int read(InputStream inputStream, long maximumBytes) throws IOException {
+        resizeIfNeeded();
+
+        int bytesToRead = (int) Math.min(buffer.length, maximumBytes);
+        int bytesRead = inputStream.read(buffer, 0, bytesToRead);
+        if (bytesRead == END_OF_STREAM) {
+            return END_OF_STREAM;
+        }
+
+        while (bytesRead < bytesToRead && inputStream.available() > 0) {
+            int readLast = inputStream.read(buffer, bytesRead, bytesToRead - bytesRead);
+            if (readLast == END_OF_STREAM) {
+                break;
+            }
+            bytesRead += readLast;
+        }
+
+        // A read capped by its maximum says nothing about the link.
+        if (bytesToRead == buffer.length) {
+            adaptTo(bytesRead);
+        }
+        return bytesRead;
+    }
+
+    private void adaptTo(int bytesRead) {
+        if (bytesRead == buffer.length) {
+            nextSizeInBytes = Math.min(buffer.length * 2, ReadBufferPool.MAXIMUM_BUFFER_SIZE_IN_BYTES);
+        } else if (bytesRead < buffer.length / LOW_FILL_RATIO_DIVISOR) {
+            nextSizeInBytes = Math.max(buffer.length / 2, ReadBufferPool.MINIMUM_BUFFER_SIZE_IN_BYTES);
+        }
+    }
+
+    private void resizeIfNeeded() {
+        if (nextSizeInBytes != buffer.length) {
+            readBufferPool.release(buffer);
+            buffer = readBufferPool.acquire(nextSizeInBytes);
+            nextSizeInBytes = buffer.length;
+        }
+    }
+
+    void release() {
+        readBufferPool.release(buffer);
+    }
+}
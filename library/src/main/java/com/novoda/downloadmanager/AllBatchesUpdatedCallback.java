@@ -0,0 +1,12 @@
+package com.novoda.downloadmanager;
+
+import java.util.List;
+
+/**
+ * Given to the bulk calls of {@link DownloadManager}, e.g. {@link DownloadManager#pauseAll(java.util.Collection, AllBatchesUpdatedCallback)},
+ * that notifies once with the ids of every batch the call was applied to, after they have all been persisted.
+ */
+public interface AllBatchesUpdatedCallback {
+
+    void onUpdated(List<DownloadBatchId> downloadBatchIds);
+}
@@ -14,6 +14,15 @@ public interface BatchBuilder {
      */
     BatchFileBuilder downloadFrom(String networkAddress);
 
+    /**
+     * Sets the priority of the {@link Batch}, queued batches with a higher priority start downloading first.
+     * Batches have a priority of 0 by default.
+     *
+     * @param priority of the batch.
+     * @return {@link BatchBuilder}.
+     */
+    BatchBuilder withPriority(int priority);
+
     /**
      * Build a new {@link Batch} instance.
      *
@@ -32,6 +41,6 @@ public interface BatchBuilder {
         for (BatchFile batchFile : batch.batchFiles()) {
             builder.withFile(batchFile);
         }
-        return builder;
+        return builder.withPriority(batch.priority());
     }
 }
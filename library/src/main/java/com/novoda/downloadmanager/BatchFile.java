@@ -1,17 +1,28 @@
 package com.novoda.downloadmanager;
 
+@SuppressWarnings("PMD.DataClass")
 public class BatchFile {
 
     private final String networkAddress;
     private final String path;
     private final Optional<DownloadFileId> downloadFileId;
     private final Optional<FileSize> fileSize;
+    private final Optional<FileDigest> expectedDigest;
 
     public BatchFile(String networkAddress, String path, Optional<DownloadFileId> downloadFileId, Optional<FileSize> fileSize) {
+        this(networkAddress, path, downloadFileId, fileSize, Optional.absent());
+    }
+
+    public BatchFile(String networkAddress,
+                     String path,
+                     Optional<DownloadFileId> downloadFileId,
+                     Optional<FileSize> fileSize,
+                     Optional<FileDigest> expectedDigest) {
         this.networkAddress = networkAddress;
         this.path = path;
         this.downloadFileId = downloadFileId;
         this.fileSize = fileSize;
+        this.expectedDigest = expectedDigest;
     }
 
     static InternalBatchFileBuilder from(BatchStorageRoot batchStorageRoot, String networkAddress) {
@@ -34,6 +45,10 @@ public class BatchFile {
         return fileSize;
     }
 
+    public Optional<FileDigest> expectedDigest() {
+        return expectedDigest;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) {
@@ -54,7 +69,10 @@ public class BatchFile {
         if (downloadFileId != null ? !downloadFileId.equals(batchFile.downloadFileId) : batchFile.downloadFileId != null) {
             return false;
         }
-        return fileSize != null ? fileSize.equals(batchFile.fileSize) : batchFile.fileSize == null;
+        if (fileSize != null ? !fileSize.equals(batchFile.fileSize) : batchFile.fileSize != null) {
+            return false;
+        }
+        return expectedDigest != null ? expectedDigest.equals(batchFile.expectedDigest) : batchFile.expectedDigest == null;
     }
 
     @Override
@@ -63,6 +81,7 @@ public class BatchFile {
         result = 31 * result + (path != null ? path.hashCode() : 0);
         result = 31 * result + (downloadFileId != null ? downloadFileId.hashCode() : 0);
         result = 31 * result + (fileSize != null ? fileSize.hashCode() : 0);
+        result = 31 * result + (expectedDigest != null ? expectedDigest.hashCode() : 0);
         return result;
     }
 
@@ -73,6 +92,7 @@ public class BatchFile {
                 + ", path='" + path + '\''
                 + ", downloadFileId=" + downloadFileId
                 + ", fileSize=" + fileSize
+                + ", expectedDigest=" + expectedDigest
                 + '}';
     }
 }
@@ -43,6 +43,15 @@ public interface BatchFileBuilder {
      */
     BatchFileBuilder withSize(FileSize fileSize);
 
+    /**
+     * Sets {@link BatchFileBuilder} to build a {@link BatchFile} that is verified against the given digest
+     * as it is downloaded. A file that does not match fails with {@link DownloadError.Type#FILE_DIGEST_MISMATCH}.
+     *
+     * @param expectedDigest the file is expected to have once downloaded.
+     * @return {@link BatchFileBuilder}.
+     */
+    BatchFileBuilder withExpectedDigest(FileDigest expectedDigest);
+
     /**
      * Creates a {@link BatchFile} from the {@link BatchFileBuilder} and
      * adds it to the parent {@link BatchBuilder} before returning to
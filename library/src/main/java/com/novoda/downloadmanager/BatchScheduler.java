@@ -0,0 +1,344 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETED;
+import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DOWNLOADED;
+import static com.novoda.downloadmanager.DownloadBatchStatus.Status.PAUSED;
+
+/**
+ * Downloads up to a maximum number of batches at the same time, starting the queued batches with the highest priority first.
+ * When preemption is allowed, a batch with a higher priority pauses the downloading batch with the lowest priority,
+ * which is queued again once it has stopped.
+ * A batch that is stopping gives up its slot straight away, its download winds down on a thread of its own.
+ */
+// The queue and the downloading slots are guarded by the same lock, so they are kept together.
+@SuppressWarnings("PMD.GodClass")
+class BatchScheduler {
+
+    private static final long UNKNOWN_REMAINING_BYTES = Long.MAX_VALUE;
+    private static final long NO_STOP_LATENCY = -1;
+
+    private final ExecutorService executor;
+    private final int maximumConcurrentBatches;
+    private final boolean allowsPreemption;
+    private final Object lock = new Object();
+    private final Map<DownloadBatchId, ScheduledBatch> queuedBatches = new LinkedHashMap<>();
+    private final Map<DownloadBatchId, ScheduledBatch> downloadingBatches = new LinkedHashMap<>();
+    private final Map<DownloadBatchId, Integer> batchPriorities = new HashMap<>();
+    private final Comparator<ScheduledBatch> schedulingOrder;
+
+    private long nextSequenceNumber;
+    private long lastStopLatencyInMillis = NO_STOP_LATENCY;
+    @Nullable
+    private QueueStateListener queueStateListener;
+
+    BatchScheduler(ExecutorService executor,
+                   int maximumConcurrentBatches,
+                   BatchSchedulingPolicy batchSchedulingPolicy,
+                   boolean allowsPreemption) {
+        this.executor = executor;
+        this.maximumConcurrentBatches = maximumConcurrentBatches;
+        this.allowsPreemption = allowsPreemption;
+        this.schedulingOrder = createSchedulingOrder(batchSchedulingPolicy);
+    }
+
+    private static Comparator<ScheduledBatch> createSchedulingOrder(BatchSchedulingPolicy batchSchedulingPolicy) {
+        return (first, second) -> {
+            int byPriority = Integer.compare(second.priority, first.priority);
+            if (byPriority != 0) {
+                return byPriority;
+            }
+
+            if (batchSchedulingPolicy == BatchSchedulingPolicy.SHORTEST_REMAINING_BYTES_FIRST) {
+                int byRemainingBytes = Long.compare(remainingBytesOf(first), remainingBytesOf(second));
+                if (byRemainingBytes != 0) {
+                    return byRemainingBytes;
+                }
+            }
+
+            return Long.compare(first.sequenceNumber, second.sequenceNumber);
+        };
+    }
+
+    private static long remainingBytesOf(ScheduledBatch scheduledBatch) {
+        InternalDownloadBatchStatus status = scheduledBatch.downloadBatch.status();
+        long totalBytes = status.bytesTotalSize();
+        return totalBytes > 0 ? totalBytes - status.bytesDownloaded() : UNKNOWN_REMAINING_BYTES;
+    }
+
+    void setQueueStateListener(QueueStateListener queueStateListener) {
+        this.queueStateListener = queueStateListener;
+    }
+
+    void prioritise(DownloadBatchId downloadBatchId, int priority) {
+        synchronized (lock) {
+            batchPriorities.put(downloadBatchId, priority);
+        }
+    }
+
+    /**
+     * Queues the download of a batch, a batch that is queued already keeps its place in the queue.
+     *
+     * @param downloadBatch to download.
+     * @param download      that downloads the batch on the calling thread.
+     */
+    void schedule(DownloadBatch downloadBatch, Runnable download) {
+        DownloadQueueState queueState;
+        synchronized (lock) {
+            queue(downloadBatch, download);
+            startQueuedBatches();
+            queueState = createQueueState();
+        }
+        notifyQueueStateChanged(queueState);
+    }
+
+    /**
+     * Queues the downloads of many batches in one step, the queue state is notified once.
+     *
+     * @param downloadBatches to download.
+     * @param batchDownload   that downloads a batch on the calling thread.
+     */
+    void scheduleAll(List<DownloadBatch> downloadBatches, BatchDownload batchDownload) {
+        DownloadQueueState queueState;
+        synchronized (lock) {
+            for (DownloadBatch downloadBatch : downloadBatches) {
+                queue(downloadBatch, () -> batchDownload.download(downloadBatch));
+            }
+            startQueuedBatches();
+            queueState = createQueueState();
+        }
+        notifyQueueStateChanged(queueState);
+    }
+
+    private void queue(DownloadBatch downloadBatch, Runnable download) {
+        DownloadBatchId downloadBatchId = downloadBatch.getId();
+        if (!queuedBatches.containsKey(downloadBatchId)) {
+            int priority = priorityOf(downloadBatchId);
+            queuedBatches.put(downloadBatchId, new ScheduledBatch(downloadBatch, download, priority, nextSequenceNumber++));
+            preemptBatchWithLowerPriorityThan(priority);
+        }
+    }
+
+    private int priorityOf(DownloadBatchId downloadBatchId) {
+        Integer priority = batchPriorities.get(downloadBatchId);
+        return priority == null ? Batch.DEFAULT_PRIORITY : priority;
+    }
+
+    private void preemptBatchWithLowerPriorityThan(int priority) {
+        if (!allowsPreemption || activeDownloads() < maximumConcurrentBatches) {
+            return;
+        }
+
+        ScheduledBatch batchToPreempt = null;
+        for (ScheduledBatch downloadingBatch : downloadingBatches.values()) {
+            boolean hasLowerPriority = downloadingBatch.priority < priority
+                    && (batchToPreempt == null || downloadingBatch.priority < batchToPreempt.priority);
+            if (!downloadingBatch.isStopping() && hasLowerPriority) {
+                batchToPreempt = downloadingBatch;
+            }
+        }
+
+        if (batchToPreempt != null) {
+            Logger.v("preempt batch " + batchToPreempt.downloadBatch.getId().rawId() + " with priority " + batchToPreempt.priority);
+            batchToPreempt.isPreempted = true;
+            batchToPreempt.markAsStopping();
+            batchToPreempt.downloadBatch.preempt();
+        }
+    }
+
+    /**
+     * Gives up the slot of a batch that was paused or deleted, a queued batch is removed from the queue.
+     */
+    void stop(DownloadBatchId downloadBatchId) {
+        stopAll(Collections.singletonList(downloadBatchId));
+    }
+
+    /**
+     * Gives up the slots of many batches in one step, the queue state is notified once.
+     * A preempted batch that is paused or deleted while it stops is not queued again.
+     */
+    void stopAll(Collection<DownloadBatchId> downloadBatchIds) {
+        DownloadQueueState queueState;
+        synchronized (lock) {
+            for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                queuedBatches.remove(downloadBatchId);
+                ScheduledBatch downloadingBatch = downloadingBatches.get(downloadBatchId);
+                if (downloadingBatch == null) {
+                    continue;
+                }
+                downloadingBatch.isPreempted = false;
+                if (!downloadingBatch.isStopping()) {
+                    downloadingBatch.markAsStopping();
+                }
+            }
+            startQueuedBatches();
+            queueState = createQueueState();
+        }
+        notifyQueueStateChanged(queueState);
+    }
+
+    private int activeDownloads() {
+        int activeDownloads = 0;
+        for (ScheduledBatch downloadingBatch : downloadingBatches.values()) {
+            if (!downloadingBatch.isStopping()) {
+                activeDownloads++;
+            }
+        }
+        return activeDownloads;
+    }
+
+    private void startQueuedBatches() {
+        while (activeDownloads() < maximumConcurrentBatches) {
+            ScheduledBatch nextBatch = nextBatchToStart();
+            if (nextBatch == null) {
+                return;
+            }
+
+            DownloadBatchId downloadBatchId = nextBatch.downloadBatch.getId();
+            queuedBatches.remove(downloadBatchId);
+            downloadingBatches.put(downloadBatchId, nextBatch);
+            executor.submit(() -> download(nextBatch));
+        }
+    }
+
+    @Nullable
+    private ScheduledBatch nextBatchToStart() {
+        ScheduledBatch nextBatch = null;
+        for (ScheduledBatch queuedBatch : queuedBatches.values()) {
+            boolean isStillDownloading = downloadingBatches.containsKey(queuedBatch.downloadBatch.getId());
+            if (!isStillDownloading && (nextBatch == null || schedulingOrder.compare(queuedBatch, nextBatch) < 0)) {
+                nextBatch = queuedBatch;
+            }
+        }
+        return nextBatch;
+    }
+
+    private void download(ScheduledBatch scheduledBatch) {
+        try {
+            scheduledBatch.download.run();
+        } finally {
+            onDownloadStopped(scheduledBatch);
+        }
+    }
+
+    private void onDownloadStopped(ScheduledBatch scheduledBatch) {
+        DownloadQueueState queueState;
+        synchronized (lock) {
+            DownloadBatch downloadBatch = scheduledBatch.downloadBatch;
+            DownloadBatchId downloadBatchId = downloadBatch.getId();
+            downloadingBatches.remove(downloadBatchId);
+            if (scheduledBatch.isStopping()) {
+                lastStopLatencyInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - scheduledBatch.stopRequestedAtInNanos);
+                Logger.v("batch " + downloadBatchId.rawId() + " stopped " + lastStopLatencyInMillis + "ms after it was asked to");
+            }
+
+            DownloadBatchStatus.Status status = downloadBatch.status().status();
+            boolean isStillPreempted = scheduledBatch.isPreempted && downloadBatch.isPreempted();
+            if (isStillPreempted && status == PAUSED && !queuedBatches.containsKey(downloadBatchId)) {
+                downloadBatch.resume();
+                queuedBatches.put(downloadBatchId, scheduledBatch.requeue());
+            }
+            if (status == DOWNLOADED || status == DELETED) {
+                batchPriorities.remove(downloadBatchId);
+            }
+
+            startQueuedBatches();
+            queueState = createQueueState();
+        }
+        notifyQueueStateChanged(queueState);
+    }
+
+    DownloadQueueState queueState() {
+        synchronized (lock) {
+            return createQueueState();
+        }
+    }
+
+    private DownloadQueueState createQueueState() {
+        List<ScheduledBatch> orderedQueuedBatches = new ArrayList<>(queuedBatches.values());
+        Collections.sort(orderedQueuedBatches, schedulingOrder);
+
+        List<DownloadBatchId> queuedBatchIds = new ArrayList<>(orderedQueuedBatches.size());
+        for (ScheduledBatch queuedBatch : orderedQueuedBatches) {
+            queuedBatchIds.add(queuedBatch.downloadBatch.getId());
+        }
+
+        List<DownloadBatchId> downloadingBatchIds = new ArrayList<>(downloadingBatches.size());
+        for (ScheduledBatch downloadingBatch : downloadingBatches.values()) {
+            if (!downloadingBatch.isStopping()) {
+                downloadingBatchIds.add(downloadingBatch.downloadBatch.getId());
+            }
+        }
+
+        return new LiteDownloadQueueState(
+                maximumConcurrentBatches,
+                Collections.unmodifiableList(downloadingBatchIds),
+                Collections.unmodifiableList(queuedBatchIds),
+                lastStopLatencyInMillis
+        );
+    }
+
+    private void notifyQueueStateChanged(DownloadQueueState queueState) {
+        QueueStateListener listener = queueStateListener;
+        if (listener != null) {
+            listener.onQueueStateChanged(queueState);
+        }
+    }
+
+    interface BatchDownload {
+
+        void download(DownloadBatch downloadBatch);
+    }
+
+    interface QueueStateListener {
+
+        void onQueueStateChanged(DownloadQueueState queueState);
+    }
+
+    private static final class ScheduledBatch {
+
+        private final DownloadBatch downloadBatch;
+        private final Runnable download;
+        private final int priority;
+        private final long sequenceNumber;
+
+        private volatile boolean isPreempted;
+        private boolean isStopping;
+        private long stopRequestedAtInNanos;
+
+        ScheduledBatch(DownloadBatch downloadBatch, Runnable download, int priority, long sequenceNumber) {
+            this.downloadBatch = downloadBatch;
+            this.download = download;
+            this.priority = priority;
+            this.sequenceNumber = sequenceNumber;
+        }
+
+        boolean isStopping() {
+            return isStopping;
+        }
+
+        void markAsStopping() {
+            isStopping = true;
+            stopRequestedAtInNanos = System.nanoTime();
+        }
+
+        /**
+         * A preempted batch keeps its place amongst the batches with the same priority.
+         */
+        ScheduledBatch requeue() {
+            return new ScheduledBatch(downloadBatch, download, priority, sequenceNumber);
+        }
+    }
+}
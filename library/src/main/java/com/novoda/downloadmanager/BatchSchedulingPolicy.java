@@ -0,0 +1,18 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Decides which queued {@link Batch} starts downloading next, amongst the batches with the highest priority.
+ */
+public enum BatchSchedulingPolicy {
+
+    /**
+     * Batches start downloading in the order they were queued.
+     */
+    FIFO,
+
+    /**
+     * Batches with the fewest bytes left to download start first,
+     * batches whose total size is not known yet start last.
+     */
+    SHORTEST_REMAINING_BYTES_FIRST
+}
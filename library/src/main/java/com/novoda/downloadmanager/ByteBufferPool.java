@@ -0,0 +1,32 @@
+package com.novoda.downloadmanager;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Keeps a bounded number of direct buffers around so that they are not reallocated for every file.
+ */
+class ByteBufferPool {
+
+    private final int bufferSizeInBytes;
+    private final BlockingQueue<ByteBuffer> buffers;
+
+    ByteBufferPool(int bufferSizeInBytes, int maximumPooledBuffers) {
+        this.bufferSizeInBytes = bufferSizeInBytes;
+        this.buffers = new ArrayBlockingQueue<>(maximumPooledBuffers);
+    }
+
+    ByteBuffer acquire() {
+        ByteBuffer buffer = buffers.poll();
+        if (buffer == null) {
+            return ByteBuffer.allocateDirect(bufferSizeInBytes);
+        }
+        return buffer;
+    }
+
+    void release(ByteBuffer buffer) {
+        buffer.clear();
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,29 @@
+package com.novoda.downloadmanager;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers which hosts accept byte ranges, learnt from the responses of their downloads, so that
+ * whether a file can be resumed or split into segments is decided without requesting it first.
+ * Shared by every downloader of a {@link FileDownloaderCreator}, it lasts as long as the process.
+ */
+final class ByteRangeSupport {
+
+    private final Map<String, Boolean> acceptsByteRangesByHost = new ConcurrentHashMap<>();
+
+    /**
+     * @return whether the host of the url accepts byte ranges, absent when it is not known yet.
+     */
+    Optional<Boolean> acceptsByteRanges(String url) {
+        return Optional.fromNullable(acceptsByteRangesByHost.get(HostExtractor.extractFrom(url)));
+    }
+
+    void remember(String url, boolean acceptsByteRanges) {
+        String host = HostExtractor.extractFrom(url);
+        Boolean previouslyAccepted = acceptsByteRangesByHost.put(host, acceptsByteRanges);
+        if (previouslyAccepted == null || previouslyAccepted != acceptsByteRanges) {
+            Logger.v("host " + host + " accepts byte ranges: " + acceptsByteRanges);
+        }
+    }
+}
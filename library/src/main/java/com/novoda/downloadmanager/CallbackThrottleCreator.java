@@ -19,6 +19,10 @@ final class CallbackThrottleCreator {
     private final long frequency;
     private final Class<? extends FileCallbackThrottle> customCallbackThrottle;
 
+    private final Object sharedTickActionSchedulerLock = new Object();
+
+    private SharedTickActionScheduler sharedTickActionScheduler;
+
     static CallbackThrottleCreator byTime(TimeUnit timeUnit, long quantity) {
         return new CallbackThrottleCreator(Type.THROTTLE_BY_TIME, timeUnit, quantity, NO_CUSTOM_CALLBACK_THROTTLE);
     }
@@ -41,8 +45,7 @@ final class CallbackThrottleCreator {
     FileCallbackThrottle create() {
         switch (type) {
             case THROTTLE_BY_TIME:
-                ActionScheduler actionScheduler = SchedulerFactory.createFixedRateTimerScheduler(timeUnit.toMillis(frequency));
-                return new FileCallbackThrottleByTime(actionScheduler);
+                return new FileCallbackThrottleByTime(sharedTickActionScheduler().newActionScheduler());
             case THROTTLE_BY_PROGRESS_INCREASE:
                 return new FileCallbackThrottleByProgressIncrease();
             case CUSTOM:
@@ -52,6 +55,18 @@ final class CallbackThrottleCreator {
         }
     }
 
+    /**
+     * Every throttle by time of a download manager ticks on the same thread, created along with the first of them.
+     */
+    private SharedTickActionScheduler sharedTickActionScheduler() {
+        synchronized (sharedTickActionSchedulerLock) {
+            if (sharedTickActionScheduler == null) {
+                sharedTickActionScheduler = SchedulerFactory.createSharedTickScheduler(timeUnit.toMillis(frequency));
+            }
+            return sharedTickActionScheduler;
+        }
+    }
+
     private FileCallbackThrottle createCallbackThrottle() {
         if (customCallbackThrottle == null) {
             throw new CustomCallbackThrottleException("CustomCallbackThrottle class cannot be accessed, is it public?");
@@ -0,0 +1,325 @@
+package com.novoda.downloadmanager;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Writes through a {@link FileChannel}, coalescing contiguous writes into pooled direct buffers
+ * so that the file is only touched once per buffer rather than once per network read.
+ * Positional writes may come from several threads, each contiguous run is coalesced on its own.
+ * The file is synced by its download, once per sync interval, along with the checkpoint of the bytes downloaded.
+ */
+// Coalescing, flushing and syncing all share the pending writes, they cannot be split apart without exposing them.
+@SuppressWarnings("PMD.GodClass")
+class ChannelFilePersistence implements FilePersistence {
+
+    private static final String READ_WRITE_MODE = "rw";
+    private static final Object LOCK = new Object();
+
+    private final ByteBufferPool bufferPool;
+    private final long syncIntervalInBytes;
+    private final Object writeLock = new Object();
+    private final Map<Long, PendingWrite> pendingWritesByEndPosition = new HashMap<>();
+
+    private StorageRequirementRule storageRequirementRule;
+
+    @Nullable
+    private RandomAccessFile randomAccessFile;
+    private long totalFileSize;
+    private long sequentialPosition;
+    private boolean isPreallocated;
+
+    ChannelFilePersistence(ByteBufferPool bufferPool, long syncIntervalInBytes) {
+        this.bufferPool = bufferPool;
+        this.syncIntervalInBytes = syncIntervalInBytes;
+    }
+
+    @Override
+    public void initialiseWith(Context context, StorageRequirementRule storageRequirementRule) {
+        this.storageRequirementRule = storageRequirementRule;
+    }
+
+    @Override
+    public FilePersistenceResult create(FilePath absoluteFilePath, FileSize fileSize) {
+        if (absoluteFilePath.isUnknown()) {
+            return FilePersistenceResult.ERROR_OPENING_FILE;
+        }
+
+        File file = new File(absoluteFilePath.path());
+        if (!ensureParentDirectoriesExistFor(file)) {
+            return FilePersistenceResult.ERROR_OPENING_FILE;
+        }
+
+        // A size that is learnt from the download response cannot be checked upfront.
+        if (fileSize.isTotalSizeKnown() && storageRequirementRule.hasViolatedRule(file.getParentFile(), fileSize)) {
+            return FilePersistenceResult.ERROR_INSUFFICIENT_SPACE;
+        }
+
+        synchronized (writeLock) {
+            try {
+                randomAccessFile = new RandomAccessFile(file, READ_WRITE_MODE);
+                sequentialPosition = randomAccessFile.length();
+            } catch (IOException e) {
+                Logger.e(e, "File could not be opened");
+                return FilePersistenceResult.ERROR_OPENING_FILE;
+            }
+            totalFileSize = fileSize.totalSize();
+            isPreallocated = false;
+        }
+
+        return FilePersistenceResult.SUCCESS;
+    }
+
+    private boolean ensureParentDirectoriesExistFor(File outputFile) {
+        synchronized (LOCK) {
+            boolean parentExists = outputFile.getParentFile().exists();
+            if (parentExists) {
+                return true;
+            }
+
+            Logger.w(String.format("path: %s doesn't exist, creating parent directories...", outputFile.getAbsolutePath()));
+            return outputFile.getParentFile().mkdirs();
+        }
+    }
+
+    @Override
+    public boolean write(byte[] buffer, int offset, int numberOfBytesToWrite) {
+        synchronized (writeLock) {
+            boolean success = coalesce(buffer, offset, numberOfBytesToWrite, sequentialPosition);
+            if (success) {
+                sequentialPosition += numberOfBytesToWrite;
+            }
+            return success;
+        }
+    }
+
+    @Override
+    public boolean write(byte[] buffer, int offset, int numberOfBytesToWrite, long position) {
+        synchronized (writeLock) {
+            return preallocateIfNecessary() && coalesce(buffer, offset, numberOfBytesToWrite, position);
+        }
+    }
+
+    // Sequential files rely on their length to know how much was downloaded, only positional writes preallocate.
+    private boolean preallocateIfNecessary() {
+        if (isPreallocated || randomAccessFile == null) {
+            return true;
+        }
+
+        try {
+            if (randomAccessFile.length() < totalFileSize) {
+                randomAccessFile.setLength(totalFileSize);
+            }
+            isPreallocated = true;
+            return true;
+        } catch (IOException e) {
+            Logger.e(e, "File could not be preallocated to " + totalFileSize + " bytes");
+            return false;
+        }
+    }
+
+    private boolean coalesce(byte[] buffer, int offset, int numberOfBytesToWrite, long position) {
+        if (randomAccessFile == null) {
+            Logger.e("Cannot write, you must create the file first");
+            return false;
+        }
+
+        PendingWrite pendingWrite = pendingWritesByEndPosition.remove(position);
+        if (pendingWrite == null) {
+            pendingWrite = new PendingWrite(position, bufferPool.acquire());
+        }
+
+        // The write is put back even when it fails, it still holds the bytes of earlier writes that succeeded.
+        try {
+            int bytesCoalesced = 0;
+            while (bytesCoalesced < numberOfBytesToWrite) {
+                if (pendingWrite.isFull()) {
+                    writeToChannel(pendingWrite);
+                }
+                bytesCoalesced += pendingWrite.coalesce(buffer, offset + bytesCoalesced, numberOfBytesToWrite - bytesCoalesced);
+            }
+            if (pendingWrite.isFull()) {
+                writeToChannel(pendingWrite);
+            }
+            return true;
+        } catch (IOException e) {
+            Logger.e(e, "Exception while writing to internal physical storage");
+            return false;
+        } finally {
+            pendingWritesByEndPosition.put(pendingWrite.endPosition(), pendingWrite);
+        }
+    }
+
+    // Bytes that could not be written stay at the start of the buffer.
+    @SuppressWarnings("PMD.CloseResource")  // The channel belongs to randomAccessFile which is closed in close().
+    private void writeToChannel(PendingWrite pendingWrite) throws IOException {
+        FileChannel channel = randomAccessFile.getChannel();
+        ByteBuffer buffer = pendingWrite.buffer;
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, pendingWrite.startPosition + buffer.position());
+            }
+        } finally {
+            pendingWrite.startPosition += buffer.position();
+            buffer.compact();
+        }
+    }
+
+    @Override
+    public boolean flush() {
+        synchronized (writeLock) {
+            if (randomAccessFile == null) {
+                return pendingWritesByEndPosition.isEmpty();
+            }
+
+            Iterator<PendingWrite> pendingWrites = pendingWritesByEndPosition.values().iterator();
+            try {
+                while (pendingWrites.hasNext()) {
+                    PendingWrite pendingWrite = pendingWrites.next();
+                    writeToChannel(pendingWrite);
+                    bufferPool.release(pendingWrite.buffer);
+                    pendingWrites.remove();
+                }
+                return true;
+            } catch (IOException e) {
+                Logger.e(e, "Exception while flushing to internal physical storage, unwritten bytes are kept for the next flush");
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public boolean sync() {
+        synchronized (writeLock) {
+            if (!flush()) {
+                return false;
+            }
+            if (randomAccessFile == null) {
+                return true;
+            }
+
+            try {
+                randomAccessFile.getChannel().force(false);
+                return true;
+            } catch (IOException e) {
+                Logger.e(e, "Exception while syncing to internal physical storage");
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public long syncIntervalInBytes() {
+        return syncIntervalInBytes;
+    }
+
+    @Override
+    public boolean truncate(FilePath absoluteFilePath, long size) {
+        try (RandomAccessFile fileToTruncate = new RandomAccessFile(absoluteFilePath.path(), READ_WRITE_MODE)) {
+            if (fileToTruncate.length() > size) {
+                fileToTruncate.setLength(size);
+            }
+            return true;
+        } catch (IOException e) {
+            Logger.e(e, "File could not be truncated to " + size + " bytes");
+            return false;
+        }
+    }
+
+    @Override
+    public void delete(FilePath absoluteFilePath) {
+        if (absoluteFilePath == null || absoluteFilePath.isUnknown()) {
+            Logger.w("Cannot delete, you must create the file first.");
+            return;
+        }
+
+        File fileToDelete = new File(absoluteFilePath.path());
+        if (!fileToDelete.exists()) {
+            Logger.w("Abort delete, file does not exist: " + absoluteFilePath.path());
+            return;
+        }
+
+        boolean deleted = fileToDelete.delete();
+
+        String message = String.format("File or Directory: %s deleted: %s", absoluteFilePath.path(), deleted);
+        Logger.d(getClass().getSimpleName(), message);
+    }
+
+    @Override
+    public long getCurrentSize(FilePath filePath) {
+        File file = new File(filePath.path());
+        return file.length();
+    }
+
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            if (randomAccessFile == null) {
+                Logger.w("Abort closing file, does not exist.");
+                return;
+            }
+
+            if (!flush()) {
+                dropPendingWrites();
+            }
+            try {
+                randomAccessFile.getChannel().force(false);
+                randomAccessFile.close();
+            } catch (IOException e) {
+                Logger.e(e, "Failed to close randomAccessFile.");
+            } finally {
+                randomAccessFile = null;
+            }
+        }
+    }
+
+    private void dropPendingWrites() {
+        long droppedBytes = 0;
+        for (PendingWrite pendingWrite : pendingWritesByEndPosition.values()) {
+            droppedBytes += pendingWrite.sizeInBytes();
+            bufferPool.release(pendingWrite.buffer);
+        }
+        pendingWritesByEndPosition.clear();
+        Logger.e("Dropping " + droppedBytes + " bytes that could not be written before closing the file");
+    }
+
+    private static final class PendingWrite {
+
+        private final ByteBuffer buffer;
+        private long startPosition;
+
+        PendingWrite(long startPosition, ByteBuffer buffer) {
+            this.startPosition = startPosition;
+            this.buffer = buffer;
+        }
+
+        boolean isFull() {
+            return !buffer.hasRemaining();
+        }
+
+        int coalesce(byte[] bytes, int offset, int length) {
+            int bytesToCoalesce = Math.min(buffer.remaining(), length);
+            buffer.put(bytes, offset, bytesToCoalesce);
+            return bytesToCoalesce;
+        }
+
+        int sizeInBytes() {
+            return buffer.position();
+        }
+
+        long endPosition() {
+            return startPosition + sizeInBytes();
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Requests the unknown sizes of many files at once, bounding how many requests hit the same host
+ * so that a batch of hundreds of small files does not flood a single server.
+ * Requests are started in the order they were made, skipping the requests of a host that reached its limit,
+ * so that the requests of a busy host wait in line rather than on a pooled thread.
+ */
+class ConcurrentFileSizeRequester {
+
+    private static final int NO_REQUESTS = 0;
+
+    private final ExecutorService executor;
+    private final int maximumConcurrentRequests;
+    private final int maximumRequestsPerHost;
+    private final Object lock = new Object();
+    private final List<SizeRequest> pendingRequests = new LinkedList<>();
+    private final Map<String, Integer> runningRequestsPerHost = new HashMap<>();
+
+    private int runningRequests;
+
+    ConcurrentFileSizeRequester(ExecutorService executor, int maximumConcurrentRequests, int maximumRequestsPerHost) {
+        this.executor = executor;
+        this.maximumConcurrentRequests = maximumConcurrentRequests;
+        this.maximumRequestsPerHost = maximumRequestsPerHost;
+    }
+
+    /**
+     * Starts requesting the size of every file, without waiting for the responses.
+     */
+    List<Future<?>> requestSizes(List<DownloadFile> downloadFiles) {
+        List<Future<?>> sizeRequests = new ArrayList<>(downloadFiles.size());
+        synchronized (lock) {
+            for (DownloadFile downloadFile : downloadFiles) {
+                SizeRequest sizeRequest = new SizeRequest(downloadFile, HostExtractor.extractFrom(downloadFile.url()));
+                sizeRequests.add(sizeRequest.task);
+                pendingRequests.add(sizeRequest);
+            }
+            startPendingRequests();
+        }
+        return sizeRequests;
+    }
+
+    private void startPendingRequests() {
+        Iterator<SizeRequest> iterator = pendingRequests.iterator();
+        while (runningRequests < maximumConcurrentRequests && iterator.hasNext()) {
+            SizeRequest sizeRequest = iterator.next();
+            int runningRequestsForHost = runningRequestsFor(sizeRequest.host);
+            if (runningRequestsForHost >= maximumRequestsPerHost) {
+                continue;
+            }
+
+            iterator.remove();
+            runningRequests++;
+            runningRequestsPerHost.put(sizeRequest.host, runningRequestsForHost + 1);
+            executor.execute(() -> request(sizeRequest));
+        }
+    }
+
+    private int runningRequestsFor(String host) {
+        Integer runningRequestsForHost = runningRequestsPerHost.get(host);
+        return runningRequestsForHost == null ? NO_REQUESTS : runningRequestsForHost;
+    }
+
+    private void request(SizeRequest sizeRequest) {
+        try {
+            sizeRequest.task.run();
+        } finally {
+            synchronized (lock) {
+                runningRequests--;
+                int runningRequestsForHost = runningRequestsFor(sizeRequest.host) - 1;
+                if (runningRequestsForHost == NO_REQUESTS) {
+                    runningRequestsPerHost.remove(sizeRequest.host);
+                } else {
+                    runningRequestsPerHost.put(sizeRequest.host, runningRequestsForHost);
+                }
+                startPendingRequests();
+            }
+        }
+    }
+
+    static void awaitAll(List<Future<?>> sizeRequests) {
+        for (Future<?> sizeRequest : sizeRequests) {
+            try {
+                sizeRequest.get();
+            } catch (InterruptedException e) {
+                Logger.w("interrupted while waiting for file sizes");
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                Logger.e(e, "Exception while requesting a file size");
+            }
+        }
+    }
+
+    private static final class SizeRequest {
+
+        private final FutureTask<Void> task;
+        private final String host;
+
+        SizeRequest(DownloadFile downloadFile, String host) {
+            this.task = new FutureTask<>(downloadFile::requestTotalSizeIfUnknown, null);
+            this.host = host;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * CRC-32C (Castagnoli), as used by cloud storage for object checksums. The JDK only ships it from API 26 onwards.
+ */
+final class Crc32cFileDigester extends FileDigester {
+
+    private static final int REVERSED_POLYNOMIAL = 0x82f63b78;
+    private static final int INITIAL_CRC = 0xffffffff;
+    private static final int BYTE_MASK = 0xff;
+    private static final int BITS_PER_BYTE = 8;
+    private static final int CRC_SIZE_IN_BYTES = 4;
+    private static final int[] TABLE = createTable();
+
+    private int crc;
+
+    Crc32cFileDigester() {
+        this(INITIAL_CRC);
+    }
+
+    private Crc32cFileDigester(int crc) {
+        this.crc = crc;
+    }
+
+    @Nullable
+    static FileDigester restore(byte[] rawState) {
+        if (rawState.length != CRC_SIZE_IN_BYTES) {
+            return null;
+        }
+        return new Crc32cFileDigester(ByteBuffer.wrap(rawState).getInt());
+    }
+
+    private static int[] createTable() {
+        int[] table = new int[BYTE_MASK + 1];
+        for (int index = 0; index < table.length; index++) {
+            int value = index;
+            for (int bit = 0; bit < BITS_PER_BYTE; bit++) {
+                value = (value & 1) == 0 ? value >>> 1 : (value >>> 1) ^ REVERSED_POLYNOMIAL;
+            }
+            table[index] = value;
+        }
+        return table;
+    }
+
+    @Override
+    void update(byte[] bytes, int offset, int length) {
+        int value = crc;
+        for (int index = offset; index < offset + length; index++) {
+            value = TABLE[(value ^ bytes[index]) & BYTE_MASK] ^ (value >>> BITS_PER_BYTE);
+        }
+        crc = value;
+    }
+
+    @Override
+    FileDigest digest() {
+        return FileDigest.from(FileDigest.Algorithm.CRC32C, ByteBuffer.allocate(CRC_SIZE_IN_BYTES).putInt(~crc).array());
+    }
+
+    @Override
+    byte[] rawState() {
+        return ByteBuffer.allocate(CRC_SIZE_IN_BYTES).putInt(crc).array();
+    }
+}
@@ -0,0 +1,91 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * Reads the digest a server declares for the body of a download response, from an RFC 3230 Digest header
+ * or the x-goog-hash header of cloud storage. Only the algorithms of {@link FileDigest.Algorithm} are read,
+ * a SHA-256 digest is preferred over a CRC32C one.
+ */
+final class DigestHeaders {
+
+    private static final String HEADER_DIGEST = "Digest";
+    private static final String HEADER_GOOG_HASH = "x-goog-hash";
+    private static final String UNKNOWN_HEADER_VALUE = "";
+    private static final String VALUE_SEPARATOR = ",";
+    private static final char ALGORITHM_SEPARATOR = '=';
+
+    private static final String BASE64_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+    private static final char BASE64_PADDING = '=';
+    private static final int BITS_PER_BASE64_CHARACTER = 6;
+    private static final int BITS_PER_BYTE = 8;
+    private static final int BYTE_MASK = 0xff;
+
+    private DigestHeaders() {
+        // Uses static factory methods.
+    }
+
+    static Optional<FileDigest> declaredDigestOf(NetworkResponse response) {
+        String digestHeader = response.header(HEADER_DIGEST, UNKNOWN_HEADER_VALUE);
+        String googHashHeader = response.header(HEADER_GOOG_HASH, UNKNOWN_HEADER_VALUE);
+        return digestOf(FileDigest.Algorithm.SHA_256, digestHeader)
+                .or(() -> digestOf(FileDigest.Algorithm.CRC32C, googHashHeader));
+    }
+
+    private static Optional<FileDigest> digestOf(FileDigest.Algorithm algorithm, String header) {
+        for (String value : header.split(VALUE_SEPARATOR)) {
+            int separatorIndex = value.indexOf(ALGORITHM_SEPARATOR);
+            if (separatorIndex == -1) {
+                continue;
+            }
+
+            String rawAlgorithm = value.substring(0, separatorIndex).trim().toLowerCase(Locale.US);
+            if (!algorithm.toRawValue().equals(rawAlgorithm)) {
+                continue;
+            }
+
+            byte[] digest = decodeBase64(value.substring(separatorIndex + 1).trim());
+            if (digest == null) {
+                Logger.w("ignoring malformed " + rawAlgorithm + " digest: " + value);
+                continue;
+            }
+            try {
+                return Optional.of(FileDigest.from(algorithm, digest));
+            } catch (IllegalArgumentException e) {
+                Logger.w("ignoring " + rawAlgorithm + " digest of an unexpected length: " + value);
+            }
+        }
+        return Optional.absent();
+    }
+
+    /**
+     * @return the decoded bytes, or null when the value is not base64.
+     */
+    @Nullable
+    private static byte[] decodeBase64(String value) {
+        int length = value.length();
+        while (length > 0 && value.charAt(length - 1) == BASE64_PADDING) {
+            length--;
+        }
+
+        byte[] decoded = new byte[length * BITS_PER_BASE64_CHARACTER / BITS_PER_BYTE];
+        int buffer = 0;
+        int bufferedBits = 0;
+        int decodedIndex = 0;
+        for (int index = 0; index < length; index++) {
+            int sextet = BASE64_ALPHABET.indexOf(value.charAt(index));
+            if (sextet == -1) {
+                return null;
+            }
+            buffer = (buffer << BITS_PER_BASE64_CHARACTER) | sextet;
+            bufferedBits += BITS_PER_BASE64_CHARACTER;
+            if (bufferedBits >= BITS_PER_BYTE) {
+                bufferedBits -= BITS_PER_BYTE;
+                decoded[decodedIndex++] = (byte) ((buffer >> bufferedBits) & BYTE_MASK);
+            }
+        }
+        return decoded;
+    }
+}
@@ -4,8 +4,9 @@ import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.Future;
 
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETED;
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETING;
@@ -25,7 +26,7 @@ class DownloadBatch {
     private static final String STATUS = ", status ";
     private static final String BATCH = "batch ";
 
-    private final Map<DownloadFileId, Long> fileBytesDownloadedMap;
+    private final DownloadBatchProgress downloadBatchProgress;
     private final InternalDownloadBatchStatus downloadBatchStatus;
     private final List<DownloadFile> downloadFiles;
     private final DownloadsBatchPersistence downloadsBatchPersistence;
@@ -33,29 +34,40 @@ class DownloadBatch {
     private final ConnectionChecker connectionChecker;
     private final DownloadBatchRequirementRule downloadBatchRequirementRule;
     private final FilesDownloader filesDownloader;
-
-    private long totalBatchSizeBytes;
+    private final ConcurrentFileSizeRequester concurrentFileSizeRequester;
+    private final boolean learnsFileSizesFromDownloadResponse;
+    private final Object totalSizeLock = new Object();
+
+    private volatile long totalBatchSizeBytes;
+    private volatile long knownBatchSizeBytes;
+    private volatile boolean isRequestingFileSizes;
+    private volatile boolean isLearningFileSizes;
+    private volatile boolean isPreempted;
     private DownloadBatchStatusCallback callback;
 
     // The download batch is where the majority of the logic sits
-    @SuppressWarnings("checkstyle:parameternumber")
+    @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
     DownloadBatch(InternalDownloadBatchStatus internalDownloadBatchStatus,
                   List<DownloadFile> downloadFiles,
-                  Map<DownloadFileId, Long> fileBytesDownloadedMap,
+                  DownloadBatchProgress downloadBatchProgress,
                   DownloadsBatchPersistence downloadsBatchPersistence,
                   FileCallbackThrottle fileCallbackThrottle,
                   ConnectionChecker connectionChecker,
                   DownloadBatchRequirementRule downloadBatchRequirementRule,
-                  FilesDownloader filesDownloader
+                  FilesDownloader filesDownloader,
+                  ConcurrentFileSizeRequester concurrentFileSizeRequester,
+                  boolean learnsFileSizesFromDownloadResponse
     ) {
         this.downloadFiles = downloadFiles;
-        this.fileBytesDownloadedMap = fileBytesDownloadedMap;
+        this.downloadBatchProgress = downloadBatchProgress;
         this.downloadBatchStatus = internalDownloadBatchStatus;
         this.downloadsBatchPersistence = downloadsBatchPersistence;
         this.fileCallbackThrottle = fileCallbackThrottle;
         this.connectionChecker = connectionChecker;
         this.downloadBatchRequirementRule = downloadBatchRequirementRule;
         this.filesDownloader = filesDownloader;
+        this.concurrentFileSizeRequester = concurrentFileSizeRequester;
+        this.learnsFileSizesFromDownloadResponse = learnsFileSizesFromDownloadResponse;
     }
 
     void setCallback(DownloadBatchStatusCallback callback) {
@@ -63,6 +75,8 @@ class DownloadBatch {
         fileCallbackThrottle.setCallback(callback);
     }
 
+    // Files with a known size start downloading before the total batch size is known.
+    @SuppressWarnings("PMD.PrematureDeclaration")
     void download() {
         String rawBatchId = downloadBatchStatus.getDownloadBatchId().rawId();
         Logger.v("start sync download " + rawBatchId + STATUS + downloadBatchStatus.status());
@@ -74,6 +88,16 @@ class DownloadBatch {
 
         markAsDownloadingIfNeeded(downloadBatchStatus, downloadsBatchPersistence, callback);
 
+        List<DownloadFile> filesToDownload = downloadFiles;
+        if (!learnsFileSizesFromDownloadResponse) {
+            Optional<List<DownloadFile>> filesLeftToDownload = downloadFilesWithKnownSizeWhileRequestingTheRest();
+            if (!filesLeftToDownload.isPresent()) {
+                Logger.v("abort after downloading files with known size " + rawBatchId + STATUS + downloadBatchStatus.status());
+                return;
+            }
+            filesToDownload = filesLeftToDownload.get();
+        }
+
         updateTotalSize();
 
         Logger.v(BATCH + downloadBatchStatus.getDownloadBatchId().rawId()
@@ -85,14 +109,18 @@ class DownloadBatch {
                 downloadsBatchPersistence,
                 callback,
                 downloadBatchRequirementRule,
-                totalBatchSizeBytes
+                totalBatchSizeBytes,
+                learnsFileSizesFromDownloadResponse
         )) {
             Logger.v("abort after getting total " + BATCH + "size download " + rawBatchId + STATUS + downloadBatchStatus.status());
             return;
         }
 
-        filesDownloader.download(downloadFiles, callback, fileDownloadCallback);
+        filesDownloader.download(filesToDownload, callback, fileDownloadCallback);
+        endDownload();
+    }
 
+    private void endDownload() {
         if (networkError(downloadBatchStatus)) {
             processNetworkError(downloadBatchStatus, callback, downloadsBatchPersistence);
         }
@@ -100,7 +128,7 @@ class DownloadBatch {
         deleteBatchIfNeeded(downloadBatchStatus, downloadsBatchPersistence, callback);
         notifyCallback(callback, downloadBatchStatus);
         fileCallbackThrottle.stopUpdates();
-        Logger.v("end sync download " + rawBatchId);
+        Logger.v("end sync download " + downloadBatchStatus.getDownloadBatchId().rawId());
     }
 
   private static boolean shouldAbortStartingBatch(ConnectionChecker connectionChecker,
@@ -154,7 +182,7 @@ class DownloadBatch {
 
     private static void notifyCallback(DownloadBatchStatusCallback callback, InternalDownloadBatchStatus downloadBatchStatus) {
         if (callback != null) {
-            callback.onUpdate(downloadBatchStatus.copy());
+            callback.onUpdate(downloadBatchStatus.snapshot());
         }
     }
 
@@ -194,7 +222,8 @@ class DownloadBatch {
                                                                  DownloadsBatchPersistence downloadsBatchPersistence,
                                                                  DownloadBatchStatusCallback callback,
                                                                  DownloadBatchRequirementRule downloadBatchRequirementRule,
-                                                                 long totalBatchSizeBytes) {
+                                                                 long totalBatchSizeBytes,
+                                                                 boolean learnsFileSizesFromDownloadResponse) {
         if (downloadBatchStatus.status() == PAUSED) {
             notifyCallback(callback, downloadBatchStatus);
             return true;
@@ -206,22 +235,33 @@ class DownloadBatch {
             return true;
         }
 
-        if (totalBatchSizeBytes <= ZERO_BYTES) {
+        if (totalBatchSizeBytes <= ZERO_BYTES && !learnsFileSizesFromDownloadResponse) {
             processNetworkError(downloadBatchStatus, callback, downloadsBatchPersistence);
             notifyCallback(callback, downloadBatchStatus);
             return true;
         }
 
+        return hasViolatedRequirementRule(downloadBatchStatus, downloadsBatchPersistence, callback, downloadBatchRequirementRule);
+    }
+
+    private static boolean hasViolatedRequirementRule(InternalDownloadBatchStatus downloadBatchStatus,
+                                                      DownloadsBatchPersistence downloadsBatchPersistence,
+                                                      DownloadBatchStatusCallback callback,
+                                                      DownloadBatchRequirementRule downloadBatchRequirementRule) {
         if (downloadBatchRequirementRule.hasViolatedRule(downloadBatchStatus)) {
             Optional<DownloadError> error = Optional.fromNullable(new DownloadError(REQUIREMENT_RULE_VIOLATED));
             downloadBatchStatus.markAsError(error, downloadsBatchPersistence);
             notifyCallback(callback, downloadBatchStatus);
             return true;
         }
-
         return false;
     }
 
+    private static boolean hasStopped(InternalDownloadBatchStatus downloadBatchStatus) {
+        DownloadBatchStatus.Status status = downloadBatchStatus.status();
+        return status == ERROR || status == PAUSED || status == DELETING || status == DELETED;
+    }
+
     static boolean batchCannotContinue(InternalDownloadBatchStatus downloadBatchStatus,
                                                ConnectionChecker connectionChecker,
                                                DownloadsBatchPersistence downloadsBatchPersistence,
@@ -240,11 +280,13 @@ class DownloadBatch {
     private final DownloadFile.Callback fileDownloadCallback = new DownloadFile.Callback() {
         @Override
         public void onUpdate(InternalDownloadFileStatus downloadFileStatus) {
-            fileBytesDownloadedMap.put(downloadFileStatus.downloadFileId(), downloadFileStatus.bytesDownloaded());
-            long currentBytesDownloaded = getBytesDownloadedFrom(fileBytesDownloadedMap);
+            long currentBytesDownloaded = downloadBatchProgress.update(downloadFileStatus.downloadFileId(), downloadFileStatus.bytesDownloaded());
             downloadBatchStatus.updateDownloaded(currentBytesDownloaded);
 
-            if (currentBytesDownloaded > totalBatchSizeBytes) {
+            boolean isTotalBatchSizeFinal = !isRequestingFileSizes && !isLearningFileSizes;
+            long batchSizeBytes = isTotalBatchSizeFinal ? totalBatchSizeBytes : knownBatchSizeBytes;
+            // Files whose size is still being learnt download bytes that are not part of the known size yet.
+            if (!isLearningFileSizes && currentBytesDownloaded > batchSizeBytes) {
                 DownloadError downloadError = DownloadErrorFactory.createSizeMismatchError(downloadFileStatus);
                 downloadBatchStatus.markAsError(Optional.of(downloadError), downloadsBatchPersistence);
                 fileCallbackThrottle.update(downloadBatchStatus);
@@ -252,7 +294,7 @@ class DownloadBatch {
                 return;
             }
 
-            if (currentBytesDownloaded == totalBatchSizeBytes && totalBatchSizeBytes != ZERO_BYTES) {
+            if (isTotalBatchSizeFinal && currentBytesDownloaded == totalBatchSizeBytes && totalBatchSizeBytes != ZERO_BYTES) {
                 downloadBatchStatus.markAsDownloaded(downloadsBatchPersistence);
             }
 
@@ -267,20 +309,21 @@ class DownloadBatch {
             fileCallbackThrottle.update(downloadBatchStatus);
         }
 
+        @Override
+        public void onTotalSizeKnown() {
+            if (learnsFileSizesFromDownloadResponse) {
+                updateTotalSizeFromKnownFileSizes();
+            } else {
+                updateTotalSizeOfRestartedFiles();
+            }
+        }
+
         @Override
         public void onDelete() {
             deleteDownloadDirectories();
         }
     };
 
-    private static long getBytesDownloadedFrom(Map<DownloadFileId, Long> fileBytesDownloadedMap) {
-        long bytesDownloaded = 0;
-        for (Map.Entry<DownloadFileId, Long> entry : fileBytesDownloadedMap.entrySet()) {
-            bytesDownloaded += entry.getValue();
-        }
-        return bytesDownloaded;
-    }
-
     private static boolean networkError(InternalDownloadBatchStatus downloadBatchStatus) {
         DownloadBatchStatus.Status status = downloadBatchStatus.status();
         if (downloadBatchStatus.status() == DELETING) {
@@ -299,15 +342,49 @@ class DownloadBatch {
     }
 
     void pause() {
+        pause(downloadsBatchPersistence);
+    }
+
+    /**
+     * @param statusPersistence that persists the paused status, e.g. along with the statuses of other batches.
+     */
+    void pause(DownloadsBatchStatusPersistence statusPersistence) {
         Logger.v("pause " + BATCH + downloadBatchStatus.getDownloadBatchId().rawId() + STATUS + downloadBatchStatus.status());
         DownloadBatchStatus.Status status = downloadBatchStatus.status();
-        if (status == PAUSED || status == DOWNLOADED) {
+        if ((status == PAUSED && !isPreempted) || status == DOWNLOADED) {
             Logger.v(BATCH + downloadBatchStatus.getDownloadBatchId().rawId()
                              + STATUS + status
                              + " abort pause batch");
             return;
         }
-        downloadBatchStatus.markAsPaused(downloadsBatchPersistence);
+        isPreempted = false;
+        pauseFiles(statusPersistence);
+    }
+
+    /**
+     * Persisted as queued rather than paused, so that it is downloaded again should the process die before it is requeued.
+     */
+    void preempt() {
+        DownloadBatchStatus.Status status = downloadBatchStatus.status();
+        if (status == PAUSED || status == DOWNLOADED) {
+            Logger.v(BATCH + downloadBatchStatus.getDownloadBatchId().rawId()
+                             + STATUS + status
+                             + " abort preempt batch");
+            return;
+        }
+        isPreempted = true;
+        pauseFiles(new QueuedStatusPersistence(downloadsBatchPersistence));
+    }
+
+    /**
+     * @return true when the batch was paused by {@link #preempt()}, and neither paused nor resumed since.
+     */
+    boolean isPreempted() {
+        return isPreempted;
+    }
+
+    private void pauseFiles(DownloadsBatchStatusPersistence statusPersistence) {
+        downloadBatchStatus.markAsPaused(statusPersistence);
         notifyCallback(callback, downloadBatchStatus);
 
         for (DownloadFile downloadFile : downloadFiles) {
@@ -330,6 +407,13 @@ class DownloadBatch {
     }
 
     void resume() {
+        resume(downloadsBatchPersistence);
+    }
+
+    /**
+     * @param statusPersistence that persists the queued status, e.g. along with the statuses of other batches.
+     */
+    void resume(DownloadsBatchStatusPersistence statusPersistence) {
         DownloadBatchStatus.Status status = downloadBatchStatus.status();
         if (status == QUEUED || status == DOWNLOADING || status == DOWNLOADED) {
             Logger.v(BATCH + downloadBatchStatus.getDownloadBatchId().rawId()
@@ -337,7 +421,8 @@ class DownloadBatch {
                              + " abort resume batch");
             return;
         }
-        downloadBatchStatus.markAsQueued(downloadsBatchPersistence);
+        isPreempted = false;
+        downloadBatchStatus.markAsQueued(statusPersistence);
         notifyCallback(callback, downloadBatchStatus);
         for (DownloadFile downloadFile : downloadFiles) {
             downloadFile.resume();
@@ -345,6 +430,13 @@ class DownloadBatch {
     }
 
     void delete() {
+        delete(downloadsBatchPersistence);
+    }
+
+    /**
+     * @param deletePersistence that deletes the rows of a batch that is not downloading, e.g. along with other batches.
+     */
+    void delete(DownloadsBatchDeletePersistence deletePersistence) {
         DownloadBatchStatus.Status status = downloadBatchStatus.status();
         if (status == DELETING || status == DELETED) {
             Logger.v(BATCH + downloadBatchStatus.getDownloadBatchId().rawId()
@@ -367,7 +459,7 @@ class DownloadBatch {
 
         if (status == PAUSED || status == DOWNLOADED || status == WAITING_FOR_NETWORK || status == ERROR) {
             Logger.v("delete async paused or downloaded " + BATCH + downloadBatchStatus.getDownloadBatchId().rawId());
-            downloadsBatchPersistence.deleteAsync(downloadBatchStatus, downloadBatchId -> {
+            deletePersistence.deleteAsync(downloadBatchStatus, downloadBatchId -> {
                 Logger.v("delete paused or downloaded mark as deleted: " + downloadBatchId.rawId());
                 downloadBatchStatus.markAsDeleted();
                 notifyCallback(callback, downloadBatchStatus);
@@ -455,9 +547,133 @@ class DownloadBatch {
         );
     }
 
+    /**
+     * @return the files that are left to download once every size has been requested,
+     * absent when the batch violated its requirement rule or stopped while downloading the files with known size.
+     */
+    @WorkerThread
+    private Optional<List<DownloadFile>> downloadFilesWithKnownSizeWhileRequestingTheRest() {
+        List<DownloadFile> filesWithUnknownSize = filesWithUnknownSize();
+        if (filesWithUnknownSize.isEmpty() || filesWithUnknownSize.size() == downloadFiles.size()) {
+            return Optional.of(downloadFiles);
+        }
+
+        List<DownloadFile> filesWithKnownSize = new ArrayList<>(downloadFiles);
+        filesWithKnownSize.removeAll(filesWithUnknownSize);
+        knownBatchSizeBytes = knownSizeOf(filesWithKnownSize);
+        downloadBatchStatus.updatePartialTotalSize(knownBatchSizeBytes);
+        if (hasViolatedRequirementRule(downloadBatchStatus, downloadsBatchPersistence, callback, downloadBatchRequirementRule)) {
+            return Optional.absent();
+        }
+
+        List<Future<?>> sizeRequests = concurrentFileSizeRequester.requestSizes(filesWithUnknownSize);
+        isRequestingFileSizes = true;
+        try {
+            filesDownloader.download(filesWithKnownSize, callback, fileDownloadCallback);
+        } finally {
+            isRequestingFileSizes = false;
+        }
+
+        if (hasStopped(downloadBatchStatus)) {
+            for (Future<?> sizeRequest : sizeRequests) {
+                sizeRequest.cancel(false);
+            }
+            endDownload();
+            return Optional.absent();
+        }
+
+        ConcurrentFileSizeRequester.awaitAll(sizeRequests);
+        downloadsBatchPersistence.persistFiles(filesWithUnknownSize);
+        return Optional.of(filesLeftToDownloadAfter(filesWithUnknownSize));
+    }
+
+    private static long knownSizeOf(List<DownloadFile> filesWithKnownSize) {
+        long knownSizeBytes = 0;
+        for (DownloadFile downloadFile : filesWithKnownSize) {
+            knownSizeBytes += downloadFile.getKnownTotalSize();
+        }
+        return knownSizeBytes;
+    }
+
+    private List<DownloadFile> filesLeftToDownloadAfter(List<DownloadFile> filesWithUnknownSize) {
+        List<DownloadFile> filesLeftToDownload = new ArrayList<>(downloadFiles.size());
+        for (DownloadFile downloadFile : downloadFiles) {
+            boolean downloaded = downloadFile.getCurrentDownloadedBytes() == downloadFile.getKnownTotalSize();
+            if (filesWithUnknownSize.contains(downloadFile) || !downloaded) {
+                filesLeftToDownload.add(downloadFile);
+            }
+        }
+        return filesLeftToDownload;
+    }
+
+    private List<DownloadFile> filesWithUnknownSize() {
+        List<DownloadFile> filesWithUnknownSize = new ArrayList<>();
+        for (DownloadFile downloadFile : downloadFiles) {
+            if (downloadFile.getKnownTotalSize() == 0) {
+                filesWithUnknownSize.add(downloadFile);
+            }
+        }
+        return filesWithUnknownSize;
+    }
+
+    @WorkerThread
+    private void requestUnknownFileSizes() {
+        List<DownloadFile> filesWithUnknownSize = filesWithUnknownSize();
+        if (filesWithUnknownSize.isEmpty()) {
+            return;
+        }
+
+        ConcurrentFileSizeRequester.awaitAll(concurrentFileSizeRequester.requestSizes(filesWithUnknownSize));
+        downloadsBatchPersistence.persistFiles(filesWithUnknownSize);
+    }
+
+    /**
+     * The total batch size is only final once the size of every file is known.
+     */
+    private void updateTotalSizeFromKnownFileSizes() {
+        synchronized (totalSizeLock) {
+            long knownSizeBytes = 0;
+            boolean isEveryFileSizeKnown = true;
+            for (DownloadFile downloadFile : downloadFiles) {
+                long knownFileSizeBytes = downloadFile.getKnownTotalSize();
+                isEveryFileSizeKnown = isEveryFileSizeKnown && knownFileSizeBytes > ZERO_BYTES;
+                knownSizeBytes += knownFileSizeBytes;
+            }
+
+            if (isEveryFileSizeKnown) {
+                totalBatchSizeBytes = knownSizeBytes;
+                isLearningFileSizes = false;
+                downloadBatchStatus.updateTotalSize(knownSizeBytes);
+            } else {
+                knownBatchSizeBytes = knownSizeBytes;
+                isLearningFileSizes = true;
+                downloadBatchStatus.updatePartialTotalSize(knownSizeBytes);
+            }
+        }
+    }
+
+    /**
+     * Sizes that were requested upfront only change when a file is restarted from its first byte.
+     */
+    private void updateTotalSizeOfRestartedFiles() {
+        synchronized (totalSizeLock) {
+            long totalSizeBytes = totalSizeOfEveryFileIfKnown();
+            if (totalSizeBytes != ZERO_BYTES && totalSizeBytes != totalBatchSizeBytes) {
+                totalBatchSizeBytes = totalSizeBytes;
+                downloadBatchStatus.updateTotalSize(totalSizeBytes);
+            }
+        }
+    }
+
     @WorkerThread
     void updateTotalSize() {
+        if (learnsFileSizesFromDownloadResponse) {
+            updateTotalSizeFromKnownFileSizes();
+            return;
+        }
+
         if (totalBatchSizeBytes == 0) {
+            requestUnknownFileSizes();
             totalBatchSizeBytes = DownloadBatchSizeCalculator.getTotalSize(
                     downloadFiles,
                     downloadBatchStatus.status(),
@@ -466,4 +682,63 @@ class DownloadBatch {
         }
         downloadBatchStatus.updateTotalSize(totalBatchSizeBytes);
     }
+
+    /**
+     * Requests the sizes that are still unknown and reads the partial files on disk of a batch that is not downloading.
+     */
+    @WorkerThread
+    void reconcileStoredProgress() {
+        DownloadBatchStatus.Status status = downloadBatchStatus.status();
+        if (status != PAUSED && status != ERROR && status != WAITING_FOR_NETWORK) {
+            return;
+        }
+
+        for (DownloadFile downloadFile : downloadFiles) {
+            if (downloadFile.reconcileCurrentSize()) {
+                downloadBatchStatus.updateDownloaded(downloadBatchProgress.update(downloadFile.id(), downloadFile.getCurrentDownloadedBytes()));
+            }
+        }
+
+        if (!learnsFileSizesFromDownloadResponse) {
+            requestUnknownFileSizes();
+        }
+
+        long totalSizeBytes = totalSizeOfEveryFileIfKnown();
+        if (totalSizeBytes != ZERO_BYTES) {
+            downloadBatchStatus.updateTotalSize(totalSizeBytes);
+        }
+        notifyCallback(callback, downloadBatchStatus);
+    }
+
+    private long totalSizeOfEveryFileIfKnown() {
+        long totalSizeBytes = 0;
+        for (DownloadFile downloadFile : downloadFiles) {
+            long knownFileSizeBytes = downloadFile.getKnownTotalSize();
+            if (knownFileSizeBytes == ZERO_BYTES) {
+                return ZERO_BYTES;
+            }
+            totalSizeBytes += knownFileSizeBytes;
+        }
+        return totalSizeBytes;
+    }
+
+    private static final class QueuedStatusPersistence implements DownloadsBatchStatusPersistence {
+
+        private final DownloadsBatchStatusPersistence statusPersistence;
+
+        QueuedStatusPersistence(DownloadsBatchStatusPersistence statusPersistence) {
+            this.statusPersistence = statusPersistence;
+        }
+
+        @Override
+        public void updateStatusAsync(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+            statusPersistence.updateStatusAsync(downloadBatchId, QUEUED);
+        }
+
+        @WorkerThread
+        @Override
+        public boolean persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
+            return statusPersistence.persistCompletedBatch(completedDownloadBatch);
+        }
+    }
 }
@@ -0,0 +1,10 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Given to the asynchronous call {@link DownloadManager#getDownloadBatchCount(DownloadBatchQuery, DownloadBatchCountCallback)},
+ * to receive the number of stored batches matching the query.
+ */
+public interface DownloadBatchCountCallback {
+
+    void onReceived(int downloadBatchCount);
+}
@@ -2,7 +2,6 @@ package com.novoda.downloadmanager;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 
 final class DownloadBatchFactory {
 
@@ -55,7 +54,11 @@ final class DownloadBatchFactory {
             );
 
             FileDownloader fileDownloader = fileOperations.fileDownloaderCreator().create();
+            Optional<SegmentedNetworkFileDownloader> segmentedFileDownloader = fileOperations.fileDownloaderCreator().createSegmented();
             FileSizeRequester fileSizeRequester = fileOperations.fileSizeRequester();
+            FileIntegrity fileIntegrity = batchFile.expectedDigest().isPresent()
+                    ? FileIntegrity.expecting(batchFile.expectedDigest().get(), null)
+                    : FileIntegrity.unverified();
 
             DownloadFile downloadFile = new DownloadFile(
                     downloadBatchId,
@@ -64,10 +67,16 @@ final class DownloadBatchFactory {
                     downloadFileStatus,
                     filePath,
                     fileSize,
+                    new ArrayList<>(),
                     fileDownloader,
+                    segmentedFileDownloader,
                     fileSizeRequester,
+                    fileOperations.learnsFileSizeFromDownloadResponse(),
                     filePersistence,
-                    downloadsFilePersistence
+                    fileOperations.fileWritePipelineCreator().create(filePersistence),
+                    downloadsFilePersistence,
+                    fileIntegrity,
+                    null
             );
             downloadFiles.add(downloadFile);
         }
@@ -86,6 +95,7 @@ final class DownloadBatchFactory {
 
         FilesDownloader filesDownloader = createFilesDownloader(
                 enableConcurrentFileDownloading,
+                fileOperations.fileDownloadScheduler(),
                 downloadsBatchPersistence,
                 connectionChecker,
                 liteDownloadBatchStatus
@@ -94,21 +104,24 @@ final class DownloadBatchFactory {
         return new DownloadBatch(
                 liteDownloadBatchStatus,
                 downloadFiles,
-                new ConcurrentHashMap<>(),
+                new DownloadBatchProgress(downloadFiles),
                 downloadsBatchPersistence,
                 fileCallbackThrottle,
                 connectionChecker,
                 downloadBatchRequirementRule,
-                filesDownloader
+                filesDownloader,
+                fileOperations.concurrentFileSizeRequester(),
+                fileOperations.learnsFileSizeFromDownloadResponse()
         );
     }
 
     private static FilesDownloader createFilesDownloader(boolean enableConcurrentFileDownloading,
+                                                         FileDownloadScheduler fileDownloadScheduler,
                                                          DownloadsBatchPersistence downloadsBatchPersistence,
                                                          ConnectionChecker connectionChecker,
                                                          InternalDownloadBatchStatus liteDownloadBatchStatus) {
         if (enableConcurrentFileDownloading) {
-              return new ConcurrentFilesDownloader(liteDownloadBatchStatus, connectionChecker, downloadsBatchPersistence);
+              return new ConcurrentFilesDownloader(liteDownloadBatchStatus, connectionChecker, downloadsBatchPersistence, fileDownloadScheduler);
         } else {
               return new SequentialFilesDownloader(liteDownloadBatchStatus, connectionChecker, downloadsBatchPersistence);
         }
@@ -0,0 +1,10 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Given to the bulk calls of {@link DownloadManager}, e.g. {@link DownloadManager#pauseAll(DownloadBatchPredicate, AllBatchesUpdatedCallback)},
+ * to select the batches to act on from their current {@link DownloadBatchStatus}.
+ */
+public interface DownloadBatchPredicate {
+
+    boolean matches(DownloadBatchStatus downloadBatchStatus);
+}
@@ -0,0 +1,60 @@
+package com.novoda.downloadmanager;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Keeps the bytes downloaded of a batch up to date in constant time, without allocating, on every chunk that is read.
+ * Each file owns a slot, indexed by its position in the batch, and only the difference with its previous value
+ * is added to the running total.
+ */
+class DownloadBatchProgress {
+
+    private static final int UNKNOWN_FILE = -1;
+
+    private final Map<DownloadFileId, Integer> fileIndexes;
+    private final AtomicLongArray fileBytesDownloaded;
+    private final AtomicLong totalBytesDownloaded;
+
+    DownloadBatchProgress(List<DownloadFile> downloadFiles) {
+        int numberOfFiles = downloadFiles.size();
+        fileIndexes = new HashMap<>(numberOfFiles);
+        fileBytesDownloaded = new AtomicLongArray(numberOfFiles);
+
+        long bytesDownloaded = 0;
+        for (int index = 0; index < numberOfFiles; index++) {
+            DownloadFile downloadFile = downloadFiles.get(index);
+            long fileBytes = downloadFile.getCurrentDownloadedBytes();
+            fileIndexes.put(downloadFile.id(), index);
+            fileBytesDownloaded.set(index, fileBytes);
+            bytesDownloaded += fileBytes;
+        }
+        totalBytesDownloaded = new AtomicLong(bytesDownloaded);
+    }
+
+    /**
+     * @return the bytes downloaded for the whole batch, after taking the given file into account.
+     */
+    long update(DownloadFileId downloadFileId, long bytesDownloaded) {
+        int index = indexOf(downloadFileId);
+        if (index == UNKNOWN_FILE) {
+            Logger.w("file " + downloadFileId.rawId() + " is not part of the batch, its progress is ignored");
+            return totalBytesDownloaded.get();
+        }
+
+        long previousBytesDownloaded = fileBytesDownloaded.getAndSet(index, bytesDownloaded);
+        return totalBytesDownloaded.addAndGet(bytesDownloaded - previousBytesDownloaded);
+    }
+
+    private int indexOf(DownloadFileId downloadFileId) {
+        Integer index = fileIndexes.get(downloadFileId);
+        return index == null ? UNKNOWN_FILE : index;
+    }
+
+    long totalBytesDownloaded() {
+        return totalBytesDownloaded.get();
+    }
+}
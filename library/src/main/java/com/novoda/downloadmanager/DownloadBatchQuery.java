@@ -0,0 +1,143 @@
+package com.novoda.downloadmanager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Selects a page of the stored batches, e.g. the first 50 downloaded batches, newest first.
+ * Queries are served from the persistence layer, see {@link DownloadManager#getDownloadBatchStatuses(DownloadBatchQuery)}.
+ */
+public final class DownloadBatchQuery {
+
+    public static final int NO_LIMIT = -1;
+
+    private final Set<DownloadBatchStatus.Status> statuses;
+    private final DownloadBatchSortOrder sortOrder;
+    private final int limit;
+    private final int offset;
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    private DownloadBatchQuery(Set<DownloadBatchStatus.Status> statuses, DownloadBatchSortOrder sortOrder, int limit, int offset) {
+        this.statuses = statuses;
+        this.sortOrder = sortOrder;
+        this.limit = limit;
+        this.offset = offset;
+    }
+
+    /**
+     * @return the statuses a batch must have to be selected, every batch is selected when empty.
+     */
+    public Set<DownloadBatchStatus.Status> statuses() {
+        return statuses;
+    }
+
+    public DownloadBatchSortOrder sortOrder() {
+        return sortOrder;
+    }
+
+    /**
+     * @return the maximum number of batches to select, or {@link #NO_LIMIT}.
+     */
+    public int limit() {
+        return limit;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        DownloadBatchQuery that = (DownloadBatchQuery) o;
+
+        if (limit != that.limit) {
+            return false;
+        }
+        if (offset != that.offset) {
+            return false;
+        }
+        if (!statuses.equals(that.statuses)) {
+            return false;
+        }
+        return sortOrder == that.sortOrder;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = statuses.hashCode();
+        result = 31 * result + sortOrder.hashCode();
+        result = 31 * result + limit;
+        result = 31 * result + offset;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "DownloadBatchQuery{"
+                + "statuses=" + statuses
+                + ", sortOrder=" + sortOrder
+                + ", limit=" + limit
+                + ", offset=" + offset
+                + '}';
+    }
+
+    public static final class Builder {
+
+        private Set<DownloadBatchStatus.Status> statuses = Collections.emptySet();
+        private DownloadBatchSortOrder sortOrder = DownloadBatchSortOrder.NEWEST_FIRST;
+        private int limit = NO_LIMIT;
+        private int offset;
+
+        private Builder() {
+            // Use DownloadBatchQuery.newBuilder().
+        }
+
+        public Builder withStatuses(DownloadBatchStatus.Status... statuses) {
+            if (statuses.length == 0) {
+                throw new IllegalArgumentException("At least one status must be given");
+            }
+            this.statuses = Collections.unmodifiableSet(EnumSet.copyOf(Arrays.asList(statuses)));
+            return this;
+        }
+
+        public Builder withSortOrder(DownloadBatchSortOrder sortOrder) {
+            if (sortOrder == null) {
+                throw new IllegalArgumentException("Sort order cannot be null");
+            }
+            this.sortOrder = sortOrder;
+            return this;
+        }
+
+        public Builder withLimit(int limit) {
+            if (limit <= 0) {
+                throw new IllegalArgumentException("Limit must be greater than zero, but was " + limit);
+            }
+            this.limit = limit;
+            return this;
+        }
+
+        public Builder withOffset(int offset) {
+            if (offset < 0) {
+                throw new IllegalArgumentException("Offset cannot be negative, but was " + offset);
+            }
+            this.offset = offset;
+            return this;
+        }
+
+        public DownloadBatchQuery build() {
+            return new DownloadBatchQuery(statuses, sortOrder, limit, offset);
+        }
+    }
+}
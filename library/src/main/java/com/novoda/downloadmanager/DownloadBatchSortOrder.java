@@ -0,0 +1,27 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Orders the {@link DownloadBatchStatus} returned by a {@link DownloadBatchQuery}.
+ */
+public enum DownloadBatchSortOrder {
+
+    /**
+     * Batches that were added last come first.
+     */
+    NEWEST_FIRST,
+
+    /**
+     * Batches that were added first come first.
+     */
+    OLDEST_FIRST,
+
+    /**
+     * Batches are ordered alphabetically by title.
+     */
+    TITLE_ASCENDING,
+
+    /**
+     * Batches are ordered by title, in reverse alphabetical order.
+     */
+    TITLE_DESCENDING
+}
@@ -26,6 +26,13 @@ public interface DownloadBatchStatus {
             return this.name();
         }
 
+        /**
+         * A batch in a terminal status stays in it until it is downloaded again.
+         */
+        boolean isTerminal() {
+            return this == DOWNLOADED || this == ERROR || this == DELETED;
+        }
+
         public static Status from(String rawValue) {
             for (Status status : Status.values()) {
                 if (status.name().equals(rawValue)) {
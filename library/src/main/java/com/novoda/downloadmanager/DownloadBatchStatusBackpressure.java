@@ -0,0 +1,41 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Given to {@link DownloadManager#observe(DownloadBatchId, DownloadBatchStatusBackpressure, java.util.concurrent.Executor, DownloadBatchStatusCallback)}
+ * and {@link DownloadManager#observeAll(DownloadBatchPredicate, DownloadBatchStatusBackpressure, java.util.concurrent.Executor, DownloadBatchStatusCallback)},
+ * to choose what happens to the statuses emitted while an observer has not yet received the previous ones.
+ * Either way the threads that download batches never wait for an observer.
+ */
+public final class DownloadBatchStatusBackpressure {
+
+    private static final int UNBOUNDED_CAPACITY = 0;
+    private static final int MINIMUM_CAPACITY = 1;
+
+    private final int capacity;
+
+    /**
+     * Only the latest status of each batch is kept, an observer that falls behind skips the statuses in between.
+     */
+    public static DownloadBatchStatusBackpressure conflate() {
+        return new DownloadBatchStatusBackpressure(UNBOUNDED_CAPACITY);
+    }
+
+    /**
+     * Keeps every status in order, up to the capacity, beyond which the oldest statuses are dropped.
+     * Terminal statuses, downloaded, error and deleted, are never dropped.
+     */
+    public static DownloadBatchStatusBackpressure buffer(int capacity) {
+        if (capacity < MINIMUM_CAPACITY) {
+            throw new IllegalArgumentException("Buffer capacity must be at least " + MINIMUM_CAPACITY + ", was " + capacity);
+        }
+        return new DownloadBatchStatusBackpressure(capacity);
+    }
+
+    private DownloadBatchStatusBackpressure(int capacity) {
+        this.capacity = capacity;
+    }
+
+    PendingStatuses newPendingStatuses() {
+        return capacity == UNBOUNDED_CAPACITY ? new PendingStatuses.Conflated() : new PendingStatuses.Buffered(capacity);
+    }
+}
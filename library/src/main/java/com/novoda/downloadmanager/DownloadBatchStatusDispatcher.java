@@ -0,0 +1,86 @@
+package com.novoda.downloadmanager;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Coalesces the statuses of every batch into drains on the callback handler, at most one per drain interval,
+ * rather than posting every status on its own. Only the latest status of a batch is kept between two drains,
+ * except for terminal statuses, DOWNLOADED, ERROR and DELETED, which are always delivered, ahead of any later status.
+ * Statuses are dispatched from any thread without taking a lock.
+ */
+class DownloadBatchStatusDispatcher {
+
+    static final long FRAME_INTERVAL_IN_MILLIS = 16;
+    private static final long NO_DELAY = 0;
+
+    interface Listener {
+        /**
+         * Runs on the callback handler, with the statuses of the batches updated since the previous drain.
+         */
+        void onUpdates(List<DownloadBatchStatus> downloadBatchStatuses);
+    }
+
+    private final Handler callbackHandler;
+    private final long drainIntervalInMillis;
+    private final Map<DownloadBatchId, DownloadBatchStatus> latestStatuses = new ConcurrentHashMap<>();
+    private final Queue<DownloadBatchStatus> terminalStatuses = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean isDrainScheduled = new AtomicBoolean();
+    private final Runnable drain = this::drain;
+
+    private volatile long lastDrainTimeInNanos;
+    private Listener listener;
+
+    DownloadBatchStatusDispatcher(Handler callbackHandler, long drainIntervalInMillis) {
+        this.callbackHandler = callbackHandler;
+        this.drainIntervalInMillis = drainIntervalInMillis;
+        this.lastDrainTimeInNanos = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(drainIntervalInMillis);
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    void dispatch(DownloadBatchStatus downloadBatchStatus) {
+        if (downloadBatchStatus.status().isTerminal()) {
+            latestStatuses.remove(downloadBatchStatus.getDownloadBatchId());
+            terminalStatuses.add(downloadBatchStatus);
+        } else {
+            latestStatuses.put(downloadBatchStatus.getDownloadBatchId(), downloadBatchStatus);
+        }
+
+        if (isDrainScheduled.compareAndSet(false, true)) {
+            long millisSinceLastDrain = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - lastDrainTimeInNanos);
+            callbackHandler.postDelayed(drain, Math.max(NO_DELAY, drainIntervalInMillis - millisSinceLastDrain));
+        }
+    }
+
+    private void drain() {
+        lastDrainTimeInNanos = System.nanoTime();
+        // Statuses dispatched from now on schedule the next drain, which finds nothing when this one takes them all.
+        isDrainScheduled.set(false);
+
+        List<DownloadBatchStatus> downloadBatchStatuses = new ArrayList<>();
+        for (DownloadBatchStatus terminalStatus = terminalStatuses.poll(); terminalStatus != null; terminalStatus = terminalStatuses.poll()) {
+            downloadBatchStatuses.add(terminalStatus);
+        }
+        for (DownloadBatchId downloadBatchId : latestStatuses.keySet()) {
+            DownloadBatchStatus latestStatus = latestStatuses.remove(downloadBatchId);
+            if (latestStatus != null) {
+                downloadBatchStatuses.add(latestStatus);
+            }
+        }
+
+        if (!downloadBatchStatuses.isEmpty() && listener != null) {
+            listener.onUpdates(downloadBatchStatuses);
+        }
+    }
+}
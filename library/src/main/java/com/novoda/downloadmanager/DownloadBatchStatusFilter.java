@@ -1,8 +1,18 @@
 package com.novoda.downloadmanager;
 
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Lets through the statuses of a batch whose version is newer than the last one let through, so that statuses that have
+ * not changed, or that are older than those already published, are filtered out without comparing their fields.
+ * Statuses come from the batch threads and the shared tick thread, a status is checked and stored under one lock so that
+ * an older one never replaces a newer one.
+ */
 class DownloadBatchStatusFilter {
 
-    private InternalDownloadBatchStatus currentStatus;
+    private final Object publishedSnapshotsLock = new Object();
+    private final Map<DownloadBatchId, InternalDownloadBatchStatus> publishedSnapshots = new HashMap<>();
 
     boolean shouldFilterOut(DownloadBatchStatus currentDownloadBatchStatus) {
         if (!(currentDownloadBatchStatus instanceof InternalDownloadBatchStatus)) {
@@ -10,21 +20,30 @@ class DownloadBatchStatusFilter {
             return true;
         }
 
-        InternalDownloadBatchStatus copiedStatus = ((InternalDownloadBatchStatus) currentDownloadBatchStatus).copy();
-        if (copiedStatus.equals(currentStatus)) {
-            Logger.v("Failed filter. "
-                             + "ID: " + currentDownloadBatchStatus.getDownloadBatchId().rawId()
-                             + " Status: " + currentDownloadBatchStatus.status().toRawValue()
-            );
-            return true;
+        InternalDownloadBatchStatus currentSnapshot = ((InternalDownloadBatchStatus) currentDownloadBatchStatus).snapshot();
+        DownloadBatchId downloadBatchId = currentSnapshot.getDownloadBatchId();
+        synchronized (publishedSnapshotsLock) {
+            InternalDownloadBatchStatus publishedSnapshot = publishedSnapshots.get(downloadBatchId);
+            if (publishedSnapshot != null && currentSnapshot.version() <= publishedSnapshot.version()) {
+                Logger.v("Failed filter. "
+                                 + "ID: " + downloadBatchId.rawId()
+                                 + " Status: " + currentSnapshot.status().toRawValue()
+                );
+                return true;
+            }
+
+            if (currentSnapshot.status() == DownloadBatchStatus.Status.DELETED) {
+                publishedSnapshots.remove(downloadBatchId);
+            } else {
+                publishedSnapshots.put(downloadBatchId, currentSnapshot);
+            }
         }
 
         Logger.v(
                 "Passes filter. "
-                        + "ID: " + currentDownloadBatchStatus.getDownloadBatchId().rawId()
-                        + " Status: " + currentDownloadBatchStatus.status().toRawValue()
+                        + "ID: " + downloadBatchId.rawId()
+                        + " Status: " + currentSnapshot.status().toRawValue()
         );
-        currentStatus = copiedStatus;
         return false;
     }
 }
@@ -4,8 +4,14 @@ import android.app.Notification;
 import android.content.Context;
 import androidx.core.app.NotificationCompat;
 
+import static com.novoda.downloadmanager.NotificationCustomizer.NotificationDisplayState.SINGLE_PERSISTENT_NOTIFICATION;
+import static com.novoda.downloadmanager.NotificationCustomizer.NotificationDisplayState.STACK_NOTIFICATION_NOT_DISMISSIBLE;
+
 class DownloadBatchStatusNotificationCreator implements NotificationCreator<DownloadBatchStatus> {
 
+    private static final String NOTIFICATION_GROUP = "download-manager-batches";
+    private static final String NO_NOTIFICATION_GROUP = null;
+
     private final Context applicationContext;
     private final NotificationCustomizer<DownloadBatchStatus> notificationCustomizer;
     private NotificationChannelProvider notificationChannelProvider;
@@ -46,9 +52,15 @@ class DownloadBatchStatusNotificationCreator implements NotificationCreator<Down
                     previousStatus = status;
                 }
 
+                // Only ongoing notifications are grouped, the others outlive the summary of the group.
+                builder.setGroup(isOngoing(notificationDisplayState()) ? NOTIFICATION_GROUP : NO_NOTIFICATION_GROUP);
                 return notificationCustomizer.customNotificationFrom(builder, downloadBatchStatus);
             }
 
+            private boolean isOngoing(NotificationCustomizer.NotificationDisplayState displayState) {
+                return displayState == SINGLE_PERSISTENT_NOTIFICATION || displayState == STACK_NOTIFICATION_NOT_DISMISSIBLE;
+            }
+
             private boolean hasChanged(int notificationId, DownloadBatchStatus.Status status) {
                 return previousNotificationId != notificationId || !previousStatus.equals(status);
             }
@@ -59,4 +71,18 @@ class DownloadBatchStatusNotificationCreator implements NotificationCreator<Down
             }
         };
     }
+
+    // The small icon of a notification is only readable as an Icon from API 23.
+    @SuppressWarnings("deprecation")
+    @Override
+    public Notification createGroupSummary(Notification latestNotification, int groupSize) {
+        String title = applicationContext.getResources().getQuantityString(R.plurals.download_notification_group_summary, groupSize, groupSize);
+        return new NotificationCompat.Builder(applicationContext, notificationChannelProvider.channelId())
+                .setSmallIcon(latestNotification.icon)
+                .setContentTitle(title)
+                .setGroup(NOTIFICATION_GROUP)
+                .setGroupSummary(true)
+                .setOnlyAlertOnce(true)
+                .build();
+    }
 }
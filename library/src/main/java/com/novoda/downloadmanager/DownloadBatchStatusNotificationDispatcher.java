@@ -1,24 +1,43 @@
 package com.novoda.downloadmanager;
 
+import android.os.Handler;
+
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETED;
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DOWNLOADED;
 
+/**
+ * Posts the notification of a batch only when what it shows changes, its percentage, status or title.
+ * A change of status is posted right away, while progress is posted at most once per update interval,
+ * the latest progress is posted once the interval has elapsed. Batches are forgotten once they reach a terminal status.
+ * Runs on the callback handler.
+ */
 class DownloadBatchStatusNotificationDispatcher {
 
+    static final long DEFAULT_UPDATE_INTERVAL_IN_MILLIS = 500;
     private static final boolean NOTIFICATION_SEEN = true;
 
     private final DownloadsNotificationSeenPersistence notificationSeenPersistence;
     private final ServiceNotificationDispatcher<DownloadBatchStatus> notificationDispatcher;
     private final Set<String> downloadBatchIdNotificationSeen;
+    private final Handler callbackHandler;
+    private final long updateIntervalInNanos;
+    private final Map<DownloadBatchId, PostedNotification> postedNotifications = new HashMap<>();
 
     DownloadBatchStatusNotificationDispatcher(DownloadsNotificationSeenPersistence notificationSeenPersistence,
                                               ServiceNotificationDispatcher<DownloadBatchStatus> notificationDispatcher,
-                                              Set<String> downloadBatchIdNotificationSeen) {
+                                              Set<String> downloadBatchIdNotificationSeen,
+                                              Handler callbackHandler,
+                                              long updateIntervalInMillis) {
         this.notificationSeenPersistence = notificationSeenPersistence;
         this.notificationDispatcher = notificationDispatcher;
         this.downloadBatchIdNotificationSeen = downloadBatchIdNotificationSeen;
+        this.callbackHandler = callbackHandler;
+        this.updateIntervalInNanos = TimeUnit.MILLISECONDS.toNanos(updateIntervalInMillis);
     }
 
     void updateNotification(InternalDownloadBatchStatus downloadBatchStatus) {
@@ -41,14 +60,126 @@ class DownloadBatchStatusNotificationDispatcher {
             downloadBatchStatus.markAsNotificationSeen(notificationSeenPersistence);
         }
 
-        notificationDispatcher.updateNotification(downloadBatchStatus);
+        postIfChanged(downloadBatchStatus);
     }
 
     private boolean notificationIsNotMarkedAsSeenYet(DownloadBatchStatus downloadBatchStatus, String rawDownloadBatchId) {
         return downloadBatchStatus.status() == DOWNLOADED && !downloadBatchIdNotificationSeen.contains(rawDownloadBatchId);
     }
 
+    private void postIfChanged(InternalDownloadBatchStatus downloadBatchStatus) {
+        DownloadBatchId downloadBatchId = downloadBatchStatus.getDownloadBatchId();
+        NotificationContent content = NotificationContent.of(downloadBatchStatus);
+        PostedNotification postedNotification = postedNotifications.get(downloadBatchId);
+        if (postedNotification == null || postedNotification.content.status != content.status || content.status.isTerminal()) {
+            post(downloadBatchStatus, content);
+            return;
+        }
+
+        if (postedNotification.content.equals(content)) {
+            postedNotification.pendingStatus = null;
+            return;
+        }
+
+        long nanosSinceLastPost = System.nanoTime() - postedNotification.postedAtInNanos;
+        if (nanosSinceLastPost >= updateIntervalInNanos) {
+            post(downloadBatchStatus, content);
+            return;
+        }
+
+        if (postedNotification.pendingStatus == null) {
+            long delayInMillis = TimeUnit.NANOSECONDS.toMillis(updateIntervalInNanos - nanosSinceLastPost);
+            callbackHandler.postDelayed(() -> postPending(downloadBatchId), delayInMillis);
+        }
+        postedNotification.pendingStatus = downloadBatchStatus;
+    }
+
+    private void postPending(DownloadBatchId downloadBatchId) {
+        PostedNotification postedNotification = postedNotifications.get(downloadBatchId);
+        if (postedNotification == null || postedNotification.pendingStatus == null) {
+            return;
+        }
+
+        InternalDownloadBatchStatus pendingStatus = postedNotification.pendingStatus;
+        postedNotification.pendingStatus = null;
+        updateNotification(pendingStatus);
+    }
+
+    private void post(InternalDownloadBatchStatus downloadBatchStatus, NotificationContent content) {
+        if (content.status.isTerminal()) {
+            postedNotifications.remove(downloadBatchStatus.getDownloadBatchId());
+        } else {
+            postedNotifications.put(downloadBatchStatus.getDownloadBatchId(), new PostedNotification(content, System.nanoTime()));
+        }
+        notificationDispatcher.updateNotification(downloadBatchStatus);
+    }
+
     void setDownloadService(DownloadService downloadService) {
         notificationDispatcher.setService(downloadService);
     }
+
+    private static final class PostedNotification {
+
+        private final NotificationContent content;
+        private final long postedAtInNanos;
+
+        private InternalDownloadBatchStatus pendingStatus;
+
+        PostedNotification(NotificationContent content, long postedAtInNanos) {
+            this.content = content;
+            this.postedAtInNanos = postedAtInNanos;
+        }
+    }
+
+    /**
+     * What the notification of a batch shows.
+     */
+    private static final class NotificationContent {
+
+        private final int percentageDownloaded;
+        private final DownloadBatchStatus.Status status;
+        private final DownloadBatchTitle title;
+
+        static NotificationContent of(DownloadBatchStatus downloadBatchStatus) {
+            return new NotificationContent(
+                    downloadBatchStatus.percentageDownloaded(),
+                    downloadBatchStatus.status(),
+                    downloadBatchStatus.getDownloadBatchTitle()
+            );
+        }
+
+        private NotificationContent(int percentageDownloaded, DownloadBatchStatus.Status status, DownloadBatchTitle title) {
+            this.percentageDownloaded = percentageDownloaded;
+            this.status = status;
+            this.title = title;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+
+            NotificationContent that = (NotificationContent) o;
+
+            if (percentageDownloaded != that.percentageDownloaded) {
+                return false;
+            }
+            if (status != that.status) {
+                return false;
+            }
+            return title != null ? title.equals(that.title) : that.title == null;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = percentageDownloaded;
+            result = 31 * result + (status != null ? status.hashCode() : 0);
+            result = 31 * result + (title != null ? title.hashCode() : 0);
+            return result;
+        }
+    }
 }
@@ -0,0 +1,114 @@
+package com.novoda.downloadmanager;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Publishes the statuses of every batch to its observers, on the executor each of them chose.
+ * Publishing only adds a status to the pending statuses of each matching observer, so that the thread that downloads
+ * a batch never waits for an observer. Each observer receives its statuses one at a time and in order.
+ */
+class DownloadBatchStatusObservers {
+
+    private final Set<Observer> observers = new CopyOnWriteArraySet<>();
+
+    DownloadBatchStatusSubscription observe(DownloadBatchPredicate predicate,
+                                            DownloadBatchStatusBackpressure backpressure,
+                                            Executor deliveryExecutor,
+                                            DownloadBatchStatusCallback callback) {
+        Observer observer = new Observer(predicate, backpressure.newPendingStatuses(), deliveryExecutor, callback);
+        observers.add(observer);
+        return observer;
+    }
+
+    void publish(DownloadBatchStatus downloadBatchStatus) {
+        for (Observer observer : observers) {
+            observer.offer(downloadBatchStatus);
+        }
+    }
+
+    private final class Observer implements DownloadBatchStatusSubscription {
+
+        private final DownloadBatchPredicate predicate;
+        private final PendingStatuses pendingStatuses;
+        private final Executor deliveryExecutor;
+        private final DownloadBatchStatusCallback callback;
+        private final AtomicBoolean isDeliveryScheduled = new AtomicBoolean();
+
+        private volatile boolean isCancelled;
+
+        Observer(DownloadBatchPredicate predicate,
+                 PendingStatuses pendingStatuses,
+                 Executor deliveryExecutor,
+                 DownloadBatchStatusCallback callback) {
+            this.predicate = predicate;
+            this.pendingStatuses = pendingStatuses;
+            this.deliveryExecutor = deliveryExecutor;
+            this.callback = callback;
+        }
+
+        void offer(DownloadBatchStatus downloadBatchStatus) {
+            if (isCancelled || !predicate.matches(downloadBatchStatus)) {
+                return;
+            }
+
+            pendingStatuses.add(downloadBatchStatus);
+            scheduleDelivery();
+        }
+
+        private void scheduleDelivery() {
+            if (!isDeliveryScheduled.compareAndSet(false, true)) {
+                return;
+            }
+
+            try {
+                deliveryExecutor.execute(this::deliver);
+            } catch (RejectedExecutionException e) {
+                isDeliveryScheduled.set(false);
+                Logger.e(e, "observer executor rejected the delivery of its statuses");
+            }
+        }
+
+        /**
+         * Delivers until nothing is pending, a status added meanwhile is either delivered by this loop
+         * or by the delivery it schedules, never by both at once.
+         */
+        private void deliver() {
+            do {
+                List<DownloadBatchStatus> statuses = pendingStatuses.takeAll();
+                for (DownloadBatchStatus downloadBatchStatus : statuses) {
+                    if (isCancelled) {
+                        return;
+                    }
+                    deliver(downloadBatchStatus);
+                }
+                isDeliveryScheduled.set(false);
+            } while (!pendingStatuses.isEmpty() && isDeliveryScheduled.compareAndSet(false, true));
+        }
+
+        // A failing observer must not stop receiving its later statuses.
+        @SuppressWarnings("PMD.AvoidCatchingGenericException")
+        private void deliver(DownloadBatchStatus downloadBatchStatus) {
+            try {
+                callback.onUpdate(downloadBatchStatus);
+            } catch (RuntimeException e) {
+                Logger.e(e, "observer failed to receive status " + downloadBatchStatus.status());
+            }
+        }
+
+        @Override
+        public void cancel() {
+            isCancelled = true;
+            observers.remove(this);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return isCancelled;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Returned by the calls that observe {@link DownloadBatchStatus} updates, e.g.
+ * {@link DownloadManager#observe(DownloadBatchId, DownloadBatchStatusBackpressure, java.util.concurrent.Executor, DownloadBatchStatusCallback)}.
+ */
+public interface DownloadBatchStatusSubscription {
+
+    /**
+     * Stops the updates, statuses that are pending or being delivered are dropped.
+     */
+    void cancel();
+
+    boolean isCancelled();
+}
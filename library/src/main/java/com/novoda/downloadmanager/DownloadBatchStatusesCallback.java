@@ -0,0 +1,16 @@
+package com.novoda.downloadmanager;
+
+import java.util.List;
+
+/**
+ * Given to the asynchronous call {@link DownloadManager#addDownloadBatchStatusesCallback(DownloadBatchStatusesCallback)},
+ * to receive the {@link DownloadBatchStatus} updates of every batch at once, at most once per status dispatch interval.
+ */
+public interface DownloadBatchStatusesCallback {
+
+    /**
+     * @param downloadBatchStatuses the latest status of every batch updated since the previous call, along with every
+     *                              DOWNLOADED, ERROR and DELETED status, which are never left out.
+     */
+    void onUpdates(List<DownloadBatchStatus> downloadBatchStatuses);
+}
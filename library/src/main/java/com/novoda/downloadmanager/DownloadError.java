@@ -7,6 +7,7 @@ public class DownloadError {
         FILE_TOTAL_SIZE_REQUEST_FAILED,
         FILE_CANNOT_BE_CREATED_LOCALLY_INSUFFICIENT_FREE_SPACE,
         FILE_CANNOT_BE_WRITTEN,
+        FILE_DIGEST_MISMATCH,
         NETWORK_ERROR_CANNOT_DOWNLOAD_FILE,
         REQUIREMENT_RULE_VIOLATED,
         UNKNOWN
@@ -41,6 +41,19 @@ final class DownloadErrorFactory {
         return new DownloadError(DownloadError.Type.FILE_CANNOT_BE_WRITTEN, cannotWriteToFileMessage);
     }
 
+    static DownloadError createDigestMismatchError(DownloadFileStatus downloadFileStatus, FileDigest expectedDigest, FileDigest actualDigest) {
+        String digestMismatchMessage = "Download File with ID: "
+                + downloadFileStatus.downloadFileId().rawId()
+                + " has the "
+                + expectedDigest.algorithm().toRawValue()
+                + " digest: "
+                + actualDigest.hex()
+                + " rather than the expected: "
+                + expectedDigest.hex();
+
+        return new DownloadError(DownloadError.Type.FILE_DIGEST_MISMATCH, digestMismatchMessage);
+    }
+
     static DownloadError createNetworkError(String networkErrorCause) {
         String networkErrorMessage = "Network error, cannot download file. Cause: " + networkErrorCause;
         return new DownloadError(DownloadError.Type.NETWORK_ERROR_CANNOT_DOWNLOAD_FILE, networkErrorMessage);
@@ -1,22 +1,41 @@
 package com.novoda.downloadmanager;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
+import java.util.Collections;
+import java.util.List;
+
 // This model knows how to interact with low level components.
 @SuppressWarnings({"PMD.CyclomaticComplexity", "PMD.StdCyclomaticComplexity", "PMD.ModifiedCyclomaticComplexity"})
 class DownloadFile {
 
+    private static final long NO_BYTES_DOWNLOADED = 0;
+    private static final long UNKNOWN_TOTAL_SIZE = 0;
+
     private final DownloadBatchId downloadBatchId;
     private final DownloadFileId downloadFileId;
     private final String url;
     private final InternalDownloadFileStatus downloadFileStatus;
+    private final List<FileSegment> fileSegments;
     private final FileDownloader fileDownloader;
+    private final Optional<SegmentedNetworkFileDownloader> segmentedFileDownloader;
     private final FileSizeRequester fileSizeRequester;
+    private final boolean learnsTotalSizeFromDownloadResponse;
     private final FilePersistence filePersistence;
+    private final Optional<FileWritePipeline> fileWritePipeline;
     private final DownloadsFilePersistence downloadsFilePersistence;
     private final FilePath filePath;
+    private final Object progressLock = new Object();
+    private final Object sizeLock = new Object();
+    private final InternalFileSize fileSize;
+    private final ProgressPublicationThreshold progressPublicationThreshold = ProgressPublicationThreshold.newInstance();
+    private final FileIntegrity fileIntegrity;
 
-    private InternalFileSize fileSize;
+    // Synced bytes of a single stream, only these are persisted.
+    private volatile Checkpoint checkpoint;
+    @Nullable
+    private volatile String rangeValidator;
 
     // Model that knows how to interact with low-level components.
     @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
@@ -26,20 +45,33 @@ class DownloadFile {
                  InternalDownloadFileStatus downloadFileStatus,
                  FilePath filePath,
                  InternalFileSize fileSize,
+                 List<FileSegment> fileSegments,
                  FileDownloader fileDownloader,
+                 Optional<SegmentedNetworkFileDownloader> segmentedFileDownloader,
                  FileSizeRequester fileSizeRequester,
+                 boolean learnsTotalSizeFromDownloadResponse,
                  FilePersistence filePersistence,
-                 DownloadsFilePersistence downloadsFilePersistence) {
+                 Optional<FileWritePipeline> fileWritePipeline,
+                 DownloadsFilePersistence downloadsFilePersistence,
+                 FileIntegrity fileIntegrity,
+                 @Nullable String rangeValidator) {
         this.downloadBatchId = downloadBatchId;
         this.downloadFileId = downloadFileId;
         this.url = url;
         this.downloadFileStatus = downloadFileStatus;
         this.filePath = filePath;
+        this.fileSegments = fileSegments;
         this.fileDownloader = fileDownloader;
+        this.segmentedFileDownloader = segmentedFileDownloader;
         this.fileSizeRequester = fileSizeRequester;
+        this.learnsTotalSizeFromDownloadResponse = learnsTotalSizeFromDownloadResponse;
         this.filePersistence = filePersistence;
+        this.fileWritePipeline = fileWritePipeline;
         this.fileSize = fileSize;
         this.downloadsFilePersistence = downloadsFilePersistence;
+        this.fileIntegrity = fileIntegrity;
+        this.rangeValidator = rangeValidator;
+        this.checkpoint = new Checkpoint(fileSize.currentSize(), fileIntegrity.restoredState());
     }
 
     // This ia complex because we have to constantly check states and perform updates.
@@ -49,16 +81,25 @@ class DownloadFile {
 
         callback.onUpdate(downloadFileStatus);
 
-        fileSize = requestTotalFileSizeIfNecessary(fileSize);
+        if (!learnsTotalSizeFromDownloadResponse) {
+            requestTotalSizeIfUnknown();
+
+            if (fileSize.isTotalSizeUnknown()) {
+                DownloadError downloadError = DownloadErrorFactory.createTotalSizeRequestFailedError(downloadFileId, url);
+                updateAndFeedbackWithStatus(downloadError, callback);
+                Logger.w("abort download file " + downloadFileId + " because size is unknown: " + downloadError.message());
+                return;
+            }
+        }
 
-        if (fileSize.isTotalSizeUnknown()) {
-            DownloadError downloadError = DownloadErrorFactory.createTotalSizeRequestFailedError(downloadFileId, url);
+        if (!fileSegments.isEmpty() && segmentedFileDownloader.isAbsent() && !restartWithoutSegments()) {
+            DownloadError downloadError = DownloadErrorFactory.createCannotWriteToFileError(downloadFileStatus);
             updateAndFeedbackWithStatus(downloadError, callback);
-            Logger.w("abort download file " + downloadFileId + " because size is unknown: " + downloadError.message());
+            Logger.w("cannot restart file " + downloadFileId + " without its segments");
             return;
         }
 
-        fileSize.setCurrentSize(filePersistence.getCurrentSize(filePath));
+        fileSize.setCurrentSize(currentDownloadedBytes());
 
         if (downloadFileStatus.isMarkedAsDeleted()) {
             Logger.v("abort download file " + downloadFileId + " marked as deleted");
@@ -71,7 +112,7 @@ class DownloadFile {
             return;
         }
 
-        if (fileSize.currentSize() == fileSize.totalSize()) {
+        if (fileSize.isTotalSizeKnown() && fileSize.currentSize() == fileSize.totalSize()) {
             downloadFileStatus.update(fileSize, filePath);
             callback.onUpdate(downloadFileStatus);
             Logger.w("abort download file " + downloadFileId + " because already downloaded");
@@ -86,19 +127,284 @@ class DownloadFile {
             return;
         }
 
+        if (shouldDownloadInSegments()) {
+            downloadInSegments(segmentedFileDownloader.get(), callback);
+        } else {
+            downloadInSingleStream(callback);
+        }
+    }
+
+    private long currentDownloadedBytes() {
+        if (fileSegments.isEmpty()) {
+            return truncateToCheckpoint();
+        }
+
+        long bytesDownloaded = 0;
+        for (FileSegment fileSegment : fileSegments) {
+            bytesDownloaded += fileSegment.bytesDownloaded();
+        }
+        return bytesDownloaded;
+    }
+
+    // Bytes past the checkpoint may never have reached the storage device.
+    private long truncateToCheckpoint() {
+        long currentSize = filePersistence.getCurrentSize(filePath);
+        long checkpointedBytes = checkpoint.bytes;
+        if (currentSize <= checkpointedBytes) {
+            checkpoint = checkpoint.movedTo(currentSize);
+            return currentSize;
+        }
+
+        boolean truncated = truncateTo(checkpointedBytes);
+        Logger.w(String.format("truncating file %s from %d to its checkpoint of %d bytes, success: %s", downloadFileId.rawId(), currentSize, checkpointedBytes, truncated));
+        if (!truncated) {
+            checkpoint = checkpoint.movedTo(currentSize);
+        }
+        return checkpoint.bytes;
+    }
+
+    // Emptied before its segments are deleted, so that it restarts rather than resumes should the process die in between.
+    private boolean restartWithoutSegments() {
+        Logger.w("file " + downloadFileId.rawId() + " was started in segments but segmented downloading is disabled, restarting it");
+        if (!truncateTo(NO_BYTES_DOWNLOADED)) {
+            return false;
+        }
+
+        synchronized (progressLock) {
+            fileSize.setCurrentSize(NO_BYTES_DOWNLOADED);
+        }
+        checkpoint = new Checkpoint(NO_BYTES_DOWNLOADED, null);
+        fileIntegrity.restart();
+        if (!persist() || !downloadsFilePersistence.deleteSegmentsSync(downloadBatchId, downloadFileId)) {
+            return false;
+        }
+
+        fileSegments.clear();
+        return true;
+    }
+
+    private boolean truncateTo(long size) {
+        if (filePersistence.truncate(filePath, size)) {
+            return true;
+        }
+
+        if (size != NO_BYTES_DOWNLOADED) {
+            return false;
+        }
+        filePersistence.delete(filePath);
+        return filePersistence.getCurrentSize(filePath) == NO_BYTES_DOWNLOADED;
+    }
+
+    private boolean shouldDownloadInSegments() {
+        if (segmentedFileDownloader.isAbsent()) {
+            return false;
+        }
+
+        if (!fileSegments.isEmpty()) {
+            return true;
+        }
+
+        // A partial file written by a single stream cannot be split anymore.
+        if (fileSize.areBytesDownloadedKnown()) {
+            return false;
+        }
+
+        // Segments are written out of order, the file could not be hashed as it is written.
+        if (fileIntegrity.expectedDigest() != null) {
+            return false;
+        }
+
+        SegmentedNetworkFileDownloader downloader = segmentedFileDownloader.get();
+        List<FileSegment> segments = FileSegmentCreator.createSegmentsFor(fileSize.totalSize(), downloader.maximumSegments());
+        if (segments.isEmpty()) {
+            return false;
+        }
+
+        if (!downloader.acceptsByteRanges(url)) {
+            Logger.v("file " + downloadFileId.rawId() + " does not accept byte ranges, downloading in a single stream");
+            return false;
+        }
+
+        fileSegments.addAll(segments);
+        if (persistSegments()) {
+            return true;
+        }
+
+        fileSegments.clear();
+        return false;
+    }
+
+    private void downloadInSingleStream(Callback callback) {
+        Checkpoint startCheckpoint = checkpoint;
+        if (!fileIntegrity.startAt(fileSize.currentSize(), startCheckpoint.bytes, startCheckpoint.digestState)) {
+            Logger.w("restart file " + downloadFileId.rawId() + " from its first byte, its " + fileSize.currentSize() + " bytes were not hashed");
+            if (!discardBytesDownloaded(callback)) {
+                return;
+            }
+        }
+
+        if (fileWritePipeline.isPresent()) {
+            startFileWritePipeline(fileWritePipeline.get(), callback);
+        }
+
         fileDownloader.startDownloading(url, fileSize, new FileDownloader.Callback() {
+            @Override
+            public void onTotalSizeKnown(long totalSize) {
+                synchronized (sizeLock) {
+                    if (fileSize.isTotalSizeKnown()) {
+                        return;
+                    }
+                    fileSize.setTotalSize(totalSize);
+                }
+                Logger.v("learnt size of file " + downloadFileId.rawId() + " from the download response: " + totalSize);
+                persist();
+                callback.onTotalSizeKnown();
+            }
+
+            @Override
+            public void onDigestKnown(FileDigest declaredDigest) {
+                if (fileIntegrity.adopt(declaredDigest, fileSize.currentSize())) {
+                    Logger.v("verify file " + downloadFileId.rawId() + " against the declared " + declaredDigest.algorithm().toRawValue() + " digest");
+                    persist();
+                }
+            }
+
+            @Nullable
+            @Override
+            public String rangeValidator() {
+                return rangeValidator;
+            }
+
+            @Override
+            public void onRangeValidatorKnown(String rangeValidator) {
+                DownloadFile.this.rangeValidator = rangeValidator;
+            }
+
+            @Override
+            public void onRestartedFromFirstByte() {
+                restartFromFirstByte(callback);
+            }
+
             @Override
             public void onBytesRead(byte[] buffer, int bytesRead) {
-                boolean success = filePersistence.write(buffer, 0, bytesRead);
+                if (fileWritePipeline.isPresent()) {
+                    offerToFileWritePipeline(fileWritePipeline.get(), buffer, bytesRead);
+                } else {
+                    write(buffer, bytesRead, callback);
+                }
+            }
+
+            @Override
+            public void onError(String cause) {
+                DownloadError downloadError = DownloadErrorFactory.createNetworkError(cause);
+                updateAndFeedbackWithStatus(downloadError, callback);
+            }
+
+            @Override
+            public void onDownloadFinished() {
+                finishSingleStream(callback);
+            }
+        });
+    }
+
+    private void restartFromFirstByte(Callback callback) {
+        Logger.w("restart file " + downloadFileId.rawId() + " from its first byte rather than " + fileSize.currentSize());
+        synchronized (sizeLock) {
+            fileSize.setTotalSize(UNKNOWN_TOTAL_SIZE);
+        }
+        rangeValidator = null;
+        discardBytesDownloaded(callback);
+    }
+
+    private boolean discardBytesDownloaded(Callback callback) {
+        filePersistence.close();
+        boolean truncated = truncateTo(NO_BYTES_DOWNLOADED);
+        synchronized (progressLock) {
+            fileSize.setCurrentSize(NO_BYTES_DOWNLOADED);
+        }
+        checkpoint = new Checkpoint(NO_BYTES_DOWNLOADED, null);
+        fileIntegrity.restart();
+
+        FilePersistenceResult result = truncated ? filePersistence.create(filePath, fileSize) : FilePersistenceResult.ERROR_OPENING_FILE;
+        boolean isReopened = result == FilePersistenceResult.SUCCESS;
+        if (!isReopened) {
+            stopDownloading();
+            DownloadError downloadError = convertError(result);
+            updateAndFeedbackWithStatus(downloadError, callback);
+            Logger.w("failed to restart file " + downloadFileId + " because " + downloadError.message());
+        }
+        persist();
+        return isReopened;
+    }
+
+    private void finishSingleStream(Callback callback) {
+        if (fileWritePipeline.isPresent()) {
+            fileWritePipeline.get().finish();
+        }
+        if (downloadFileStatus.isMarkedAsDeleted()) {
+            filePersistence.close();
+            filePersistence.delete(filePath);
+            callback.onDelete();
+        } else {
+            boolean isSynced = filePersistence.sync();
+            filePersistence.close();
+            if (isSynced) {
+                checkpoint = new Checkpoint(fileSize.currentSize(), fileIntegrity.state());
+            }
+            persist();
+        }
+        publishUnpublishedProgress(callback);
+        if (downloadFileStatus.isMarkedAsWaitingForNetwork()) {
+            callback.onUpdate(downloadFileStatus);
+        }
+        if (fileSize.isTotalSizeUnknown() && downloadFileStatus.isMarkedAsDownloading()) {
+            completeWithoutDeclaredTotalSize(callback);
+        }
+    }
+
+    private void completeWithoutDeclaredTotalSize(Callback callback) {
+        if (!isVerified(callback)) {
+            return;
+        }
+
+        synchronized (sizeLock) {
+            fileSize.setTotalSize(fileSize.currentSize());
+        }
+        Logger.v("file " + downloadFileId.rawId() + " without a declared size completed with " + fileSize.currentSize() + " bytes");
+        downloadFileStatus.update(fileSize, filePath);
+        persist();
+        callback.onTotalSizeKnown();
+        callback.onUpdate(downloadFileStatus);
+    }
+
+    private void downloadInSegments(SegmentedNetworkFileDownloader downloader, Callback callback) {
+        Logger.v("download file " + downloadFileId.rawId() + " in " + fileSegments.size() + " segments");
+        if (fileIntegrity.expectedDigest() != null) {
+            Logger.w("cannot verify the digest of file " + downloadFileId.rawId() + ", it was started in segments");
+        }
+        downloader.startDownloading(url, fileSegments, new SegmentedNetworkFileDownloader.Callback() {
+            @Override
+            public void onBytesRead(FileSegment segment, byte[] buffer, int bytesRead) {
+                boolean success = filePersistence.write(buffer, 0, bytesRead, segment.currentPosition());
                 if (!success) {
-                    DownloadError downloadError = DownloadErrorFactory.createCannotWriteToFileError(downloadFileStatus);
-                    updateAndFeedbackWithStatus(downloadError, callback);
+                    downloader.stopDownloading();
+                    synchronized (progressLock) {
+                        DownloadError downloadError = DownloadErrorFactory.createCannotWriteToFileError(downloadFileStatus);
+                        updateAndFeedbackWithStatus(downloadError, callback);
+                    }
+                    return;
                 }
 
-                if (downloadFileStatus.isMarkedAsDownloading()) {
-                    fileSize.addToCurrentSize(bytesRead);
-                    downloadFileStatus.update(fileSize, filePath);
-                    callback.onUpdate(downloadFileStatus);
+                segment.addToBytesDownloaded(bytesRead);
+                if (segment.bytesSinceLastCheckpoint() >= filePersistence.syncIntervalInBytes()) {
+                    persistSegment(segment);
+                }
+
+                synchronized (progressLock) {
+                    if (downloadFileStatus.isMarkedAsDownloading()) {
+                        fileSize.addToCurrentSize(bytesRead);
+                        publishProgressAfter(bytesRead, callback);
+                    }
                 }
             }
 
@@ -110,11 +416,19 @@ class DownloadFile {
 
             @Override
             public void onDownloadFinished() {
-                filePersistence.close();
                 if (downloadFileStatus.isMarkedAsDeleted()) {
+                    filePersistence.close();
                     filePersistence.delete(filePath);
                     callback.onDelete();
+                    return;
                 }
+                boolean isSynced = filePersistence.sync();
+                filePersistence.close();
+                if (isSynced) {
+                    persistSegments();
+                }
+                persist();
+                publishUnpublishedProgress(callback);
                 if (downloadFileStatus.isMarkedAsWaitingForNetwork()) {
                     callback.onUpdate(downloadFileStatus);
                 }
@@ -122,6 +436,146 @@ class DownloadFile {
         });
     }
 
+    private void startFileWritePipeline(FileWritePipeline pipeline, Callback callback) {
+        pipeline.start(new FileWritePipeline.Listener() {
+            @Override
+            public void onBytesWritten(byte[] bytes, int bytesWritten) {
+                countWrittenBytes(bytes, bytesWritten, callback);
+            }
+
+            @Override
+            public void onWriteFailed() {
+                fileDownloader.stopDownloading();
+                synchronized (progressLock) {
+                    DownloadError downloadError = DownloadErrorFactory.createCannotWriteToFileError(downloadFileStatus);
+                    updateAndFeedbackWithStatus(downloadError, callback);
+                }
+            }
+        });
+    }
+
+    private void offerToFileWritePipeline(FileWritePipeline pipeline, byte[] buffer, int bytesRead) {
+        if (!pipeline.offer(buffer, bytesRead)) {
+            fileDownloader.stopDownloading();
+        }
+    }
+
+    private void write(byte[] buffer, int bytesRead, Callback callback) {
+        boolean success = filePersistence.write(buffer, 0, bytesRead);
+        if (!success) {
+            DownloadError downloadError = DownloadErrorFactory.createCannotWriteToFileError(downloadFileStatus);
+            updateAndFeedbackWithStatus(downloadError, callback);
+        }
+
+        countWrittenBytes(buffer, bytesRead, callback);
+    }
+
+    private void countWrittenBytes(byte[] bytes, int bytesWritten, Callback callback) {
+        if (downloadFileStatus.isMarkedAsDownloading()) {
+            fileIntegrity.update(bytes, 0, bytesWritten);
+            fileSize.addToCurrentSize(bytesWritten);
+            checkpointIfNecessary(callback);
+            if (downloadFileStatus.isMarkedAsDownloading()) {
+                publishProgressAfter(bytesWritten, callback);
+            }
+        }
+    }
+
+    // Runs on the thread that writes, every byte counted was handed to the file persistence and hashed.
+    private void checkpointIfNecessary(Callback callback) {
+        long currentSize = fileSize.currentSize();
+        boolean isComplete = fileSize.isTotalSizeKnown() && currentSize == fileSize.totalSize();
+        if (currentSize - checkpoint.bytes < filePersistence.syncIntervalInBytes() && !isComplete) {
+            return;
+        }
+
+        if (isComplete && !isVerified(callback)) {
+            return;
+        }
+
+        if (filePersistence.sync()) {
+            checkpoint = new Checkpoint(currentSize, fileIntegrity.state());
+            persist();
+        }
+    }
+
+    private boolean isVerified(Callback callback) {
+        Optional<FileDigest> mismatchingDigest = fileIntegrity.mismatch();
+        if (mismatchingDigest.isAbsent()) {
+            return true;
+        }
+
+        stopDownloading();
+        synchronized (progressLock) {
+            DownloadError downloadError = DownloadErrorFactory.createDigestMismatchError(
+                    downloadFileStatus,
+                    fileIntegrity.expectedDigest(),
+                    mismatchingDigest.get()
+            );
+            updateAndFeedbackWithStatus(downloadError, callback);
+            Logger.w("verification of file " + downloadFileId.rawId() + " failed: " + downloadError.message());
+        }
+
+        filePersistence.delete(filePath);
+        fileSize.setCurrentSize(0);
+        checkpoint = new Checkpoint(0, null);
+        fileIntegrity.restart();
+        persist();
+        return false;
+    }
+
+    private void publishProgressAfter(long bytesRead, Callback callback) {
+        synchronized (progressLock) {
+            boolean isComplete = fileSize.isTotalSizeKnown() && fileSize.currentSize() == fileSize.totalSize();
+            if (progressPublicationThreshold.shouldPublishAfter(bytesRead) || isComplete) {
+                publishProgress(callback);
+            }
+        }
+    }
+
+    private void publishUnpublishedProgress(Callback callback) {
+        synchronized (progressLock) {
+            boolean isStopped = downloadFileStatus.isMarkedAsDeleted()
+                    || downloadFileStatus.isMarkedAsError()
+                    || downloadFileStatus.isMarkedAsWaitingForNetwork();
+            if (!isStopped && progressPublicationThreshold.hasUnpublishedBytes()) {
+                publishProgress(callback);
+            }
+        }
+    }
+
+    private void publishProgress(Callback callback) {
+        progressPublicationThreshold.markAsPublished();
+        downloadFileStatus.update(fileSize, filePath);
+        callback.onUpdate(downloadFileStatus);
+    }
+
+    private void persistSegment(FileSegment segment) {
+        if (downloadFileStatus.isMarkedAsDeleted()) {
+            return;
+        }
+
+        // Bytes that did not reach the storage device must not be checkpointed.
+        if (!filePersistence.sync()) {
+            return;
+        }
+
+        List<FileSegment> segments = Collections.singletonList(segment);
+        if (downloadsFilePersistence.persistSegmentsSync(downloadBatchId, downloadFileId, segments)) {
+            segment.markAsCheckpointed();
+        }
+    }
+
+    private boolean persistSegments() {
+        boolean persisted = downloadsFilePersistence.persistSegmentsSync(downloadBatchId, downloadFileId, fileSegments);
+        if (persisted) {
+            for (FileSegment fileSegment : fileSegments) {
+                fileSegment.markAsCheckpointed();
+            }
+        }
+        return persisted;
+    }
+
     private DownloadError convertError(FilePersistenceResult status) {
         switch (status) {
             case ERROR_UNKNOWN_TOTAL_FILE_SIZE:
@@ -136,17 +590,19 @@ class DownloadFile {
         }
     }
 
-    private InternalFileSize requestTotalFileSizeIfNecessary(InternalFileSize fileSize) {
-        InternalFileSize updatedFileSize = fileSize.copy();
-
-        if (fileSize.isTotalSizeUnknown()) {
-            FileSize requestFileSize = fileSizeRequester.requestFileSize(url);
-            if (requestFileSize.isTotalSizeKnown()) {
-                updatedFileSize.setTotalSize(requestFileSize.totalSize());
+    /**
+     * Only one request is ever in flight for a file, a download waits for a request that was started concurrently.
+     */
+    @WorkerThread
+    void requestTotalSizeIfUnknown() {
+        synchronized (sizeLock) {
+            if (fileSize.isTotalSizeUnknown()) {
+                FileSize requestFileSize = fileSizeRequester.requestFileSize(url);
+                if (requestFileSize.isTotalSizeKnown()) {
+                    fileSize.setTotalSize(requestFileSize.totalSize());
+                }
             }
         }
-
-        return updatedFileSize;
     }
 
     private void updateAndFeedbackWithStatus(DownloadError downloadError, Callback callback) {
@@ -156,7 +612,7 @@ class DownloadFile {
 
     void pause() {
         downloadFileStatus.markAsPaused();
-        fileDownloader.stopDownloading();
+        stopDownloading();
     }
 
     void resume() {
@@ -165,14 +621,14 @@ class DownloadFile {
 
     void waitForNetwork() {
         downloadFileStatus.waitForNetwork();
-        fileDownloader.stopDownloading();
+        stopDownloading();
     }
 
     void delete() {
         if (downloadFileStatus.isMarkedAsDownloading()) {
             downloadFileStatus.markAsDeleted();
             Logger.v("mark file as deleted for batchId: " + downloadBatchId.rawId());
-            fileDownloader.stopDownloading();
+            stopDownloading();
         } else {
             downloadFileStatus.markAsDeleted();
             Logger.v("mark file as deleted for batchId: " + downloadBatchId.rawId());
@@ -180,11 +636,47 @@ class DownloadFile {
         }
     }
 
+    private void stopDownloading() {
+        fileDownloader.stopDownloading();
+        if (segmentedFileDownloader.isPresent()) {
+            segmentedFileDownloader.get().stopDownloading();
+        }
+    }
+
+    /**
+     * Catches up with the file on disk, up to its checkpoint, for files downloaded in a single stream.
+     *
+     * @return true when the bytes downloaded changed.
+     */
+    @WorkerThread
+    boolean reconcileCurrentSize() {
+        if (!fileSegments.isEmpty()) {
+            return false;
+        }
+
+        synchronized (progressLock) {
+            if (downloadFileStatus.isMarkedAsDownloading() || downloadFileStatus.isMarkedAsDeleted()) {
+                return false;
+            }
+
+            long currentSize = filePersistence.getCurrentSize(filePath);
+            currentSize = Math.min(currentSize, checkpoint.bytes);
+            if (currentSize == fileSize.currentSize()) {
+                return false;
+            }
+
+            Logger.v("reconcile file " + downloadFileId.rawId() + " from " + fileSize.currentSize() + " to " + currentSize + " bytes");
+            fileSize.setCurrentSize(currentSize);
+            checkpoint = checkpoint.movedTo(currentSize);
+        }
+        persist();
+        return true;
+    }
+
     @WorkerThread
     long getTotalSize() {
-        if (fileSize.isTotalSizeUnknown()) {
-            FileSize requestFileSize = fileSizeRequester.requestFileSize(url);
-            fileSize.setTotalSize(requestFileSize.totalSize());
+        if (fileSize.isTotalSizeUnknown() && !learnsTotalSizeFromDownloadResponse) {
+            requestTotalSizeIfUnknown();
             if (fileStatus().status() == DownloadFileStatus.Status.DELETED) {
                 Logger.e("file getTotalSize return zero because is deleted, " + downloadFileId.rawId()
                                  + " from batch " + downloadBatchId.rawId()
@@ -197,14 +689,30 @@ class DownloadFile {
         return fileSize.totalSize();
     }
 
+    long getKnownTotalSize() {
+        return fileSize.isTotalSizeKnown() ? fileSize.totalSize() : 0;
+    }
+
     @WorkerThread
     boolean persist() {
+        if (!fileSegments.isEmpty()) {
+            return persist(fileSize, null);
+        }
+
+        Checkpoint persistedCheckpoint = checkpoint.movedTo(Math.min(checkpoint.bytes, fileSize.currentSize()));
+        return persist(new LiteFileSize(persistedCheckpoint.bytes, fileSize.totalSize()), persistedCheckpoint.digestState);
+    }
+
+    private boolean persist(FileSize persistedFileSize, @Nullable String digestState) {
         return downloadsFilePersistence.persistSync(
                 downloadBatchId,
                 filePath,
-                fileSize,
+                persistedFileSize,
                 url,
-                downloadFileStatus
+                downloadFileStatus,
+                fileIntegrity.expectedDigest(),
+                digestState,
+                rangeValidator
         );
     }
 
@@ -212,6 +720,10 @@ class DownloadFile {
         return fileSize.currentSize();
     }
 
+    String url() {
+        return url;
+    }
+
     DownloadFileId id() {
         return downloadFileStatus.downloadFileId();
     }
@@ -224,10 +736,29 @@ class DownloadFile {
         return downloadFileStatus;
     }
 
+    private static final class Checkpoint {
+
+        private final long bytes;
+        @Nullable
+        private final String digestState;
+
+        Checkpoint(long bytes, @Nullable String digestState) {
+            this.bytes = bytes;
+            this.digestState = digestState;
+        }
+
+        // The state of the hash only holds for the exact bytes it was taken at.
+        Checkpoint movedTo(long bytes) {
+            return bytes == this.bytes ? this : new Checkpoint(bytes, null);
+        }
+    }
+
     interface Callback {
 
         void onUpdate(InternalDownloadFileStatus downloadFileStatus);
 
+        void onTotalSizeKnown();
+
         void onDelete();
     }
 }
@@ -3,7 +3,9 @@ package com.novoda.downloadmanager;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public interface DownloadManager {
 
@@ -35,6 +37,65 @@ public interface DownloadManager {
      */
     void delete(DownloadBatchId downloadBatchId);
 
+    /**
+     * Downloads many batches at once, rather than one {@link #download(Batch)} per batch.
+     * Their rows are persisted in a single transaction and they are queued for download in one step.
+     * Batches that are known already are skipped.
+     *
+     * @param batches  to download.
+     * @param callback notified once with the ids of the submitted batches.
+     */
+    void downloadAll(Collection<Batch> batches, AllBatchesUpdatedCallback callback);
+
+    /**
+     * Pauses many batches at once, their statuses are persisted in a single transaction.
+     *
+     * @param downloadBatchIds of the batches to pause.
+     * @param callback         notified once with the ids of the paused batches.
+     */
+    void pauseAll(Collection<DownloadBatchId> downloadBatchIds, AllBatchesUpdatedCallback callback);
+
+    /**
+     * Pauses every batch whose current {@link DownloadBatchStatus} matches the predicate.
+     *
+     * @param predicate to select the batches to pause.
+     * @param callback  notified once with the ids of the paused batches.
+     */
+    void pauseAll(DownloadBatchPredicate predicate, AllBatchesUpdatedCallback callback);
+
+    /**
+     * Resumes many batches at once, their statuses are persisted in a single transaction
+     * and they are queued for download in one step.
+     *
+     * @param downloadBatchIds of the batches to resume.
+     * @param callback         notified once with the ids of the resumed batches.
+     */
+    void resumeAll(Collection<DownloadBatchId> downloadBatchIds, AllBatchesUpdatedCallback callback);
+
+    /**
+     * Resumes every batch whose current {@link DownloadBatchStatus} matches the predicate.
+     *
+     * @param predicate to select the batches to resume.
+     * @param callback  notified once with the ids of the resumed batches.
+     */
+    void resumeAll(DownloadBatchPredicate predicate, AllBatchesUpdatedCallback callback);
+
+    /**
+     * Deletes many batches at once, the batches that are not downloading are deleted with a single statement.
+     *
+     * @param downloadBatchIds of the batches to delete.
+     * @param callback         notified once with the ids of the deleted batches.
+     */
+    void deleteAll(Collection<DownloadBatchId> downloadBatchIds, AllBatchesUpdatedCallback callback);
+
+    /**
+     * Deletes every batch whose current {@link DownloadBatchStatus} matches the predicate.
+     *
+     * @param predicate to select the batches to delete.
+     * @param callback  notified once with the ids of the deleted batches.
+     */
+    void deleteAll(DownloadBatchPredicate predicate, AllBatchesUpdatedCallback callback);
+
     /**
      * Adds a {@link DownloadBatchStatusCallback} to the internal list of callbacks
      * to be notified on {@link DownloadBatchStatus} changes.
@@ -51,6 +112,81 @@ public interface DownloadManager {
      */
     void removeDownloadBatchCallback(DownloadBatchStatusCallback downloadBatchCallback);
 
+    /**
+     * Adds a {@link DownloadBatchStatusesCallback} to be notified of the {@link DownloadBatchStatus} changes of every batch
+     * in a single call, rather than of each change on its own.
+     *
+     * @param downloadBatchStatusesCallback to add to the internal list of callbacks.
+     */
+    void addDownloadBatchStatusesCallback(DownloadBatchStatusesCallback downloadBatchStatusesCallback);
+
+    /**
+     * Removes a {@link DownloadBatchStatusesCallback}, removing notifications on {@link DownloadBatchStatus} changes.
+     *
+     * @param downloadBatchStatusesCallback to remove from the internal list of callbacks.
+     */
+    void removeDownloadBatchStatusesCallback(DownloadBatchStatusesCallback downloadBatchStatusesCallback);
+
+    /**
+     * Observes the {@link DownloadBatchStatus} updates of a single batch, delivered one at a time on the given executor.
+     * A slow observer never holds up the download, the statuses it has not received yet are conflated or buffered.
+     *
+     * @param downloadBatchId  of the batch to observe.
+     * @param backpressure     what to keep of the statuses emitted while the observer is behind.
+     * @param deliveryExecutor on which the callback receives the statuses.
+     * @param callback         to receive the statuses.
+     * @return the subscription to cancel once the updates are no longer needed.
+     */
+    DownloadBatchStatusSubscription observe(DownloadBatchId downloadBatchId,
+                                            DownloadBatchStatusBackpressure backpressure,
+                                            Executor deliveryExecutor,
+                                            DownloadBatchStatusCallback callback);
+
+    /**
+     * Observes the {@link DownloadBatchStatus} updates matching the filter, e.g. only the DOWNLOADED and ERROR statuses
+     * of every batch, delivered as with {@link #observe(DownloadBatchId, DownloadBatchStatusBackpressure, Executor, DownloadBatchStatusCallback)}.
+     *
+     * @param filter           that the statuses to observe match.
+     * @param backpressure     what to keep of the statuses emitted while the observer is behind.
+     * @param deliveryExecutor on which the callback receives the statuses.
+     * @param callback         to receive the statuses.
+     * @return the subscription to cancel once the updates are no longer needed.
+     */
+    DownloadBatchStatusSubscription observeAll(DownloadBatchPredicate filter,
+                                               DownloadBatchStatusBackpressure backpressure,
+                                               Executor deliveryExecutor,
+                                               DownloadBatchStatusCallback callback);
+
+    /**
+     * Adds a {@link DownloadQueueStateCallback} to be notified whenever a batch is queued,
+     * starts downloading or stops downloading.
+     *
+     * @param downloadQueueStateCallback to add to the internal list of callbacks.
+     */
+    void addDownloadQueueStateCallback(DownloadQueueStateCallback downloadQueueStateCallback);
+
+    /**
+     * Removes a {@link DownloadQueueStateCallback}, removing notifications on {@link DownloadQueueState} changes.
+     *
+     * @param downloadQueueStateCallback to remove from the internal list of callbacks.
+     */
+    void removeDownloadQueueStateCallback(DownloadQueueStateCallback downloadQueueStateCallback);
+
+    /**
+     * Retrieves a snapshot of the batches that are being downloaded and of the batches waiting to be downloaded.
+     *
+     * @return the current {@link DownloadQueueState}.
+     */
+    DownloadQueueState getDownloadQueueState();
+
+    /**
+     * Retrieves a snapshot of the buffers queued between network reads and file writes,
+     * see {@link DownloadManagerBuilder#withPipelinedFileWriting(int)}.
+     *
+     * @return the current {@link FileWriteQueueState}.
+     */
+    FileWriteQueueState getFileWriteQueueState();
+
     /**
      * Retrieves all stored batches from the persistence layer and queues them ready for download.
      * Normally called when first starting the app, after a migration or restart.
@@ -59,6 +195,14 @@ public interface DownloadManager {
      */
     void submitAllStoredDownloads(AllStoredDownloadsSubmittedCallback callback);
 
+    /**
+     * Measures the cold start, from the first call to {@link #submitAllStoredDownloads(AllStoredDownloadsSubmittedCallback)}
+     * until the first {@link DownloadBatchStatus} is delivered, or until no stored batch was found.
+     *
+     * @return the time to the first status in milliseconds, or -1 while it is not known yet.
+     */
+    long getTimeToFirstStatusInMillis();
+
     /**
      * Retrieves a list of {@link DownloadBatchStatus} synchronously. Clients should
      * specify their own Threading mechanism.
@@ -76,6 +220,43 @@ public interface DownloadManager {
      */
     void getAllDownloadBatchStatuses(AllBatchStatusesCallback callback);
 
+    /**
+     * Retrieves a page of {@link DownloadBatchStatus} from the persistence layer, without waiting for the download service.
+     * The batches that are currently known by the download-manager are given their up to date status.
+     * This is a long-running blocking operation, clients should call this using their own Threading mechanism.
+     *
+     * @param query that selects, orders and pages the batches.
+     * @return a list of {@link DownloadBatchStatus} in the order of the query.
+     */
+    @WorkerThread
+    List<DownloadBatchStatus> getDownloadBatchStatuses(DownloadBatchQuery query);
+
+    /**
+     * Retrieves a page of {@link DownloadBatchStatus} from the persistence layer, passing it to the {@link AllBatchStatusesCallback}.
+     *
+     * @param query    that selects, orders and pages the batches.
+     * @param callback to pass the list of {@link DownloadBatchStatus} to.
+     */
+    void getDownloadBatchStatuses(DownloadBatchQuery query, AllBatchStatusesCallback callback);
+
+    /**
+     * Counts the stored batches matching the statuses of the query, regardless of its limit and offset.
+     * This is a long-running blocking operation, clients should call this using their own Threading mechanism.
+     *
+     * @param query that selects the batches.
+     * @return the number of batches matching the query.
+     */
+    @WorkerThread
+    int getDownloadBatchCount(DownloadBatchQuery query);
+
+    /**
+     * Counts the stored batches matching the statuses of the query, passing the count to the {@link DownloadBatchCountCallback}.
+     *
+     * @param query    that selects the batches.
+     * @param callback to pass the count to.
+     */
+    void getDownloadBatchCount(DownloadBatchQuery query, DownloadBatchCountCallback callback);
+
     /**
      * Retrieves {@link DownloadFileStatus} with the associated {@link DownloadBatchId} and {@link DownloadFileId}.
      * Will return null if a {@link DownloadFileStatus} is not found with the matching {@link DownloadBatchId} and {@link DownloadFileId}.
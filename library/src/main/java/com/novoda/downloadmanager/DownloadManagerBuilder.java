@@ -25,6 +25,7 @@ import androidx.work.WorkerFactory;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.Executor;
@@ -44,6 +45,16 @@ public final class DownloadManagerBuilder {
     private static final Object SERVICE_LOCK = new Object();
     private static final Object CALLBACK_LOCK = new Object();
     private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final int SINGLE_FILE_SEGMENT = 1;
+    private static final int SINGLE_BATCH = 1;
+    private static final int SINGLE_FILE = 1;
+    private static final int SINGLE_BUFFERED_READ = 1;
+    private static final int SINGLE_PENDING_WRITE = 1;
+    private static final long NO_WRITE_BEHIND = 0;
+    private static final int DEFAULT_MAXIMUM_CONCURRENT_FILES = 4;
+    private static final int SINGLE_FILE_SIZE_REQUEST = 1;
+    private static final int DEFAULT_MAXIMUM_CONCURRENT_FILE_SIZE_REQUESTS = 16;
+    private static final int DEFAULT_MAXIMUM_FILE_SIZE_REQUESTS_PER_HOST = 6;
 
     private final Context applicationContext;
     private final Handler callbackHandler;
@@ -66,6 +77,21 @@ public final class DownloadManagerBuilder {
     private long frequency;
     private Optional<LogHandle> logHandle;
     private boolean enableConcurrentFileDownloading;
+    private int maximumFileSegments;
+    private boolean learnFileSizeFromDownloadResponse;
+    private int maximumConcurrentBatches;
+    private BatchSchedulingPolicy batchSchedulingPolicy;
+    private boolean allowBatchPreemption;
+    private int maximumConcurrentFiles;
+    private int maximumConcurrentFilesPerHost;
+    private int maximumConcurrentFileSizeRequests;
+    private int maximumFileSizeRequestsPerHost;
+    private long readBufferMemoryBudgetInBytes;
+    private int fileWritePipelineCapacity;
+    private long writeBehindFlushDelayInMillis;
+    private int maximumPendingWrites;
+    private long statusDispatchIntervalInMillis;
+    private long notificationUpdateIntervalInMillis;
 
     public static DownloadManagerBuilder newInstance(Context context, Handler callbackHandler, @DrawableRes final int notificationIcon) {
         Context applicationContext = context.getApplicationContext();
@@ -103,6 +129,21 @@ public final class DownloadManagerBuilder {
 
         Optional<LogHandle> logHandle = Optional.absent();
         boolean enableConcurrentFileDownloading = false;
+        int maximumFileSegments = SINGLE_FILE_SEGMENT;
+        boolean learnFileSizeFromDownloadResponse = false;
+        int maximumConcurrentBatches = SINGLE_BATCH;
+        BatchSchedulingPolicy batchSchedulingPolicy = BatchSchedulingPolicy.FIFO;
+        boolean allowBatchPreemption = false;
+        int maximumConcurrentFiles = DEFAULT_MAXIMUM_CONCURRENT_FILES;
+        int maximumConcurrentFilesPerHost = DEFAULT_MAXIMUM_CONCURRENT_FILES;
+        int maximumConcurrentFileSizeRequests = DEFAULT_MAXIMUM_CONCURRENT_FILE_SIZE_REQUESTS;
+        int maximumFileSizeRequestsPerHost = DEFAULT_MAXIMUM_FILE_SIZE_REQUESTS_PER_HOST;
+        long readBufferMemoryBudgetInBytes = ReadBufferPool.DEFAULT_MEMORY_BUDGET_IN_BYTES;
+        int fileWritePipelineCapacity = FileWritePipelineCreator.NO_PIPELINE;
+        long writeBehindFlushDelayInMillis = NO_WRITE_BEHIND;
+        int maximumPendingWrites = SINGLE_PENDING_WRITE;
+        long statusDispatchIntervalInMillis = DownloadBatchStatusDispatcher.FRAME_INTERVAL_IN_MILLIS;
+        long notificationUpdateIntervalInMillis = DownloadBatchStatusNotificationDispatcher.DEFAULT_UPDATE_INTERVAL_IN_MILLIS;
 
         return new DownloadManagerBuilder(
                 applicationContext,
@@ -119,7 +160,22 @@ public final class DownloadManagerBuilder {
                 allowNetworkRecovery,
                 callbackThrottleCreatorType,
                 logHandle,
-                enableConcurrentFileDownloading
+                enableConcurrentFileDownloading,
+                maximumFileSegments,
+                learnFileSizeFromDownloadResponse,
+                maximumConcurrentBatches,
+                batchSchedulingPolicy,
+                allowBatchPreemption,
+                maximumConcurrentFiles,
+                maximumConcurrentFilesPerHost,
+                maximumConcurrentFileSizeRequests,
+                maximumFileSizeRequestsPerHost,
+                readBufferMemoryBudgetInBytes,
+                fileWritePipelineCapacity,
+                writeBehindFlushDelayInMillis,
+                maximumPendingWrites,
+                statusDispatchIntervalInMillis,
+                notificationUpdateIntervalInMillis
         );
     }
 
@@ -139,7 +195,22 @@ public final class DownloadManagerBuilder {
                                    boolean allowNetworkRecovery,
                                    CallbackThrottleCreator.Type callbackThrottleCreatorType,
                                    Optional<LogHandle> logHandle,
-                                   boolean enableConcurrentFileDownloading
+                                   boolean enableConcurrentFileDownloading,
+                                   int maximumFileSegments,
+                                   boolean learnFileSizeFromDownloadResponse,
+                                   int maximumConcurrentBatches,
+                                   BatchSchedulingPolicy batchSchedulingPolicy,
+                                   boolean allowBatchPreemption,
+                                   int maximumConcurrentFiles,
+                                   int maximumConcurrentFilesPerHost,
+                                   int maximumConcurrentFileSizeRequests,
+                                   int maximumFileSizeRequestsPerHost,
+                                   long readBufferMemoryBudgetInBytes,
+                                   int fileWritePipelineCapacity,
+                                   long writeBehindFlushDelayInMillis,
+                                   int maximumPendingWrites,
+                                   long statusDispatchIntervalInMillis,
+                                   long notificationUpdateIntervalInMillis
     ) {
         this.applicationContext = applicationContext;
         this.callbackHandler = callbackHandler;
@@ -156,6 +227,21 @@ public final class DownloadManagerBuilder {
         this.callbackThrottleCreatorType = callbackThrottleCreatorType;
         this.logHandle = logHandle;
         this.enableConcurrentFileDownloading = enableConcurrentFileDownloading;
+        this.maximumFileSegments = maximumFileSegments;
+        this.learnFileSizeFromDownloadResponse = learnFileSizeFromDownloadResponse;
+        this.maximumConcurrentBatches = maximumConcurrentBatches;
+        this.batchSchedulingPolicy = batchSchedulingPolicy;
+        this.allowBatchPreemption = allowBatchPreemption;
+        this.maximumConcurrentFiles = maximumConcurrentFiles;
+        this.maximumConcurrentFilesPerHost = maximumConcurrentFilesPerHost;
+        this.maximumConcurrentFileSizeRequests = maximumConcurrentFileSizeRequests;
+        this.maximumFileSizeRequestsPerHost = maximumFileSizeRequestsPerHost;
+        this.readBufferMemoryBudgetInBytes = readBufferMemoryBudgetInBytes;
+        this.fileWritePipelineCapacity = fileWritePipelineCapacity;
+        this.writeBehindFlushDelayInMillis = writeBehindFlushDelayInMillis;
+        this.maximumPendingWrites = maximumPendingWrites;
+        this.statusDispatchIntervalInMillis = statusDispatchIntervalInMillis;
+        this.notificationUpdateIntervalInMillis = notificationUpdateIntervalInMillis;
     }
 
     public DownloadManagerBuilder withCustomHttpClient(HttpClient httpClient) {
@@ -186,6 +272,14 @@ public final class DownloadManagerBuilder {
         return this;
     }
 
+    public DownloadManagerBuilder withChannelFilePersistence(int flushIntervalInBytes, long syncIntervalInBytes) {
+        if (flushIntervalInBytes <= 0 || syncIntervalInBytes <= 0) {
+            throw new IllegalArgumentException("Flush and sync intervals must be positive, were " + flushIntervalInBytes + " and " + syncIntervalInBytes);
+        }
+        filePersistenceCreator.withChannelFilePersistence(flushIntervalInBytes, syncIntervalInBytes);
+        return this;
+    }
+
     public DownloadManagerBuilder withDownloadsPersistenceCustom(DownloadsPersistence downloadsPersistence) {
         this.downloadsPersistence = downloadsPersistence;
         return this;
@@ -251,6 +345,115 @@ public final class DownloadManagerBuilder {
         return this;
     }
 
+    public DownloadManagerBuilder withConcurrentFileDownloading(int maximumConcurrentFiles, int maximumConcurrentFilesPerHost) {
+        if (maximumConcurrentFiles < SINGLE_FILE || maximumConcurrentFilesPerHost < SINGLE_FILE) {
+            throw new IllegalArgumentException(
+                    "At least " + SINGLE_FILE + " file must download at a time, was " + maximumConcurrentFiles + " and " + maximumConcurrentFilesPerHost + " per host"
+            );
+        }
+        this.enableConcurrentFileDownloading = true;
+        this.maximumConcurrentFiles = maximumConcurrentFiles;
+        this.maximumConcurrentFilesPerHost = maximumConcurrentFilesPerHost;
+        return this;
+    }
+
+    /**
+     * Bounds how many unknown file sizes are requested at a time, and how many of them go to the same host.
+     * Defaults to 16 requests, 6 of them per host.
+     */
+    public DownloadManagerBuilder withConcurrentFileSizeRequests(int maximumConcurrentRequests, int maximumRequestsPerHost) {
+        if (maximumConcurrentRequests < SINGLE_FILE_SIZE_REQUEST || maximumRequestsPerHost < SINGLE_FILE_SIZE_REQUEST) {
+            throw new IllegalArgumentException(
+                    "Maximum file size requests must be at least " + SINGLE_FILE_SIZE_REQUEST + ", was "
+                            + maximumConcurrentRequests + " and " + maximumRequestsPerHost + " per host"
+            );
+        }
+        this.maximumConcurrentFileSizeRequests = maximumConcurrentRequests;
+        this.maximumFileSizeRequestsPerHost = maximumRequestsPerHost;
+        return this;
+    }
+
+    public DownloadManagerBuilder withSegmentedFileDownloading(int maximumFileSegments) {
+        if (maximumFileSegments < SINGLE_FILE_SEGMENT) {
+            throw new IllegalArgumentException("A file needs at least " + SINGLE_FILE_SEGMENT + " segment, was " + maximumFileSegments);
+        }
+        this.maximumFileSegments = maximumFileSegments;
+        return this;
+    }
+
+    public DownloadManagerBuilder withFileSizeFromDownloadResponse() {
+        this.learnFileSizeFromDownloadResponse = true;
+        return this;
+    }
+
+    public DownloadManagerBuilder withConcurrentBatchDownloading(int maximumConcurrentBatches, BatchSchedulingPolicy batchSchedulingPolicy) {
+        if (maximumConcurrentBatches < SINGLE_BATCH) {
+            throw new IllegalArgumentException("At least " + SINGLE_BATCH + " batch must download at a time, was " + maximumConcurrentBatches);
+        }
+        this.maximumConcurrentBatches = maximumConcurrentBatches;
+        this.batchSchedulingPolicy = batchSchedulingPolicy;
+        return this;
+    }
+
+    public DownloadManagerBuilder withBatchPreemption() {
+        this.allowBatchPreemption = true;
+        return this;
+    }
+
+    public DownloadManagerBuilder withReadBufferMemoryBudget(long memoryBudgetInBytes) {
+        if (memoryBudgetInBytes < ReadBufferPool.MINIMUM_BUFFER_SIZE_IN_BYTES) {
+            throw new IllegalArgumentException(
+                    "Read buffers need a budget of at least " + ReadBufferPool.MINIMUM_BUFFER_SIZE_IN_BYTES + " bytes, was " + memoryBudgetInBytes
+            );
+        }
+        this.readBufferMemoryBudgetInBytes = memoryBudgetInBytes;
+        return this;
+    }
+
+    public DownloadManagerBuilder withPipelinedFileWriting(int bufferedReads) {
+        if (bufferedReads < SINGLE_BUFFERED_READ) {
+            throw new IllegalArgumentException("At least " + SINGLE_BUFFERED_READ + " read must be buffered, was " + bufferedReads);
+        }
+        this.fileWritePipelineCapacity = bufferedReads;
+        return this;
+    }
+
+    public DownloadManagerBuilder withWriteBehindPersistence(TimeUnit timeUnit, long flushDelay, int maximumPendingWrites) {
+        if (flushDelay <= 0) {
+            throw new IllegalArgumentException("Flush delay must be positive, was " + flushDelay);
+        }
+        if (maximumPendingWrites < SINGLE_PENDING_WRITE) {
+            throw new IllegalArgumentException("Maximum pending writes must be at least " + SINGLE_PENDING_WRITE + ", was " + maximumPendingWrites);
+        }
+        this.writeBehindFlushDelayInMillis = timeUnit.toMillis(flushDelay);
+        this.maximumPendingWrites = maximumPendingWrites;
+        return this;
+    }
+
+    /**
+     * Statuses are delivered to the callbacks at most once per interval, only the latest status of a batch is delivered
+     * except for DOWNLOADED, ERROR and DELETED statuses. Defaults to one frame.
+     */
+    public DownloadManagerBuilder withStatusDispatchInterval(TimeUnit timeUnit, long interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Status dispatch interval must not be negative, was " + interval);
+        }
+        this.statusDispatchIntervalInMillis = timeUnit.toMillis(interval);
+        return this;
+    }
+
+    /**
+     * The notification of a batch is updated at most once per interval while its progress changes, a change of status
+     * is shown right away. Defaults to 500 milliseconds.
+     */
+    public DownloadManagerBuilder withNotificationUpdateInterval(TimeUnit timeUnit, long interval) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Notification update interval must not be negative, was " + interval);
+        }
+        this.notificationUpdateIntervalInMillis = timeUnit.toMillis(interval);
+        return this;
+    }
+
     // It creates the whole LiteDownloadManager, it is a long process!
     @SuppressWarnings("PMD.ExcessiveMethodLength")
     public DownloadManager build() {
@@ -259,8 +462,25 @@ public final class DownloadManagerBuilder {
         }
 
         filePersistenceCreator.withStorageRequirementRules(storageRequirementRules);
-        FileOperations fileOperations = new FileOperations(filePersistenceCreator, fileSizeRequester, fileDownloaderCreator);
+        ReadBufferPool readBufferPool = new ReadBufferPool(readBufferMemoryBudgetInBytes);
+        fileDownloaderCreator.withReadBufferPool(readBufferPool);
+        fileDownloaderCreator.withMaximumFileSegments(maximumFileSegments);
+        ConcurrentFileSizeRequester concurrentFileSizeRequester = new ConcurrentFileSizeRequester(
+                Executors.newFixedThreadPool(maximumConcurrentFileSizeRequests),
+                maximumConcurrentFileSizeRequests,
+                maximumFileSizeRequestsPerHost
+        );
+        FileOperations fileOperations = new FileOperations(
+                filePersistenceCreator,
+                fileSizeRequester,
+                fileDownloaderCreator,
+                concurrentFileSizeRequester,
+                learnFileSizeFromDownloadResponse,
+                new FileDownloadScheduler(Executors.newFixedThreadPool(maximumConcurrentFiles), maximumConcurrentFiles, maximumConcurrentFilesPerHost),
+                FileWritePipelineCreator.newInstance(readBufferPool, fileWritePipelineCapacity)
+        );
         Set<DownloadBatchStatusCallback> callbacks = new CopyOnWriteArraySet<>();
+        Map<DownloadBatchId, DownloadBatch> downloadBatchMap = new HashMap<>();
 
         CallbackThrottleCreator callbackThrottleCreator = getCallbackThrottleCreator(
                 callbackThrottleCreatorType,
@@ -269,14 +489,15 @@ public final class DownloadManagerBuilder {
                 customCallbackThrottle
         );
 
-        DownloadsFilePersistence downloadsFilePersistence = new DownloadsFilePersistence(downloadsPersistence);
+        DownloadsPersistence persistence = createDownloadsPersistence();
+        DownloadsFilePersistence downloadsFilePersistence = new DownloadsFilePersistence(persistence);
         ConnectivityManager connectivityManager = (ConnectivityManager) applicationContext.getSystemService(Context.CONNECTIVITY_SERVICE);
         ConnectionChecker connectionChecker = new ConnectionChecker(connectivityManager, connectionTypeAllowed);
         Executor executor = Executors.newSingleThreadExecutor();
         DownloadsBatchPersistence downloadsBatchPersistence = new DownloadsBatchPersistence(
                 executor,
                 downloadsFilePersistence,
-                downloadsPersistence,
+                persistence,
                 callbackThrottleCreator,
                 connectionChecker,
                 downloadBatchRequirementRules
@@ -297,10 +518,19 @@ public final class DownloadManagerBuilder {
         DownloadBatchStatusNotificationDispatcher batchStatusNotificationDispatcher = new DownloadBatchStatusNotificationDispatcher(
                 downloadsBatchPersistence,
                 notificationDispatcher,
-                new HashSet<>()
+                new HashSet<>(),
+                callbackHandler,
+                notificationUpdateIntervalInMillis
         );
 
         DownloadBatchStatusFilter downloadBatchStatusFilter = new DownloadBatchStatusFilter();
+        // Stopping batches keep their thread until they have wound down, the scheduler bounds the active ones.
+        BatchScheduler batchScheduler = new BatchScheduler(
+                Executors.newCachedThreadPool(),
+                maximumConcurrentBatches,
+                batchSchedulingPolicy,
+                allowBatchPreemption
+        );
 
         LiteDownloadManagerDownloader downloader = new LiteDownloadManagerDownloader(
                 SERVICE_LOCK,
@@ -317,7 +547,10 @@ public final class DownloadManagerBuilder {
                 callbackThrottleCreator,
                 downloadBatchStatusFilter,
                 serviceCriteria,
-                enableConcurrentFileDownloading
+                enableConcurrentFileDownloading,
+                batchScheduler,
+                new DownloadBatchStatusDispatcher(callbackHandler, statusDispatchIntervalInMillis),
+                downloadBatchMap
         );
 
         liteDownloadManager = new LiteDownloadManager(
@@ -325,7 +558,7 @@ public final class DownloadManagerBuilder {
                 CALLBACK_LOCK,
                 EXECUTOR,
                 callbackHandler,
-                new HashMap<>(),
+                downloadBatchMap,
                 callbacks,
                 fileOperations,
                 downloadsBatchPersistence,
@@ -370,6 +603,20 @@ public final class DownloadManagerBuilder {
         return liteDownloadManager;
     }
 
+    private DownloadsPersistence createDownloadsPersistence() {
+        if (writeBehindFlushDelayInMillis == NO_WRITE_BEHIND) {
+            return downloadsPersistence;
+        }
+
+        WriteBehindDownloadsPersistence writeBehindDownloadsPersistence = WriteBehindDownloadsPersistence.newInstance(
+                downloadsPersistence,
+                writeBehindFlushDelayInMillis,
+                maximumPendingWrites
+        );
+        writeBehindDownloadsPersistence.flushOnProcessShutdown(applicationContext);
+        return writeBehindDownloadsPersistence;
+    }
+
     private CallbackThrottleCreator getCallbackThrottleCreator(CallbackThrottleCreator.Type callbackThrottleType,
                                                                TimeUnit timeUnit,
                                                                long frequency,
@@ -0,0 +1,32 @@
+package com.novoda.downloadmanager;
+
+import java.util.List;
+
+/**
+ * Snapshot of the batches that are being downloaded and of the batches waiting to be downloaded.
+ */
+public interface DownloadQueueState {
+
+    /**
+     * @return the maximum number of batches that are downloaded at the same time.
+     */
+    int maximumConcurrentBatches();
+
+    /**
+     * @return the ids of the batches that are being downloaded.
+     */
+    List<DownloadBatchId> downloadingBatchIds();
+
+    /**
+     * @return the ids of the batches waiting to be downloaded, in the order they will start.
+     */
+    List<DownloadBatchId> queuedBatchIds();
+
+    /**
+     * Paused and deleted batches give up their place straight away, while their download still has to stop.
+     *
+     * @return the time between the most recent pause or delete of a downloading batch and its download stopping,
+     * -1 when no downloading batch has been stopped yet.
+     */
+    long lastStopLatencyInMillis();
+}
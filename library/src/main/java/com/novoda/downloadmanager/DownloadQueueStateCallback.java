@@ -0,0 +1,10 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Given to the asynchronous call {@link DownloadManager#addDownloadQueueStateCallback(DownloadQueueStateCallback)},
+ * to receive {@link DownloadQueueState} updates whenever a batch is queued, started or finished.
+ */
+public interface DownloadQueueStateCallback {
+
+    void onUpdate(DownloadQueueState downloadQueueState);
+}
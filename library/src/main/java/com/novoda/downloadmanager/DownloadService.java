@@ -1,7 +1,13 @@
 package com.novoda.downloadmanager;
 
+import androidx.annotation.WorkerThread;
+
 interface DownloadService extends DownloadManagerService {
 
-    void download(DownloadBatch downloadBatch, DownloadBatchStatusCallback callback);
+    /**
+     * Downloads the batch on the calling thread, the {@link BatchScheduler} decides on which thread and when.
+     */
+    @WorkerThread
+    void download(DownloadBatch downloadBatch);
 }
 
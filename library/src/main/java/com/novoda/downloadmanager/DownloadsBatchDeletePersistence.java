@@ -0,0 +1,6 @@
+package com.novoda.downloadmanager;
+
+interface DownloadsBatchDeletePersistence {
+
+    void deleteAsync(DownloadBatchStatus downloadBatchStatus, DownloadsBatchPersistence.DeleteCallback deleteCallback);
+}
@@ -1,16 +1,21 @@
 package com.novoda.downloadmanager;
 
 import android.database.sqlite.SQLiteConstraintException;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 
-class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, DownloadsNotificationSeenPersistence {
+class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence,
+        DownloadsBatchDeletePersistence,
+        DownloadsNotificationSeenPersistence {
 
     private static final Optional<DownloadError> NO_DOWNLOAD_ERROR = Optional.absent();
 
@@ -77,25 +82,58 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
         }
     }
 
-    void loadAsync(FileOperations fileOperations, LoadBatchesCallback callback) {
-        executor.execute(() -> {
-            List<DownloadsBatchPersisted> batchPersistedList = downloadsPersistence.loadBatches();
-
-            List<DownloadBatch> downloadBatches = new ArrayList<>(batchPersistedList.size());
-            for (DownloadsBatchPersisted batchPersisted : batchPersistedList) {
-                try {
-                    DownloadBatch downloadBatch = getDownloadBatch(fileOperations, batchPersisted);
-                    downloadBatches.add(downloadBatch);
-                } catch (SQLiteConstraintException e) {
-                    Logger.e("exception loading async batch " + batchPersisted.downloadBatchId().rawId());
-                }
+    @WorkerThread
+    void persistFiles(List<DownloadFile> downloadFiles) {
+        downloadsPersistence.startTransaction();
+        try {
+            for (DownloadFile downloadFile : downloadFiles) {
+                downloadFile.persist();
             }
+            downloadsPersistence.transactionSuccess();
+        } finally {
+            downloadsPersistence.endTransaction();
+        }
+    }
 
-            callback.onLoaded(downloadBatches);
+    void loadAsync(FileOperations fileOperations, LoadBatchesCallback callback) {
+        executor.execute(() -> {
+            DownloadBatchesHydrator hydrator = new DownloadBatchesHydrator(fileOperations);
+            downloadsPersistence.loadBatchesWithFiles(hydrator);
+            callback.onLoaded(hydrator.downloadBatches());
         });
     }
 
-    private DownloadBatch getDownloadBatch(FileOperations fileOperations, DownloadsBatchPersisted batchPersisted) {
+    /**
+     * Creates the statuses of the stored batches matching the query, without creating their download batches.
+     */
+    @WorkerThread
+    List<DownloadBatchStatus> loadStatuses(DownloadBatchQuery query) {
+        List<DownloadsBatchProgressPersisted> batchesPersisted = downloadsPersistence.loadBatches(query);
+        List<DownloadBatchStatus> downloadBatchStatuses = new ArrayList<>(batchesPersisted.size());
+        for (DownloadsBatchProgressPersisted batchPersisted : batchesPersisted) {
+            downloadBatchStatuses.add(new LiteDownloadBatchStatus(
+                    batchPersisted.downloadBatchId(),
+                    batchPersisted.downloadBatchTitle(),
+                    batchPersisted.storageRoot(),
+                    batchPersisted.downloadedDateTimeInMillis(),
+                    batchPersisted.bytesDownloaded(),
+                    batchPersisted.totalBatchSizeBytes(),
+                    batchPersisted.downloadBatchStatus(),
+                    batchPersisted.notificationSeen(),
+                    NO_DOWNLOAD_ERROR
+            ));
+        }
+        return downloadBatchStatuses;
+    }
+
+    @WorkerThread
+    int count(DownloadBatchQuery query) {
+        return downloadsPersistence.countBatches(query);
+    }
+
+    private DownloadBatch createDownloadBatch(FileOperations fileOperations,
+                                              DownloadsBatchPersisted batchPersisted,
+                                              List<DownloadFile> loadedDownloadFiles) {
         DownloadBatchStatus.Status status = batchPersisted.downloadBatchStatus();
         DownloadBatchId downloadBatchId = batchPersisted.downloadBatchId();
         DownloadBatchTitle downloadBatchTitle = batchPersisted.downloadBatchTitle();
@@ -103,23 +141,14 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
         boolean notificationSeen = batchPersisted.notificationSeen();
         String storageRoot = batchPersisted.storageRoot();
 
-        List<DownloadFile> downloadFiles = downloadsFilePersistence.loadSync(
-                downloadBatchId,
-                status,
-                fileOperations,
-                downloadsFilePersistence
-        );
-
-        downloadFiles = Collections.unmodifiableList(downloadFiles);
-
-        Map<DownloadFileId, Long> downloadedFileSizeMap = new ConcurrentHashMap<>(downloadFiles.size());
+        List<DownloadFile> downloadFiles = Collections.unmodifiableList(loadedDownloadFiles);
 
         long currentBytesDownloaded = 0;
         long totalBatchSizeBytes = 0;
+        // Unknown sizes are requested once the stored downloads have been submitted, loading never waits for the network.
         for (DownloadFile downloadFile : downloadFiles) {
-            downloadedFileSizeMap.put(downloadFile.id(), downloadFile.getCurrentDownloadedBytes());
             currentBytesDownloaded += downloadFile.getCurrentDownloadedBytes();
-            long totalFileSize = downloadFile.getTotalSize();
+            long totalFileSize = downloadFile.getKnownTotalSize();
             if (totalFileSize == 0) {
                 totalBatchSizeBytes = 0;
                 currentBytesDownloaded = 0;
@@ -152,16 +181,19 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
         return new DownloadBatch(
                 liteDownloadBatchStatus,
                 downloadFiles,
-                downloadedFileSizeMap,
+                new DownloadBatchProgress(downloadFiles),
                 DownloadsBatchPersistence.this,
                 fileCallbackThrottle,
                 connectionChecker,
                 downloadBatchRequirementRule,
-                filesDownloader
+                filesDownloader,
+                fileOperations.concurrentFileSizeRequester(),
+                fileOperations.learnsFileSizeFromDownloadResponse()
         );
     }
 
-    void deleteAsync(DownloadBatchStatus downloadBatchStatus, DeleteCallback deleteCallback) {
+    @Override
+    public void deleteAsync(DownloadBatchStatus downloadBatchStatus, DeleteCallback deleteCallback) {
         executor.execute(() -> {
             if (deleteSync(downloadBatchStatus)) {
                 deleteCallback.onDeleted(downloadBatchStatus.getDownloadBatchId());
@@ -239,6 +271,302 @@ class DownloadsBatchPersistence implements DownloadsBatchStatusPersistence, Down
         }
     }
 
+    /**
+     * Starts collecting the writes of many batches, see {@link BulkWrite}.
+     */
+    BulkWrite newBulkWrite() {
+        return new BulkWrite();
+    }
+
+    /**
+     * Collects the writes of many batches, e.g. when pausing all batches, and commits them in a single transaction.
+     */
+    class BulkWrite implements DownloadsBatchStatusPersistence, DownloadsBatchDeletePersistence {
+
+        private final Map<String, DownloadBatchId> batchIds = new LinkedHashMap<>();
+        private final Map<String, DownloadBatchStatus.Status> statuses = new HashMap<>();
+        private final Map<String, DownloadBatch> batchesToPersist = new LinkedHashMap<>();
+        private final Map<String, DeletedBatch> batchesToDelete = new LinkedHashMap<>();
+
+        /**
+         * The row of the batch is written with the status it has when the bulk write is committed.
+         */
+        void persist(DownloadBatch downloadBatch) {
+            DownloadBatchId downloadBatchId = downloadBatch.getId();
+            batchesToPersist.put(downloadBatchId.rawId(), downloadBatch);
+            statuses.remove(downloadBatchId.rawId());
+        }
+
+        @Override
+        public void updateStatusAsync(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+            if (batchesToPersist.containsKey(downloadBatchId.rawId())) {
+                return;
+            }
+            batchIds.put(downloadBatchId.rawId(), downloadBatchId);
+            statuses.put(downloadBatchId.rawId(), status);
+        }
+
+        @WorkerThread
+        @Override
+        public boolean persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
+            return DownloadsBatchPersistence.this.persistCompletedBatch(completedDownloadBatch);
+        }
+
+        @Override
+        public void deleteAsync(DownloadBatchStatus downloadBatchStatus, DeleteCallback deleteCallback) {
+            String rawBatchId = downloadBatchStatus.getDownloadBatchId().rawId();
+            batchesToPersist.remove(rawBatchId);
+            statuses.remove(rawBatchId);
+            batchesToDelete.put(rawBatchId, new DeletedBatch(downloadBatchStatus.getDownloadBatchId(), deleteCallback));
+        }
+
+        /**
+         * Commits the collected writes on the persistence thread.
+         *
+         * @param onCommitted runs on the persistence thread once every write is committed.
+         */
+        void commitAsync(Runnable onCommitted) {
+            executor.execute(() -> {
+                commit();
+                onCommitted.run();
+            });
+        }
+
+        @WorkerThread
+        private void commit() {
+            downloadsPersistence.startTransaction();
+            try {
+                for (DownloadBatch downloadBatch : batchesToPersist.values()) {
+                    downloadBatch.persist();
+                }
+                for (Map.Entry<DownloadBatchStatus.Status, List<DownloadBatchId>> entry : batchIdsByStatus().entrySet()) {
+                    updateStatuses(entry.getValue(), entry.getKey());
+                }
+                deleteBatches();
+                downloadsPersistence.transactionSuccess();
+            } finally {
+                downloadsPersistence.endTransaction();
+            }
+
+            for (DeletedBatch deletedBatch : batchesToDelete.values()) {
+                deletedBatch.deleteCallback.onDeleted(deletedBatch.downloadBatchId);
+            }
+        }
+
+        private Map<DownloadBatchStatus.Status, List<DownloadBatchId>> batchIdsByStatus() {
+            Map<DownloadBatchStatus.Status, List<DownloadBatchId>> batchIdsByStatus = new EnumMap<>(DownloadBatchStatus.Status.class);
+            for (Map.Entry<String, DownloadBatchStatus.Status> entry : statuses.entrySet()) {
+                List<DownloadBatchId> batchIdsWithStatus = batchIdsByStatus.get(entry.getValue());
+                if (batchIdsWithStatus == null) {
+                    batchIdsWithStatus = new ArrayList<>();
+                    batchIdsByStatus.put(entry.getValue(), batchIdsWithStatus);
+                }
+                batchIdsWithStatus.add(batchIds.get(entry.getKey()));
+            }
+            return batchIdsByStatus;
+        }
+
+        private void updateStatuses(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status) {
+            int updatedBatches = downloadsPersistence.updateAll(downloadBatchIds, status);
+            if (updatedBatches < downloadBatchIds.size()) {
+                Logger.e("could not update batch status " + status + " for " + (downloadBatchIds.size() - updatedBatches) + " batches");
+            }
+        }
+
+        private void deleteBatches() {
+            if (batchesToDelete.isEmpty()) {
+                return;
+            }
+
+            List<DownloadBatchId> downloadBatchIds = new ArrayList<>(batchesToDelete.size());
+            for (DeletedBatch deletedBatch : batchesToDelete.values()) {
+                downloadBatchIds.add(deletedBatch.downloadBatchId);
+            }
+            int deletedBatches = downloadsPersistence.deleteAll(downloadBatchIds);
+            if (deletedBatches < downloadBatchIds.size()) {
+                Logger.w((downloadBatchIds.size() - deletedBatches) + " batches were not stored anymore when deleting them");
+            }
+        }
+    }
+
+    private static final class DeletedBatch {
+
+        private final DownloadBatchId downloadBatchId;
+        private final DeleteCallback deleteCallback;
+
+        DeletedBatch(DownloadBatchId downloadBatchId, DeleteCallback deleteCallback) {
+            this.downloadBatchId = downloadBatchId;
+            this.deleteCallback = deleteCallback;
+        }
+    }
+
+    /**
+     * Turns the rows of {@link DownloadsPersistence#loadBatchesWithFiles(DownloadsPersistedRowsCallback)}
+     * into download batches, a file is complete once the next file or batch starts.
+     */
+    private final class DownloadBatchesHydrator implements DownloadsPersistedRowsCallback {
+
+        private final FileOperations fileOperations;
+        private final List<DownloadBatch> downloadBatches = new ArrayList<>();
+
+        @Nullable
+        private DownloadsBatchPersisted batchPersisted;
+        private List<DownloadFile> downloadFiles = new ArrayList<>();
+
+        private final FileRow fileRow = new FileRow();
+        private boolean hasFileRow;
+        private List<FileSegment> fileSegments = new ArrayList<>();
+
+        DownloadBatchesHydrator(FileOperations fileOperations) {
+            this.fileOperations = fileOperations;
+        }
+
+        @Override
+        public void onBatch(DownloadsBatchPersisted batchPersisted) {
+            completeBatch();
+            this.batchPersisted = batchPersisted;
+        }
+
+        @Override
+        @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
+        public void onFile(DownloadFileId downloadFileId,
+                           FilePath filePath,
+                           long totalFileSize,
+                           String url,
+                           long bytesDownloaded,
+                           @Nullable DownloadFileStatus.Status fileStatus,
+                           @Nullable FileDigest expectedDigest,
+                           @Nullable String digestState,
+                           @Nullable String rangeValidator) {
+            completeFile();
+            fileRow.downloadFileId = downloadFileId;
+            fileRow.filePath = filePath;
+            fileRow.totalFileSize = totalFileSize;
+            fileRow.url = url;
+            fileRow.bytesDownloaded = bytesDownloaded;
+            fileRow.fileStatus = fileStatus;
+            fileRow.expectedDigest = expectedDigest;
+            fileRow.digestState = digestState;
+            fileRow.rangeValidator = rangeValidator;
+            hasFileRow = true;
+        }
+
+        @Override
+        public void onFileSegment(int segmentIndex, long startByte, long endByte, long bytesDownloaded) {
+            fileSegments.add(new FileSegment(segmentIndex, startByte, endByte, bytesDownloaded));
+        }
+
+        List<DownloadBatch> downloadBatches() {
+            completeBatch();
+            return downloadBatches;
+        }
+
+        private void completeFile() {
+            if (batchPersisted == null || !hasFileRow) {
+                return;
+            }
+            fileRow.downloadBatchId = batchPersisted.downloadBatchId();
+
+            downloadFiles.add(downloadsFilePersistence.createDownloadFile(
+                    batchPersisted.downloadBatchId(),
+                    batchPersisted.downloadBatchStatus(),
+                    fileOperations,
+                    fileRow,
+                    fileSegments
+            ));
+            hasFileRow = false;
+            fileSegments = new ArrayList<>();
+        }
+
+        private void completeBatch() {
+            completeFile();
+            if (batchPersisted == null) {
+                return;
+            }
+
+            try {
+                downloadBatches.add(createDownloadBatch(fileOperations, batchPersisted, downloadFiles));
+            } catch (SQLiteConstraintException e) {
+                Logger.e("exception loading async batch " + batchPersisted.downloadBatchId().rawId());
+            }
+            batchPersisted = null;
+            downloadFiles = new ArrayList<>();
+        }
+    }
+
+    @SuppressWarnings("PMD.DataClass")
+    private static final class FileRow implements DownloadsFilePersisted {
+
+        private DownloadBatchId downloadBatchId;
+        private DownloadFileId downloadFileId;
+        private FilePath filePath;
+        private long totalFileSize;
+        private String url;
+        private long bytesDownloaded;
+        @Nullable
+        private DownloadFileStatus.Status fileStatus;
+        @Nullable
+        private FileDigest expectedDigest;
+        @Nullable
+        private String digestState;
+        @Nullable
+        private String rangeValidator;
+
+        @Override
+        public DownloadBatchId downloadBatchId() {
+            return downloadBatchId;
+        }
+
+        @Override
+        public FilePath filePath() {
+            return filePath;
+        }
+
+        @Override
+        public long totalFileSize() {
+            return totalFileSize;
+        }
+
+        @Override
+        public String url() {
+            return url;
+        }
+
+        @Override
+        public DownloadFileId downloadFileId() {
+            return downloadFileId;
+        }
+
+        @Override
+        public long bytesDownloaded() {
+            return bytesDownloaded;
+        }
+
+        @Nullable
+        @Override
+        public DownloadFileStatus.Status fileStatus() {
+            return fileStatus;
+        }
+
+        @Nullable
+        @Override
+        public FileDigest expectedDigest() {
+            return expectedDigest;
+        }
+
+        @Nullable
+        @Override
+        public String digestState() {
+            return digestState;
+        }
+
+        @Nullable
+        @Override
+        public String rangeValidator() {
+            return rangeValidator;
+        }
+    }
+
     interface LoadBatchesCallback {
 
         void onLoaded(List<DownloadBatch> downloadBatches);
@@ -0,0 +1,18 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Defines the information that is stored in the persistence layer for a {@link Batch},
+ * along with the progress stored for its files.
+ */
+public interface DownloadsBatchProgressPersisted extends DownloadsBatchPersisted {
+
+    /**
+     * @return the bytes downloaded of every file, or 0 while the size of a file is not known.
+     */
+    long bytesDownloaded();
+
+    /**
+     * @return the total size of every file, or 0 while the size of a file is not known.
+     */
+    long totalBatchSizeBytes();
+}
@@ -1,5 +1,7 @@
 package com.novoda.downloadmanager;
 
+import androidx.annotation.Nullable;
+
 /**
  * Defines the information that is stored in the persistence layer for a {@link BatchFile}.
  */
@@ -15,4 +17,36 @@ public interface DownloadsFilePersisted {
 
     DownloadFileId downloadFileId();
 
+    /**
+     * @return the bytes downloaded when the file was last persisted, stored downloads are restored from it
+     * without looking at the file on disk. Files persisted before it was stored have -1, no bytes is a real value.
+     */
+    long bytesDownloaded();
+
+    /**
+     * @return the status of the file when it was last persisted, or null for files persisted before it was stored.
+     */
+    @Nullable
+    DownloadFileStatus.Status fileStatus();
+
+    /**
+     * @return the digest the file is verified against as it is downloaded, or null when it is not verified.
+     */
+    @Nullable
+    FileDigest expectedDigest();
+
+    /**
+     * @return the state of the hash of the bytes downloaded, so that a resumed file carries on verifying
+     * without reading them again, or null when they are not hashed.
+     */
+    @Nullable
+    String digestState();
+
+    /**
+     * @return the entity tag or last modified date the bytes downloaded were sent with, so that a file that changed
+     * is downloaded again rather than resumed, or null when the server sent neither.
+     */
+    @Nullable
+    String rangeValidator();
+
 }
@@ -2,14 +2,16 @@ package com.novoda.downloadmanager;
 
 import android.database.sqlite.SQLiteConstraintException;
 
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import java.security.InvalidParameterException;
-import java.util.ArrayList;
 import java.util.List;
 
 class DownloadsFilePersistence {
 
+    private static final long UNKNOWN_BYTES_DOWNLOADED = -1;
+
     private final DownloadsPersistence downloadsPersistence;
 
     DownloadsFilePersistence(DownloadsPersistence downloadsPersistence) {
@@ -17,11 +19,15 @@ class DownloadsFilePersistence {
     }
 
     @WorkerThread
+    @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
     boolean persistSync(DownloadBatchId downloadBatchId,
                         FilePath filePath,
                         FileSize fileSize,
                         String url,
-                        DownloadFileStatus downloadFileStatus) {
+                        DownloadFileStatus downloadFileStatus,
+                        @Nullable FileDigest expectedDigest,
+                        @Nullable String digestState,
+                        @Nullable String rangeValidator) {
         if (downloadFileStatus.status() == DownloadFileStatus.Status.DELETED) {
             return false;
         }
@@ -30,7 +36,12 @@ class DownloadsFilePersistence {
                 downloadFileStatus.downloadFileId(),
                 filePath,
                 fileSize.totalSize(),
-                url
+                url,
+                fileSize.currentSize(),
+                downloadFileStatus.status(),
+                expectedDigest,
+                digestState,
+                rangeValidator
         );
 
         downloadsPersistence.startTransaction();
@@ -46,54 +57,120 @@ class DownloadsFilePersistence {
         }
     }
 
-    List<DownloadFile> loadSync(DownloadBatchId batchId,
-                                DownloadBatchStatus.Status batchStatus,
-                                FileOperations fileOperations,
-                                DownloadsFilePersistence downloadsFilePersistence) {
-        List<DownloadsFilePersisted> filePersistedList = downloadsPersistence.loadFiles(batchId);
-
-        List<DownloadFile> downloadFiles = new ArrayList<>(filePersistedList.size());
-        for (DownloadsFilePersisted filePersisted : filePersistedList) {
-            DownloadFileId downloadFileId = filePersisted.downloadFileId();
-
-            FilePersistenceCreator filePersistenceCreator = fileOperations.filePersistenceCreator();
-            FilePersistence filePersistence = filePersistenceCreator.create();
-
-            long currentSize = filePersistence.getCurrentSize(filePersisted.filePath());
-            long totalFileSize = filePersisted.totalFileSize();
-            InternalFileSize fileSize = InternalFileSizeCreator.createFromCurrentAndTotalSize(currentSize, totalFileSize);
-            String url = filePersisted.url();
-
-            FilePath filePath = filePersisted.filePath();
-            InternalDownloadFileStatus downloadFileStatus = new LiteDownloadFileStatus(
-                    batchId,
-                    downloadFileId,
-                    getFileStatusFrom(batchStatus),
-                    fileSize,
-                    filePath
-            );
-
-            FileSizeRequester fileSizeRequester = fileOperations.fileSizeRequester();
-            FileDownloaderCreator fileDownloaderCreator = fileOperations.fileDownloaderCreator();
-            FileDownloader fileDownloader = fileDownloaderCreator.create();
-
-            DownloadFile downloadFile = new DownloadFile(
-                    batchId,
-                    downloadFileId,
-                    url,
-                    downloadFileStatus,
-                    filePath,
-                    fileSize,
-                    fileDownloader,
-                    fileSizeRequester,
-                    filePersistence,
-                    downloadsFilePersistence
-            );
-
-            downloadFiles.add(downloadFile);
+    @WorkerThread
+    boolean persistSegmentsSync(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId, List<FileSegment> fileSegments) {
+        downloadsPersistence.startTransaction();
+        try {
+            for (FileSegment fileSegment : fileSegments) {
+                DownloadsFileSegmentPersisted segmentPersisted = new LiteDownloadsFileSegmentPersisted(
+                        downloadBatchId,
+                        downloadFileId,
+                        fileSegment.index(),
+                        fileSegment.startByte(),
+                        fileSegment.endByte(),
+                        fileSegment.bytesDownloaded()
+                );
+                downloadsPersistence.persistFileSegment(segmentPersisted);
+            }
+            downloadsPersistence.transactionSuccess();
+            return true;
+        } catch (SQLiteConstraintException e) {
+            Logger.e("failure to persist sync segments of file " + downloadFileId.rawId());
+            return false;
+        } finally {
+            downloadsPersistence.endTransaction();
+        }
+    }
+
+    @WorkerThread
+    boolean deleteSegmentsSync(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId) {
+        boolean deleted = downloadsPersistence.deleteFileSegments(downloadBatchId, downloadFileId);
+        if (!deleted) {
+            Logger.e("failure to delete sync segments of file " + downloadFileId.rawId());
+        }
+        return deleted;
+    }
+
+    /**
+     * Restores a stored file, the rows are loaded together with their batch by {@link DownloadsBatchPersistence}.
+     * Only what was persisted is used, the file on disk is reconciled once the stored downloads have been submitted.
+     */
+    DownloadFile createDownloadFile(DownloadBatchId batchId,
+                                    DownloadBatchStatus.Status batchStatus,
+                                    FileOperations fileOperations,
+                                    DownloadsFilePersisted filePersisted,
+                                    List<FileSegment> fileSegments) {
+        DownloadFileId downloadFileId = filePersisted.downloadFileId();
+        FilePath filePath = filePersisted.filePath();
+        String url = filePersisted.url();
+
+        FilePersistenceCreator filePersistenceCreator = fileOperations.filePersistenceCreator();
+        FilePersistence filePersistence = filePersistenceCreator.create();
+
+        long currentSize = fileSegments.isEmpty()
+                ? checkpointedBytesOf(filePersisted, filePersistence)
+                : bytesDownloadedIn(fileSegments);
+        InternalFileSize fileSize = InternalFileSizeCreator.createFromCurrentAndTotalSize(currentSize, filePersisted.totalFileSize());
+
+        InternalDownloadFileStatus downloadFileStatus = new LiteDownloadFileStatus(
+                batchId,
+                downloadFileId,
+                getFileStatusFrom(batchStatus, filePersisted.fileStatus()),
+                fileSize,
+                filePath
+        );
+
+        FileSizeRequester fileSizeRequester = fileOperations.fileSizeRequester();
+        FileDownloaderCreator fileDownloaderCreator = fileOperations.fileDownloaderCreator();
+        FileDownloader fileDownloader = fileDownloaderCreator.create();
+        Optional<SegmentedNetworkFileDownloader> segmentedFileDownloader = fileDownloaderCreator.createSegmented();
+
+        return new DownloadFile(
+                batchId,
+                downloadFileId,
+                url,
+                downloadFileStatus,
+                filePath,
+                fileSize,
+                fileSegments,
+                fileDownloader,
+                segmentedFileDownloader,
+                fileSizeRequester,
+                fileOperations.learnsFileSizeFromDownloadResponse(),
+                filePersistence,
+                fileOperations.fileWritePipelineCreator().create(filePersistence),
+                this,
+                FileIntegrity.expecting(filePersisted.expectedDigest(), filePersisted.digestState()),
+                filePersisted.rangeValidator()
+        );
+    }
+
+    /**
+     * Files stored before their bytes downloaded were persisted have no checkpoint, their length on disk is trusted as it always was.
+     */
+    private static long checkpointedBytesOf(DownloadsFilePersisted filePersisted, FilePersistence filePersistence) {
+        long bytesDownloaded = filePersisted.bytesDownloaded();
+        return bytesDownloaded == UNKNOWN_BYTES_DOWNLOADED ? filePersistence.getCurrentSize(filePersisted.filePath()) : bytesDownloaded;
+    }
+
+    private static long bytesDownloadedIn(List<FileSegment> fileSegments) {
+        long bytesDownloaded = 0;
+        for (FileSegment fileSegment : fileSegments) {
+            bytesDownloaded += fileSegment.bytesDownloaded();
         }
+        return bytesDownloaded;
+    }
 
-        return downloadFiles;
+    /**
+     * A file that completed stays completed, unless its batch is being deleted, the others follow their batch.
+     */
+    private InternalDownloadFileStatus.Status getFileStatusFrom(DownloadBatchStatus.Status batchStatus,
+                                                                @Nullable DownloadFileStatus.Status fileStatus) {
+        boolean isBatchDeleted = batchStatus == DownloadBatchStatus.Status.DELETED || batchStatus == DownloadBatchStatus.Status.DELETING;
+        if (fileStatus == DownloadFileStatus.Status.DOWNLOADED && !isBatchDeleted) {
+            return InternalDownloadFileStatus.Status.DOWNLOADED;
+        }
+        return getFileStatusFrom(batchStatus);
     }
 
     @SuppressWarnings("PMD.CyclomaticComplexity")
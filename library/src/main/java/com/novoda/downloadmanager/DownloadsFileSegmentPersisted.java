@@ -0,0 +1,21 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Defines the information that is stored in the persistence layer for a byte range
+ * of a {@link BatchFile} that is downloaded over its own connection.
+ */
+public interface DownloadsFileSegmentPersisted {
+
+    DownloadBatchId downloadBatchId();
+
+    DownloadFileId downloadFileId();
+
+    int segmentIndex();
+
+    long startByte();
+
+    long endByte();
+
+    long bytesDownloaded();
+
+}
@@ -0,0 +1,252 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.Nullable;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * A log-structured journal of frames, appended to a memory-mapped file. A frame is its length, the CRC32 of its payload
+ * and the payload, a frame is only replayed when its checksum matches so a frame torn by a crash is dropped along with
+ * anything after it.
+ * <p>
+ * Compacting writes the snapshot of a new generation before the journal of that generation is started, once the
+ * snapshot is renamed into place the journals of previous generations are ignored and deleted.
+ */
+final class DownloadsJournal {
+
+    private static final int MAGIC = 0x444d4a31;
+    private static final int HEADER_SIZE_IN_BYTES = 4 + 8;
+    private static final int LENGTH_SIZE_IN_BYTES = 4;
+    private static final int CHECKSUM_SIZE_IN_BYTES = 4;
+    private static final int FRAME_HEADER_SIZE_IN_BYTES = LENGTH_SIZE_IN_BYTES + CHECKSUM_SIZE_IN_BYTES;
+    private static final int INITIAL_CAPACITY_IN_BYTES = 64 * 1024;
+    private static final long INITIAL_GENERATION = 0;
+
+    private static final String SNAPSHOT = "snapshot";
+    private static final String SNAPSHOT_TEMPORARY = "snapshot.tmp";
+    private static final String JOURNAL_PREFIX = "journal-";
+
+    private final File directory;
+
+    private long generation;
+    @Nullable
+    private RandomAccessFile file;
+    @Nullable
+    private FileChannel channel;
+    @Nullable
+    private MappedByteBuffer buffer;
+
+    DownloadsJournal(File directory) {
+        this.directory = directory;
+    }
+
+    interface FrameCallback {
+        void onFrame(byte[] payload) throws IOException;
+    }
+
+    /**
+     * Replays the snapshot and then the journal of the same generation, the journal is left open for appending after
+     * its last intact frame.
+     */
+    void open(FrameCallback callback) throws IOException {
+        close();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create journal directory " + directory.getAbsolutePath());
+        }
+        deleteIfExists(new File(directory, SNAPSHOT_TEMPORARY));
+
+        generation = replaySnapshot(callback);
+        deleteStaleJournals();
+        openJournal(callback);
+    }
+
+    private long replaySnapshot(FrameCallback callback) throws IOException {
+        File snapshot = new File(directory, SNAPSHOT);
+        if (!snapshot.exists()) {
+            return INITIAL_GENERATION;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(snapshot, "r")) {
+            byte[] content = new byte[(int) file.length()];
+            file.readFully(content);
+            ByteBuffer snapshotBuffer = ByteBuffer.wrap(content);
+            long snapshotGeneration = readHeader(snapshotBuffer, snapshot);
+            replayFrames(snapshotBuffer, callback);
+            return snapshotGeneration;
+        }
+    }
+
+    private void deleteStaleJournals() throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        String currentJournal = journalName(generation);
+        for (File file : files) {
+            if (file.getName().startsWith(JOURNAL_PREFIX) && !file.getName().equals(currentJournal)) {
+                deleteIfExists(file);
+            }
+        }
+    }
+
+    @SuppressWarnings("PMD.CloseResource")  // The file is kept open for appending and closed in close().
+    private void openJournal(FrameCallback callback) throws IOException {
+        File journal = new File(directory, journalName(generation));
+        RandomAccessFile journalFile = new RandomAccessFile(journal, "rw");
+        FileChannel journalChannel = journalFile.getChannel();
+        long length = journalChannel.size();
+        MappedByteBuffer journalBuffer = journalChannel.map(
+                FileChannel.MapMode.READ_WRITE,
+                0,
+                Math.max(length, INITIAL_CAPACITY_IN_BYTES)
+        );
+
+        if (length < HEADER_SIZE_IN_BYTES) {
+            journalBuffer.putInt(MAGIC);
+            journalBuffer.putLong(generation);
+        } else {
+            long journalGeneration = readHeader(journalBuffer, journal);
+            if (journalGeneration != generation) {
+                journalFile.close();
+                throw new IOException("Journal " + journal.getName() + " belongs to generation " + journalGeneration);
+            }
+            replayFrames(journalBuffer, callback);
+        }
+
+        file = journalFile;
+        channel = journalChannel;
+        buffer = journalBuffer;
+    }
+
+    private static long readHeader(ByteBuffer source, File file) throws IOException {
+        if (source.remaining() < HEADER_SIZE_IN_BYTES || source.getInt() != MAGIC) {
+            throw new IOException(file.getName() + " is not a downloads journal");
+        }
+        return source.getLong();
+    }
+
+    private static void replayFrames(ByteBuffer source, FrameCallback callback) throws IOException {
+        CRC32 crc = new CRC32();
+        while (source.remaining() >= FRAME_HEADER_SIZE_IN_BYTES) {
+            int frameStart = source.position();
+            int length = source.getInt();
+            if (length <= 0 || length > source.remaining() - CHECKSUM_SIZE_IN_BYTES) {
+                source.position(frameStart);
+                return;
+            }
+
+            int checksum = source.getInt();
+
+            byte[] payload = new byte[length];
+            source.get(payload);
+            crc.reset();
+            crc.update(payload, 0, length);
+            if ((int) crc.getValue() != checksum) {
+                Logger.w("Dropping journal frame at " + frameStart + ", its checksum does not match");
+                source.position(frameStart);
+                return;
+            }
+            callback.onFrame(payload);
+        }
+    }
+
+    /**
+     * The length after the frame is zeroed so that leftovers of a frame dropped on replay are never read again.
+     */
+    void append(byte[] payload) throws IOException {
+        if (buffer == null) {
+            throw new IOException("Journal is not open");
+        }
+        ensureCapacity(FRAME_HEADER_SIZE_IN_BYTES + payload.length + LENGTH_SIZE_IN_BYTES);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload, 0, payload.length);
+        int frameStart = buffer.position();
+        buffer.position(frameStart + FRAME_HEADER_SIZE_IN_BYTES);
+        buffer.put(payload);
+        buffer.putInt(buffer.position(), 0);
+        buffer.putInt(frameStart + LENGTH_SIZE_IN_BYTES, (int) crc.getValue());
+        buffer.putInt(frameStart, payload.length);
+    }
+
+    private void ensureCapacity(int frameSizeInBytes) throws IOException {
+        int position = buffer.position();
+        long required = (long) position + frameSizeInBytes;
+        if (required <= buffer.capacity()) {
+            return;
+        }
+
+        long capacity = buffer.capacity();
+        while (capacity < required) {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IOException("Journal cannot grow beyond " + Integer.MAX_VALUE + " bytes");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        buffer.position(position);
+    }
+
+    long sizeInBytes() {
+        return buffer == null ? 0 : buffer.position();
+    }
+
+    /**
+     * Replaces the snapshot and the journal with a snapshot holding only the given payload.
+     */
+    void compact(byte[] snapshotPayload) throws IOException {
+        long nextGeneration = generation + 1;
+        File temporarySnapshot = new File(directory, SNAPSHOT_TEMPORARY);
+        CRC32 crc = new CRC32();
+        crc.update(snapshotPayload, 0, snapshotPayload.length);
+        try (FileOutputStream fileOutput = new FileOutputStream(temporarySnapshot);
+             DataOutputStream output = new DataOutputStream(fileOutput)) {
+            output.writeInt(MAGIC);
+            output.writeLong(nextGeneration);
+            output.writeInt(snapshotPayload.length);
+            output.writeInt((int) crc.getValue());
+            output.write(snapshotPayload);
+            output.flush();
+            fileOutput.getFD().sync();
+        }
+        if (!temporarySnapshot.renameTo(new File(directory, SNAPSHOT))) {
+            throw new IOException("Could not replace snapshot of " + directory.getAbsolutePath());
+        }
+
+        close();
+        deleteIfExists(new File(directory, journalName(generation)));
+        generation = nextGeneration;
+        openJournal(payload -> {
+            throw new IOException("Journal of generation " + nextGeneration + " is expected to be empty");
+        });
+    }
+
+    void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        buffer.force();
+        file.close();
+        file = null;
+        channel = null;
+        buffer = null;
+    }
+
+    private static String journalName(long generation) {
+        return JOURNAL_PREFIX + generation;
+    }
+
+    private static void deleteIfExists(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Could not delete " + file.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Receives the stored batches together with their files and segments, one row at a time,
+ * see {@link DownloadsPersistence#loadBatchesWithFiles(DownloadsPersistedRowsCallback)}.
+ * Files follow the batch they belong to and segments follow the file they belong to.
+ */
+public interface DownloadsPersistedRowsCallback {
+
+    void onBatch(DownloadsBatchPersisted batchPersisted);
+
+    /**
+     * Receives the columns of a file, see {@link DownloadsFilePersisted} for what each of them holds.
+     */
+    @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
+    void onFile(DownloadFileId downloadFileId,
+                FilePath filePath,
+                long totalFileSize,
+                String url,
+                long bytesDownloaded,
+                @Nullable DownloadFileStatus.Status fileStatus,
+                @Nullable FileDigest expectedDigest,
+                @Nullable String digestState,
+                @Nullable String rangeValidator);
+
+    /**
+     * Passes on the columns of a file that was already loaded.
+     */
+    default void onFile(DownloadsFilePersisted filePersisted) {
+        onFile(
+                filePersisted.downloadFileId(),
+                filePersisted.filePath(),
+                filePersisted.totalFileSize(),
+                filePersisted.url(),
+                filePersisted.bytesDownloaded(),
+                filePersisted.fileStatus(),
+                filePersisted.expectedDigest(),
+                filePersisted.digestState(),
+                filePersisted.rangeValidator()
+        );
+    }
+
+    void onFileSegment(int segmentIndex, long startByte, long endByte, long bytesDownloaded);
+}
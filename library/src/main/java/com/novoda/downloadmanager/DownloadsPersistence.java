@@ -1,10 +1,12 @@
 package com.novoda.downloadmanager;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
  * For defining the persistence layer that the download-manager will use to
- * persist and retrieve {@link DownloadsBatchPersisted} and {@link DownloadsFilePersisted}.
+ * persist and retrieve {@link DownloadsBatchPersisted}, {@link DownloadsFilePersisted}
+ * and {@link DownloadsFileSegmentPersisted}.
  */
 public interface DownloadsPersistence {
 
@@ -18,17 +20,123 @@ public interface DownloadsPersistence {
 
     List<DownloadsBatchPersisted> loadBatches();
 
+    /**
+     * Loads a page of the stored batches, along with the progress stored for their files.
+     * By default every batch is loaded and the page is selected in memory, along with the files of its batches.
+     *
+     * @param query that selects, orders and pages the batches.
+     * @return the batches matching the query, in the order of the query.
+     */
+    default List<DownloadsBatchProgressPersisted> loadBatches(DownloadBatchQuery query) {
+        List<DownloadsBatchPersisted> page = InMemoryBatchQuery.page(loadBatches(), query);
+        List<DownloadsBatchProgressPersisted> batchesPersisted = new ArrayList<>(page.size());
+        for (DownloadsBatchPersisted batchPersisted : page) {
+            batchesPersisted.add(InMemoryBatchQuery.withProgress(batchPersisted, loadFiles(batchPersisted.downloadBatchId())));
+        }
+        return batchesPersisted;
+    }
+
+    /**
+     * Counts the stored batches matching the statuses of the query, regardless of its limit and offset.
+     * By default every batch is loaded and counted in memory.
+     *
+     * @param query that selects the batches.
+     * @return the number of batches matching the query.
+     */
+    default int countBatches(DownloadBatchQuery query) {
+        return InMemoryBatchQuery.count(loadBatches(), query);
+    }
+
     void persistFile(DownloadsFilePersisted filePersisted);
 
     List<DownloadsFilePersisted> loadAllFiles();
 
     List<DownloadsFilePersisted> loadFiles(DownloadBatchId batchId);
 
+    /**
+     * Segments must be stored for files downloaded in segments to resume, they cannot resume from their bytes downloaded alone.
+     */
+    void persistFileSegment(DownloadsFileSegmentPersisted segmentPersisted);
+
+    List<DownloadsFileSegmentPersisted> loadFileSegments(DownloadBatchId batchId, DownloadFileId fileId);
+
+    /**
+     * Deletes the segments of a single file, e.g. when it has to be downloaded again from its first byte in a single stream.
+     * Implementations that persist segments should override it, by default nothing is deleted and the file fails to restart.
+     *
+     * @param batchId of the batch of the file.
+     * @param fileId  of the file whose segments are deleted.
+     * @return whether the file is left without any segment.
+     */
+    default boolean deleteFileSegments(DownloadBatchId batchId, DownloadFileId fileId) {
+        return false;
+    }
+
+    /**
+     * Loads every batch with its files and segments in one pass, in the order they were persisted.
+     * This is how stored downloads are restored, implementations should avoid a query per batch or per file.
+     * By default the batches, their files and the segments of every file are loaded one after the other.
+     *
+     * @param callback that receives the batches, files and segments row by row.
+     */
+    default void loadBatchesWithFiles(DownloadsPersistedRowsCallback callback) {
+        for (DownloadsBatchPersisted batchPersisted : loadBatches()) {
+            callback.onBatch(batchPersisted);
+            DownloadBatchId batchId = batchPersisted.downloadBatchId();
+            for (DownloadsFilePersisted filePersisted : loadFiles(batchId)) {
+                callback.onFile(filePersisted);
+                for (DownloadsFileSegmentPersisted segmentPersisted : loadFileSegments(batchId, filePersisted.downloadFileId())) {
+                    callback.onFileSegment(
+                            segmentPersisted.segmentIndex(),
+                            segmentPersisted.startByte(),
+                            segmentPersisted.endByte(),
+                            segmentPersisted.bytesDownloaded()
+                    );
+                }
+            }
+        }
+    }
+
     boolean delete(DownloadBatchId downloadBatchId);
 
     boolean update(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status);
 
     boolean update(DownloadBatchId downloadBatchId, boolean notificationSeen);
 
+    /**
+     * Deletes many batches at once, e.g. when all downloads are deleted, rather than one statement per batch.
+     * By default the batches are deleted one by one.
+     *
+     * @param downloadBatchIds of the batches to delete.
+     * @return the number of batches that were deleted.
+     */
+    default int deleteAll(List<DownloadBatchId> downloadBatchIds) {
+        int deletedBatches = 0;
+        for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+            if (delete(downloadBatchId)) {
+                deletedBatches++;
+            }
+        }
+        return deletedBatches;
+    }
+
+    /**
+     * Updates the status of many batches at once, e.g. when all downloads are paused or resumed,
+     * rather than one statement per batch. By default the batches are updated one by one.
+     *
+     * @param downloadBatchIds of the batches to update.
+     * @param status           to give to every batch.
+     * @return the number of batches that were updated.
+     */
+    default int updateAll(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status) {
+        int updatedBatches = 0;
+        for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+            if (update(downloadBatchId, status)) {
+                updatedBatches++;
+            }
+        }
+        return updatedBatches;
+    }
+
     void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch);
 }
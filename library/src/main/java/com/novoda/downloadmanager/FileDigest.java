@@ -0,0 +1,170 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.Nullable;
+
+import java.util.Locale;
+
+/**
+ * The digest a {@link BatchFile} is expected to have once downloaded. The digest is computed as the bytes are written
+ * and compared once the file completes, a mismatch fails the file with {@link DownloadError.Type#FILE_DIGEST_MISMATCH}.
+ */
+public final class FileDigest {
+
+    private static final char RAW_VALUE_SEPARATOR = ':';
+    private static final String HEX_DIGITS = "0123456789abcdef";
+    private static final int HEX_DIGITS_PER_BYTE = 2;
+    private static final int BITS_PER_HEX_DIGIT = 4;
+    private static final int LOW_HEX_DIGIT_MASK = 0x0f;
+
+    public enum Algorithm {
+        SHA_256("sha-256", 32),
+        CRC32C("crc32c", 4);
+
+        private final String rawValue;
+        private final int lengthInBytes;
+
+        Algorithm(String rawValue, int lengthInBytes) {
+            this.rawValue = rawValue;
+            this.lengthInBytes = lengthInBytes;
+        }
+
+        public String toRawValue() {
+            return rawValue;
+        }
+
+        @Nullable
+        static Algorithm from(String rawValue) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.rawValue.equalsIgnoreCase(rawValue)) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Algorithm algorithm;
+    private final String hex;
+
+    public static FileDigest sha256(String hex) {
+        return create(Algorithm.SHA_256, hex);
+    }
+
+    public static FileDigest crc32c(String hex) {
+        return create(Algorithm.CRC32C, hex);
+    }
+
+    static FileDigest create(Algorithm algorithm, String hex) {
+        if (hex == null || hex.length() != algorithm.lengthInBytes * HEX_DIGITS_PER_BYTE) {
+            throw new IllegalArgumentException(algorithm.rawValue + " digest must be " + algorithm.lengthInBytes + " bytes of hex, but was " + hex);
+        }
+
+        String lowerCaseHex = hex.toLowerCase(Locale.US);
+        for (int index = 0; index < lowerCaseHex.length(); index++) {
+            if (HEX_DIGITS.indexOf(lowerCaseHex.charAt(index)) == -1) {
+                throw new IllegalArgumentException(algorithm.rawValue + " digest must be hex, but was " + hex);
+            }
+        }
+        return new FileDigest(algorithm, lowerCaseHex);
+    }
+
+    static FileDigest from(Algorithm algorithm, byte[] digest) {
+        return create(algorithm, toHex(digest));
+    }
+
+    /**
+     * @return the digest stored by {@link #toRawValue()}, or null when none was stored.
+     */
+    @Nullable
+    static FileDigest fromRawValue(@Nullable String rawValue) {
+        if (rawValue == null) {
+            return null;
+        }
+
+        int separatorIndex = rawValue.indexOf(RAW_VALUE_SEPARATOR);
+        Algorithm algorithm = separatorIndex == -1 ? null : Algorithm.from(rawValue.substring(0, separatorIndex));
+        if (algorithm == null) {
+            throw new IllegalStateException("Digest " + rawValue + " not supported.");
+        }
+        return create(algorithm, rawValue.substring(separatorIndex + 1));
+    }
+
+    private FileDigest(Algorithm algorithm, String hex) {
+        this.algorithm = algorithm;
+        this.hex = hex;
+    }
+
+    public Algorithm algorithm() {
+        return algorithm;
+    }
+
+    public String hex() {
+        return hex;
+    }
+
+    String toRawValue() {
+        return algorithm.rawValue + RAW_VALUE_SEPARATOR + hex;
+    }
+
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * HEX_DIGITS_PER_BYTE);
+        for (byte value : bytes) {
+            hex.append(HEX_DIGITS.charAt((value >> BITS_PER_HEX_DIGIT) & LOW_HEX_DIGIT_MASK));
+            hex.append(HEX_DIGITS.charAt(value & LOW_HEX_DIGIT_MASK));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return the bytes of the hex, or null when it is not valid hex.
+     */
+    @Nullable
+    static byte[] fromHex(String hex) {
+        if (hex.length() % HEX_DIGITS_PER_BYTE != 0) {
+            return null;
+        }
+
+        byte[] bytes = new byte[hex.length() / HEX_DIGITS_PER_BYTE];
+        for (int index = 0; index < bytes.length; index++) {
+            int high = HEX_DIGITS.indexOf(hex.charAt(index * HEX_DIGITS_PER_BYTE));
+            int low = HEX_DIGITS.indexOf(hex.charAt(index * HEX_DIGITS_PER_BYTE + 1));
+            if (high == -1 || low == -1) {
+                return null;
+            }
+            bytes[index] = (byte) ((high << BITS_PER_HEX_DIGIT) | low);
+        }
+        return bytes;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        FileDigest that = (FileDigest) o;
+
+        if (algorithm != that.algorithm) {
+            return false;
+        }
+        return hex.equals(that.hex);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = algorithm.hashCode();
+        result = 31 * result + hex.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "FileDigest{"
+                + "algorithm=" + algorithm
+                + ", hex='" + hex + '\''
+                + '}';
+    }
+}
@@ -0,0 +1,54 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Computes a {@link FileDigest} incrementally, its state can be stored and restored so that a resumed download
+ * carries on hashing rather than reading the bytes it already downloaded again.
+ */
+abstract class FileDigester {
+
+    static FileDigester create(FileDigest.Algorithm algorithm) {
+        switch (algorithm) {
+            case SHA_256:
+                return new Sha256FileDigester();
+            case CRC32C:
+                return new Crc32cFileDigester();
+            default:
+                throw new IllegalStateException("Digest algorithm " + algorithm + " not supported.");
+        }
+    }
+
+    /**
+     * @return a digester that carries on from the stored state, or null when the state cannot be restored.
+     */
+    @Nullable
+    static FileDigester restore(FileDigest.Algorithm algorithm, String state) {
+        byte[] rawState = FileDigest.fromHex(state);
+        if (rawState == null) {
+            return null;
+        }
+
+        switch (algorithm) {
+            case SHA_256:
+                return Sha256FileDigester.restore(rawState);
+            case CRC32C:
+                return Crc32cFileDigester.restore(rawState);
+            default:
+                throw new IllegalStateException("Digest algorithm " + algorithm + " not supported.");
+        }
+    }
+
+    abstract void update(byte[] bytes, int offset, int length);
+
+    /**
+     * @return the digest of every byte so far, without ending the digester.
+     */
+    abstract FileDigest digest();
+
+    String state() {
+        return FileDigest.toHex(rawState());
+    }
+
+    abstract byte[] rawState();
+}
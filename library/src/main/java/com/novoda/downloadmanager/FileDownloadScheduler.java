@@ -0,0 +1,164 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Downloads the files of every active batch on a single pool owned by the download manager.
+ * Files are started in the order they were submitted, skipping the files of a host that reached its limit,
+ * so a worker that is done with a batch picks up the files of other batches instead of idling.
+ */
+class FileDownloadScheduler {
+
+    private static final int NO_DOWNLOADS = 0;
+
+    private final ExecutorService executor;
+    private final int maximumConcurrentFiles;
+    private final int maximumConcurrentFilesPerHost;
+    private final Object lock = new Object();
+    private final List<FileDownload> pendingDownloads = new LinkedList<>();
+    private final Map<String, Integer> runningDownloadsPerHost = new HashMap<>();
+
+    private int runningDownloads;
+
+    FileDownloadScheduler(ExecutorService executor, int maximumConcurrentFiles, int maximumConcurrentFilesPerHost) {
+        this.executor = executor;
+        this.maximumConcurrentFiles = maximumConcurrentFiles;
+        this.maximumConcurrentFilesPerHost = maximumConcurrentFilesPerHost;
+    }
+
+    /**
+     * Downloads every file on the shared pool, blocking until all of them have stopped.
+     * When the calling thread is interrupted, files that have not started yet are discarded and the running ones are paused,
+     * the interruption is only rethrown once none of them writes anymore.
+     */
+    void downloadAll(List<DownloadFile> downloadFiles, Action action) throws InterruptedException {
+        CountDownLatch remainingDownloads = new CountDownLatch(downloadFiles.size());
+        List<FileDownload> fileDownloads = new ArrayList<>(downloadFiles.size());
+        synchronized (lock) {
+            for (DownloadFile downloadFile : downloadFiles) {
+                String host = HostExtractor.extractFrom(downloadFile.url());
+                FileDownload fileDownload = new FileDownload(downloadFile, host, action, remainingDownloads);
+                fileDownloads.add(fileDownload);
+                pendingDownloads.add(fileDownload);
+            }
+            startPendingDownloads();
+        }
+
+        try {
+            remainingDownloads.await();
+        } catch (InterruptedException e) {
+            stop(fileDownloads);
+            awaitUninterruptibly(remainingDownloads);
+            throw e;
+        }
+    }
+
+    private void stop(List<FileDownload> fileDownloads) {
+        List<DownloadFile> runningFiles = new ArrayList<>();
+        synchronized (lock) {
+            for (FileDownload fileDownload : fileDownloads) {
+                fileDownload.isStopped = true;
+                if (pendingDownloads.remove(fileDownload)) {
+                    fileDownload.remainingDownloads.countDown();
+                } else if (fileDownload.isStarted && !fileDownload.isDone) {
+                    runningFiles.add(fileDownload.downloadFile);
+                }
+            }
+        }
+
+        for (DownloadFile runningFile : runningFiles) {
+            runningFile.pause();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        while (true) {
+            try {
+                latch.await();
+                return;
+            } catch (InterruptedException e) {
+                Logger.w("interrupted again while stopping the files being downloaded");
+            }
+        }
+    }
+
+    private void startPendingDownloads() {
+        Iterator<FileDownload> iterator = pendingDownloads.iterator();
+        while (runningDownloads < maximumConcurrentFiles && iterator.hasNext()) {
+            FileDownload fileDownload = iterator.next();
+            int runningDownloadsForHost = runningDownloadsFor(fileDownload.host);
+            if (runningDownloadsForHost >= maximumConcurrentFilesPerHost) {
+                continue;
+            }
+
+            iterator.remove();
+            runningDownloads++;
+            runningDownloadsPerHost.put(fileDownload.host, runningDownloadsForHost + 1);
+            executor.submit(() -> download(fileDownload));
+        }
+    }
+
+    private int runningDownloadsFor(String host) {
+        Integer runningDownloadsForHost = runningDownloadsPerHost.get(host);
+        return runningDownloadsForHost == null ? NO_DOWNLOADS : runningDownloadsForHost;
+    }
+
+    // A failing file must not take a worker, nor the slot of its host, down with it.
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private void download(FileDownload fileDownload) {
+        synchronized (lock) {
+            fileDownload.isStarted = !fileDownload.isStopped;
+        }
+        try {
+            if (fileDownload.isStarted) {
+                fileDownload.action.download(fileDownload.downloadFile);
+            }
+        } catch (RuntimeException e) {
+            Logger.e(e, "Exception while downloading file " + fileDownload.downloadFile.id().rawId());
+        } finally {
+            synchronized (lock) {
+                fileDownload.isDone = true;
+                runningDownloads--;
+                int runningDownloadsForHost = runningDownloadsFor(fileDownload.host) - 1;
+                if (runningDownloadsForHost == NO_DOWNLOADS) {
+                    runningDownloadsPerHost.remove(fileDownload.host);
+                } else {
+                    runningDownloadsPerHost.put(fileDownload.host, runningDownloadsForHost);
+                }
+                startPendingDownloads();
+            }
+            fileDownload.remainingDownloads.countDown();
+        }
+    }
+
+    interface Action {
+
+        void download(DownloadFile downloadFile);
+    }
+
+    private static final class FileDownload {
+
+        private final DownloadFile downloadFile;
+        private final String host;
+        private final Action action;
+        private final CountDownLatch remainingDownloads;
+
+        private boolean isStarted;
+        private boolean isStopped;
+        private boolean isDone;
+
+        FileDownload(DownloadFile downloadFile, String host, Action action, CountDownLatch remainingDownloads) {
+            this.downloadFile = downloadFile;
+            this.host = host;
+            this.action = action;
+            this.remainingDownloads = remainingDownloads;
+        }
+    }
+}
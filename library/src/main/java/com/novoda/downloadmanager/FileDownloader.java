@@ -1,5 +1,7 @@
 package com.novoda.downloadmanager;
 
+import androidx.annotation.Nullable;
+
 /**
  * For defining the mechanism by which files are downloaded.
  */
@@ -21,6 +23,35 @@ public interface FileDownloader {
 
     interface Callback {
 
+        void onTotalSizeKnown(long totalSize);
+
+        /**
+         * Called before any bytes are read when the response declares the digest of the file.
+         *
+         * @param declaredDigest of the whole file.
+         */
+        void onDigestKnown(FileDigest declaredDigest);
+
+        /**
+         * @return the entity tag or last modified date the bytes downloaded so far were sent with, or null when unknown.
+         * Requests that resume a file send it as If-Range, so that a file that changed is not appended to.
+         */
+        @Nullable
+        String rangeValidator();
+
+        /**
+         * Called before any bytes are read with the entity tag or last modified date of the response.
+         *
+         * @param rangeValidator to resume the file with.
+         */
+        void onRangeValidatorKnown(String rangeValidator);
+
+        /**
+         * Called before any bytes are read when the response holds the whole file rather than the requested range,
+         * the bytes downloaded so far are discarded and the file is written again from its first byte.
+         */
+        void onRestartedFromFirstByte();
+
         void onBytesRead(byte[] buffer, int bytesRead);
 
         void onError(String cause);
@@ -2,6 +2,9 @@ package com.novoda.downloadmanager;
 
 import androidx.annotation.Nullable;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 class FileDownloaderCreator {
 
     enum FileDownloaderType {
@@ -15,6 +18,13 @@ class FileDownloaderCreator {
     @Nullable
     private final HttpClient httpClient;
 
+    private final ByteRangeSupport byteRangeSupport = new ByteRangeSupport();
+
+    private ReadBufferPool readBufferPool = new ReadBufferPool(ReadBufferPool.DEFAULT_MEMORY_BUDGET_IN_BYTES);
+    private int maximumFileSegments = 1;
+    @Nullable
+    private ExecutorService segmentExecutor;
+
     static FileDownloaderCreator newNetworkFileDownloaderCreator(HttpClient httpClient) {
         return new FileDownloaderCreator(FileDownloaderType.NETWORK, null, httpClient);
     }
@@ -35,7 +45,7 @@ class FileDownloaderCreator {
         switch (type) {
             case NETWORK:
                 NetworkRequestCreator requestCreator = new NetworkRequestCreator();
-                fileDownloader = new NetworkFileDownloader(httpClient, requestCreator);
+                fileDownloader = new NetworkFileDownloader(httpClient, requestCreator, readBufferPool, byteRangeSupport);
                 break;
             case CUSTOM:
                 fileDownloader = createCustomFileDownloader();
@@ -47,6 +57,32 @@ class FileDownloaderCreator {
         return fileDownloader;
     }
 
+    /**
+     * All downloaders that are created share the buffers of this pool, custom ones read with their own buffers.
+     */
+    void withReadBufferPool(ReadBufferPool readBufferPool) {
+        this.readBufferPool = readBufferPool;
+    }
+
+    /**
+     * Only {@link FileDownloaderType#NETWORK} downloaders can be segmented, custom ones are always used as a single stream.
+     */
+    void withMaximumFileSegments(int maximumFileSegments) {
+        this.maximumFileSegments = maximumFileSegments;
+        if (maximumFileSegments > 1 && segmentExecutor == null) {
+            segmentExecutor = Executors.newCachedThreadPool();
+        }
+    }
+
+    Optional<SegmentedNetworkFileDownloader> createSegmented() {
+        if (type != FileDownloaderType.NETWORK || segmentExecutor == null || maximumFileSegments <= 1) {
+            return Optional.absent();
+        }
+
+        NetworkRequestCreator requestCreator = new NetworkRequestCreator();
+        return Optional.of(new SegmentedNetworkFileDownloader(httpClient, requestCreator, segmentExecutor, readBufferPool, byteRangeSupport, maximumFileSegments));
+    }
+
     private FileDownloader createCustomFileDownloader() {
         if (customClass == null) {
             throw new CustomFileDownloaderException("CustomFileDownloader class cannot be accessed, is it public?");
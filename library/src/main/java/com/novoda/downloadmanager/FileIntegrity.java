@@ -0,0 +1,126 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Hashes the bytes of a file downloaded in a single stream as they are written, so that the file is verified without
+ * reading it again. The state of the hash is checkpointed along with the bytes, a resumed file does not rehash them.
+ * Hashing is only ever done by the thread that writes the file.
+ */
+final class FileIntegrity {
+
+    private static final long NO_BYTES = 0;
+
+    @Nullable
+    private final String restoredState;
+
+    @Nullable
+    private volatile FileDigest expectedDigest;
+    @Nullable
+    private FileDigester digester;
+
+    static FileIntegrity unverified() {
+        return new FileIntegrity(null, null);
+    }
+
+    static FileIntegrity expecting(@Nullable FileDigest expectedDigest, @Nullable String restoredState) {
+        return new FileIntegrity(expectedDigest, restoredState);
+    }
+
+    private FileIntegrity(@Nullable FileDigest expectedDigest, @Nullable String restoredState) {
+        this.expectedDigest = expectedDigest;
+        this.restoredState = restoredState;
+    }
+
+    @Nullable
+    FileDigest expectedDigest() {
+        return expectedDigest;
+    }
+
+    /**
+     * @return the state of the hash that was persisted along with the bytes the file is restored with.
+     */
+    @Nullable
+    String restoredState() {
+        return restoredState;
+    }
+
+    /**
+     * Starts hashing at the given bytes, carrying on from the checkpointed state.
+     *
+     * @return false when the file is expected to have a digest but the bytes downloaded so far were not hashed,
+     * it has to be restarted from its first byte to be verified.
+     */
+    boolean startAt(long bytesDownloaded, long checkpointedBytes, @Nullable String checkpointedState) {
+        FileDigest digest = expectedDigest;
+        if (digest == null) {
+            digester = null;
+        } else if (bytesDownloaded == NO_BYTES) {
+            digester = FileDigester.create(digest.algorithm());
+        } else if (bytesDownloaded == checkpointedBytes && checkpointedState != null) {
+            digester = FileDigester.restore(digest.algorithm(), checkpointedState);
+        } else {
+            digester = null;
+        }
+
+        if (digest != null && digester == null) {
+            Logger.w("cannot verify " + digest.algorithm().toRawValue() + " of a file resumed after " + bytesDownloaded + " bytes that were not hashed");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * A digest that the server declares is only used when none was expected and every byte so far is hashed.
+     *
+     * @return true when the file is now expected to have the declared digest.
+     */
+    boolean adopt(FileDigest declaredDigest, long bytesDownloaded) {
+        FileDigest digest = expectedDigest;
+        if (digest != null) {
+            if (digest.algorithm() == declaredDigest.algorithm() && !digest.equals(declaredDigest)) {
+                Logger.w("server declares " + declaredDigest + " rather than the expected " + digest);
+            }
+            return false;
+        }
+
+        if (bytesDownloaded != NO_BYTES) {
+            return false;
+        }
+        expectedDigest = declaredDigest;
+        digester = FileDigester.create(declaredDigest.algorithm());
+        return true;
+    }
+
+    void update(byte[] bytes, int offset, int length) {
+        if (digester != null) {
+            digester.update(bytes, offset, length);
+        }
+    }
+
+    /**
+     * @return the state of the hash of every byte so far, null when the bytes are not hashed.
+     */
+    @Nullable
+    String state() {
+        return digester == null ? null : digester.state();
+    }
+
+    /**
+     * @return the digest of the bytes so far when it differs from the expected one,
+     * absent when it matches or no digest is expected.
+     */
+    Optional<FileDigest> mismatch() {
+        FileDigest digest = expectedDigest;
+        if (digest == null || digester == null) {
+            return Optional.absent();
+        }
+
+        FileDigest actualDigest = digester.digest();
+        return actualDigest.equals(digest) ? Optional.absent() : Optional.of(actualDigest);
+    }
+
+    void restart() {
+        startAt(NO_BYTES, NO_BYTES, null);
+    }
+}
@@ -5,11 +5,25 @@ class FileOperations {
     private final FilePersistenceCreator filePersistenceCreator;
     private final FileSizeRequester fileSizeRequester;
     private final FileDownloaderCreator fileDownloaderCreator;
+    private final ConcurrentFileSizeRequester concurrentFileSizeRequester;
+    private final boolean learnsFileSizeFromDownloadResponse;
+    private final FileDownloadScheduler fileDownloadScheduler;
+    private final FileWritePipelineCreator fileWritePipelineCreator;
 
-    FileOperations(FilePersistenceCreator filePersistenceCreator, FileSizeRequester fileSizeRequester, FileDownloaderCreator fileDownloaderCreator) {
+    FileOperations(FilePersistenceCreator filePersistenceCreator,
+                   FileSizeRequester fileSizeRequester,
+                   FileDownloaderCreator fileDownloaderCreator,
+                   ConcurrentFileSizeRequester concurrentFileSizeRequester,
+                   boolean learnsFileSizeFromDownloadResponse,
+                   FileDownloadScheduler fileDownloadScheduler,
+                   FileWritePipelineCreator fileWritePipelineCreator) {
         this.filePersistenceCreator = filePersistenceCreator;
         this.fileSizeRequester = fileSizeRequester;
         this.fileDownloaderCreator = fileDownloaderCreator;
+        this.concurrentFileSizeRequester = concurrentFileSizeRequester;
+        this.learnsFileSizeFromDownloadResponse = learnsFileSizeFromDownloadResponse;
+        this.fileDownloadScheduler = fileDownloadScheduler;
+        this.fileWritePipelineCreator = fileWritePipelineCreator;
     }
 
     FilePersistenceCreator filePersistenceCreator() {
@@ -23,4 +37,20 @@ class FileOperations {
     FileDownloaderCreator fileDownloaderCreator() {
         return fileDownloaderCreator;
     }
+
+    ConcurrentFileSizeRequester concurrentFileSizeRequester() {
+        return concurrentFileSizeRequester;
+    }
+
+    boolean learnsFileSizeFromDownloadResponse() {
+        return learnsFileSizeFromDownloadResponse;
+    }
+
+    FileDownloadScheduler fileDownloadScheduler() {
+        return fileDownloadScheduler;
+    }
+
+    FileWritePipelineCreator fileWritePipelineCreator() {
+        return fileWritePipelineCreator;
+    }
 }
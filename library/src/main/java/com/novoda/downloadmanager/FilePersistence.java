@@ -7,12 +7,57 @@ import android.content.Context;
  */
 public interface FilePersistence {
 
+    long DEFAULT_SYNC_INTERVAL_IN_BYTES = 1024 * 1024;
+
     void initialiseWith(Context context, StorageRequirementRule storageRequirementRule);
 
     FilePersistenceResult create(FilePath absoluteFilePath, FileSize fileSize);
 
     boolean write(byte[] buffer, int offset, int numberOfBytesToWrite);
 
+    /**
+     * Writes at an explicit position of the file rather than appending to it,
+     * must be safe to call from several threads at once.
+     * Required to download files in segments, the default fails every write.
+     */
+    default boolean write(byte[] buffer, int offset, int numberOfBytesToWrite, long position) {
+        return false;
+    }
+
+    /**
+     * Makes sure every byte written so far has reached the file, implementations that buffer writes must honour it.
+     * The default does nothing, for implementations that write straight through.
+     */
+    default boolean flush() {
+        return true;
+    }
+
+    /**
+     * Forces every byte written so far to the storage device, they are still in the file if the process or the device dies.
+     * Only offsets of synced bytes are checkpointed, so that a download never resumes after bytes that were lost.
+     * The default does nothing, bytes that were lost with the device are then downloaded again only if the file is restarted.
+     */
+    default boolean sync() {
+        return true;
+    }
+
+    /**
+     * How many bytes a download writes between two syncs, each sync checkpoints the bytes written so far.
+     * Defaults to {@link #DEFAULT_SYNC_INTERVAL_IN_BYTES}.
+     */
+    default long syncIntervalInBytes() {
+        return DEFAULT_SYNC_INTERVAL_IN_BYTES;
+    }
+
+    /**
+     * Drops the bytes past the given size, a download resumes from its last checkpoint rather than after a tail that
+     * may never have reached the storage device.
+     * The default does not truncate, the file is then resumed after its current size or deleted when it restarts.
+     */
+    default boolean truncate(FilePath absoluteFilePath, long size) {
+        return false;
+    }
+
     void delete(FilePath absoluteFilePath);
 
     long getCurrentSize(FilePath filePath);
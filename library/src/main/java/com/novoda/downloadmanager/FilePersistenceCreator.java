@@ -4,9 +4,13 @@ import android.content.Context;
 
 final class FilePersistenceCreator {
 
+    private static final int MAXIMUM_POOLED_BUFFERS = 16;
+
     private final Context context;
 
     private StorageRequirementRule storageRequirementRule;
+    private Optional<ByteBufferPool> channelBufferPool = Optional.absent();
+    private long channelSyncIntervalInBytes;
 
     FilePersistenceCreator(Context context) {
         this.context = context.getApplicationContext();
@@ -16,8 +20,18 @@ final class FilePersistenceCreator {
         this.storageRequirementRule = storageRequirementRule;
     }
 
+    void withChannelFilePersistence(int flushIntervalInBytes, long syncIntervalInBytes) {
+        this.channelBufferPool = Optional.of(new ByteBufferPool(flushIntervalInBytes, MAXIMUM_POOLED_BUFFERS));
+        this.channelSyncIntervalInBytes = syncIntervalInBytes;
+    }
+
     FilePersistence create() {
-        FilePersistence filePersistence = new PathBasedFilePersistence();
+        FilePersistence filePersistence;
+        if (channelBufferPool.isPresent()) {
+            filePersistence = new ChannelFilePersistence(channelBufferPool.get(), channelSyncIntervalInBytes);
+        } else {
+            filePersistence = new PathBasedFilePersistence();
+        }
         filePersistence.initialiseWith(context, storageRequirementRule);
         return filePersistence;
     }
@@ -0,0 +1,108 @@
+package com.novoda.downloadmanager;
+
+/**
+ * A byte range of a {@link DownloadFile} that is fetched over its own connection.
+ * Only the thread downloading the segment advances it, other threads only read it.
+ */
+class FileSegment {
+
+    private final int index;
+    private final long startByte;
+    private final long endByte;
+
+    private volatile long bytesDownloaded;
+    private volatile long bytesCheckpointed;
+
+    FileSegment(int index, long startByte, long endByte, long bytesDownloaded) {
+        this.index = index;
+        this.startByte = startByte;
+        this.endByte = endByte;
+        this.bytesDownloaded = bytesDownloaded;
+        this.bytesCheckpointed = bytesDownloaded;
+    }
+
+    int index() {
+        return index;
+    }
+
+    long startByte() {
+        return startByte;
+    }
+
+    /**
+     * @return the exclusive end of this segment.
+     */
+    long endByte() {
+        return endByte;
+    }
+
+    long bytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    long currentPosition() {
+        return startByte + bytesDownloaded;
+    }
+
+    long remainingBytes() {
+        return endByte - currentPosition();
+    }
+
+    boolean isComplete() {
+        return remainingBytes() <= 0;
+    }
+
+    void addToBytesDownloaded(long bytes) {
+        bytesDownloaded += bytes;
+    }
+
+    long bytesSinceLastCheckpoint() {
+        return bytesDownloaded - bytesCheckpointed;
+    }
+
+    void markAsCheckpointed() {
+        bytesCheckpointed = bytesDownloaded;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        FileSegment that = (FileSegment) o;
+
+        if (index != that.index) {
+            return false;
+        }
+        if (startByte != that.startByte) {
+            return false;
+        }
+        if (endByte != that.endByte) {
+            return false;
+        }
+        return bytesDownloaded == that.bytesDownloaded;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = index;
+        result = 31 * result + (int) (startByte ^ (startByte >>> 32));
+        result = 31 * result + (int) (endByte ^ (endByte >>> 32));
+        result = 31 * result + (int) (bytesDownloaded ^ (bytesDownloaded >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "FileSegment{"
+                + "index=" + index
+                + ", startByte=" + startByte
+                + ", endByte=" + endByte
+                + ", bytesDownloaded=" + bytesDownloaded
+                + '}';
+    }
+}
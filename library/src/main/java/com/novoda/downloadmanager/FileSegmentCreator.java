@@ -0,0 +1,46 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+final class FileSegmentCreator {
+
+    private static final long MINIMUM_SEGMENT_SIZE_IN_BYTES = 4 * 1024 * 1024;
+    private static final long NO_BYTES_DOWNLOADED = 0;
+
+    private FileSegmentCreator() {
+        // Uses static factory methods.
+    }
+
+    /**
+     * Splits a file into at most {@code maximumSegments} contiguous byte ranges,
+     * none of which is smaller than {@link #MINIMUM_SEGMENT_SIZE_IN_BYTES} apart from the last one.
+     *
+     * @return an empty list when the file is too small to be worth splitting.
+     */
+    static List<FileSegment> createSegmentsFor(long totalSize, int maximumSegments) {
+        long numberOfSegments = Math.min(maximumSegments, totalSize / MINIMUM_SEGMENT_SIZE_IN_BYTES);
+        if (numberOfSegments < 2) {
+            return Collections.emptyList();
+        }
+
+        long segmentSize = totalSize / numberOfSegments;
+        List<FileSegment> segments = new ArrayList<>((int) numberOfSegments);
+        for (int index = 0; index < numberOfSegments; index++) {
+            long startByte = index * segmentSize;
+            long endByte = index == numberOfSegments - 1 ? totalSize : startByte + segmentSize;
+            segments.add(new FileSegment(index, startByte, endByte, NO_BYTES_DOWNLOADED));
+        }
+        return segments;
+    }
+
+    static FileSegment from(DownloadsFileSegmentPersisted segmentPersisted) {
+        return new FileSegment(
+                segmentPersisted.segmentIndex(),
+                segmentPersisted.startByte(),
+                segmentPersisted.endByte(),
+                segmentPersisted.bytesDownloaded()
+        );
+    }
+}
@@ -0,0 +1,191 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Decouples the network reads of a file from its writes, reads fill a bounded ring of buffers that a writer drains
+ * to the {@link FilePersistence} on its own thread. While the ring is full the reader waits for a free buffer,
+ * so a slow disk slows down the network reads rather than piling up memory.
+ */
+class FileWritePipeline {
+
+    private static final Slot END_OF_PIPELINE = new Slot();
+
+    private final ExecutorService writerExecutor;
+    private final ReadBufferPool readBufferPool;
+    private final FilePersistence filePersistence;
+    private final FileWriteQueueCounters counters;
+    private final List<Slot> slots;
+    private final BlockingQueue<Slot> freeSlots;
+    private final BlockingQueue<Slot> filledSlots;
+
+    private volatile boolean hasFailed;
+    private CountDownLatch drained = new CountDownLatch(0);
+
+    FileWritePipeline(ExecutorService writerExecutor,
+                      ReadBufferPool readBufferPool,
+                      FilePersistence filePersistence,
+                      FileWriteQueueCounters counters,
+                      int capacity) {
+        this.writerExecutor = writerExecutor;
+        this.readBufferPool = readBufferPool;
+        this.filePersistence = filePersistence;
+        this.counters = counters;
+        this.slots = new ArrayList<>(capacity);
+        this.freeSlots = new ArrayBlockingQueue<>(capacity);
+        this.filledSlots = new ArrayBlockingQueue<>(capacity + 1);
+        for (int index = 0; index < capacity; index++) {
+            slots.add(new Slot());
+        }
+    }
+
+    /**
+     * Starts the writer of a single download, every start must be followed by {@link #finish()}.
+     */
+    void start(Listener listener) {
+        hasFailed = false;
+        freeSlots.clear();
+        freeSlots.addAll(slots);
+        filledSlots.clear();
+        drained = new CountDownLatch(1);
+        counters.onPipelineStarted(slots.size());
+        writerExecutor.submit(() -> drain(listener));
+    }
+
+    /**
+     * Copies the bytes into the ring, waiting for free buffers while the ring is full.
+     *
+     * @return false when the bytes cannot be written anymore and reading should stop.
+     */
+    boolean offer(byte[] buffer, int length) {
+        int offset = 0;
+        try {
+            while (offset < length && !hasFailed) {
+                Slot slot = freeSlots.poll();
+                if (slot == null) {
+                    counters.onReaderWaited();
+                    slot = freeSlots.take();
+                }
+
+                offset += slot.fill(readBufferPool, buffer, offset, length - offset);
+                counters.onBufferQueued();
+                filledSlots.put(slot);
+            }
+        } catch (InterruptedException e) {
+            Logger.w("interrupted while waiting for a free buffer");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+        return !hasFailed;
+    }
+
+    private void drain(Listener listener) {
+        try {
+            Slot slot = nextFilledSlot();
+            while (slot != END_OF_PIPELINE) {
+                write(slot, listener);
+                counters.onBufferWritten();
+                freeSlots.put(slot);
+                slot = nextFilledSlot();
+            }
+        } catch (InterruptedException e) {
+            Logger.w("file writer interrupted");
+            Thread.currentThread().interrupt();
+        } finally {
+            drained.countDown();
+        }
+    }
+
+    private Slot nextFilledSlot() throws InterruptedException {
+        Slot slot = filledSlots.poll();
+        if (slot == null) {
+            counters.onWriterWaited();
+            slot = filledSlots.take();
+        }
+        return slot;
+    }
+
+    private void write(Slot slot, Listener listener) {
+        if (hasFailed) {
+            return;
+        }
+
+        if (filePersistence.write(slot.bytes, 0, slot.length)) {
+            listener.onBytesWritten(slot.bytes, slot.length);
+        } else {
+            hasFailed = true;
+            listener.onWriteFailed();
+        }
+    }
+
+    /**
+     * Waits for the writer to write all the queued bytes, the file can be closed afterwards.
+     */
+    void finish() {
+        boolean wasInterrupted = false;
+        try {
+            filledSlots.add(END_OF_PIPELINE);
+            while (true) {
+                try {
+                    drained.await();
+                    break;
+                } catch (InterruptedException e) {
+                    // The buffers cannot be released while the writer may still use them.
+                    wasInterrupted = true;
+                }
+            }
+        } finally {
+            for (Slot slot : slots) {
+                slot.release(readBufferPool);
+            }
+            counters.onPipelineFinished(slots.size());
+            if (wasInterrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    interface Listener {
+
+        /**
+         * Called from the writer thread for every chunk of bytes that was written, the bytes are only valid during the call.
+         */
+        void onBytesWritten(byte[] bytes, int bytesWritten);
+
+        /**
+         * Called from the writer thread once, the remaining bytes are discarded afterwards.
+         */
+        void onWriteFailed();
+    }
+
+    private static final class Slot {
+
+        private static final byte[] NO_BYTES = new byte[0];
+
+        private byte[] bytes = NO_BYTES;
+        private int length;
+
+        int fill(ReadBufferPool readBufferPool, byte[] buffer, int offset, int remainingLength) {
+            if (bytes.length < remainingLength) {
+                release(readBufferPool);
+                bytes = readBufferPool.acquire(remainingLength);
+            }
+
+            length = Math.min(bytes.length, remainingLength);
+            System.arraycopy(buffer, offset, bytes, 0, length);
+            return length;
+        }
+
+        void release(ReadBufferPool readBufferPool) {
+            if (bytes != NO_BYTES) {
+                readBufferPool.release(bytes);
+                bytes = NO_BYTES;
+            }
+        }
+    }
+}
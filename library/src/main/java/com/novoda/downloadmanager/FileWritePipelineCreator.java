@@ -0,0 +1,39 @@
+package com.novoda.downloadmanager;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class FileWritePipelineCreator {
+
+    static final int NO_PIPELINE = 0;
+
+    private final ExecutorService writerExecutor;
+    private final ReadBufferPool readBufferPool;
+    private final FileWriteQueueCounters counters;
+    private final int capacity;
+
+    static FileWritePipelineCreator newInstance(ReadBufferPool readBufferPool, int capacity) {
+        return new FileWritePipelineCreator(Executors.newCachedThreadPool(), readBufferPool, new FileWriteQueueCounters(), capacity);
+    }
+
+    FileWritePipelineCreator(ExecutorService writerExecutor, ReadBufferPool readBufferPool, FileWriteQueueCounters counters, int capacity) {
+        this.writerExecutor = writerExecutor;
+        this.readBufferPool = readBufferPool;
+        this.counters = counters;
+        this.capacity = capacity;
+    }
+
+    /**
+     * Segmented downloads write from the thread of each segment and are never pipelined.
+     */
+    Optional<FileWritePipeline> create(FilePersistence filePersistence) {
+        if (capacity == NO_PIPELINE) {
+            return Optional.absent();
+        }
+        return Optional.of(new FileWritePipeline(writerExecutor, readBufferPool, filePersistence, counters, capacity));
+    }
+
+    FileWriteQueueState queueState() {
+        return counters.queueState();
+    }
+}
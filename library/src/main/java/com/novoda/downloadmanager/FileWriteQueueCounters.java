@@ -0,0 +1,52 @@
+package com.novoda.downloadmanager;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the occupancy of all the {@link FileWritePipeline}s of a download manager.
+ */
+class FileWriteQueueCounters {
+
+    private final AtomicInteger activePipelines = new AtomicInteger();
+    private final AtomicInteger capacity = new AtomicInteger();
+    private final AtomicInteger queuedBuffers = new AtomicInteger();
+    private final AtomicLong readerWaits = new AtomicLong();
+    private final AtomicLong writerWaits = new AtomicLong();
+
+    void onPipelineStarted(int pipelineCapacity) {
+        activePipelines.incrementAndGet();
+        capacity.addAndGet(pipelineCapacity);
+    }
+
+    void onPipelineFinished(int pipelineCapacity) {
+        activePipelines.decrementAndGet();
+        capacity.addAndGet(-pipelineCapacity);
+    }
+
+    void onBufferQueued() {
+        queuedBuffers.incrementAndGet();
+    }
+
+    void onBufferWritten() {
+        queuedBuffers.decrementAndGet();
+    }
+
+    void onReaderWaited() {
+        readerWaits.incrementAndGet();
+    }
+
+    void onWriterWaited() {
+        writerWaits.incrementAndGet();
+    }
+
+    FileWriteQueueState queueState() {
+        return new LiteFileWriteQueueState(
+                activePipelines.get(),
+                capacity.get(),
+                queuedBuffers.get(),
+                readerWaits.get(),
+                writerWaits.get()
+        );
+    }
+}
@@ -0,0 +1,34 @@
+package com.novoda.downloadmanager;
+
+/**
+ * Snapshot of the buffers queued between the network reads and the file writes of pipelined downloads.
+ * Readers waiting for a free buffer point at downloads that are bound by the disk,
+ * writers waiting for a filled buffer point at downloads that are bound by the network.
+ */
+public interface FileWriteQueueState {
+
+    /**
+     * @return the number of files that are being written through a pipeline.
+     */
+    int activePipelines();
+
+    /**
+     * @return the number of buffers of all active pipelines.
+     */
+    int capacity();
+
+    /**
+     * @return the number of buffers that have been read from the network and are waiting to be written.
+     */
+    int queuedBuffers();
+
+    /**
+     * @return how many times a network read waited for a free buffer since the download manager was created.
+     */
+    long readerWaits();
+
+    /**
+     * @return how many times a file writer waited for a filled buffer since the download manager was created.
+     */
+    long writerWaits();
+}
@@ -0,0 +1,23 @@
+package com.novoda.downloadmanager;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+
+final class HostExtractor {
+
+    private HostExtractor() {
+        // Uses static method.
+    }
+
+    /**
+     * @return the host of the url, or the url itself when it has none, so that it is still limited on its own.
+     */
+    static String extractFrom(String url) {
+        try {
+            String host = new URL(url).getHost();
+            return host.isEmpty() ? url : host;
+        } catch (MalformedURLException e) {
+            return url;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Selects, orders and pages stored batches the way a {@link DownloadBatchQuery} asks, for persistences that cannot query them.
+ */
+final class InMemoryBatchQuery {
+
+    private static final long UNKNOWN_SIZE = 0;
+
+    private InMemoryBatchQuery() {
+        // Uses static methods.
+    }
+
+    static List<DownloadsBatchPersisted> page(Collection<DownloadsBatchPersisted> batchesPersisted, DownloadBatchQuery query) {
+        List<DownloadsBatchPersisted> matchingBatches = matching(batchesPersisted, query);
+        Collections.sort(matchingBatches, orderFrom(query.sortOrder()));
+
+        int fromIndex = Math.min(query.offset(), matchingBatches.size());
+        int toIndex = query.limit() == DownloadBatchQuery.NO_LIMIT
+                ? matchingBatches.size()
+                : (int) Math.min((long) fromIndex + query.limit(), matchingBatches.size());
+        return new ArrayList<>(matchingBatches.subList(fromIndex, toIndex));
+    }
+
+    static int count(Collection<DownloadsBatchPersisted> batchesPersisted, DownloadBatchQuery query) {
+        return matching(batchesPersisted, query).size();
+    }
+
+    /**
+     * The sizes are unknown as long as the size of a single file is unknown.
+     */
+    static DownloadsBatchProgressPersisted withProgress(DownloadsBatchPersisted batchPersisted,
+                                                       Collection<DownloadsFilePersisted> filesPersisted) {
+        long bytesDownloaded = 0;
+        long totalBatchSizeBytes = 0;
+        for (DownloadsFilePersisted filePersisted : filesPersisted) {
+            if (filePersisted.totalFileSize() <= UNKNOWN_SIZE) {
+                return new LiteDownloadsBatchProgressPersisted(batchPersisted, UNKNOWN_SIZE, UNKNOWN_SIZE);
+            }
+            bytesDownloaded += Math.max(filePersisted.bytesDownloaded(), 0);
+            totalBatchSizeBytes += filePersisted.totalFileSize();
+        }
+        return new LiteDownloadsBatchProgressPersisted(batchPersisted, bytesDownloaded, totalBatchSizeBytes);
+    }
+
+    private static List<DownloadsBatchPersisted> matching(Collection<DownloadsBatchPersisted> batchesPersisted, DownloadBatchQuery query) {
+        List<DownloadsBatchPersisted> matchingBatches = new ArrayList<>();
+        for (DownloadsBatchPersisted batchPersisted : batchesPersisted) {
+            if (query.statuses().isEmpty() || query.statuses().contains(batchPersisted.downloadBatchStatus())) {
+                matchingBatches.add(batchPersisted);
+            }
+        }
+        return matchingBatches;
+    }
+
+    private static Comparator<DownloadsBatchPersisted> orderFrom(DownloadBatchSortOrder sortOrder) {
+        switch (sortOrder) {
+            case NEWEST_FIRST:
+                return (first, second) -> byRawId(Long.compare(second.downloadedDateTimeInMillis(), first.downloadedDateTimeInMillis()), first, second);
+            case OLDEST_FIRST:
+                return (first, second) -> byRawId(Long.compare(first.downloadedDateTimeInMillis(), second.downloadedDateTimeInMillis()), first, second);
+            case TITLE_ASCENDING:
+                return (first, second) -> byRawId(String.CASE_INSENSITIVE_ORDER.compare(titleOf(first), titleOf(second)), first, second);
+            case TITLE_DESCENDING:
+                return (first, second) -> byRawId(String.CASE_INSENSITIVE_ORDER.compare(titleOf(second), titleOf(first)), first, second);
+            default:
+                throw new IllegalStateException("sort order " + sortOrder + " not supported.");
+        }
+    }
+
+    private static int byRawId(int comparison, DownloadsBatchPersisted first, DownloadsBatchPersisted second) {
+        if (comparison != 0) {
+            return comparison;
+        }
+        return first.downloadBatchId().rawId().compareTo(second.downloadBatchId().rawId());
+    }
+
+    private static String titleOf(DownloadsBatchPersisted batchPersisted) {
+        return nonNull(batchPersisted.downloadBatchTitle().asString());
+    }
+
+    private static String nonNull(@Nullable String title) {
+        return title == null ? "" : title;
+    }
+}
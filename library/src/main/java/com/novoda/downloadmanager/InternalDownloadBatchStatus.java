@@ -4,6 +4,8 @@ interface InternalDownloadBatchStatus extends DownloadBatchStatus {
 
     void updateTotalSize(long totalBatchSizeBytes);
 
+    void updatePartialTotalSize(long knownBatchSizeBytes);
+
     void updateDownloaded(long currentBytesDownloaded);
 
     void markAsDownloading(DownloadsBatchStatusPersistence persistence);
@@ -24,5 +26,14 @@ interface InternalDownloadBatchStatus extends DownloadBatchStatus {
 
     void markAsNotificationSeen(DownloadsNotificationSeenPersistence persistence);
 
-    InternalDownloadBatchStatus copy();
+    /**
+     * @return a version that increases whenever a field of the status changes, and never otherwise.
+     */
+    long version();
+
+    /**
+     * @return a copy of the status as of its current version, the same copy until the status changes.
+     * A snapshot is never changed once it is published.
+     */
+    InternalDownloadBatchStatus snapshot();
 }
@@ -0,0 +1,400 @@
+package com.novoda.downloadmanager;
+
+import android.content.Context;
+
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A {@link DownloadsPersistence} that appends compact binary records to a memory-mapped journal rather than updating
+ * rows of a database, for apps that persist a lot of progress. Every row is kept in memory so loading never touches
+ * the disk, the journal is compacted into a snapshot once it grows past a threshold and both are replayed the first
+ * time the persistence is used.
+ * <p>
+ * Committed writes survive the process being killed, the writes of a transaction that was not committed are dropped.
+ * A journal that cannot be opened fails every call with an {@link IllegalStateException} until it can be opened.
+ * Select it with {@link DownloadManagerBuilder#withDownloadsPersistenceCustom(DownloadsPersistence)}.
+ */
+public final class JournalDownloadsPersistence implements DownloadsPersistence {
+
+    static final long DEFAULT_COMPACTION_THRESHOLD_IN_BYTES = 4 * 1024 * 1024;
+
+    private static final String JOURNAL_DIRECTORY = "download-manager-journal";
+    private static final boolean NOTIFICATION_SEEN = true;
+
+    private final DownloadsJournal journal;
+    private final long compactionThresholdInBytes;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final JournalRecords pendingRecords = new JournalRecords();
+
+    @Nullable
+    private JournalDownloadsState state;
+    private int transactionDepth;
+    private boolean isTransactionLevelSuccessful;
+    private boolean hasTransactionFailed;
+
+    public static JournalDownloadsPersistence newInstance(Context context) {
+        File directory = new File(context.getApplicationContext().getFilesDir(), JOURNAL_DIRECTORY);
+        return new JournalDownloadsPersistence(new DownloadsJournal(directory), DEFAULT_COMPACTION_THRESHOLD_IN_BYTES);
+    }
+
+    JournalDownloadsPersistence(DownloadsJournal journal, long compactionThresholdInBytes) {
+        this.journal = journal;
+        this.compactionThresholdInBytes = compactionThresholdInBytes;
+    }
+
+    /**
+     * Holds the lock until the outermost transaction ends, its writes are appended to the journal as a single frame
+     * only when every level of it was marked successful. Otherwise they are undone in memory.
+     */
+    @Override
+    public void startTransaction() {
+        lock.lock();
+        if (transactionDepth > 0 && !isTransactionLevelSuccessful) {
+            hasTransactionFailed = true;
+        }
+        transactionDepth++;
+        isTransactionLevelSuccessful = false;
+    }
+
+    @Override
+    public void transactionSuccess() {
+        isTransactionLevelSuccessful = true;
+    }
+
+    @Override
+    public void endTransaction() {
+        try {
+            if (!isTransactionLevelSuccessful) {
+                hasTransactionFailed = true;
+            }
+            transactionDepth--;
+            isTransactionLevelSuccessful = transactionDepth > 0;
+            if (transactionDepth == 0) {
+                endOutermostTransaction();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void endOutermostTransaction() {
+        if (hasTransactionFailed) {
+            hasTransactionFailed = false;
+            pendingRecords.clear();
+            if (state != null) {
+                state.undo();
+            }
+        } else {
+            commit();
+            if (state != null) {
+                state.forgetUndo();
+            }
+        }
+    }
+
+    @Override
+    public void persistBatch(DownloadsBatchPersisted batchPersisted) {
+        lock.lock();
+        try {
+            writableState().putBatch(batchPersisted);
+            pendingRecords.putBatch(batchPersisted);
+            commitOutsideOfTransaction();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatches() {
+        lock.lock();
+        try {
+            return state().batches();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<DownloadsBatchProgressPersisted> loadBatches(DownloadBatchQuery query) {
+        lock.lock();
+        try {
+            return state().batches(query);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int countBatches(DownloadBatchQuery query) {
+        lock.lock();
+        try {
+            return state().count(query);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void persistFile(DownloadsFilePersisted filePersisted) {
+        lock.lock();
+        try {
+            writableState().putFile(filePersisted);
+            pendingRecords.putFile(filePersisted);
+            commitOutsideOfTransaction();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<DownloadsFilePersisted> loadAllFiles() {
+        lock.lock();
+        try {
+            return state().allFiles();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<DownloadsFilePersisted> loadFiles(DownloadBatchId batchId) {
+        lock.lock();
+        try {
+            return state().files(batchId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void persistFileSegment(DownloadsFileSegmentPersisted segmentPersisted) {
+        lock.lock();
+        try {
+            writableState().putFileSegment(segmentPersisted);
+            pendingRecords.putFileSegment(segmentPersisted);
+            commitOutsideOfTransaction();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<DownloadsFileSegmentPersisted> loadFileSegments(DownloadBatchId batchId, DownloadFileId fileId) {
+        lock.lock();
+        try {
+            return state().fileSegments(batchId, fileId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteFileSegments(DownloadBatchId batchId, DownloadFileId fileId) {
+        lock.lock();
+        try {
+            writableState().deleteFileSegments(batchId, fileId);
+            pendingRecords.deleteFileSegments(batchId, fileId);
+            commitOutsideOfTransaction();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void loadBatchesWithFiles(DownloadsPersistedRowsCallback callback) {
+        lock.lock();
+        try {
+            state().loadBatchesWithFiles(callback);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean delete(DownloadBatchId downloadBatchId) {
+        lock.lock();
+        try {
+            boolean deleted = writableState().delete(downloadBatchId);
+            if (deleted) {
+                pendingRecords.delete(downloadBatchId);
+                commitOutsideOfTransaction();
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean update(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+        lock.lock();
+        try {
+            boolean updated = writableState().updateStatus(downloadBatchId, status);
+            if (updated) {
+                pendingRecords.updateStatus(downloadBatchId, status);
+                commitOutsideOfTransaction();
+            }
+            return updated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean update(DownloadBatchId downloadBatchId, boolean notificationSeen) {
+        lock.lock();
+        try {
+            boolean updated = writableState().updateNotificationSeen(downloadBatchId, notificationSeen);
+            if (updated) {
+                pendingRecords.updateNotificationSeen(downloadBatchId, notificationSeen);
+                commitOutsideOfTransaction();
+            }
+            return updated;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int deleteAll(List<DownloadBatchId> downloadBatchIds) {
+        lock.lock();
+        try {
+            int deletedCount = 0;
+            for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                if (writableState().delete(downloadBatchId)) {
+                    pendingRecords.delete(downloadBatchId);
+                    deletedCount++;
+                }
+            }
+            commitOutsideOfTransaction();
+            return deletedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int updateAll(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status) {
+        lock.lock();
+        try {
+            int updatedCount = 0;
+            for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                if (writableState().updateStatus(downloadBatchId, status)) {
+                    pendingRecords.updateStatus(downloadBatchId, status);
+                    updatedCount++;
+                }
+            }
+            commitOutsideOfTransaction();
+            return updatedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
+        DownloadBatchId downloadBatchId = completedDownloadBatch.downloadBatchId();
+        DownloadsBatchPersisted persistedBatch = new LiteDownloadsBatchPersisted(
+                completedDownloadBatch.downloadBatchTitle(),
+                downloadBatchId,
+                DownloadBatchStatus.Status.DOWNLOADED,
+                completedDownloadBatch.downloadedDateTimeInMillis(),
+                NOTIFICATION_SEEN,
+                completedDownloadBatch.storageRoot().path()
+        );
+
+        startTransaction();
+        try {
+            persistBatch(persistedBatch);
+            for (CompletedDownloadFile completedDownloadFile : completedDownloadBatch.completedDownloadFiles()) {
+                String rawDownloadFileId = rawFileIdFrom(completedDownloadBatch.downloadBatchTitle(), completedDownloadFile);
+                DownloadsFilePersisted persistedFile = new LiteDownloadsFilePersisted(
+                        downloadBatchId,
+                        DownloadFileIdCreator.createFrom(rawDownloadFileId),
+                        new LiteFilePath(completedDownloadFile.newFileLocation()),
+                        completedDownloadFile.fileSize().totalSize(),
+                        completedDownloadFile.originalNetworkAddress(),
+                        completedDownloadFile.fileSize().totalSize(),
+                        DownloadFileStatus.Status.DOWNLOADED,
+                        null,
+                        null,
+                        null
+                );
+                persistFile(persistedFile);
+            }
+            transactionSuccess();
+        } finally {
+            endTransaction();
+        }
+    }
+
+    private String rawFileIdFrom(DownloadBatchTitle batch, CompletedDownloadFile completedDownloadFile) {
+        if (completedDownloadFile.fileId() == null || completedDownloadFile.fileId().isEmpty()) {
+            return batch.asString() + UUID.randomUUID();
+        } else {
+            return completedDownloadFile.fileId();
+        }
+    }
+
+    private JournalDownloadsState state() {
+        if (state == null) {
+            JournalDownloadsState replayedState = new JournalDownloadsState();
+            try {
+                journal.open(payload -> JournalRecords.replay(payload, replayedState));
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not open the downloads journal", e);
+            }
+            state = replayedState;
+        }
+        return state;
+    }
+
+    private JournalDownloadsState writableState() {
+        JournalDownloadsState writableState = state();
+        if (transactionDepth > 0) {
+            writableState.startUndo();
+        }
+        return writableState;
+    }
+
+    private void commitOutsideOfTransaction() {
+        if (transactionDepth == 0) {
+            commit();
+        }
+    }
+
+    private void commit() {
+        if (pendingRecords.isEmpty()) {
+            return;
+        }
+
+        try {
+            journal.append(pendingRecords.toByteArray());
+        } catch (IOException e) {
+            Logger.e(e, "Could not append to the downloads journal");
+        } finally {
+            pendingRecords.clear();
+        }
+
+        if (journal.sizeInBytes() > compactionThresholdInBytes) {
+            compact();
+        }
+    }
+
+    private void compact() {
+        JournalRecords snapshotRecords = new JournalRecords();
+        state().writeTo(snapshotRecords);
+        try {
+            journal.compact(snapshotRecords.toByteArray());
+        } catch (IOException e) {
+            Logger.e(e, "Could not compact the downloads journal");
+        }
+    }
+}
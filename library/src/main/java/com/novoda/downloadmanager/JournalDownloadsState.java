@@ -0,0 +1,280 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The rows of a {@link JournalDownloadsPersistence}, as they are after replaying its journal.
+ * Batches and files keep the order they were first persisted in, segments are ordered by their index.
+ * <p>
+ * While an undo is started, every batch is kept as it was before its first change so that the changes can be undone
+ * without replaying the journal.
+ */
+final class JournalDownloadsState {
+
+    private final Map<String, JournalBatch> batches = new LinkedHashMap<>();
+
+    @Nullable
+    private Map<String, JournalBatch> batchesBeforeChanges;
+    @Nullable
+    private List<String> batchOrderBeforeDeletes;
+
+    void startUndo() {
+        if (batchesBeforeChanges == null) {
+            batchesBeforeChanges = new HashMap<>();
+        }
+    }
+
+    /**
+     * Puts back every batch changed since the undo was started, in the order the batches were in.
+     */
+    void undo() {
+        if (batchesBeforeChanges == null) {
+            return;
+        }
+
+        for (Map.Entry<String, JournalBatch> entry : batchesBeforeChanges.entrySet()) {
+            if (entry.getValue() == null) {
+                batches.remove(entry.getKey());
+            } else {
+                batches.put(entry.getKey(), entry.getValue());
+            }
+        }
+        if (batchOrderBeforeDeletes != null) {
+            Map<String, JournalBatch> restoredBatches = new LinkedHashMap<>(batches);
+            batches.clear();
+            for (String rawBatchId : batchOrderBeforeDeletes) {
+                JournalBatch batch = restoredBatches.remove(rawBatchId);
+                if (batch != null) {
+                    batches.put(rawBatchId, batch);
+                }
+            }
+            batches.putAll(restoredBatches);
+        }
+        forgetUndo();
+    }
+
+    void forgetUndo() {
+        batchesBeforeChanges = null;
+        batchOrderBeforeDeletes = null;
+    }
+
+    private void keepForUndo(String rawBatchId) {
+        if (batchesBeforeChanges == null || batchesBeforeChanges.containsKey(rawBatchId)) {
+            return;
+        }
+        JournalBatch batch = batches.get(rawBatchId);
+        batchesBeforeChanges.put(rawBatchId, batch == null ? null : batch.copy());
+    }
+
+    void putBatch(DownloadsBatchPersisted batchPersisted) {
+        String rawBatchId = batchPersisted.downloadBatchId().rawId();
+        keepForUndo(rawBatchId);
+        JournalBatch batch = batches.get(rawBatchId);
+        if (batch == null) {
+            batches.put(rawBatchId, new JournalBatch(batchPersisted));
+        } else {
+            batch.batchPersisted = batchPersisted;
+        }
+    }
+
+    void putFile(DownloadsFilePersisted filePersisted) {
+        JournalBatch batch = batches.get(filePersisted.downloadBatchId().rawId());
+        if (batch == null) {
+            Logger.w("file " + filePersisted.downloadFileId().rawId() + " belongs to batch "
+                             + filePersisted.downloadBatchId().rawId() + " that is not stored, it is dropped");
+            return;
+        }
+        keepForUndo(filePersisted.downloadBatchId().rawId());
+        batch.files.put(filePersisted.downloadFileId().rawId(), filePersisted);
+    }
+
+    void putFileSegment(DownloadsFileSegmentPersisted segmentPersisted) {
+        JournalBatch batch = batches.get(segmentPersisted.downloadBatchId().rawId());
+        if (batch == null) {
+            Logger.w("segment " + segmentPersisted.segmentIndex() + " belongs to batch "
+                             + segmentPersisted.downloadBatchId().rawId() + " that is not stored, it is dropped");
+            return;
+        }
+        keepForUndo(segmentPersisted.downloadBatchId().rawId());
+        batch.segmentsOf(segmentPersisted.downloadFileId().rawId()).put(segmentPersisted.segmentIndex(), segmentPersisted);
+    }
+
+    boolean updateStatus(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+        JournalBatch batch = batches.get(downloadBatchId.rawId());
+        if (batch == null) {
+            return false;
+        }
+
+        keepForUndo(downloadBatchId.rawId());
+        DownloadsBatchPersisted batchPersisted = batch.batchPersisted;
+        batch.batchPersisted = new LiteDownloadsBatchPersisted(
+                batchPersisted.downloadBatchTitle(),
+                batchPersisted.downloadBatchId(),
+                status,
+                batchPersisted.downloadedDateTimeInMillis(),
+                batchPersisted.notificationSeen(),
+                batchPersisted.storageRoot()
+        );
+        return true;
+    }
+
+    boolean updateNotificationSeen(DownloadBatchId downloadBatchId, boolean notificationSeen) {
+        JournalBatch batch = batches.get(downloadBatchId.rawId());
+        if (batch == null) {
+            return false;
+        }
+
+        keepForUndo(downloadBatchId.rawId());
+        DownloadsBatchPersisted batchPersisted = batch.batchPersisted;
+        batch.batchPersisted = new LiteDownloadsBatchPersisted(
+                batchPersisted.downloadBatchTitle(),
+                batchPersisted.downloadBatchId(),
+                batchPersisted.downloadBatchStatus(),
+                batchPersisted.downloadedDateTimeInMillis(),
+                notificationSeen,
+                batchPersisted.storageRoot()
+        );
+        return true;
+    }
+
+    void deleteFileSegments(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId) {
+        JournalBatch batch = batches.get(downloadBatchId.rawId());
+        if (batch != null) {
+            keepForUndo(downloadBatchId.rawId());
+            batch.segments.remove(downloadFileId.rawId());
+        }
+    }
+
+    boolean delete(DownloadBatchId downloadBatchId) {
+        if (!batches.containsKey(downloadBatchId.rawId())) {
+            return false;
+        }
+
+        if (batchesBeforeChanges != null && batchOrderBeforeDeletes == null) {
+            batchOrderBeforeDeletes = new ArrayList<>(batches.keySet());
+        }
+        keepForUndo(downloadBatchId.rawId());
+        batches.remove(downloadBatchId.rawId());
+        return true;
+    }
+
+    List<DownloadsBatchPersisted> batches() {
+        List<DownloadsBatchPersisted> batchesPersisted = new ArrayList<>(batches.size());
+        for (JournalBatch batch : batches.values()) {
+            batchesPersisted.add(batch.batchPersisted);
+        }
+        return batchesPersisted;
+    }
+
+    List<DownloadsFilePersisted> allFiles() {
+        List<DownloadsFilePersisted> filesPersisted = new ArrayList<>();
+        for (JournalBatch batch : batches.values()) {
+            filesPersisted.addAll(batch.files.values());
+        }
+        return filesPersisted;
+    }
+
+    List<DownloadsFilePersisted> files(DownloadBatchId downloadBatchId) {
+        JournalBatch batch = batches.get(downloadBatchId.rawId());
+        return batch == null ? Collections.<DownloadsFilePersisted>emptyList() : new ArrayList<>(batch.files.values());
+    }
+
+    List<DownloadsFileSegmentPersisted> fileSegments(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId) {
+        JournalBatch batch = batches.get(downloadBatchId.rawId());
+        if (batch == null) {
+            return Collections.emptyList();
+        }
+        Map<Integer, DownloadsFileSegmentPersisted> segments = batch.segments.get(downloadFileId.rawId());
+        return segments == null ? Collections.<DownloadsFileSegmentPersisted>emptyList() : new ArrayList<>(segments.values());
+    }
+
+    void loadBatchesWithFiles(DownloadsPersistedRowsCallback callback) {
+        for (JournalBatch batch : batches.values()) {
+            callback.onBatch(batch.batchPersisted);
+            for (DownloadsFilePersisted filePersisted : batch.files.values()) {
+                callback.onFile(filePersisted);
+                Map<Integer, DownloadsFileSegmentPersisted> segments = batch.segments.get(filePersisted.downloadFileId().rawId());
+                if (segments == null) {
+                    continue;
+                }
+                for (DownloadsFileSegmentPersisted segmentPersisted : segments.values()) {
+                    callback.onFileSegment(
+                            segmentPersisted.segmentIndex(),
+                            segmentPersisted.startByte(),
+                            segmentPersisted.endByte(),
+                            segmentPersisted.bytesDownloaded()
+                    );
+                }
+            }
+        }
+    }
+
+    List<DownloadsBatchProgressPersisted> batches(DownloadBatchQuery query) {
+        List<DownloadsBatchPersisted> page = InMemoryBatchQuery.page(batches(), query);
+        List<DownloadsBatchProgressPersisted> batchesPersisted = new ArrayList<>(page.size());
+        for (DownloadsBatchPersisted batchPersisted : page) {
+            JournalBatch batch = batches.get(batchPersisted.downloadBatchId().rawId());
+            batchesPersisted.add(InMemoryBatchQuery.withProgress(batchPersisted, batch.files.values()));
+        }
+        return batchesPersisted;
+    }
+
+    int count(DownloadBatchQuery query) {
+        return InMemoryBatchQuery.count(batches(), query);
+    }
+
+    /**
+     * Writes every row as it is now, a journal that replays them restores this state.
+     */
+    void writeTo(JournalRecords records) {
+        for (JournalBatch batch : batches.values()) {
+            records.putBatch(batch.batchPersisted);
+            for (DownloadsFilePersisted filePersisted : batch.files.values()) {
+                records.putFile(filePersisted);
+            }
+            for (Map<Integer, DownloadsFileSegmentPersisted> segments : batch.segments.values()) {
+                for (DownloadsFileSegmentPersisted segmentPersisted : segments.values()) {
+                    records.putFileSegment(segmentPersisted);
+                }
+            }
+        }
+    }
+
+    private static final class JournalBatch {
+
+        private final Map<String, DownloadsFilePersisted> files = new LinkedHashMap<>();
+        private final Map<String, Map<Integer, DownloadsFileSegmentPersisted>> segments = new LinkedHashMap<>();
+
+        private DownloadsBatchPersisted batchPersisted;
+
+        JournalBatch(DownloadsBatchPersisted batchPersisted) {
+            this.batchPersisted = batchPersisted;
+        }
+
+        JournalBatch copy() {
+            JournalBatch batch = new JournalBatch(batchPersisted);
+            batch.files.putAll(files);
+            for (Map.Entry<String, Map<Integer, DownloadsFileSegmentPersisted>> entry : segments.entrySet()) {
+                batch.segments.put(entry.getKey(), new TreeMap<>(entry.getValue()));
+            }
+            return batch;
+        }
+
+        Map<Integer, DownloadsFileSegmentPersisted> segmentsOf(String rawFileId) {
+            Map<Integer, DownloadsFileSegmentPersisted> fileSegments = segments.get(rawFileId);
+            if (fileSegments == null) {
+                fileSegments = new TreeMap<>();
+                segments.put(rawFileId, fileSegments);
+            }
+            return fileSegments;
+        }
+    }
+}
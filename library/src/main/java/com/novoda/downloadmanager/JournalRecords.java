@@ -0,0 +1,248 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes the writes of a {@link JournalDownloadsPersistence} as compact binary records, one byte for the type of the
+ * record followed by its fields. Records are buffered until they are appended to the journal as a single frame.
+ */
+final class JournalRecords {
+
+    private static final byte PUT_BATCH = 1;
+    private static final byte PUT_FILE = 2;
+    private static final byte PUT_FILE_SEGMENT = 3;
+    private static final byte UPDATE_STATUS = 4;
+    private static final byte UPDATE_NOTIFICATION_SEEN = 5;
+    private static final byte DELETE_BATCH = 6;
+    private static final byte DELETE_FILE_SEGMENTS = 7;
+
+    private static final int NULL_STRING = -1;
+    private static final int LONG_SIZE_IN_BYTES = 8;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final ByteBuffer scratch = ByteBuffer.allocate(LONG_SIZE_IN_BYTES);
+
+    void putBatch(DownloadsBatchPersisted batchPersisted) {
+        bytes.write(PUT_BATCH);
+        writeString(batchPersisted.downloadBatchId().rawId());
+        writeString(batchPersisted.downloadBatchTitle().asString());
+        writeString(batchPersisted.downloadBatchStatus().toRawValue());
+        writeLong(batchPersisted.downloadedDateTimeInMillis());
+        writeBoolean(batchPersisted.notificationSeen());
+        writeString(batchPersisted.storageRoot());
+    }
+
+    void putFile(DownloadsFilePersisted filePersisted) {
+        DownloadFileStatus.Status fileStatus = filePersisted.fileStatus();
+        FileDigest expectedDigest = filePersisted.expectedDigest();
+        bytes.write(PUT_FILE);
+        writeString(filePersisted.downloadBatchId().rawId());
+        writeString(filePersisted.downloadFileId().rawId());
+        writeString(filePersisted.filePath().path());
+        writeLong(filePersisted.totalFileSize());
+        writeString(filePersisted.url());
+        writeLong(filePersisted.bytesDownloaded());
+        writeString(fileStatus == null ? null : fileStatus.name());
+        writeString(expectedDigest == null ? null : expectedDigest.toRawValue());
+        writeString(filePersisted.digestState());
+        writeString(filePersisted.rangeValidator());
+    }
+
+    void putFileSegment(DownloadsFileSegmentPersisted segmentPersisted) {
+        bytes.write(PUT_FILE_SEGMENT);
+        writeString(segmentPersisted.downloadBatchId().rawId());
+        writeString(segmentPersisted.downloadFileId().rawId());
+        writeInt(segmentPersisted.segmentIndex());
+        writeLong(segmentPersisted.startByte());
+        writeLong(segmentPersisted.endByte());
+        writeLong(segmentPersisted.bytesDownloaded());
+    }
+
+    void updateStatus(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+        bytes.write(UPDATE_STATUS);
+        writeString(downloadBatchId.rawId());
+        writeString(status.toRawValue());
+    }
+
+    void updateNotificationSeen(DownloadBatchId downloadBatchId, boolean notificationSeen) {
+        bytes.write(UPDATE_NOTIFICATION_SEEN);
+        writeString(downloadBatchId.rawId());
+        writeBoolean(notificationSeen);
+    }
+
+    void delete(DownloadBatchId downloadBatchId) {
+        bytes.write(DELETE_BATCH);
+        writeString(downloadBatchId.rawId());
+    }
+
+    void deleteFileSegments(DownloadBatchId downloadBatchId, DownloadFileId downloadFileId) {
+        bytes.write(DELETE_FILE_SEGMENTS);
+        writeString(downloadBatchId.rawId());
+        writeString(downloadFileId.rawId());
+    }
+
+    boolean isEmpty() {
+        return bytes.size() == 0;
+    }
+
+    byte[] toByteArray() {
+        return bytes.toByteArray();
+    }
+
+    void clear() {
+        bytes.reset();
+    }
+
+    private void writeBoolean(boolean value) {
+        bytes.write(value ? 1 : 0);
+    }
+
+    private void writeInt(int value) {
+        scratch.clear();
+        scratch.putInt(value);
+        bytes.write(scratch.array(), 0, scratch.position());
+    }
+
+    private void writeLong(long value) {
+        scratch.clear();
+        scratch.putLong(value);
+        bytes.write(scratch.array(), 0, scratch.position());
+    }
+
+    private void writeString(@Nullable String value) {
+        if (value == null) {
+            writeInt(NULL_STRING);
+            return;
+        }
+        byte[] encoded = value.getBytes(UTF_8);
+        writeInt(encoded.length);
+        bytes.write(encoded, 0, encoded.length);
+    }
+
+    /**
+     * Applies every record of a frame to the state, in the order they were written.
+     *
+     * @throws IOException when the frame holds a record that cannot be decoded.
+     */
+    static void replay(byte[] frame, JournalDownloadsState state) throws IOException {
+        DataInputStream input = new DataInputStream(new ByteArrayInputStream(frame));
+        while (input.available() > 0) {
+            replayRecord(input, state);
+        }
+    }
+
+    private static void replayRecord(DataInputStream input, JournalDownloadsState state) throws IOException {
+        byte recordType = input.readByte();
+        switch (recordType) {
+            case PUT_BATCH:
+                state.putBatch(readBatch(input));
+                break;
+            case PUT_FILE:
+                state.putFile(readFile(input));
+                break;
+            case PUT_FILE_SEGMENT:
+                state.putFileSegment(readFileSegment(input));
+                break;
+            case UPDATE_STATUS:
+                state.updateStatus(readBatchId(input), DownloadBatchStatus.Status.from(readString(input)));
+                break;
+            case UPDATE_NOTIFICATION_SEEN:
+                state.updateNotificationSeen(readBatchId(input), input.readBoolean());
+                break;
+            case DELETE_BATCH:
+                state.delete(readBatchId(input));
+                break;
+            case DELETE_FILE_SEGMENTS:
+                state.deleteFileSegments(readBatchId(input), DownloadFileIdCreator.createFrom(readString(input)));
+                break;
+            default:
+                throw new IOException("Record type " + recordType + " not supported.");
+        }
+    }
+
+    private static DownloadsBatchPersisted readBatch(DataInputStream input) throws IOException {
+        DownloadBatchId downloadBatchId = readBatchId(input);
+        DownloadBatchTitle downloadBatchTitle = DownloadBatchTitleCreator.createFrom(readString(input));
+        DownloadBatchStatus.Status status = DownloadBatchStatus.Status.from(readString(input));
+        long downloadedDateTimeInMillis = input.readLong();
+        boolean notificationSeen = input.readBoolean();
+        String storageRoot = readString(input);
+        return new LiteDownloadsBatchPersisted(
+                downloadBatchTitle,
+                downloadBatchId,
+                status,
+                downloadedDateTimeInMillis,
+                notificationSeen,
+                storageRoot
+        );
+    }
+
+    private static DownloadsFilePersisted readFile(DataInputStream input) throws IOException {
+        DownloadBatchId downloadBatchId = readBatchId(input);
+        DownloadFileId downloadFileId = DownloadFileIdCreator.createFrom(readString(input));
+        FilePath filePath = new LiteFilePath(readString(input));
+        long totalFileSize = input.readLong();
+        String url = readString(input);
+        long bytesDownloaded = input.readLong();
+        String rawFileStatus = readString(input);
+        FileDigest expectedDigest = FileDigest.fromRawValue(readString(input));
+        String digestState = readString(input);
+        String rangeValidator = readString(input);
+        return new LiteDownloadsFilePersisted(
+                downloadBatchId,
+                downloadFileId,
+                filePath,
+                totalFileSize,
+                url,
+                bytesDownloaded,
+                rawFileStatus == null ? null : DownloadFileStatus.Status.valueOf(rawFileStatus),
+                expectedDigest,
+                digestState,
+                rangeValidator
+        );
+    }
+
+    private static DownloadsFileSegmentPersisted readFileSegment(DataInputStream input) throws IOException {
+        DownloadBatchId downloadBatchId = readBatchId(input);
+        DownloadFileId downloadFileId = DownloadFileIdCreator.createFrom(readString(input));
+        int segmentIndex = input.readInt();
+        long startByte = input.readLong();
+        long endByte = input.readLong();
+        long bytesDownloaded = input.readLong();
+        return new LiteDownloadsFileSegmentPersisted(
+                downloadBatchId,
+                downloadFileId,
+                segmentIndex,
+                startByte,
+                endByte,
+                bytesDownloaded
+        );
+    }
+
+    private static DownloadBatchId readBatchId(DataInputStream input) throws IOException {
+        return DownloadBatchIdCreator.createSanitizedFrom(readString(input));
+    }
+
+    @Nullable
+    private static String readString(DataInputStream input) throws IOException {
+        int length = input.readInt();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        if (length < 0 || length > input.available()) {
+            throw new EOFException("String of " + length + " bytes does not fit in the record.");
+        }
+        byte[] encoded = new byte[length];
+        input.readFully(encoded);
+        return new String(encoded, UTF_8);
+    }
+}
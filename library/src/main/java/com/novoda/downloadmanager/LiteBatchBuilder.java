@@ -12,6 +12,8 @@ final class LiteBatchBuilder implements InternalBatchBuilder {
     private final List<BatchFile> batchFiles;
     private final BatchStorageRoot batchStorageRoot;
 
+    private int priority = Batch.DEFAULT_PRIORITY;
+
     LiteBatchBuilder(StorageRoot storageRoot, DownloadBatchId downloadBatchId, String title, List<BatchFile> batchFiles) {
         this.storageRoot = storageRoot;
         this.downloadBatchId = downloadBatchId;
@@ -30,10 +32,16 @@ final class LiteBatchBuilder implements InternalBatchBuilder {
         return BatchFile.from(batchStorageRoot, networkAddress).withParentBuilder(this);
     }
 
+    @Override
+    public BatchBuilder withPriority(int priority) {
+        this.priority = priority;
+        return this;
+    }
+
     @Override
     public Batch build() {
         ensureNoFileIdDuplicates(batchFiles);
-        return new Batch(storageRoot, downloadBatchId, title, batchFiles);
+        return new Batch(storageRoot, downloadBatchId, title, batchFiles, priority);
     }
 
     private void ensureNoFileIdDuplicates(List<BatchFile> batchFiles) {
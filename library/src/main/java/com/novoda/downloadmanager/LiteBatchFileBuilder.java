@@ -15,6 +15,7 @@ final class LiteBatchFileBuilder implements InternalBatchFileBuilder {
     private Optional<String> path = Optional.absent();
     private Optional<String> fileName = Optional.absent();
     private Optional<FileSize> fileSize = Optional.absent();
+    private Optional<FileDigest> expectedDigest = Optional.absent();
 
     private InternalBatchBuilder parentBuilder;
 
@@ -54,6 +55,12 @@ final class LiteBatchFileBuilder implements InternalBatchFileBuilder {
         return this;
     }
 
+    @Override
+    public BatchFileBuilder withExpectedDigest(FileDigest expectedDigest) {
+        this.expectedDigest = Optional.fromNullable(expectedDigest);
+        return this;
+    }
+
     @Override
     public BatchBuilder apply() {
         String absolutePath = buildPath(
@@ -62,7 +69,7 @@ final class LiteBatchFileBuilder implements InternalBatchFileBuilder {
                 fileName.getOrElse(() -> FileNameExtractor.extractFrom(networkAddress))
         );
 
-        parentBuilder.withFile(new BatchFile(networkAddress, absolutePath, downloadFileId, fileSize));
+        parentBuilder.withFile(new BatchFile(networkAddress, absolutePath, downloadFileId, fileSize, expectedDigest));
         return parentBuilder;
     }
 
@@ -2,11 +2,18 @@ package com.novoda.downloadmanager;
 
 import androidx.annotation.Nullable;
 
+import java.util.concurrent.atomic.AtomicLong;
+
+// Every field of a status is versioned and snapshotted along with it.
+@SuppressWarnings("PMD.GodClass")
 class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
 
     private static final long ZERO_BYTES = 0;
     private static final int TOTAL_PERCENTAGE = 100;
+    private static final int MAXIMUM_PARTIAL_PERCENTAGE = TOTAL_PERCENTAGE - 1;
     private static final boolean NOTIFICATION_SEEN = true;
+    // Shared by every status, so that a batch created again with the same id never goes back to an older version.
+    private static final AtomicLong VERSIONS = new AtomicLong();
 
     private final DownloadBatchTitle downloadBatchTitle;
     private final DownloadBatchId downloadBatchId;
@@ -18,7 +25,11 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
     private long bytesDownloaded;
     private long totalBatchSizeBytes;
     private int percentageDownloaded;
+    private boolean isTotalSizeFinal = true;
     private Optional<DownloadError> downloadError;
+    private volatile long version = VERSIONS.incrementAndGet();
+    @Nullable
+    private volatile LiteDownloadBatchStatus snapshot;
 
     @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
     LiteDownloadBatchStatus(DownloadBatchId downloadBatchId,
@@ -54,21 +65,44 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
 
     @Override
     public void updateTotalSize(long totalBatchSizeBytes) {
+        if (this.totalBatchSizeBytes == totalBatchSizeBytes && isTotalSizeFinal) {
+            return;
+        }
         this.totalBatchSizeBytes = totalBatchSizeBytes;
+        this.isTotalSizeFinal = true;
+        this.percentageDownloaded = getPercentageFrom(bytesDownloaded, totalBatchSizeBytes);
+        changed();
+    }
+
+    @Override
+    public void updatePartialTotalSize(long knownBatchSizeBytes) {
+        if (this.totalBatchSizeBytes == knownBatchSizeBytes && !isTotalSizeFinal) {
+            return;
+        }
+        this.totalBatchSizeBytes = knownBatchSizeBytes;
+        this.isTotalSizeFinal = false;
+        this.percentageDownloaded = getPercentageFrom(bytesDownloaded, knownBatchSizeBytes);
+        changed();
     }
 
     @Override
     public void updateDownloaded(long currentBytesDownloaded) {
+        if (bytesDownloaded == currentBytesDownloaded) {
+            return;
+        }
         this.bytesDownloaded = currentBytesDownloaded;
         this.percentageDownloaded = getPercentageFrom(bytesDownloaded, totalBatchSizeBytes);
+        changed();
     }
 
     private int getPercentageFrom(long bytesDownloaded, long totalFileSizeBytes) {
         if (totalBatchSizeBytes <= ZERO_BYTES) {
             return 0;
-        } else {
-            return (int) ((((float) bytesDownloaded) / ((float) totalFileSizeBytes)) * TOTAL_PERCENTAGE);
         }
+
+        int percentage = (int) ((((float) bytesDownloaded) / ((float) totalFileSizeBytes)) * TOTAL_PERCENTAGE);
+        // Only part of the batch is accounted for while its total size is not final.
+        return isTotalSizeFinal ? percentage : Math.min(percentage, MAXIMUM_PARTIAL_PERCENTAGE);
     }
 
     @Override
@@ -103,62 +137,108 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
 
     @Override
     public void markAsDownloading(DownloadsBatchStatusPersistence persistence) {
-        status = Status.DOWNLOADING;
+        changeStatusTo(Status.DOWNLOADING);
         updateStatusAsync(status, persistence);
     }
 
     @Override
     public void markAsPaused(DownloadsBatchStatusPersistence persistence) {
-        status = Status.PAUSED;
+        changeStatusTo(Status.PAUSED);
         updateStatusAsync(status, persistence);
     }
 
     @Override
     public void markAsQueued(DownloadsBatchStatusPersistence persistence) {
-        status = Status.QUEUED;
+        changeStatusTo(Status.QUEUED);
         updateStatusAsync(status, persistence);
     }
 
     @Override
     public void markAsDeleting() {
-        status = Status.DELETING;
-        notificationSeen = false;
+        changeStatusTo(Status.DELETING);
+        changeNotificationSeenTo(false);
     }
 
     @Override
     public void markAsDeleted() {
-        status = Status.DELETED;
-        notificationSeen = false;
+        changeStatusTo(Status.DELETED);
+        changeNotificationSeenTo(false);
     }
 
     @Override
     public void markAsError(Optional<DownloadError> downloadError, DownloadsBatchStatusPersistence persistence) {
-        this.status = Status.ERROR;
-        this.downloadError = downloadError;
+        changeStatusTo(Status.ERROR);
+        if (!this.downloadError.equals(downloadError)) {
+            this.downloadError = downloadError;
+            changed();
+        }
         updateStatusAsync(status, persistence);
     }
 
     @Override
     public void markAsDownloaded(DownloadsBatchStatusPersistence persistence) {
-        this.status = Status.DOWNLOADED;
+        changeStatusTo(Status.DOWNLOADED);
         updateStatusAsync(status, persistence);
     }
 
     @Override
     public void markAsWaitingForNetwork(DownloadsBatchPersistence persistence) {
-        this.status = Status.WAITING_FOR_NETWORK;
+        changeStatusTo(Status.WAITING_FOR_NETWORK);
         updateStatusAsync(status, persistence);
     }
 
     @Override
     public void markAsNotificationSeen(DownloadsNotificationSeenPersistence persistence) {
-        this.notificationSeen = NOTIFICATION_SEEN;
+        changeNotificationSeenTo(NOTIFICATION_SEEN);
         persistence.updateNotificationSeenAsync(this, NOTIFICATION_SEEN);
     }
 
+    private void changeStatusTo(Status status) {
+        if (this.status != status) {
+            this.status = status;
+            changed();
+        }
+    }
+
+    private void changeNotificationSeenTo(boolean notificationSeen) {
+        if (this.notificationSeen != notificationSeen) {
+            this.notificationSeen = notificationSeen;
+            changed();
+        }
+    }
+
+    private void changed() {
+        version = VERSIONS.incrementAndGet();
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    /**
+     * The version is read before the fields are copied and again after, a copy made while the status changed is made again.
+     * Fields are changed before the version is bumped, so a snapshot never shows content older than its version.
+     */
     @Override
-    public InternalDownloadBatchStatus copy() {
-        return new LiteDownloadBatchStatus(
+    public InternalDownloadBatchStatus snapshot() {
+        while (true) {
+            long snapshotVersion = version;
+            LiteDownloadBatchStatus currentSnapshot = snapshot;
+            if (currentSnapshot != null && currentSnapshot.version == snapshotVersion) {
+                return currentSnapshot;
+            }
+
+            LiteDownloadBatchStatus newSnapshot = copyAt(snapshotVersion);
+            if (version == snapshotVersion) {
+                snapshot = newSnapshot;
+                return newSnapshot;
+            }
+        }
+    }
+
+    private LiteDownloadBatchStatus copyAt(long snapshotVersion) {
+        LiteDownloadBatchStatus copy = new LiteDownloadBatchStatus(
                 downloadBatchId,
                 downloadBatchTitle,
                 storageRoot,
@@ -169,6 +249,10 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
                 notificationSeen,
                 downloadError
         );
+        copy.isTotalSizeFinal = isTotalSizeFinal;
+        copy.percentageDownloaded = percentageDownloaded;
+        copy.version = snapshotVersion;
+        return copy;
     }
 
     private void updateStatusAsync(Status status, DownloadsBatchStatusPersistence persistence) {
@@ -216,6 +300,9 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
         if (percentageDownloaded != that.percentageDownloaded) {
             return false;
         }
+        if (isTotalSizeFinal != that.isTotalSizeFinal) {
+            return false;
+        }
         if (downloadBatchTitle != null ? !downloadBatchTitle.equals(that.downloadBatchTitle) : that.downloadBatchTitle != null) {
             return false;
         }
@@ -242,6 +329,7 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
         result = 31 * result + (int) (bytesDownloaded ^ (bytesDownloaded >>> 32));
         result = 31 * result + (int) (totalBatchSizeBytes ^ (totalBatchSizeBytes >>> 32));
         result = 31 * result + percentageDownloaded;
+        result = 31 * result + (isTotalSizeFinal ? 1 : 0);
         result = 31 * result + (downloadError != null ? downloadError.hashCode() : 0);
         return result;
     }
@@ -258,6 +346,7 @@ class LiteDownloadBatchStatus implements InternalDownloadBatchStatus {
                 + ", bytesDownloaded=" + bytesDownloaded
                 + ", totalBatchSizeBytes=" + totalBatchSizeBytes
                 + ", percentageDownloaded=" + percentageDownloaded
+                + ", isTotalSizeFinal=" + isTotalSizeFinal
                 + ", downloadError=" + downloadError
                 + '}';
     }
@@ -5,9 +5,12 @@ import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 
 class LiteDownloadManager implements DownloadManager {
@@ -60,19 +63,41 @@ class LiteDownloadManager implements DownloadManager {
 
     @Override
     public void submitAllStoredDownloads(AllStoredDownloadsSubmittedCallback callback) {
+        downloader.startMeasuringTimeToFirstStatus();
         downloadsBatchPersistence.loadAsync(fileOperations, loadBatchesCallback(callback));
     }
 
     private DownloadsBatchPersistence.LoadBatchesCallback loadBatchesCallback(AllStoredDownloadsSubmittedCallback callback) {
         return downloadBatches -> {
+            if (downloadBatches.isEmpty()) {
+                downloader.stopMeasuringTimeToFirstStatus();
+            }
+
+            List<DownloadBatch> submittedBatches = new ArrayList<>(downloadBatches.size());
             for (DownloadBatch downloadBatch : downloadBatches) {
                 downloader.download(downloadBatch, downloadBatchMap);
+                if (downloadBatchMap.get(downloadBatch.getId()) == downloadBatch) {
+                    submittedBatches.add(downloadBatch);
+                }
             }
 
-            callbackHandler.post(callback::onAllDownloadsSubmitted);
+            callbackHandler.post(() -> {
+                callback.onAllDownloadsSubmitted();
+                executor.submit(() -> reconcileStoredProgress(submittedBatches));
+            });
         };
     }
 
+    /**
+     * Runs after the stored downloads have been submitted, so that their first statuses never wait for the network or the disk.
+     */
+    @WorkerThread
+    private static void reconcileStoredProgress(List<DownloadBatch> submittedBatches) {
+        for (DownloadBatch downloadBatch : submittedBatches) {
+            downloadBatch.reconcileStoredProgress();
+        }
+    }
+
     @Override
     public void download(Batch batch) {
         DownloadBatchId downloadBatchId = batch.downloadBatchId();
@@ -92,23 +117,33 @@ class LiteDownloadManager implements DownloadManager {
             return;
         }
         downloadBatch.pause();
+        downloader.stop(downloadBatchId);
     }
 
     @Override
     public void resume(DownloadBatchId downloadBatchId) {
+        DownloadBatch downloadBatch = resumableBatchWith(downloadBatchId);
+        if (downloadBatch == null) {
+            return;
+        }
+
+        downloadBatch.resume();
+        downloader.download(downloadBatch, downloadBatchMap);
+    }
+
+    @Nullable
+    private DownloadBatch resumableBatchWith(DownloadBatchId downloadBatchId) {
         DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
         if (downloadBatch == null) {
             Logger.v("abort resume batch " + downloadBatchId + " will not be resume as it does not exists in the running batches map");
-            return;
+            return null;
         }
 
         if (downloadBatch.status().status() == DownloadBatchStatus.Status.DOWNLOADING) {
             Logger.v("abort resume batch " + downloadBatchId + " will not be resume as it's already downloading");
-            return;
+            return null;
         }
-
-        downloadBatch.resume();
-        downloader.download(downloadBatch, downloadBatchMap);
+        return downloadBatch;
     }
 
     @Override
@@ -120,6 +155,113 @@ class LiteDownloadManager implements DownloadManager {
         }
 
         downloadBatch.delete();
+        downloader.stop(downloadBatchId);
+    }
+
+    @Override
+    public void downloadAll(Collection<Batch> batches, AllBatchesUpdatedCallback callback) {
+        List<Batch> batchesToDownload = new ArrayList<>(batches.size());
+        List<DownloadBatchId> downloadBatchIds = new ArrayList<>(batches.size());
+        for (Batch batch : batches) {
+            DownloadBatchId downloadBatchId = batch.downloadBatchId();
+            if (downloadBatchMap.containsKey(downloadBatchId)) {
+                Logger.v("abort download batch " + downloadBatchId + " will not download as exists already in the running batches map");
+                continue;
+            }
+            batchesToDownload.add(batch);
+            downloadBatchIds.add(downloadBatchId);
+        }
+
+        downloader.downloadAll(
+                batchesToDownload,
+                downloadBatchMap,
+                downloadsBatchPersistence.newBulkWrite(),
+                notifyAllBatchesUpdated(callback, downloadBatchIds)
+        );
+    }
+
+    @Override
+    public void pauseAll(Collection<DownloadBatchId> downloadBatchIds, AllBatchesUpdatedCallback callback) {
+        DownloadsBatchPersistence.BulkWrite bulkWrite = downloadsBatchPersistence.newBulkWrite();
+        List<DownloadBatchId> pausedBatchIds = new ArrayList<>(downloadBatchIds.size());
+        for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+            DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
+            if (downloadBatch == null) {
+                Logger.v("abort pause batch " + downloadBatchId + " will not be paused as it does not exists in the running batches map");
+                continue;
+            }
+            downloadBatch.pause(bulkWrite);
+            pausedBatchIds.add(downloadBatchId);
+        }
+
+        downloader.stopAll(pausedBatchIds);
+        bulkWrite.commitAsync(notifyAllBatchesUpdated(callback, pausedBatchIds));
+    }
+
+    @Override
+    public void pauseAll(DownloadBatchPredicate predicate, AllBatchesUpdatedCallback callback) {
+        pauseAll(batchIdsMatching(predicate), callback);
+    }
+
+    @Override
+    public void resumeAll(Collection<DownloadBatchId> downloadBatchIds, AllBatchesUpdatedCallback callback) {
+        DownloadsBatchPersistence.BulkWrite bulkWrite = downloadsBatchPersistence.newBulkWrite();
+        List<DownloadBatch> resumedBatches = new ArrayList<>(downloadBatchIds.size());
+        List<DownloadBatchId> resumedBatchIds = new ArrayList<>(downloadBatchIds.size());
+        for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+            DownloadBatch downloadBatch = resumableBatchWith(downloadBatchId);
+            if (downloadBatch == null) {
+                continue;
+            }
+            downloadBatch.resume(bulkWrite);
+            resumedBatches.add(downloadBatch);
+            resumedBatchIds.add(downloadBatchId);
+        }
+
+        downloader.submitAll(resumedBatches, downloadBatchMap, bulkWrite, notifyAllBatchesUpdated(callback, resumedBatchIds));
+    }
+
+    @Override
+    public void resumeAll(DownloadBatchPredicate predicate, AllBatchesUpdatedCallback callback) {
+        resumeAll(batchIdsMatching(predicate), callback);
+    }
+
+    @Override
+    public void deleteAll(Collection<DownloadBatchId> downloadBatchIds, AllBatchesUpdatedCallback callback) {
+        DownloadsBatchPersistence.BulkWrite bulkWrite = downloadsBatchPersistence.newBulkWrite();
+        List<DownloadBatchId> deletedBatchIds = new ArrayList<>(downloadBatchIds.size());
+        for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+            DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
+            if (downloadBatch == null) {
+                Logger.v("abort delete batch " + downloadBatchId + " will not be deleted as it does not exists in the running batches map");
+                continue;
+            }
+            downloadBatch.delete(bulkWrite);
+            deletedBatchIds.add(downloadBatchId);
+        }
+
+        downloader.stopAll(deletedBatchIds);
+        bulkWrite.commitAsync(notifyAllBatchesUpdated(callback, deletedBatchIds));
+    }
+
+    @Override
+    public void deleteAll(DownloadBatchPredicate predicate, AllBatchesUpdatedCallback callback) {
+        deleteAll(batchIdsMatching(predicate), callback);
+    }
+
+    private List<DownloadBatchId> batchIdsMatching(DownloadBatchPredicate predicate) {
+        List<DownloadBatchId> downloadBatchIds = new ArrayList<>();
+        for (DownloadBatch downloadBatch : new ArrayList<>(downloadBatchMap.values())) {
+            if (predicate.matches(downloadBatch.status())) {
+                downloadBatchIds.add(downloadBatch.getId());
+            }
+        }
+        return downloadBatchIds;
+    }
+
+    private Runnable notifyAllBatchesUpdated(AllBatchesUpdatedCallback callback, List<DownloadBatchId> downloadBatchIds) {
+        List<DownloadBatchId> updatedBatchIds = Collections.unmodifiableList(downloadBatchIds);
+        return () -> callbackHandler.post(() -> callback.onUpdated(updatedBatchIds));
     }
 
     @Override
@@ -138,6 +280,62 @@ class LiteDownloadManager implements DownloadManager {
         }
     }
 
+    @Override
+    public void addDownloadBatchStatusesCallback(DownloadBatchStatusesCallback downloadBatchStatusesCallback) {
+        downloader.addDownloadBatchStatusesCallback(downloadBatchStatusesCallback);
+    }
+
+    @Override
+    public void removeDownloadBatchStatusesCallback(DownloadBatchStatusesCallback downloadBatchStatusesCallback) {
+        downloader.removeDownloadBatchStatusesCallback(downloadBatchStatusesCallback);
+    }
+
+    @Override
+    public DownloadBatchStatusSubscription observe(DownloadBatchId downloadBatchId,
+                                                   DownloadBatchStatusBackpressure backpressure,
+                                                   Executor deliveryExecutor,
+                                                   DownloadBatchStatusCallback callback) {
+        return downloader.observe(
+                downloadBatchStatus -> downloadBatchStatus.getDownloadBatchId().equals(downloadBatchId),
+                backpressure,
+                deliveryExecutor,
+                callback
+        );
+    }
+
+    @Override
+    public DownloadBatchStatusSubscription observeAll(DownloadBatchPredicate filter,
+                                                      DownloadBatchStatusBackpressure backpressure,
+                                                      Executor deliveryExecutor,
+                                                      DownloadBatchStatusCallback callback) {
+        return downloader.observe(filter, backpressure, deliveryExecutor, callback);
+    }
+
+    @Override
+    public void addDownloadQueueStateCallback(DownloadQueueStateCallback downloadQueueStateCallback) {
+        downloader.addDownloadQueueStateCallback(downloadQueueStateCallback);
+    }
+
+    @Override
+    public void removeDownloadQueueStateCallback(DownloadQueueStateCallback downloadQueueStateCallback) {
+        downloader.removeDownloadQueueStateCallback(downloadQueueStateCallback);
+    }
+
+    @Override
+    public DownloadQueueState getDownloadQueueState() {
+        return downloader.downloadQueueState();
+    }
+
+    @Override
+    public long getTimeToFirstStatusInMillis() {
+        return downloader.timeToFirstStatusInMillis();
+    }
+
+    @Override
+    public FileWriteQueueState getFileWriteQueueState() {
+        return fileOperations.fileWritePipelineCreator().queueState();
+    }
+
     @WorkerThread
     @Override
     public List<DownloadBatchStatus> getAllDownloadBatchStatuses() {
@@ -164,6 +362,41 @@ class LiteDownloadManager implements DownloadManager {
                 }));
     }
 
+    @WorkerThread
+    @Override
+    public List<DownloadBatchStatus> getDownloadBatchStatuses(DownloadBatchQuery query) {
+        List<DownloadBatchStatus> downloadBatchStatuses = downloadsBatchPersistence.loadStatuses(query);
+        for (int index = 0; index < downloadBatchStatuses.size(); index++) {
+            DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchStatuses.get(index).getDownloadBatchId());
+            if (downloadBatch != null) {
+                downloadBatchStatuses.set(index, downloadBatch.status());
+            }
+        }
+        return downloadBatchStatuses;
+    }
+
+    @Override
+    public void getDownloadBatchStatuses(DownloadBatchQuery query, AllBatchStatusesCallback callback) {
+        executor.submit(() -> {
+            List<DownloadBatchStatus> downloadBatchStatuses = getDownloadBatchStatuses(query);
+            callbackHandler.post(() -> callback.onReceived(downloadBatchStatuses));
+        });
+    }
+
+    @WorkerThread
+    @Override
+    public int getDownloadBatchCount(DownloadBatchQuery query) {
+        return downloadsBatchPersistence.count(query);
+    }
+
+    @Override
+    public void getDownloadBatchCount(DownloadBatchQuery query, DownloadBatchCountCallback callback) {
+        executor.submit(() -> {
+            int downloadBatchCount = getDownloadBatchCount(query);
+            callbackHandler.post(() -> callback.onReceived(downloadBatchCount));
+        });
+    }
+
     @Nullable
     @WorkerThread
     @Override
@@ -2,8 +2,14 @@ package com.novoda.downloadmanager;
 
 import android.os.Handler;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 
 import static com.novoda.downloadmanager.DownloadBatchStatus.Status.DELETED;
@@ -28,6 +34,13 @@ class LiteDownloadManagerDownloader {
     private final DownloadBatchStatusFilter downloadBatchStatusFilter;
     private final Wait.Criteria serviceCriteria;
     private final boolean enableConcurrentFileDownloading;
+    private final BatchScheduler batchScheduler;
+    private final DownloadBatchStatusDispatcher statusDispatcher;
+    private final Map<DownloadBatchId, DownloadBatch> downloadBatchMap;
+    private final Set<DownloadQueueStateCallback> queueStateCallbacks = new CopyOnWriteArraySet<>();
+    private final Set<DownloadBatchStatusesCallback> statusesCallbacks = new CopyOnWriteArraySet<>();
+    private final DownloadBatchStatusObservers observers = new DownloadBatchStatusObservers();
+    private final TimeToFirstStatus timeToFirstStatus = new TimeToFirstStatus();
 
     private DownloadService downloadService;
 
@@ -47,7 +60,10 @@ class LiteDownloadManagerDownloader {
                                   CallbackThrottleCreator callbackThrottleCreator,
                                   DownloadBatchStatusFilter downloadBatchStatusFilter,
                                   Wait.Criteria serviceCriteria,
-                                  boolean enableConcurrentFileDownloading) {
+                                  boolean enableConcurrentFileDownloading,
+                                  BatchScheduler batchScheduler,
+                                  DownloadBatchStatusDispatcher statusDispatcher,
+                                  Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
         this.waitForDownloadService = waitForDownloadService;
         this.waitForDownloadBatchStatusCallback = waitForDownloadBatchStatusCallback;
         this.executor = executor;
@@ -63,10 +79,45 @@ class LiteDownloadManagerDownloader {
         this.downloadBatchStatusFilter = downloadBatchStatusFilter;
         this.serviceCriteria = serviceCriteria;
         this.enableConcurrentFileDownloading = enableConcurrentFileDownloading;
+        this.batchScheduler = batchScheduler;
+        this.statusDispatcher = statusDispatcher;
+        this.downloadBatchMap = downloadBatchMap;
+        batchScheduler.setQueueStateListener(this::notifyQueueStateCallbacks);
+        statusDispatcher.setListener(this::notifyDownloadBatchStatusCallbacks);
     }
 
     void download(Batch batch, Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
-        DownloadBatch downloadBatch = DownloadBatchFactory.newInstance(
+        DownloadBatch downloadBatch = createDownloadBatch(batch);
+
+        batchScheduler.prioritise(batch.downloadBatchId(), batch.priority());
+        executor.submit(downloadBatch::updateTotalSize);
+        download(downloadBatch, downloadBatchMap);
+    }
+
+    /**
+     * Downloads many batches at once, their rows are written by the bulk write and they are scheduled in one step.
+     * The total sizes are requested once every batch is scheduled.
+     */
+    void downloadAll(List<Batch> batches,
+                     Map<DownloadBatchId, DownloadBatch> downloadBatchMap,
+                     DownloadsBatchPersistence.BulkWrite bulkWrite,
+                     Runnable onSubmitted) {
+        List<DownloadBatch> downloadBatches = new ArrayList<>(batches.size());
+        for (Batch batch : batches) {
+            batchScheduler.prioritise(batch.downloadBatchId(), batch.priority());
+            downloadBatches.add(createDownloadBatch(batch));
+        }
+
+        submitAll(downloadBatches, downloadBatchMap, bulkWrite, onSubmitted);
+        executor.submit(() -> {
+            for (DownloadBatch downloadBatch : downloadBatches) {
+                downloadBatch.updateTotalSize();
+            }
+        });
+    }
+
+    private DownloadBatch createDownloadBatch(Batch batch) {
+        return DownloadBatchFactory.newInstance(
                 batch,
                 fileOperations,
                 downloadsBatchPersistence,
@@ -76,9 +127,6 @@ class LiteDownloadManagerDownloader {
                 downloadBatchRequirementRule,
                 enableConcurrentFileDownloading
         );
-
-        executor.submit(downloadBatch::updateTotalSize);
-        download(downloadBatch, downloadBatchMap);
     }
 
     void download(DownloadBatch downloadBatch, Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
@@ -93,55 +141,190 @@ class LiteDownloadManagerDownloader {
             @Override
             public void run() {
                 Wait.<Void>waitFor(serviceCriteria, waitForDownloadService)
-                        .thenPerform(executeDownload(batchToDownload, downloadBatchMap));
+                        .thenPerform(executeDownload(batchToDownload));
             }
         });
     }
 
-    private Wait.ThenPerform.Action<Void> executeDownload(DownloadBatch downloadBatch, Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
+    /**
+     * Submits many batches with a single executor submission, e.g. when resuming all batches.
+     *
+     * @param bulkWrite   that collects the writes of every batch, committed once every batch is scheduled.
+     * @param onSubmitted runs on the persistence thread once the bulk write is committed.
+     */
+    void submitAll(List<DownloadBatch> downloadBatches,
+                   Map<DownloadBatchId, DownloadBatch> downloadBatchMap,
+                   DownloadsBatchPersistence.BulkWrite bulkWrite,
+                   Runnable onSubmitted) {
+        List<DownloadBatch> batchesToDownload = new ArrayList<>(downloadBatches.size());
+        for (DownloadBatch downloadBatch : downloadBatches) {
+            DownloadBatchId downloadBatchId = downloadBatch.getId();
+            if (!downloadBatchMap.containsKey(downloadBatchId)) {
+                downloadBatchMap.put(downloadBatchId, downloadBatch);
+            }
+            batchesToDownload.add(downloadBatchMap.get(downloadBatchId));
+        }
+
+        executor.submit(() -> Wait.<Void>waitFor(serviceCriteria, waitForDownloadService)
+                .thenPerform(executeDownloadAll(batchesToDownload, bulkWrite, onSubmitted)));
+    }
+
+    private Wait.ThenPerform.Action<Void> executeDownloadAll(List<DownloadBatch> downloadBatches,
+                                                             DownloadsBatchPersistence.BulkWrite bulkWrite,
+                                                             Runnable onSubmitted) {
+        return () -> {
+            DownloadBatchStatusCallback callback = downloadBatchCallback();
+            for (DownloadBatch downloadBatch : downloadBatches) {
+                InternalDownloadBatchStatus downloadBatchStatus = downloadBatch.status();
+                updateStatusToQueuedIfNeeded(downloadBatchStatus, bulkWrite);
+                bulkWrite.persist(downloadBatch);
+
+                callback.onUpdate(downloadBatchStatus.snapshot());
+                downloadBatch.setCallback(callback);
+            }
+
+            batchScheduler.scheduleAll(downloadBatches, downloadBatch -> downloadService.download(downloadBatch));
+            bulkWrite.commitAsync(onSubmitted);
+            return null;
+        };
+    }
+
+    private Wait.ThenPerform.Action<Void> executeDownload(DownloadBatch downloadBatch) {
         return () -> {
             InternalDownloadBatchStatus downloadBatchStatus = downloadBatch.status();
-            updateStatusToQueuedIfNeeded(downloadBatchStatus);
+            updateStatusToQueuedIfNeeded(downloadBatchStatus, downloadsBatchPersistence);
             downloadBatch.persistAsync();
-            downloadService.download(downloadBatch, downloadBatchCallback(downloadBatchMap));
+
+            DownloadBatchStatusCallback callback = downloadBatchCallback();
+            callback.onUpdate(downloadBatchStatus.snapshot());
+            downloadBatch.setCallback(callback);
+
+            batchScheduler.schedule(downloadBatch, () -> downloadService.download(downloadBatch));
             return null;
         };
     }
 
-    private void updateStatusToQueuedIfNeeded(InternalDownloadBatchStatus downloadBatchStatus) {
+    /**
+     * Lets the next queued batch start right away, while the paused or deleted batch stops downloading.
+     */
+    void stop(DownloadBatchId downloadBatchId) {
+        batchScheduler.stop(downloadBatchId);
+    }
+
+    /**
+     * Gives up the slots of many batches in one step, e.g. when pausing all batches.
+     */
+    void stopAll(List<DownloadBatchId> downloadBatchIds) {
+        batchScheduler.stopAll(downloadBatchIds);
+    }
+
+    private static void updateStatusToQueuedIfNeeded(InternalDownloadBatchStatus downloadBatchStatus,
+                                                     DownloadsBatchStatusPersistence statusPersistence) {
         DownloadBatchStatus.Status status = downloadBatchStatus.status();
         if (status != PAUSED && status != DOWNLOADED && status != DELETING && status != DELETED) {
-            downloadBatchStatus.markAsQueued(downloadsBatchPersistence);
+            downloadBatchStatus.markAsQueued(statusPersistence);
         }
     }
 
-    private DownloadBatchStatusCallback downloadBatchCallback(Map<DownloadBatchId, DownloadBatch> downloadBatchMap) {
+    private DownloadBatchStatusCallback downloadBatchCallback() {
         return downloadBatchStatus -> {
             if (downloadBatchStatus == null || downloadBatchStatusFilter.shouldFilterOut(downloadBatchStatus)) {
                 Logger.v("Abort download batch callback download batch status is filtered.");
                 return;
             }
 
-            DownloadBatchId downloadBatchId = downloadBatchStatus.getDownloadBatchId();
+            // Statuses from the throttles are the live ones of their batch, only snapshots are published.
+            DownloadBatchStatus snapshot = ((InternalDownloadBatchStatus) downloadBatchStatus).snapshot();
+            observers.publish(snapshot);
+            statusDispatcher.dispatch(snapshot);
+        };
+    }
 
-            callbackHandler.post(() -> {
-                synchronized (waitForDownloadBatchStatusCallback) {
-                    for (DownloadBatchStatusCallback callback : callbacks) {
-                        callback.onUpdate(downloadBatchStatus);
-                    }
+    /**
+     * Runs on the callback handler once per drain of the dispatcher.
+     */
+    private void notifyDownloadBatchStatusCallbacks(List<DownloadBatchStatus> downloadBatchStatuses) {
+        synchronized (waitForDownloadBatchStatusCallback) {
+            Set<DownloadBatchId> updatedBatchIds = new LinkedHashSet<>();
+            for (DownloadBatchStatus downloadBatchStatus : downloadBatchStatuses) {
+                for (DownloadBatchStatusCallback callback : callbacks) {
+                    callback.onUpdate(downloadBatchStatus);
+                }
+                updatedBatchIds.add(downloadBatchStatus.getDownloadBatchId());
+            }
+            List<DownloadBatchStatus> drainedStatuses = Collections.unmodifiableList(downloadBatchStatuses);
+            for (DownloadBatchStatusesCallback statusesCallback : statusesCallbacks) {
+                statusesCallback.onUpdates(drainedStatuses);
+            }
+            timeToFirstStatus.stop();
 
-                    DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
-                    if (downloadBatch != null) {
-                        notificationDispatcher.updateNotification(downloadBatch.status());
+            for (DownloadBatchId downloadBatchId : updatedBatchIds) {
+                updateNotification(downloadBatchId);
+            }
+        }
+    }
 
-                        if (downloadBatch.status().status() == DELETED) {
-                            Logger.v("batch " + downloadBatchId.rawId() + " is finally deleted, removing it from the map");
-                            downloadBatchMap.remove(downloadBatchId);
-                        }
-                    }
-                }
-            });
-        };
+    private void updateNotification(DownloadBatchId downloadBatchId) {
+        DownloadBatch downloadBatch = downloadBatchMap.get(downloadBatchId);
+        if (downloadBatch == null) {
+            return;
+        }
+
+        notificationDispatcher.updateNotification(downloadBatch.status());
+        if (downloadBatch.status().status() == DELETED) {
+            Logger.v("batch " + downloadBatchId.rawId() + " is finally deleted, removing it from the map");
+            downloadBatchMap.remove(downloadBatchId);
+        }
+    }
+
+    private void notifyQueueStateCallbacks(DownloadQueueState downloadQueueState) {
+        callbackHandler.post(() -> {
+            for (DownloadQueueStateCallback queueStateCallback : queueStateCallbacks) {
+                queueStateCallback.onUpdate(downloadQueueState);
+            }
+        });
+    }
+
+    void addDownloadBatchStatusesCallback(DownloadBatchStatusesCallback downloadBatchStatusesCallback) {
+        statusesCallbacks.add(downloadBatchStatusesCallback);
+    }
+
+    void removeDownloadBatchStatusesCallback(DownloadBatchStatusesCallback downloadBatchStatusesCallback) {
+        statusesCallbacks.remove(downloadBatchStatusesCallback);
+    }
+
+    DownloadBatchStatusSubscription observe(DownloadBatchPredicate filter,
+                                            DownloadBatchStatusBackpressure backpressure,
+                                            Executor deliveryExecutor,
+                                            DownloadBatchStatusCallback callback) {
+        return observers.observe(filter, backpressure, deliveryExecutor, callback);
+    }
+
+    void addDownloadQueueStateCallback(DownloadQueueStateCallback downloadQueueStateCallback) {
+        queueStateCallbacks.add(downloadQueueStateCallback);
+    }
+
+    void removeDownloadQueueStateCallback(DownloadQueueStateCallback downloadQueueStateCallback) {
+        queueStateCallbacks.remove(downloadQueueStateCallback);
+    }
+
+    void startMeasuringTimeToFirstStatus() {
+        timeToFirstStatus.start();
+    }
+
+    /**
+     * Stops the measurement when there is no stored batch whose status could be delivered.
+     */
+    void stopMeasuringTimeToFirstStatus() {
+        timeToFirstStatus.stop();
+    }
+
+    long timeToFirstStatusInMillis() {
+        return timeToFirstStatus.inMillis();
+    }
+
+    DownloadQueueState downloadQueueState() {
+        return batchScheduler.queueState();
     }
 
     void setDownloadService(DownloadService downloadService) {
@@ -0,0 +1,83 @@
+package com.novoda.downloadmanager;
+
+import java.util.List;
+
+class LiteDownloadQueueState implements DownloadQueueState {
+
+    private final int maximumConcurrentBatches;
+    private final List<DownloadBatchId> downloadingBatchIds;
+    private final List<DownloadBatchId> queuedBatchIds;
+    private final long lastStopLatencyInMillis;
+
+    LiteDownloadQueueState(int maximumConcurrentBatches,
+                           List<DownloadBatchId> downloadingBatchIds,
+                           List<DownloadBatchId> queuedBatchIds,
+                           long lastStopLatencyInMillis) {
+        this.maximumConcurrentBatches = maximumConcurrentBatches;
+        this.downloadingBatchIds = downloadingBatchIds;
+        this.queuedBatchIds = queuedBatchIds;
+        this.lastStopLatencyInMillis = lastStopLatencyInMillis;
+    }
+
+    @Override
+    public int maximumConcurrentBatches() {
+        return maximumConcurrentBatches;
+    }
+
+    @Override
+    public List<DownloadBatchId> downloadingBatchIds() {
+        return downloadingBatchIds;
+    }
+
+    @Override
+    public List<DownloadBatchId> queuedBatchIds() {
+        return queuedBatchIds;
+    }
+
+    @Override
+    public long lastStopLatencyInMillis() {
+        return lastStopLatencyInMillis;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        LiteDownloadQueueState that = (LiteDownloadQueueState) o;
+
+        if (maximumConcurrentBatches != that.maximumConcurrentBatches) {
+            return false;
+        }
+        if (lastStopLatencyInMillis != that.lastStopLatencyInMillis) {
+            return false;
+        }
+        if (downloadingBatchIds != null ? !downloadingBatchIds.equals(that.downloadingBatchIds) : that.downloadingBatchIds != null) {
+            return false;
+        }
+        return queuedBatchIds != null ? queuedBatchIds.equals(that.queuedBatchIds) : that.queuedBatchIds == null;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = maximumConcurrentBatches;
+        result = 31 * result + (downloadingBatchIds != null ? downloadingBatchIds.hashCode() : 0);
+        result = 31 * result + (queuedBatchIds != null ? queuedBatchIds.hashCode() : 0);
+        result = 31 * result + (int) (lastStopLatencyInMillis ^ (lastStopLatencyInMillis >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "LiteDownloadQueueState{"
+                + "maximumConcurrentBatches=" + maximumConcurrentBatches
+                + ", downloadingBatchIds=" + downloadingBatchIds
+                + ", queuedBatchIds=" + queuedBatchIds
+                + ", lastStopLatencyInMillis=" + lastStopLatencyInMillis
+                + '}';
+    }
+}
@@ -18,8 +18,6 @@ import androidx.lifecycle.LifecycleEventObserver;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.ProcessLifecycleOwner;
 
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 public class LiteDownloadService extends Service implements DownloadService, LifecycleEventObserver {
@@ -27,15 +25,12 @@ public class LiteDownloadService extends Service implements DownloadService, Lif
     private static final long TEN_MINUTES_IN_MILLIS = TimeUnit.MINUTES.toMillis(10);
     private static final String WAKELOCK_TAG = "liteDownloadService:wakelocktag";
 
-    private ExecutorService executor;
     private IBinder binder;
-    private PowerManager.WakeLock wakeLock;
     private Boolean appIsInForeground;
 
     @Override
     public void onCreate() {
         super.onCreate();
-        executor = Executors.newSingleThreadExecutor();
         binder = new DownloadServiceBinder();
         ProcessLifecycleOwner.get().getLifecycle().addObserver(this);
     }
@@ -83,16 +78,14 @@ public class LiteDownloadService extends Service implements DownloadService, Lif
     }
 
     @Override
-    public void download(DownloadBatch downloadBatch, DownloadBatchStatusCallback callback) {
-        callback.onUpdate(downloadBatch.status().copy());
-        downloadBatch.setCallback(callback);
-
-        executor.execute(() -> {
-            acquireCpuWakeLock();
+    public void download(DownloadBatch downloadBatch) {
+        Optional<PowerManager.WakeLock> wakeLock = acquireCpuWakeLock();
+        try {
             downloadBatch.persist();
             downloadBatch.download();
-            releaseHeldCpuWakeLock();
-        });
+        } finally {
+            releaseHeldCpuWakeLock(wakeLock);
+        }
     }
 
     private boolean isAppForeground() {
@@ -110,23 +103,26 @@ public class LiteDownloadService extends Service implements DownloadService, Lif
         }
     }
 
-    private void acquireCpuWakeLock() {
+    // Batches are downloaded concurrently, each of them holds its own wake lock.
+    private Optional<PowerManager.WakeLock> acquireCpuWakeLock() {
         PowerManager powerManager = (PowerManager) getSystemService(POWER_SERVICE);
-        if (powerManager != null) {
-            wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKELOCK_TAG);
-            wakeLock.acquire(TEN_MINUTES_IN_MILLIS);
+        if (powerManager == null) {
+            return Optional.absent();
         }
+
+        PowerManager.WakeLock wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, WAKELOCK_TAG);
+        wakeLock.acquire(TEN_MINUTES_IN_MILLIS);
+        return Optional.of(wakeLock);
     }
 
-    private void releaseHeldCpuWakeLock() {
-        if (wakeLock.isHeld()) {
-            wakeLock.release();
+    private void releaseHeldCpuWakeLock(Optional<PowerManager.WakeLock> wakeLock) {
+        if (wakeLock.isPresent() && wakeLock.get().isHeld()) {
+            wakeLock.get().release();
         }
     }
 
     @Override
     public void onDestroy() {
-        executor.shutdown();
         ProcessLifecycleOwner.get().getLifecycle().removeObserver(this);
         super.onDestroy();
     }
@@ -0,0 +1,55 @@
+package com.novoda.downloadmanager;
+
+@SuppressWarnings("PMD.DataClass")
+class LiteDownloadsBatchProgressPersisted implements DownloadsBatchProgressPersisted {
+
+    private final DownloadsBatchPersisted batchPersisted;
+    private final long bytesDownloaded;
+    private final long totalBatchSizeBytes;
+
+    LiteDownloadsBatchProgressPersisted(DownloadsBatchPersisted batchPersisted, long bytesDownloaded, long totalBatchSizeBytes) {
+        this.batchPersisted = batchPersisted;
+        this.bytesDownloaded = bytesDownloaded;
+        this.totalBatchSizeBytes = totalBatchSizeBytes;
+    }
+
+    @Override
+    public DownloadBatchId downloadBatchId() {
+        return batchPersisted.downloadBatchId();
+    }
+
+    @Override
+    public DownloadBatchStatus.Status downloadBatchStatus() {
+        return batchPersisted.downloadBatchStatus();
+    }
+
+    @Override
+    public DownloadBatchTitle downloadBatchTitle() {
+        return batchPersisted.downloadBatchTitle();
+    }
+
+    @Override
+    public long downloadedDateTimeInMillis() {
+        return batchPersisted.downloadedDateTimeInMillis();
+    }
+
+    @Override
+    public boolean notificationSeen() {
+        return batchPersisted.notificationSeen();
+    }
+
+    @Override
+    public String storageRoot() {
+        return batchPersisted.storageRoot();
+    }
+
+    @Override
+    public long bytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    @Override
+    public long totalBatchSizeBytes() {
+        return totalBatchSizeBytes;
+    }
+}
@@ -1,5 +1,7 @@
 package com.novoda.downloadmanager;
 
+import androidx.annotation.Nullable;
+
 @SuppressWarnings("PMD.DataClass")
 class LiteDownloadsFilePersisted implements DownloadsFilePersisted {
 
@@ -8,17 +10,37 @@ class LiteDownloadsFilePersisted implements DownloadsFilePersisted {
     private final FilePath filePath;
     private final long totalFileSize;
     private final String url;
+    private final long bytesDownloaded;
+    @Nullable
+    private final DownloadFileStatus.Status fileStatus;
+    @Nullable
+    private final FileDigest expectedDigest;
+    @Nullable
+    private final String digestState;
+    @Nullable
+    private final String rangeValidator;
 
+    @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
     LiteDownloadsFilePersisted(DownloadBatchId downloadBatchId,
                                DownloadFileId downloadFileId,
                                FilePath filePath,
                                long totalFileSize,
-                               String url) {
+                               String url,
+                               long bytesDownloaded,
+                               @Nullable DownloadFileStatus.Status fileStatus,
+                               @Nullable FileDigest expectedDigest,
+                               @Nullable String digestState,
+                               @Nullable String rangeValidator) {
         this.downloadBatchId = downloadBatchId;
         this.downloadFileId = downloadFileId;
         this.filePath = filePath;
         this.totalFileSize = totalFileSize;
         this.url = url;
+        this.bytesDownloaded = bytesDownloaded;
+        this.fileStatus = fileStatus;
+        this.expectedDigest = expectedDigest;
+        this.digestState = digestState;
+        this.rangeValidator = rangeValidator;
     }
 
     @Override
@@ -46,4 +68,33 @@ class LiteDownloadsFilePersisted implements DownloadsFilePersisted {
         return downloadFileId;
     }
 
+    @Override
+    public long bytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+    @Nullable
+    @Override
+    public DownloadFileStatus.Status fileStatus() {
+        return fileStatus;
+    }
+
+    @Nullable
+    @Override
+    public FileDigest expectedDigest() {
+        return expectedDigest;
+    }
+
+    @Nullable
+    @Override
+    public String digestState() {
+        return digestState;
+    }
+
+    @Nullable
+    @Override
+    public String rangeValidator() {
+        return rangeValidator;
+    }
+
 }
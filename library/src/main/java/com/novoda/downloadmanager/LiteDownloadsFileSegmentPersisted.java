@@ -0,0 +1,57 @@
+package com.novoda.downloadmanager;
+
+@SuppressWarnings("PMD.DataClass")
+class LiteDownloadsFileSegmentPersisted implements DownloadsFileSegmentPersisted {
+
+    private final DownloadBatchId downloadBatchId;
+    private final DownloadFileId downloadFileId;
+    private final int segmentIndex;
+    private final long startByte;
+    private final long endByte;
+    private final long bytesDownloaded;
+
+    LiteDownloadsFileSegmentPersisted(DownloadBatchId downloadBatchId,
+                                      DownloadFileId downloadFileId,
+                                      int segmentIndex,
+                                      long startByte,
+                                      long endByte,
+                                      long bytesDownloaded) {
+        this.downloadBatchId = downloadBatchId;
+        this.downloadFileId = downloadFileId;
+        this.segmentIndex = segmentIndex;
+        this.startByte = startByte;
+        this.endByte = endByte;
+        this.bytesDownloaded = bytesDownloaded;
+    }
+
+    @Override
+    public DownloadBatchId downloadBatchId() {
+        return downloadBatchId;
+    }
+
+    @Override
+    public DownloadFileId downloadFileId() {
+        return downloadFileId;
+    }
+
+    @Override
+    public int segmentIndex() {
+        return segmentIndex;
+    }
+
+    @Override
+    public long startByte() {
+        return startByte;
+    }
+
+    @Override
+    public long endByte() {
+        return endByte;
+    }
+
+    @Override
+    public long bytesDownloaded() {
+        return bytesDownloaded;
+    }
+
+}
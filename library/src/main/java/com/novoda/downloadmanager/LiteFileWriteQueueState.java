@@ -0,0 +1,90 @@
+package com.novoda.downloadmanager;
+
+class LiteFileWriteQueueState implements FileWriteQueueState {
+
+    private final int activePipelines;
+    private final int capacity;
+    private final int queuedBuffers;
+    private final long readerWaits;
+    private final long writerWaits;
+
+    LiteFileWriteQueueState(int activePipelines, int capacity, int queuedBuffers, long readerWaits, long writerWaits) {
+        this.activePipelines = activePipelines;
+        this.capacity = capacity;
+        this.queuedBuffers = queuedBuffers;
+        this.readerWaits = readerWaits;
+        this.writerWaits = writerWaits;
+    }
+
+    @Override
+    public int activePipelines() {
+        return activePipelines;
+    }
+
+    @Override
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public int queuedBuffers() {
+        return queuedBuffers;
+    }
+
+    @Override
+    public long readerWaits() {
+        return readerWaits;
+    }
+
+    @Override
+    public long writerWaits() {
+        return writerWaits;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+
+        LiteFileWriteQueueState that = (LiteFileWriteQueueState) o;
+
+        if (activePipelines != that.activePipelines) {
+            return false;
+        }
+        if (capacity != that.capacity) {
+            return false;
+        }
+        if (queuedBuffers != that.queuedBuffers) {
+            return false;
+        }
+        if (readerWaits != that.readerWaits) {
+            return false;
+        }
+        return writerWaits == that.writerWaits;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = activePipelines;
+        result = 31 * result + capacity;
+        result = 31 * result + queuedBuffers;
+        result = 31 * result + (int) (readerWaits ^ (readerWaits >>> 32));
+        result = 31 * result + (int) (writerWaits ^ (writerWaits >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "LiteFileWriteQueueState{"
+                + "activePipelines=" + activePipelines
+                + ", capacity=" + capacity
+                + ", queuedBuffers=" + queuedBuffers
+                + ", readerWaits=" + readerWaits
+                + ", writerWaits=" + writerWaits
+                + '}';
+    }
+}
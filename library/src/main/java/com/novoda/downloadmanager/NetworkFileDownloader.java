@@ -1,37 +1,67 @@
 package com.novoda.downloadmanager;
 
+import androidx.annotation.Nullable;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 
 class NetworkFileDownloader implements FileDownloader {
 
-    private static final int BUFFER_SIZE = 8 * 512;
+    private static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    private static final String HEADER_CONTENT_RANGE = "Content-Range";
+    private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String RANGE_UNIT_BYTES = "bytes";
+    private static final String RANGE_UNIT_NONE = "none";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+    private static final String UNKNOWN_HEADER_VALUE = "";
+    private static final char CONTENT_RANGE_TOTAL_SEPARATOR = '/';
+    private static final long UNKNOWN_TOTAL_SIZE = -1;
 
     private final HttpClient httpClient;
     private final NetworkRequestCreator requestCreator;
+    private final ReadBufferPool readBufferPool;
+    private final ByteRangeSupport byteRangeSupport;
 
-    private boolean canDownload;
+    private volatile boolean canDownload;
+    @Nullable
+    private volatile NetworkResponse activeResponse;
 
-    NetworkFileDownloader(HttpClient httpClient, NetworkRequestCreator requestCreator) {
+    NetworkFileDownloader(HttpClient httpClient,
+                          NetworkRequestCreator requestCreator,
+                          ReadBufferPool readBufferPool,
+                          ByteRangeSupport byteRangeSupport) {
         this.httpClient = httpClient;
         this.requestCreator = requestCreator;
+        this.readBufferPool = readBufferPool;
+        this.byteRangeSupport = byteRangeSupport;
     }
 
     @Override
     public void startDownloading(String url, FileSize fileSize, Callback callback) {
         canDownload = true;
 
-        NetworkRequest request = createRequestFrom(url, fileSize);
+        NetworkRequest request = createRequestFrom(url, fileSize, callback.rangeValidator());
         NetworkResponse response = null;
         try {
             response = httpClient.execute(request);
+            activeResponse = response;
+            if (!canDownload) {
+                response.cancel();
+            }
             int responseCode = response.code();
-            processResponse(callback, response, responseCode, url);
+            processResponse(callback, request, response, responseCode);
         } catch (IOException e) {
-            Logger.e(e, "Exception with http request");
-            callback.onError(e.getMessage());
+            if (canDownload) {
+                Logger.e(e, "Exception with http request");
+                callback.onError(e.getMessage());
+            } else {
+                Logger.v("http request cancelled for " + url);
+            }
         } finally {
+            activeResponse = null;
             try {
                 if (response != null) {
                     response.closeByteStream();
@@ -44,44 +74,130 @@ class NetworkFileDownloader implements FileDownloader {
         callback.onDownloadFinished();
     }
 
-    private void processResponse(Callback callback, NetworkResponse response, int responseCode, String url) throws IOException {
+    private void processResponse(Callback callback, NetworkRequest request, NetworkResponse response, int responseCode) throws IOException {
         if (isValid(responseCode)) {
-            byte[] buffer = new byte[BUFFER_SIZE];
+            processHeaders(callback, request, response, responseCode);
+
+            AdaptiveReadBuffer readBuffer = new AdaptiveReadBuffer(readBufferPool);
             int readLast = 0;
             try (InputStream in = response.openByteStream()) {
-                while (canDownload && readLast != -1) {
-                    readLast = in.read(buffer);
+                while (canDownload && readLast != AdaptiveReadBuffer.END_OF_STREAM) {
+                    readLast = readBuffer.read(in);
 
-                    if (readLast != 0 && readLast != -1) {
-                        callback.onBytesRead(buffer, readLast);
+                    if (readLast != 0 && readLast != AdaptiveReadBuffer.END_OF_STREAM) {
+                        callback.onBytesRead(readBuffer.bytes(), readLast);
                     }
                 }
+            } finally {
+                readBuffer.release();
             }
         } else {
             Logger.e("Network response code is not ok, responseCode: " + responseCode);
             String networkErrorMessage = String.format(
                     "Request: %s with response code: %s failed.",
-                    url,
+                    request.url(),
                     responseCode
             );
             callback.onError(networkErrorMessage);
         }
     }
 
+    /**
+     * Everything the headers tell about the file is emitted before any of its bytes.
+     */
+    private void processHeaders(Callback callback, NetworkRequest request, NetworkResponse response, int responseCode) {
+        boolean isRangeRequested = request.headers().containsKey(NetworkRequestCreator.HEADER_RANGE);
+        rememberByteRangeSupport(request, response, responseCode);
+        if (isRangeRequested && responseCode == HttpURLConnection.HTTP_OK) {
+            Logger.w("the whole of " + request.url() + " was sent rather than the requested range");
+            callback.onRestartedFromFirstByte();
+        }
+
+        String rangeValidator = rangeValidatorOf(response);
+        if (rangeValidator != null) {
+            callback.onRangeValidatorKnown(rangeValidator);
+        }
+
+        long totalSize = totalSizeFrom(response, responseCode);
+        if (totalSize > 0) {
+            callback.onTotalSizeKnown(totalSize);
+        }
+
+        Optional<FileDigest> declaredDigest = DigestHeaders.declaredDigestOf(response);
+        if (declaredDigest.isPresent()) {
+            callback.onDigestKnown(declaredDigest.get());
+        }
+    }
+
+    /**
+     * A partial response declares the total size in its Content-Range, a full response in its Content-Length.
+     */
+    private long totalSizeFrom(NetworkResponse response, int responseCode) {
+        if (responseCode == HttpURLConnection.HTTP_PARTIAL) {
+            String contentRange = response.header(HEADER_CONTENT_RANGE, UNKNOWN_HEADER_VALUE);
+            int separatorIndex = contentRange.lastIndexOf(CONTENT_RANGE_TOTAL_SEPARATOR);
+            return separatorIndex == -1 ? UNKNOWN_TOTAL_SIZE : parseSize(contentRange.substring(separatorIndex + 1));
+        }
+        return parseSize(response.header(HEADER_CONTENT_LENGTH, UNKNOWN_HEADER_VALUE));
+    }
+
+    /**
+     * A server that ignores the range of a request that had no If-Range does not accept byte ranges,
+     * one that ignores it because of the If-Range only tells that the file changed.
+     */
+    private void rememberByteRangeSupport(NetworkRequest request, NetworkResponse response, int responseCode) {
+        String acceptRanges = response.header(HEADER_ACCEPT_RANGES, UNKNOWN_HEADER_VALUE);
+        if (responseCode == HttpURLConnection.HTTP_PARTIAL || RANGE_UNIT_BYTES.equalsIgnoreCase(acceptRanges)) {
+            byteRangeSupport.remember(request.url(), true);
+        } else if (RANGE_UNIT_NONE.equalsIgnoreCase(acceptRanges)
+                || request.headers().containsKey(NetworkRequestCreator.HEADER_RANGE) && !request.headers().containsKey(NetworkRequestCreator.HEADER_IF_RANGE)) {
+            byteRangeSupport.remember(request.url(), false);
+        }
+    }
+
+    /**
+     * Only a strong entity tag or a last modified date can be sent as If-Range, weak entity tags are not allowed.
+     */
+    @Nullable
+    private String rangeValidatorOf(NetworkResponse response) {
+        String entityTag = response.header(HEADER_ETAG, UNKNOWN_HEADER_VALUE).trim();
+        if (!entityTag.isEmpty() && !entityTag.startsWith(WEAK_ETAG_PREFIX)) {
+            return entityTag;
+        }
+
+        String lastModified = response.header(HEADER_LAST_MODIFIED, UNKNOWN_HEADER_VALUE).trim();
+        return lastModified.isEmpty() ? null : lastModified;
+    }
+
+    private long parseSize(String rawSize) {
+        try {
+            return Long.parseLong(rawSize.trim());
+        } catch (NumberFormatException e) {
+            return UNKNOWN_TOTAL_SIZE;
+        }
+    }
+
     private boolean isValid(int responseCode) {
         return responseCode == HttpURLConnection.HTTP_OK || responseCode == HttpURLConnection.HTTP_PARTIAL;
     }
 
-    private NetworkRequest createRequestFrom(String url, FileSize fileSize) {
+    private NetworkRequest createRequestFrom(String url, FileSize fileSize, @Nullable String rangeValidator) {
         if (fileSize.areBytesDownloadedKnown()) {
-            return requestCreator.createDownloadRequestWithDownloadedBytesHeader(url, fileSize.currentSize(), fileSize.totalSize());
+            return requestCreator.createDownloadRequestWithDownloadedBytesHeader(url, fileSize.currentSize(), fileSize.totalSize(), rangeValidator);
         } else {
             return requestCreator.createDownloadRequest(url);
         }
     }
 
+    /**
+     * Cancels the request that is in flight, so that a blocked read stops right away instead of after the read timeout.
+     */
     @Override
     public void stopDownloading() {
         canDownload = false;
+        NetworkResponse response = activeResponse;
+        if (response != null) {
+            response.cancel();
+        }
     }
 }
@@ -1,11 +1,17 @@
 package com.novoda.downloadmanager;
 
+import androidx.annotation.Nullable;
+
 import java.util.HashMap;
 import java.util.Map;
 
 class NetworkRequestCreator {
 
+    static final String HEADER_RANGE = "Range";
+    static final String HEADER_IF_RANGE = "If-Range";
+
     private static final String DOWNLOADED_BYTES_VALUE_FORMAT = "bytes=%s-%s";
+    private static final String DOWNLOADED_BYTES_TO_END_VALUE_FORMAT = "bytes=%s-";
     private static final Map<String, String> DISABLE_COMPRESSION_HEADERS = new HashMap<>(1);
 
     static {
@@ -25,9 +31,23 @@ class NetworkRequestCreator {
     }
 
     NetworkRequest createDownloadRequestWithDownloadedBytesHeader(String url, long currentSize, long totalSize) {
+        return createDownloadRequestWithDownloadedBytesHeader(url, currentSize, totalSize, null);
+    }
+
+    /**
+     * With a validator the range is only served when the file did not change, otherwise the whole file is sent again.
+     *
+     * @param rangeValidator the entity tag or last modified date of the downloaded bytes, sent as If-Range.
+     */
+    NetworkRequest createDownloadRequestWithDownloadedBytesHeader(String url, long currentSize, long totalSize, @Nullable String rangeValidator) {
         Map<String, String> headers = new HashMap<>();
-        String headerValue = String.format(DOWNLOADED_BYTES_VALUE_FORMAT, currentSize, totalSize - 1);
-        headers.put("Range", headerValue);
+        String headerValue = totalSize > 0
+                ? String.format(DOWNLOADED_BYTES_VALUE_FORMAT, currentSize, totalSize - 1)
+                : String.format(DOWNLOADED_BYTES_TO_END_VALUE_FORMAT, currentSize);
+        headers.put(HEADER_RANGE, headerValue);
+        if (rangeValidator != null) {
+            headers.put(HEADER_IF_RANGE, rangeValidator);
+        }
 
         return new LiteNetworkRequest(headers, url, NetworkRequest.Method.GET);
     }
@@ -46,4 +46,17 @@ public interface NetworkResponse {
      * @return the body content length in bytes for a response.
      */
     long bodyContentLength();
+
+    /**
+     * Cancels the request, so that a read from {@link NetworkResponse#openByteStream()} that is blocked
+     * on another thread fails immediately instead of waiting for the read timeout.
+     * By default the byte stream is closed, which unblocks the read only for clients whose streams support it.
+     */
+    default void cancel() {
+        try {
+            closeByteStream();
+        } catch (IOException e) {
+            Logger.w("failed to close the byte stream of a cancelled response, " + e.getMessage());
+        }
+    }
 }
@@ -1,8 +1,16 @@
 package com.novoda.downloadmanager;
 
+import android.app.Notification;
+
 interface NotificationCreator<T> {
 
     void setNotificationChannelProvider(NotificationChannelProvider notificationChannelProvider);
 
     NotificationInformation createNotification(T notificationPayload);
+
+    /**
+     * @param latestNotification of the group, whose icon the summary shows.
+     * @param groupSize          the number of ongoing notifications that the summary stands for.
+     */
+    Notification createGroupSummary(Notification latestNotification, int groupSize);
 }
@@ -7,16 +7,25 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 
 class PathBasedFilePersistence implements FilePersistence {
 
     private static final boolean APPEND = true;
+    private static final String READ_WRITE_MODE = "rw";
     private static final Object LOCK = new Object();
 
+    private final Object randomAccessFileLock = new Object();
+
     private StorageRequirementRule storageRequirementRule;
 
     @Nullable
     private FileOutputStream fileOutputStream;
+    @Nullable
+    private File file;
+    @Nullable
+    private RandomAccessFile randomAccessFile;
 
     @Override
     public void initialiseWith(Context context, StorageRequirementRule storageRequirementRule) {
@@ -25,16 +34,12 @@ class PathBasedFilePersistence implements FilePersistence {
 
     @Override
     public FilePersistenceResult create(FilePath absoluteFilePath, FileSize fileSize) {
-        if (fileSize.isTotalSizeUnknown()) {
-            return FilePersistenceResult.ERROR_UNKNOWN_TOTAL_FILE_SIZE;
-        }
-
         if (absoluteFilePath.isUnknown()) {
             return FilePersistenceResult.ERROR_OPENING_FILE;
         }
 
         try {
-            File file = new File(absoluteFilePath.path());
+            file = new File(absoluteFilePath.path());
 
             boolean parentDirectoriesExist = ensureParentDirectoriesExistFor(file);
 
@@ -42,7 +47,8 @@ class PathBasedFilePersistence implements FilePersistence {
                 return FilePersistenceResult.ERROR_OPENING_FILE;
             }
 
-            if (storageRequirementRule.hasViolatedRule(file.getParentFile(), fileSize)) {
+            // A size that is learnt from the download response cannot be checked upfront.
+            if (fileSize.isTotalSizeKnown() && storageRequirementRule.hasViolatedRule(file.getParentFile(), fileSize)) {
                 return FilePersistenceResult.ERROR_INSUFFICIENT_SPACE;
             }
 
@@ -83,6 +89,83 @@ class PathBasedFilePersistence implements FilePersistence {
         }
     }
 
+    @Override
+    @SuppressWarnings("PMD.CloseResource")  // The file is shared between writes and closed in close().
+    public boolean write(byte[] buffer, int offset, int numberOfBytesToWrite, long position) {
+        RandomAccessFile positionalFile = positionalFile();
+        if (positionalFile == null) {
+            Logger.e("Cannot write, you must create the file first");
+            return false;
+        }
+
+        try {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, offset, numberOfBytesToWrite);
+            long writePosition = position;
+            while (byteBuffer.hasRemaining()) {
+                writePosition += positionalFile.getChannel().write(byteBuffer, writePosition);
+            }
+            return true;
+        } catch (IOException e) {
+            Logger.e(e, "Exception while writing to internal physical storage");
+            return false;
+        }
+    }
+
+    @Nullable
+    private RandomAccessFile positionalFile() {
+        synchronized (randomAccessFileLock) {
+            if (randomAccessFile == null && file != null) {
+                try {
+                    randomAccessFile = new RandomAccessFile(file, READ_WRITE_MODE);
+                } catch (FileNotFoundException e) {
+                    Logger.e(e, "File could not be opened for positional writes");
+                }
+            }
+            return randomAccessFile;
+        }
+    }
+
+    @Override
+    public boolean flush() {
+        // Writes are not buffered, they reach the file straight away.
+        return true;
+    }
+
+    @Override
+    public boolean sync() {
+        try {
+            if (fileOutputStream != null) {
+                fileOutputStream.getFD().sync();
+            }
+            syncRandomAccessFile();
+            return true;
+        } catch (IOException e) {
+            Logger.e(e, "Exception while syncing to internal physical storage");
+            return false;
+        }
+    }
+
+    private void syncRandomAccessFile() throws IOException {
+        synchronized (randomAccessFileLock) {
+            if (randomAccessFile != null) {
+                randomAccessFile.getChannel().force(false);
+            }
+        }
+    }
+
+    @Override
+    public boolean truncate(FilePath absoluteFilePath, long size) {
+        try (RandomAccessFile fileToTruncate = new RandomAccessFile(absoluteFilePath.path(), READ_WRITE_MODE)) {
+            if (fileToTruncate.length() > size) {
+                fileToTruncate.setLength(size);
+            }
+            return true;
+        } catch (IOException e) {
+            Logger.e(e, "File could not be truncated to " + size + " bytes");
+            return false;
+        }
+    }
+
     @Override
     public void delete(FilePath absoluteFilePath) {
         if (absoluteFilePath == null || absoluteFilePath.isUnknown()) {
@@ -110,6 +193,8 @@ class PathBasedFilePersistence implements FilePersistence {
 
     @Override
     public void close() {
+        closeRandomAccessFile();
+
         if (fileOutputStream == null) {
             Logger.w("Abort closing stream, does not exist.");
             return;
@@ -121,4 +206,20 @@ class PathBasedFilePersistence implements FilePersistence {
             Logger.e(e, "Failed to close fileOutputStream.");
         }
     }
+
+    private void closeRandomAccessFile() {
+        synchronized (randomAccessFileLock) {
+            if (randomAccessFile == null) {
+                return;
+            }
+
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                Logger.e(e, "Failed to close randomAccessFile.");
+            } finally {
+                randomAccessFile = null;
+            }
+        }
+    }
 }
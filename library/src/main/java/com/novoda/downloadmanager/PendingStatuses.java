@@ -0,0 +1,108 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The statuses emitted for an observer that it has not received yet. The lock is only held to add or take statuses,
+ * never while they are delivered.
+ */
+abstract class PendingStatuses {
+
+    private final Object lock = new Object();
+
+    void add(DownloadBatchStatus downloadBatchStatus) {
+        synchronized (lock) {
+            keep(downloadBatchStatus);
+        }
+    }
+
+    List<DownloadBatchStatus> takeAll() {
+        synchronized (lock) {
+            Collection<DownloadBatchStatus> keptStatuses = keptStatuses();
+            List<DownloadBatchStatus> statuses = new ArrayList<>(keptStatuses);
+            keptStatuses.clear();
+            return statuses;
+        }
+    }
+
+    boolean isEmpty() {
+        synchronized (lock) {
+            return keptStatuses().isEmpty();
+        }
+    }
+
+    abstract void keep(DownloadBatchStatus downloadBatchStatus);
+
+    /**
+     * @return the statuses kept so far, in the order they are delivered.
+     */
+    abstract Collection<DownloadBatchStatus> keptStatuses();
+
+    static final class Conflated extends PendingStatuses {
+
+        private final Map<DownloadBatchId, DownloadBatchStatus> latestStatuses = new LinkedHashMap<>();
+
+        @Override
+        void keep(DownloadBatchStatus downloadBatchStatus) {
+            latestStatuses.put(downloadBatchStatus.getDownloadBatchId(), downloadBatchStatus);
+        }
+
+        @Override
+        Collection<DownloadBatchStatus> keptStatuses() {
+            return latestStatuses.values();
+        }
+    }
+
+    static final class Buffered extends PendingStatuses {
+
+        private final Deque<DownloadBatchStatus> statuses = new ArrayDeque<>();
+        private final int capacity;
+
+        Buffered(int capacity) {
+            this.capacity = capacity;
+        }
+
+        /**
+         * Terminal statuses are never dropped, a full buffer drops its oldest status that is not terminal instead.
+         * Once only terminal statuses are kept, a status that is not terminal is dropped and a terminal one is kept
+         * beyond the capacity.
+         */
+        @Override
+        void keep(DownloadBatchStatus downloadBatchStatus) {
+            if (statuses.size() >= capacity && !dropOldestNonTerminalStatus() && !downloadBatchStatus.status().isTerminal()) {
+                logDropped(downloadBatchStatus);
+                return;
+            }
+            statuses.addLast(downloadBatchStatus);
+        }
+
+        private boolean dropOldestNonTerminalStatus() {
+            Iterator<DownloadBatchStatus> keptStatuses = statuses.iterator();
+            while (keptStatuses.hasNext()) {
+                DownloadBatchStatus keptStatus = keptStatuses.next();
+                if (!keptStatus.status().isTerminal()) {
+                    keptStatuses.remove();
+                    logDropped(keptStatus);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static void logDropped(DownloadBatchStatus droppedStatus) {
+            Logger.w("observer buffer is full, dropping status " + droppedStatus.status() + " of batch " + droppedStatus.getDownloadBatchId().rawId());
+        }
+
+        @Override
+        Collection<DownloadBatchStatus> keptStatuses() {
+            return statuses;
+        }
+    }
+}
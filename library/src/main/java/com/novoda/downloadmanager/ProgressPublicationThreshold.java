@@ -0,0 +1,44 @@
+package com.novoda.downloadmanager;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the progress of a file is published, so that its status is not propagated for every read.
+ * Progress is published once enough bytes have been read or enough time has passed since it was last published.
+ * It is not thread safe, callers synchronise on the file they publish the progress of.
+ */
+class ProgressPublicationThreshold {
+
+    private static final long INTERVAL_IN_BYTES = 512 * 1024;
+    private static final long INTERVAL_IN_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    private final long intervalInBytes;
+    private final long intervalInNanos;
+
+    private long unpublishedBytes;
+    private long lastPublicationTimeInNanos;
+
+    static ProgressPublicationThreshold newInstance() {
+        return new ProgressPublicationThreshold(INTERVAL_IN_BYTES, INTERVAL_IN_NANOS);
+    }
+
+    ProgressPublicationThreshold(long intervalInBytes, long intervalInNanos) {
+        this.intervalInBytes = intervalInBytes;
+        this.intervalInNanos = intervalInNanos;
+        this.lastPublicationTimeInNanos = System.nanoTime();
+    }
+
+    boolean shouldPublishAfter(long bytesRead) {
+        unpublishedBytes += bytesRead;
+        return unpublishedBytes >= intervalInBytes || System.nanoTime() - lastPublicationTimeInNanos >= intervalInNanos;
+    }
+
+    boolean hasUnpublishedBytes() {
+        return unpublishedBytes > 0;
+    }
+
+    void markAsPublished() {
+        unpublishedBytes = 0;
+        lastPublicationTimeInNanos = System.nanoTime();
+    }
+}
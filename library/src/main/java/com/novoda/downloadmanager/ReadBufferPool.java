@@ -0,0 +1,112 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Shares the read buffers of all downloads, so that sustained downloads do not allocate a buffer for every file.
+ * Buffers are sized in powers of two between {@link #MINIMUM_BUFFER_SIZE_IN_BYTES} and {@link #MAXIMUM_BUFFER_SIZE_IN_BYTES},
+ * and the buffers that are in use or pooled never take more than the memory budget.
+ */
+class ReadBufferPool {
+
+    static final int MINIMUM_BUFFER_SIZE_IN_BYTES = 4 * 1024;
+    static final int MAXIMUM_BUFFER_SIZE_IN_BYTES = 256 * 1024;
+    static final long DEFAULT_MEMORY_BUDGET_IN_BYTES = 4 * 1024 * 1024;
+
+    private final long memoryBudgetInBytes;
+    private final Object lock = new Object();
+    private final List<Deque<byte[]>> pooledBuffersBySize = new ArrayList<>();
+
+    private long pooledBytes;
+    private long acquiredBytes;
+
+    ReadBufferPool(long memoryBudgetInBytes) {
+        this.memoryBudgetInBytes = memoryBudgetInBytes;
+        for (int size = MINIMUM_BUFFER_SIZE_IN_BYTES; size <= MAXIMUM_BUFFER_SIZE_IN_BYTES; size *= 2) {
+            pooledBuffersBySize.add(new ArrayDeque<>());
+        }
+    }
+
+    /**
+     * Returns a buffer of the preferred size, or a smaller one when the memory budget is exhausted.
+     * A download never waits for memory, once the budget is exhausted it is given a minimum sized buffer that is not pooled.
+     */
+    byte[] acquire(int preferredSizeInBytes) {
+        int size = sizeOf(preferredSizeInBytes);
+        synchronized (lock) {
+            for (int smallerSize = size; smallerSize >= MINIMUM_BUFFER_SIZE_IN_BYTES; smallerSize /= 2) {
+                byte[] pooledBuffer = pooledBuffersOf(smallerSize).poll();
+                if (pooledBuffer != null) {
+                    pooledBytes -= smallerSize;
+                    acquiredBytes += smallerSize;
+                    return pooledBuffer;
+                }
+
+                if (makeRoomFor(smallerSize)) {
+                    acquiredBytes += smallerSize;
+                    return new byte[smallerSize];
+                }
+            }
+
+            acquiredBytes += MINIMUM_BUFFER_SIZE_IN_BYTES;
+        }
+        Logger.w("read buffer memory budget of " + memoryBudgetInBytes + " bytes exhausted");
+        return new byte[MINIMUM_BUFFER_SIZE_IN_BYTES];
+    }
+
+    private static int sizeOf(int preferredSizeInBytes) {
+        if (preferredSizeInBytes <= MINIMUM_BUFFER_SIZE_IN_BYTES) {
+            return MINIMUM_BUFFER_SIZE_IN_BYTES;
+        }
+        return Math.min(Integer.highestOneBit(preferredSizeInBytes), MAXIMUM_BUFFER_SIZE_IN_BYTES);
+    }
+
+    private Deque<byte[]> pooledBuffersOf(int size) {
+        int index = Integer.numberOfTrailingZeros(size) - Integer.numberOfTrailingZeros(MINIMUM_BUFFER_SIZE_IN_BYTES);
+        return pooledBuffersBySize.get(index);
+    }
+
+    private boolean makeRoomFor(int size) {
+        for (int index = pooledBuffersBySize.size() - 1; index >= 0 && !fitsIntoBudget(size); index--) {
+            Deque<byte[]> pooledBuffers = pooledBuffersBySize.get(index);
+            while (!pooledBuffers.isEmpty() && !fitsIntoBudget(size)) {
+                pooledBytes -= pooledBuffers.poll().length;
+            }
+        }
+        return fitsIntoBudget(size);
+    }
+
+    private boolean fitsIntoBudget(int size) {
+        return pooledBytes + acquiredBytes + size <= memoryBudgetInBytes;
+    }
+
+    void release(byte[] buffer) {
+        int size = buffer.length;
+        synchronized (lock) {
+            acquiredBytes -= size;
+            if (isPoolable(size) && fitsIntoBudget(size)) {
+                pooledBuffersOf(size).offer(buffer);
+                pooledBytes += size;
+            }
+        }
+    }
+
+    private static boolean isPoolable(int size) {
+        return Integer.bitCount(size) == 1 && size >= MINIMUM_BUFFER_SIZE_IN_BYTES && size <= MAXIMUM_BUFFER_SIZE_IN_BYTES;
+    }
+
+    long pooledBytes() {
+        synchronized (lock) {
+            return pooledBytes;
+        }
+    }
+
+    long acquiredBytes() {
+        synchronized (lock) {
+            return acquiredBytes;
+        }
+    }
+}
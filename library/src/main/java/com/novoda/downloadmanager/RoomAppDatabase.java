@@ -8,13 +8,18 @@ import androidx.room.migration.Migration;
 import android.content.Context;
 import androidx.sqlite.db.SupportSQLiteDatabase;
 
-@Database(entities = {RoomBatch.class, RoomFile.class}, version = 4)
+@Database(entities = {RoomBatch.class, RoomFile.class, RoomFileSegment.class}, version = 9)
 abstract class RoomAppDatabase extends RoomDatabase {
 
     private static final int VERSION_ONE = 1;
     private static final int VERSION_TWO = 2;
     private static final int VERSION_THREE = 3;
     private static final int VERSION_FOUR = 4;
+    private static final int VERSION_FIVE = 5;
+    private static final int VERSION_SIX = 6;
+    private static final int VERSION_SEVEN = 7;
+    private static final int VERSION_EIGHT = 8;
+    private static final int VERSION_NINE = 9;
 
     private static volatile RoomAppDatabase singleInstance;
 
@@ -22,6 +27,8 @@ abstract class RoomAppDatabase extends RoomDatabase {
 
     abstract RoomFileDao roomFileDao();
 
+    abstract RoomFileSegmentDao roomFileSegmentDao();
+
     @SuppressWarnings("PMD.NonThreadSafeSingleton")     // See https://en.wikipedia.org/wiki/Double-checked_locking#Usage_in_Java.
     static RoomAppDatabase obtainInstance(Context context) {
         if (singleInstance == null) {
@@ -44,6 +51,11 @@ abstract class RoomAppDatabase extends RoomDatabase {
                 .addMigrations(new VersionOneToVersionTwoMigration())
                 .addMigrations(new VersionTwoToVersionThreeMigration(storageRoot))
                 .addMigrations(new VersionThreeToVersionFourMigration())
+                .addMigrations(new VersionFourToVersionFiveMigration())
+                .addMigrations(new VersionFiveToVersionSixMigration())
+                .addMigrations(new VersionSixToVersionSevenMigration())
+                .addMigrations(new VersionSevenToVersionEightMigration())
+                .addMigrations(new VersionEightToVersionNineMigration())
                 .build();
     }
 
@@ -104,4 +116,72 @@ abstract class RoomAppDatabase extends RoomDatabase {
         }
     }
 
+    private static final class VersionFourToVersionFiveMigration extends Migration {
+
+        VersionFourToVersionFiveMigration() {
+            super(VERSION_FOUR, VERSION_FIVE);
+        }
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `RoomFileSegment` (`file_id` TEXT NOT NULL, `batch_id` TEXT NOT NULL, "
+                                     + "`segment_index` INTEGER NOT NULL, `start_byte` INTEGER NOT NULL, `end_byte` INTEGER NOT NULL, "
+                                     + "`bytes_downloaded` INTEGER NOT NULL, PRIMARY KEY(`file_id`, `batch_id`, `segment_index`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_RoomFileSegment_batch_id` ON `RoomFileSegment` (`batch_id`)");
+        }
+    }
+
+    private static final class VersionFiveToVersionSixMigration extends Migration {
+
+        VersionFiveToVersionSixMigration() {
+            super(VERSION_FIVE, VERSION_SIX);
+        }
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE RoomFile ADD COLUMN `bytes_downloaded` INTEGER NOT NULL DEFAULT -1");
+            database.execSQL("ALTER TABLE RoomFile ADD COLUMN `file_status` TEXT");
+        }
+    }
+
+    private static final class VersionSixToVersionSevenMigration extends Migration {
+
+        VersionSixToVersionSevenMigration() {
+            super(VERSION_SIX, VERSION_SEVEN);
+        }
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_RoomBatch_batch_status_batch_downloaded_date_time_in_millis` "
+                                     + "ON `RoomBatch` (`batch_status`, `batch_downloaded_date_time_in_millis`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_RoomBatch_batch_downloaded_date_time_in_millis` "
+                                     + "ON `RoomBatch` (`batch_downloaded_date_time_in_millis`)");
+        }
+    }
+
+    private static final class VersionSevenToVersionEightMigration extends Migration {
+
+        VersionSevenToVersionEightMigration() {
+            super(VERSION_SEVEN, VERSION_EIGHT);
+        }
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE RoomFile ADD COLUMN `expected_digest` TEXT");
+            database.execSQL("ALTER TABLE RoomFile ADD COLUMN `digest_state` TEXT");
+        }
+    }
+
+    private static final class VersionEightToVersionNineMigration extends Migration {
+
+        VersionEightToVersionNineMigration() {
+            super(VERSION_EIGHT, VERSION_NINE);
+        }
+
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE RoomFile ADD COLUMN `range_validator` TEXT");
+        }
+    }
+
 }
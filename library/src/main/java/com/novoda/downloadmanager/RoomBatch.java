@@ -7,7 +7,11 @@ import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 @SuppressWarnings("checkstyle:visibilitymodifier") // Accessors will add a lot of boilerplate code.
-@Entity(indices = {@Index("batch_id")})
+@Entity(indices = {
+        @Index("batch_id"),
+        @Index({"batch_status", "batch_downloaded_date_time_in_millis"}),
+        @Index("batch_downloaded_date_time_in_millis")
+})
 class RoomBatch {
 
     @NonNull
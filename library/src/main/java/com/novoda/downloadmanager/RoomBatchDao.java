@@ -1,12 +1,14 @@
 package com.novoda.downloadmanager;
 
+import android.database.Cursor;
+
 import androidx.room.Dao;
-import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.RawQuery;
 import androidx.room.Transaction;
-import androidx.room.Update;
+import androidx.sqlite.db.SupportSQLiteQuery;
 
 import java.util.List;
 
@@ -20,13 +22,40 @@ interface RoomBatchDao {
     @Query("SELECT * FROM RoomBatch")
     List<RoomBatch> loadAll();
 
-    @Transaction
-    @Query("SELECT * FROM RoomBatch WHERE RoomBatch.batch_id = :batchId")
-    RoomBatch load(String batchId);
-
-    @Delete
-    void delete(RoomBatch... roomBatches);
-
-    @Update(onConflict = OnConflictStrategy.REPLACE)
-    void update(RoomBatch... roomBatches);
+    /**
+     * One row per segment, or per file and per batch when they have none, grouped in the order they were persisted.
+     */
+    @Query("SELECT RoomBatch.batch_id, batch_title, batch_status, batch_downloaded_date_time_in_millis, notification_seen, storage_root, "
+            + "RoomFile.file_id, file_path, total_size, url, "
+            + "RoomFile.bytes_downloaded AS file_bytes_downloaded, file_status, expected_digest, digest_state, range_validator, "
+            + "segment_index, start_byte, end_byte, RoomFileSegment.bytes_downloaded AS segment_bytes_downloaded "
+            + "FROM RoomBatch "
+            + "LEFT JOIN RoomFile ON RoomFile.batch_id = RoomBatch.batch_id "
+            + "LEFT JOIN RoomFileSegment ON RoomFileSegment.batch_id = RoomFile.batch_id AND RoomFileSegment.file_id = RoomFile.file_id "
+            + "ORDER BY RoomBatch.rowid, RoomFile.rowid, RoomFileSegment.segment_index")
+    Cursor loadAllWithFiles();
+
+    /**
+     * Takes a query selecting every RoomBatch column, along with batch_bytes_downloaded and batch_total_size.
+     */
+    @RawQuery
+    List<RoomBatchWithProgress> loadWithProgress(SupportSQLiteQuery query);
+
+    @RawQuery
+    int count(SupportSQLiteQuery query);
+
+    @Query("DELETE FROM RoomBatch WHERE RoomBatch.batch_id = :batchId")
+    int delete(String batchId);
+
+    @Query("DELETE FROM RoomBatch WHERE RoomBatch.batch_id IN (:batchIds)")
+    int deleteAll(List<String> batchIds);
+
+    @Query("UPDATE RoomBatch SET batch_status = :status WHERE RoomBatch.batch_id = :batchId")
+    int updateStatus(String batchId, String status);
+
+    @Query("UPDATE RoomBatch SET batch_status = :status WHERE RoomBatch.batch_id IN (:batchIds)")
+    int updateStatusOfAll(List<String> batchIds, String status);
+
+    @Query("UPDATE RoomBatch SET notification_seen = :notificationSeen WHERE RoomBatch.batch_id = :batchId")
+    int updateNotificationSeen(String batchId, boolean notificationSeen);
 }
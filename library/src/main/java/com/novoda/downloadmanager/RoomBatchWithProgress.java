@@ -0,0 +1,17 @@
+package com.novoda.downloadmanager;
+
+import androidx.room.ColumnInfo;
+import androidx.room.Embedded;
+
+@SuppressWarnings("checkstyle:visibilitymodifier") // Accessors will add a lot of boilerplate code.
+class RoomBatchWithProgress {
+
+    @Embedded
+    public RoomBatch batch;
+
+    @ColumnInfo(name = "batch_bytes_downloaded")
+    public long bytesDownloaded;
+
+    @ColumnInfo(name = "batch_total_size")
+    public long totalSize;
+}
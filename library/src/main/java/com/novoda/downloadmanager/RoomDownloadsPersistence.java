@@ -1,6 +1,10 @@
 package com.novoda.downloadmanager;
 
 import android.content.Context;
+import android.database.Cursor;
+
+import androidx.annotation.Nullable;
+import androidx.sqlite.db.SimpleSQLiteQuery;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -9,6 +13,7 @@ import java.util.UUID;
 final class RoomDownloadsPersistence implements DownloadsPersistence {
 
     private static final boolean NOTIFICATION_SEEN = true;
+    private static final int MAXIMUM_BATCH_IDS_PER_STATEMENT = 500;
     private final RoomAppDatabase database;
 
     static RoomDownloadsPersistence newInstance(Context context) {
@@ -54,20 +59,91 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
 
         List<DownloadsBatchPersisted> batchPersistedList = new ArrayList<>(roomBatches.size());
         for (RoomBatch roomBatch : roomBatches) {
-            DownloadsBatchPersisted batchPersisted = new LiteDownloadsBatchPersisted(
-                    DownloadBatchTitleCreator.createFrom(roomBatch.title),
-                    DownloadBatchIdCreator.createSanitizedFrom(roomBatch.id),
-                    DownloadBatchStatus.Status.from(roomBatch.status),
-                    roomBatch.downloadedDateTimeInMillis,
-                    roomBatch.notificationSeen,
-                    roomBatch.storageRoot
-            );
-            batchPersistedList.add(batchPersisted);
+            batchPersistedList.add(batchPersistedFrom(roomBatch));
         }
 
         return batchPersistedList;
     }
 
+    private static DownloadsBatchPersisted batchPersistedFrom(RoomBatch roomBatch) {
+        return new LiteDownloadsBatchPersisted(
+                DownloadBatchTitleCreator.createFrom(roomBatch.title),
+                DownloadBatchIdCreator.createSanitizedFrom(roomBatch.id),
+                DownloadBatchStatus.Status.from(roomBatch.status),
+                roomBatch.downloadedDateTimeInMillis,
+                roomBatch.notificationSeen,
+                roomBatch.storageRoot
+        );
+    }
+
+    /**
+     * The page of batches is selected first, so that only the files of the batches in the page are summed up.
+     * The sizes are unknown as long as the size of a single file is unknown.
+     */
+    @Override
+    public List<DownloadsBatchProgressPersisted> loadBatches(DownloadBatchQuery query) {
+        List<Object> arguments = new ArrayList<>();
+        String orderBy = orderByFrom(query.sortOrder());
+        String sql = "SELECT RoomBatch.*, "
+                + "CASE WHEN MIN(RoomFile.total_size) > 0 THEN SUM(MAX(RoomFile.bytes_downloaded, 0)) ELSE 0 END AS batch_bytes_downloaded, "
+                + "CASE WHEN MIN(RoomFile.total_size) > 0 THEN SUM(RoomFile.total_size) ELSE 0 END AS batch_total_size "
+                + "FROM (SELECT * FROM RoomBatch" + whereStatusIn(query, arguments)
+                + " ORDER BY " + orderBy + " LIMIT ? OFFSET ?) AS RoomBatch "
+                + "LEFT JOIN RoomFile ON RoomFile.batch_id = RoomBatch.batch_id "
+                + "GROUP BY RoomBatch.batch_id "
+                + "ORDER BY " + orderBy;
+        arguments.add(query.limit());
+        arguments.add(query.offset());
+
+        List<RoomBatchWithProgress> roomBatches = database.roomBatchDao().loadWithProgress(new SimpleSQLiteQuery(sql, arguments.toArray()));
+
+        List<DownloadsBatchProgressPersisted> batchPersistedList = new ArrayList<>(roomBatches.size());
+        for (RoomBatchWithProgress roomBatch : roomBatches) {
+            batchPersistedList.add(new LiteDownloadsBatchProgressPersisted(
+                    batchPersistedFrom(roomBatch.batch),
+                    roomBatch.bytesDownloaded,
+                    roomBatch.totalSize
+            ));
+        }
+        return batchPersistedList;
+    }
+
+    @Override
+    public int countBatches(DownloadBatchQuery query) {
+        List<Object> arguments = new ArrayList<>();
+        String sql = "SELECT COUNT(*) FROM RoomBatch" + whereStatusIn(query, arguments);
+        return database.roomBatchDao().count(new SimpleSQLiteQuery(sql, arguments.toArray()));
+    }
+
+    private static String whereStatusIn(DownloadBatchQuery query, List<Object> arguments) {
+        if (query.statuses().isEmpty()) {
+            return "";
+        }
+
+        StringBuilder whereClause = new StringBuilder(" WHERE RoomBatch.batch_status IN (");
+        for (DownloadBatchStatus.Status status : query.statuses()) {
+            whereClause.append("?, ");
+            arguments.add(status.toRawValue());
+        }
+        whereClause.setLength(whereClause.length() - ", ".length());
+        return whereClause.append(')').toString();
+    }
+
+    private static String orderByFrom(DownloadBatchSortOrder sortOrder) {
+        switch (sortOrder) {
+            case NEWEST_FIRST:
+                return "RoomBatch.batch_downloaded_date_time_in_millis DESC, RoomBatch.batch_id";
+            case OLDEST_FIRST:
+                return "RoomBatch.batch_downloaded_date_time_in_millis ASC, RoomBatch.batch_id";
+            case TITLE_ASCENDING:
+                return "RoomBatch.batch_title COLLATE NOCASE ASC, RoomBatch.batch_id";
+            case TITLE_DESCENDING:
+                return "RoomBatch.batch_title COLLATE NOCASE DESC, RoomBatch.batch_id";
+            default:
+                throw new IllegalStateException("sort order " + sortOrder + " not supported.");
+        }
+    }
+
     @Override
     public void persistFile(DownloadsFilePersisted filePersisted) {
         RoomFile roomFile = new RoomFile();
@@ -76,6 +152,13 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
         roomFile.url = filePersisted.url();
         roomFile.path = filePersisted.filePath().path();
         roomFile.fileId = filePersisted.downloadFileId().rawId();
+        roomFile.bytesDownloaded = filePersisted.bytesDownloaded();
+        DownloadFileStatus.Status fileStatus = filePersisted.fileStatus();
+        roomFile.fileStatus = fileStatus == null ? null : fileStatus.name();
+        FileDigest expectedDigest = filePersisted.expectedDigest();
+        roomFile.expectedDigest = expectedDigest == null ? null : expectedDigest.toRawValue();
+        roomFile.digestState = filePersisted.digestState();
+        roomFile.rangeValidator = filePersisted.rangeValidator();
 
         database.roomFileDao().insert(roomFile);
     }
@@ -100,7 +183,12 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
                     DownloadFileIdCreator.createFrom(roomFile.fileId),
                     new LiteFilePath(roomFile.path),
                     roomFile.totalSize,
-                    roomFile.url
+                    roomFile.url,
+                    roomFile.bytesDownloaded,
+                    fileStatusFrom(roomFile.fileStatus),
+                    FileDigest.fromRawValue(roomFile.expectedDigest),
+                    roomFile.digestState,
+                    roomFile.rangeValidator
             );
             filePersistedList.add(filePersisted);
         }
@@ -109,37 +197,161 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
     }
 
     @Override
-    public boolean delete(DownloadBatchId downloadBatchId) {
-        RoomBatch roomBatch = database.roomBatchDao().load(downloadBatchId.rawId());
-        if (roomBatch == null) {
-            return false;
+    public void persistFileSegment(DownloadsFileSegmentPersisted segmentPersisted) {
+        RoomFileSegment roomFileSegment = new RoomFileSegment();
+        roomFileSegment.fileId = segmentPersisted.downloadFileId().rawId();
+        roomFileSegment.batchId = segmentPersisted.downloadBatchId().rawId();
+        roomFileSegment.segmentIndex = segmentPersisted.segmentIndex();
+        roomFileSegment.startByte = segmentPersisted.startByte();
+        roomFileSegment.endByte = segmentPersisted.endByte();
+        roomFileSegment.bytesDownloaded = segmentPersisted.bytesDownloaded();
+
+        database.roomFileSegmentDao().insert(roomFileSegment);
+    }
+
+    @Override
+    public List<DownloadsFileSegmentPersisted> loadFileSegments(DownloadBatchId batchId, DownloadFileId fileId) {
+        List<RoomFileSegment> roomFileSegments = database.roomFileSegmentDao().loadAllSegmentsFor(batchId.rawId(), fileId.rawId());
+
+        List<DownloadsFileSegmentPersisted> segmentPersistedList = new ArrayList<>(roomFileSegments.size());
+        for (RoomFileSegment roomFileSegment : roomFileSegments) {
+            DownloadsFileSegmentPersisted segmentPersisted = new LiteDownloadsFileSegmentPersisted(
+                    batchId,
+                    fileId,
+                    roomFileSegment.segmentIndex,
+                    roomFileSegment.startByte,
+                    roomFileSegment.endByte,
+                    roomFileSegment.bytesDownloaded
+            );
+            segmentPersistedList.add(segmentPersisted);
         }
 
-        database.roomBatchDao().delete(roomBatch);
-        return true;
+        return segmentPersistedList;
     }
 
     @Override
-    public boolean update(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
-        RoomBatch roomBatch = database.roomBatchDao().load(downloadBatchId.rawId());
-        if (roomBatch == null) {
-            return false;
+    public void loadBatchesWithFiles(DownloadsPersistedRowsCallback callback) {
+        try (Cursor cursor = database.roomBatchDao().loadAllWithFiles()) {
+            BatchWithFilesColumns columns = new BatchWithFilesColumns(cursor);
+            String currentBatchId = null;
+            String currentFileId = null;
+            while (cursor.moveToNext()) {
+                String batchId = cursor.getString(columns.batchId);
+                if (!batchId.equals(currentBatchId)) {
+                    currentBatchId = batchId;
+                    currentFileId = null;
+                    callback.onBatch(batchPersistedFrom(cursor, columns));
+                }
+
+                if (cursor.isNull(columns.fileId)) {
+                    continue;
+                }
+
+                String fileId = cursor.getString(columns.fileId);
+                if (!fileId.equals(currentFileId)) {
+                    currentFileId = fileId;
+                    callback.onFile(
+                            DownloadFileIdCreator.createFrom(fileId),
+                            new LiteFilePath(cursor.getString(columns.filePath)),
+                            cursor.getLong(columns.totalSize),
+                            cursor.getString(columns.url),
+                            cursor.getLong(columns.fileBytesDownloaded),
+                            fileStatusFrom(cursor.getString(columns.fileStatus)),
+                            FileDigest.fromRawValue(cursor.getString(columns.expectedDigest)),
+                            cursor.getString(columns.digestState),
+                            cursor.getString(columns.rangeValidator)
+                    );
+                }
+
+                if (!cursor.isNull(columns.segmentIndex)) {
+                    callback.onFileSegment(
+                            cursor.getInt(columns.segmentIndex),
+                            cursor.getLong(columns.startByte),
+                            cursor.getLong(columns.endByte),
+                            cursor.getLong(columns.segmentBytesDownloaded)
+                    );
+                }
+            }
         }
+    }
+
+    private static DownloadsBatchPersisted batchPersistedFrom(Cursor cursor, BatchWithFilesColumns columns) {
+        return new LiteDownloadsBatchPersisted(
+                DownloadBatchTitleCreator.createFrom(cursor.getString(columns.batchTitle)),
+                DownloadBatchIdCreator.createSanitizedFrom(cursor.getString(columns.batchId)),
+                DownloadBatchStatus.Status.from(cursor.getString(columns.batchStatus)),
+                cursor.getLong(columns.downloadedDateTimeInMillis),
+                cursor.getInt(columns.notificationSeen) != 0,
+                cursor.getString(columns.storageRoot)
+        );
+    }
 
-        roomBatch.status = status.toRawValue();
-        database.roomBatchDao().update(roomBatch);
+    @Nullable
+    private static DownloadFileStatus.Status fileStatusFrom(@Nullable String rawFileStatus) {
+        return rawFileStatus == null ? null : DownloadFileStatus.Status.valueOf(rawFileStatus);
+    }
+
+    /**
+     * Files are deleted along with their batch by the foreign key, segments have to be deleted explicitly.
+     */
+    @Override
+    public boolean delete(DownloadBatchId downloadBatchId) {
+        database.roomFileSegmentDao().deleteAllSegmentsFor(downloadBatchId.rawId());
+        return database.roomBatchDao().delete(downloadBatchId.rawId()) > 0;
+    }
+
+    @Override
+    public boolean deleteFileSegments(DownloadBatchId batchId, DownloadFileId fileId) {
+        database.roomFileSegmentDao().deleteAllSegmentsFor(batchId.rawId(), fileId.rawId());
         return true;
     }
 
+    @Override
+    public boolean update(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+        return database.roomBatchDao().updateStatus(downloadBatchId.rawId(), status.toRawValue()) > 0;
+    }
+
     @Override
     public boolean update(DownloadBatchId downloadBatchId, boolean notificationSeen) {
-        RoomBatch roomBatch = database.roomBatchDao().load(downloadBatchId.rawId());
-        if (roomBatch == null) {
-            return false;
+        return database.roomBatchDao().updateNotificationSeen(downloadBatchId.rawId(), notificationSeen) > 0;
+    }
+
+    @Override
+    public int deleteAll(List<DownloadBatchId> downloadBatchIds) {
+        int deletedBatches = 0;
+        for (List<String> rawBatchIds : rawIdsInChunks(downloadBatchIds)) {
+            database.roomFileSegmentDao().deleteAllSegmentsForAll(rawBatchIds);
+            deletedBatches += database.roomBatchDao().deleteAll(rawBatchIds);
         }
-        roomBatch.notificationSeen = notificationSeen;
-        database.roomBatchDao().update(roomBatch);
-        return true;
+        return deletedBatches;
+    }
+
+    @Override
+    public int updateAll(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status) {
+        int updatedBatches = 0;
+        for (List<String> rawBatchIds : rawIdsInChunks(downloadBatchIds)) {
+            updatedBatches += database.roomBatchDao().updateStatusOfAll(rawBatchIds, status.toRawValue());
+        }
+        return updatedBatches;
+    }
+
+    /**
+     * SQLite limits the number of arguments of a statement, which bounds the batch ids of a single statement.
+     */
+    private static List<List<String>> rawIdsInChunks(List<DownloadBatchId> downloadBatchIds) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>(Math.min(downloadBatchIds.size(), MAXIMUM_BATCH_IDS_PER_STATEMENT));
+        for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+            if (chunk.size() == MAXIMUM_BATCH_IDS_PER_STATEMENT) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(MAXIMUM_BATCH_IDS_PER_STATEMENT);
+            }
+            chunk.add(downloadBatchId.rawId());
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+        return chunks;
     }
 
     @Override
@@ -171,7 +383,12 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
                     downloadFileId,
                     new LiteFilePath(completedDownloadFile.newFileLocation()),
                     completedDownloadFile.fileSize().totalSize(),
-                    url
+                    url,
+                    completedDownloadFile.fileSize().totalSize(),
+                    DownloadFileStatus.Status.DOWNLOADED,
+                    null,
+                    null,
+                    null
             );
             persistFile(persistedFile);
         }
@@ -184,4 +401,49 @@ final class RoomDownloadsPersistence implements DownloadsPersistence {
             return completedDownloadFile.fileId();
         }
     }
+
+    private static final class BatchWithFilesColumns {
+
+        private final int batchId;
+        private final int batchTitle;
+        private final int batchStatus;
+        private final int downloadedDateTimeInMillis;
+        private final int notificationSeen;
+        private final int storageRoot;
+        private final int fileId;
+        private final int filePath;
+        private final int totalSize;
+        private final int url;
+        private final int fileBytesDownloaded;
+        private final int fileStatus;
+        private final int expectedDigest;
+        private final int digestState;
+        private final int rangeValidator;
+        private final int segmentIndex;
+        private final int startByte;
+        private final int endByte;
+        private final int segmentBytesDownloaded;
+
+        BatchWithFilesColumns(Cursor cursor) {
+            batchId = cursor.getColumnIndexOrThrow("batch_id");
+            batchTitle = cursor.getColumnIndexOrThrow("batch_title");
+            batchStatus = cursor.getColumnIndexOrThrow("batch_status");
+            downloadedDateTimeInMillis = cursor.getColumnIndexOrThrow("batch_downloaded_date_time_in_millis");
+            notificationSeen = cursor.getColumnIndexOrThrow("notification_seen");
+            storageRoot = cursor.getColumnIndexOrThrow("storage_root");
+            fileId = cursor.getColumnIndexOrThrow("file_id");
+            filePath = cursor.getColumnIndexOrThrow("file_path");
+            totalSize = cursor.getColumnIndexOrThrow("total_size");
+            url = cursor.getColumnIndexOrThrow("url");
+            fileBytesDownloaded = cursor.getColumnIndexOrThrow("file_bytes_downloaded");
+            fileStatus = cursor.getColumnIndexOrThrow("file_status");
+            expectedDigest = cursor.getColumnIndexOrThrow("expected_digest");
+            digestState = cursor.getColumnIndexOrThrow("digest_state");
+            rangeValidator = cursor.getColumnIndexOrThrow("range_validator");
+            segmentIndex = cursor.getColumnIndexOrThrow("segment_index");
+            startByte = cursor.getColumnIndexOrThrow("start_byte");
+            endByte = cursor.getColumnIndexOrThrow("end_byte");
+            segmentBytesDownloaded = cursor.getColumnIndexOrThrow("segment_bytes_downloaded");
+        }
+    }
 }
@@ -32,4 +32,19 @@ class RoomFile {
 
     @ColumnInfo(name = "url")
     String url;
+
+    @ColumnInfo(name = "bytes_downloaded", defaultValue = "-1")
+    long bytesDownloaded;
+
+    @ColumnInfo(name = "file_status")
+    String fileStatus;
+
+    @ColumnInfo(name = "expected_digest")
+    String expectedDigest;
+
+    @ColumnInfo(name = "digest_state")
+    String digestState;
+
+    @ColumnInfo(name = "range_validator")
+    String rangeValidator;
 }
@@ -0,0 +1,35 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.NonNull;
+import androidx.room.ColumnInfo;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+// No foreign key to RoomFile on purpose, files are re-inserted with REPLACE which would cascade onto the segments.
+@SuppressWarnings("checkstyle:visibilitymodifier") // Accessors will add a lot of boilerplate code.
+@Entity(
+        primaryKeys = {"file_id", "batch_id", "segment_index"},
+        indices = {@Index("batch_id")}
+)
+class RoomFileSegment {
+
+    @NonNull
+    @ColumnInfo(name = "file_id")
+    String fileId;
+
+    @NonNull
+    @ColumnInfo(name = "batch_id")
+    String batchId;
+
+    @ColumnInfo(name = "segment_index")
+    int segmentIndex;
+
+    @ColumnInfo(name = "start_byte")
+    long startByte;
+
+    @ColumnInfo(name = "end_byte")
+    long endByte;
+
+    @ColumnInfo(name = "bytes_downloaded")
+    long bytesDownloaded;
+}
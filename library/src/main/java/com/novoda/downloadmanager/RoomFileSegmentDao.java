@@ -0,0 +1,28 @@
+package com.novoda.downloadmanager;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+interface RoomFileSegmentDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void insert(RoomFileSegment roomFileSegment);
+
+    @Query("SELECT * FROM RoomFileSegment WHERE RoomFileSegment.batch_id = :batchId AND RoomFileSegment.file_id = :fileId "
+            + "ORDER BY RoomFileSegment.segment_index")
+    List<RoomFileSegment> loadAllSegmentsFor(String batchId, String fileId);
+
+    @Query("DELETE FROM RoomFileSegment WHERE RoomFileSegment.batch_id = :batchId")
+    void deleteAllSegmentsFor(String batchId);
+
+    @Query("DELETE FROM RoomFileSegment WHERE RoomFileSegment.batch_id = :batchId AND RoomFileSegment.file_id = :fileId")
+    void deleteAllSegmentsFor(String batchId, String fileId);
+
+    @Query("DELETE FROM RoomFileSegment WHERE RoomFileSegment.batch_id IN (:batchIds)")
+    void deleteAllSegmentsForAll(List<String> batchIds);
+}
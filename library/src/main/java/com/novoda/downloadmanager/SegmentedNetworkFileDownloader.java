@@ -0,0 +1,192 @@
+package com.novoda.downloadmanager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads the {@link FileSegment}s of a single file in parallel, one ranged request per segment.
+ * Bytes are emitted from the segment threads while errors and completion are emitted from the calling thread.
+ */
+class SegmentedNetworkFileDownloader {
+
+    private static final String HEADER_ACCEPT_RANGES = "Accept-Ranges";
+    private static final String RANGE_UNIT_BYTES = "bytes";
+    private static final String RANGE_UNIT_NONE = "none";
+
+    private final HttpClient httpClient;
+    private final NetworkRequestCreator requestCreator;
+    private final ExecutorService executor;
+    private final ReadBufferPool readBufferPool;
+    private final ByteRangeSupport byteRangeSupport;
+    private final int maximumSegments;
+
+    private final Set<NetworkResponse> activeResponses = new CopyOnWriteArraySet<>();
+
+    private volatile boolean canDownload;
+
+    SegmentedNetworkFileDownloader(HttpClient httpClient,
+                                   NetworkRequestCreator requestCreator,
+                                   ExecutorService executor,
+                                   ReadBufferPool readBufferPool,
+                                   ByteRangeSupport byteRangeSupport,
+                                   int maximumSegments) {
+        this.httpClient = httpClient;
+        this.requestCreator = requestCreator;
+        this.executor = executor;
+        this.readBufferPool = readBufferPool;
+        this.byteRangeSupport = byteRangeSupport;
+        this.maximumSegments = maximumSegments;
+    }
+
+    int maximumSegments() {
+        return maximumSegments;
+    }
+
+    /**
+     * Hosts are only asked whether they accept byte ranges until it is known.
+     */
+    boolean acceptsByteRanges(String url) {
+        Optional<Boolean> knownByteRangeSupport = byteRangeSupport.acceptsByteRanges(url);
+        if (knownByteRangeSupport.isPresent()) {
+            return knownByteRangeSupport.get();
+        }
+
+        NetworkRequest request = requestCreator.createFileSizeHeadRequest(url);
+        try {
+            NetworkResponse response = httpClient.execute(request);
+            boolean acceptsByteRanges = response.isSuccessful()
+                    && RANGE_UNIT_BYTES.equalsIgnoreCase(response.header(HEADER_ACCEPT_RANGES, RANGE_UNIT_NONE));
+            response.closeByteStream();
+            if (response.isSuccessful()) {
+                byteRangeSupport.remember(url, acceptsByteRanges);
+            }
+            return acceptsByteRanges;
+        } catch (IOException e) {
+            Logger.e(e, "Error requesting accepted ranges for " + url);
+            return false;
+        }
+    }
+
+    void startDownloading(String url, List<FileSegment> segments, Callback callback) {
+        canDownload = true;
+
+        List<Future<Optional<String>>> segmentDownloads = new ArrayList<>(segments.size());
+        for (FileSegment segment : segments) {
+            if (!segment.isComplete()) {
+                segmentDownloads.add(executor.submit(() -> downloadSegment(url, segment, callback)));
+            }
+        }
+
+        Optional<String> error = Optional.absent();
+        for (Future<Optional<String>> segmentDownload : segmentDownloads) {
+            try {
+                error = error.or(segmentDownload.get());
+            } catch (InterruptedException e) {
+                Logger.e(e, "Interrupted while waiting for the segments of " + url);
+                stopDownloading();
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                Logger.e(e, "Exception while downloading a segment of " + url);
+                stopDownloading();
+                error = error.or(Optional.fromNullable(e.getMessage()));
+            }
+        }
+
+        if (error.isPresent()) {
+            callback.onError(error.get());
+        }
+        callback.onDownloadFinished();
+    }
+
+    private Optional<String> downloadSegment(String url, FileSegment segment, Callback callback) {
+        NetworkRequest request = requestCreator.createDownloadRequestWithDownloadedBytesHeader(url, segment.currentPosition(), segment.endByte());
+        NetworkResponse response = null;
+        try {
+            response = httpClient.execute(request);
+            activeResponses.add(response);
+            if (!canDownload) {
+                response.cancel();
+            }
+            return processResponse(segment, callback, response, url);
+        } catch (IOException e) {
+            if (!canDownload) {
+                Logger.v("http request cancelled for segment " + segment.index());
+                return Optional.absent();
+            }
+            Logger.e(e, "Exception with http request for segment " + segment.index());
+            stopDownloading();
+            return Optional.fromNullable(e.getMessage());
+        } finally {
+            if (response != null) {
+                activeResponses.remove(response);
+            }
+            try {
+                if (response != null) {
+                    response.closeByteStream();
+                }
+            } catch (IOException e) {
+                Logger.e(e, "Exception while closing the body response");
+            }
+        }
+    }
+
+    private Optional<String> processResponse(FileSegment segment, Callback callback, NetworkResponse response, String url) throws IOException {
+        int responseCode = response.code();
+        if (responseCode != HttpURLConnection.HTTP_PARTIAL) {
+            Logger.e("Network response code is not partial content, responseCode: " + responseCode);
+            stopDownloading();
+            return Optional.of(String.format(
+                    "Request: %s for segment %s with response code: %s failed.",
+                    url,
+                    segment.index(),
+                    responseCode
+            ));
+        }
+
+        AdaptiveReadBuffer readBuffer = new AdaptiveReadBuffer(readBufferPool);
+        try (InputStream in = response.openByteStream()) {
+            while (canDownload && !segment.isComplete()) {
+                int readLast = readBuffer.read(in, segment.remainingBytes());
+                if (readLast == AdaptiveReadBuffer.END_OF_STREAM) {
+                    break;
+                }
+
+                if (readLast != 0) {
+                    callback.onBytesRead(segment, readBuffer.bytes(), readLast);
+                }
+            }
+        } finally {
+            readBuffer.release();
+        }
+        return Optional.absent();
+    }
+
+    void stopDownloading() {
+        canDownload = false;
+        for (NetworkResponse response : activeResponses) {
+            response.cancel();
+        }
+    }
+
+    interface Callback {
+
+        /**
+         * Called from the thread of the segment, implementations are expected to write the bytes
+         * at {@link FileSegment#currentPosition()} and then advance the segment.
+         */
+        void onBytesRead(FileSegment segment, byte[] buffer, int bytesRead);
+
+        void onError(String cause);
+
+        void onDownloadFinished();
+    }
+}
@@ -4,16 +4,32 @@ import android.app.Notification;
 import androidx.annotation.WorkerThread;
 import androidx.core.app.NotificationManagerCompat;
 
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Shows the notification of a payload as the one of the foreground service, or stacked next to it. Ongoing notifications
+ * are grouped, a summary is shown along with them once there are more than one.
+ */
 class ServiceNotificationDispatcher<T> {
 
     private static final String NOTIFICATION_TAG = "download-manager";
+    private static final String GROUP_SUMMARY_TAG = "download-manager-summary";
+    private static final int GROUP_SUMMARY_ID = 0;
+    private static final int NO_GROUP_SUMMARY = 0;
+    private static final int NO_PERSISTENT_NOTIFICATION = 0;
+    private static final int MINIMUM_GROUP_SIZE = 2;
 
     private final Object waitForDownloadService;
     private final Wait.Criteria serviceCriteria;
     private final NotificationCreator<T> notificationCreator;
     private final NotificationManagerCompat notificationManager;
 
+    private final Set<Integer> ongoingNotificationIds = new HashSet<>();
+
     private int persistentNotificationId;
+    private boolean isPersistentNotificationStarted;
+    private int groupSummarySize = NO_GROUP_SUMMARY;
     private DownloadManagerService service;
 
     ServiceNotificationDispatcher(Object waitForDownloadService,
@@ -43,7 +59,7 @@ class ServiceNotificationDispatcher<T> {
                     updatePersistentNotification(notificationInformation);
                     break;
                 case SINGLE_DISMISSIBLE_NOTIFICATION:
-                    notificationManager.cancelAll();
+                    cancelAllStackedNotifications();
                     stackNotification(notificationInformation);
                     break;
                 case STACK_NOTIFICATION_NOT_DISMISSIBLE:
@@ -53,7 +69,7 @@ class ServiceNotificationDispatcher<T> {
                     stackNotification(notificationInformation);
                     break;
                 case HIDDEN_NOTIFICATION:
-                    dismissPersistentIfCurrent(notificationInformation);
+                    hideNotification(notificationInformation);
                     break;
                 default:
                     String message = String.format(
@@ -64,39 +80,98 @@ class ServiceNotificationDispatcher<T> {
                     throw new IllegalArgumentException(message);
             }
 
+            updateGroupSummary(notificationInformation);
             return null;
         };
     }
 
+    /**
+     * Every notification but the one of the foreground service is cancelled, the summary included.
+     */
+    private void cancelAllStackedNotifications() {
+        notificationManager.cancelAll();
+        ongoingNotificationIds.clear();
+        if (isPersistentNotificationStarted) {
+            ongoingNotificationIds.add(persistentNotificationId);
+        }
+        groupSummarySize = NO_GROUP_SUMMARY;
+    }
+
     private void dismissStackedNotification(NotificationInformation notificationInformation) {
         notificationManager.cancel(NOTIFICATION_TAG, notificationInformation.getId());
     }
 
+    /**
+     * The service is only started when the notification it shows changes, later updates are posted to that notification.
+     */
     private void updatePersistentNotification(NotificationInformation notificationInformation) {
-        persistentNotificationId = notificationInformation.getId();
-        service.start(notificationInformation.getId(), notificationInformation.getNotification());
+        int notificationId = notificationInformation.getId();
+        ongoingNotificationIds.add(notificationId);
+        if (isPersistentNotificationStarted && persistentNotificationId == notificationId) {
+            notificationManager.notify(notificationId, notificationInformation.getNotification());
+            return;
+        }
+
+        persistentNotificationId = notificationId;
+        isPersistentNotificationStarted = true;
+        service.start(notificationId, notificationInformation.getNotification());
     }
 
     private void stackNotification(NotificationInformation notificationInformation) {
+        ongoingNotificationIds.remove(notificationInformation.getId());
         dismissPersistentIfCurrent(notificationInformation);
         Notification notification = notificationInformation.getNotification();
         notificationManager.notify(NOTIFICATION_TAG, notificationInformation.getId(), notification);
     }
 
     private void stackNotificationNotDismissible(NotificationInformation notificationInformation) {
+        ongoingNotificationIds.add(notificationInformation.getId());
         dismissPersistentIfCurrent(notificationInformation);
         Notification notification = notificationInformation.getNotification();
         notification.flags |= Notification.FLAG_ONGOING_EVENT;
         notificationManager.notify(NOTIFICATION_TAG, notificationInformation.getId(), notification);
     }
 
+    private void hideNotification(NotificationInformation notificationInformation) {
+        ongoingNotificationIds.remove(notificationInformation.getId());
+        dismissPersistentIfCurrent(notificationInformation);
+    }
+
     private void dismissPersistentIfCurrent(NotificationInformation notificationInformation) {
-        if (persistentNotificationId == notificationInformation.getId()) {
+        if (isPersistentNotificationStarted && persistentNotificationId == notificationInformation.getId()) {
+            isPersistentNotificationStarted = false;
             service.stop(true);
         }
     }
 
+    /**
+     * Cancelling a summary cancels the notifications of its group, so it is only cancelled once none of them is ongoing.
+     */
+    private void updateGroupSummary(NotificationInformation notificationInformation) {
+        int groupSize = ongoingNotificationIds.size();
+        if (groupSize == groupSummarySize) {
+            return;
+        }
+
+        if (groupSize == 0) {
+            notificationManager.cancel(GROUP_SUMMARY_TAG, GROUP_SUMMARY_ID);
+            groupSummarySize = NO_GROUP_SUMMARY;
+        } else if (groupSize >= MINIMUM_GROUP_SIZE || groupSummarySize != NO_GROUP_SUMMARY) {
+            Notification groupSummary = notificationCreator.createGroupSummary(notificationInformation.getNotification(), groupSize);
+            notificationManager.notify(GROUP_SUMMARY_TAG, GROUP_SUMMARY_ID, groupSummary);
+            groupSummarySize = groupSize;
+        }
+    }
+
+    /**
+     * A new service shows no notification yet, it is started by the next persistent notification.
+     */
     void setService(DownloadManagerService service) {
+        if (isPersistentNotificationStarted) {
+            ongoingNotificationIds.remove(persistentNotificationId);
+        }
+        isPersistentNotificationStarted = false;
+        persistentNotificationId = NO_PERSISTENT_NOTIFICATION;
         this.service = service;
         serviceCriteria.update(service);
     }
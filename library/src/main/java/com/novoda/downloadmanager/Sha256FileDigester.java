@@ -0,0 +1,165 @@
+package com.novoda.downloadmanager;
+
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * SHA-256 as specified by FIPS 180-4. {@link java.security.MessageDigest} cannot export its state,
+ * which a resumed download needs to carry on hashing.
+ */
+@SuppressWarnings("checkstyle:magicnumber")
+final class Sha256FileDigester extends FileDigester {
+
+    private static final int BLOCK_SIZE_IN_BYTES = 64;
+    private static final int LENGTH_SIZE_IN_BYTES = 8;
+    private static final int HASH_SIZE_IN_WORDS = 8;
+    private static final int STATE_HEADER_SIZE_IN_BYTES = HASH_SIZE_IN_WORDS * 4 + LENGTH_SIZE_IN_BYTES;
+    private static final byte PADDING_START = (byte) 0x80;
+
+    private static final int[] INITIAL_HASH = {
+            0x6a09e667, 0xbb67ae85, 0x3c6ef372, 0xa54ff53a, 0x510e527f, 0x9b05688c, 0x1f83d9ab, 0x5be0cd19
+    };
+
+    private static final int[] ROUND_CONSTANTS = {
+            0x428a2f98, 0x71374491, 0xb5c0fbcf, 0xe9b5dba5, 0x3956c25b, 0x59f111f1, 0x923f82a4, 0xab1c5ed5,
+            0xd807aa98, 0x12835b01, 0x243185be, 0x550c7dc3, 0x72be5d74, 0x80deb1fe, 0x9bdc06a7, 0xc19bf174,
+            0xe49b69c1, 0xefbe4786, 0x0fc19dc6, 0x240ca1cc, 0x2de92c6f, 0x4a7484aa, 0x5cb0a9dc, 0x76f988da,
+            0x983e5152, 0xa831c66d, 0xb00327c8, 0xbf597fc7, 0xc6e00bf3, 0xd5a79147, 0x06ca6351, 0x14292967,
+            0x27b70a85, 0x2e1b2138, 0x4d2c6dfc, 0x53380d13, 0x650a7354, 0x766a0abb, 0x81c2c92e, 0x92722c85,
+            0xa2bfe8a1, 0xa81a664b, 0xc24b8b70, 0xc76c51a3, 0xd192e819, 0xd6990624, 0xf40e3585, 0x106aa070,
+            0x19a4c116, 0x1e376c08, 0x2748774c, 0x34b0bcb5, 0x391c0cb3, 0x4ed8aa4a, 0x5b9cca4f, 0x682e6ff3,
+            0x748f82ee, 0x78a5636f, 0x84c87814, 0x8cc70208, 0x90befffa, 0xa4506ceb, 0xbef9a3f7, 0xc67178f2
+    };
+
+    private final int[] hash;
+    private final byte[] block = new byte[BLOCK_SIZE_IN_BYTES];
+    @SuppressWarnings("PMD.SingularField")  // Reused by every block rather than allocated for each one.
+    private final int[] words = new int[ROUND_CONSTANTS.length];
+
+    private int blockLength;
+    private long lengthInBytes;
+
+    Sha256FileDigester() {
+        this.hash = INITIAL_HASH.clone();
+    }
+
+    @Nullable
+    static FileDigester restore(byte[] rawState) {
+        int blockLength = rawState.length - STATE_HEADER_SIZE_IN_BYTES;
+        if (blockLength < 0 || blockLength >= BLOCK_SIZE_IN_BYTES) {
+            return null;
+        }
+
+        Sha256FileDigester digester = new Sha256FileDigester();
+        ByteBuffer state = ByteBuffer.wrap(rawState);
+        for (int index = 0; index < HASH_SIZE_IN_WORDS; index++) {
+            digester.hash[index] = state.getInt();
+        }
+        digester.lengthInBytes = state.getLong();
+        state.get(digester.block, 0, blockLength);
+        digester.blockLength = blockLength;
+
+        if (digester.lengthInBytes % BLOCK_SIZE_IN_BYTES != blockLength) {
+            return null;
+        }
+        return digester;
+    }
+
+    @Override
+    void update(byte[] bytes, int offset, int length) {
+        lengthInBytes += length;
+        int index = offset;
+        int end = offset + length;
+        while (index < end) {
+            int bytesToCopy = Math.min(BLOCK_SIZE_IN_BYTES - blockLength, end - index);
+            System.arraycopy(bytes, index, block, blockLength, bytesToCopy);
+            blockLength += bytesToCopy;
+            index += bytesToCopy;
+            if (blockLength == BLOCK_SIZE_IN_BYTES) {
+                compress(hash, block, 0);
+                blockLength = 0;
+            }
+        }
+    }
+
+    @Override
+    FileDigest digest() {
+        int[] finalHash = hash.clone();
+        int paddedLength = blockLength < BLOCK_SIZE_IN_BYTES - LENGTH_SIZE_IN_BYTES ? BLOCK_SIZE_IN_BYTES : BLOCK_SIZE_IN_BYTES * 2;
+        ByteBuffer padded = ByteBuffer.allocate(paddedLength);
+        padded.put(block, 0, blockLength);
+        padded.put(PADDING_START);
+        padded.putLong(paddedLength - LENGTH_SIZE_IN_BYTES, lengthInBytes * 8);
+        for (int offset = 0; offset < paddedLength; offset += BLOCK_SIZE_IN_BYTES) {
+            compress(finalHash, padded.array(), offset);
+        }
+
+        ByteBuffer digest = ByteBuffer.allocate(HASH_SIZE_IN_WORDS * 4);
+        for (int word : finalHash) {
+            digest.putInt(word);
+        }
+        return FileDigest.from(FileDigest.Algorithm.SHA_256, digest.array());
+    }
+
+    @Override
+    byte[] rawState() {
+        ByteBuffer state = ByteBuffer.allocate(STATE_HEADER_SIZE_IN_BYTES + blockLength);
+        for (int word : hash) {
+            state.putInt(word);
+        }
+        state.putLong(lengthInBytes);
+        state.put(block, 0, blockLength);
+        return state.array();
+    }
+
+    private void compress(int[] hashToUpdate, byte[] bytes, int offset) {
+        for (int index = 0; index < 16; index++) {
+            int byteIndex = offset + index * 4;
+            words[index] = (bytes[byteIndex] & 0xff) << 24
+                    | (bytes[byteIndex + 1] & 0xff) << 16
+                    | (bytes[byteIndex + 2] & 0xff) << 8
+                    | (bytes[byteIndex + 3] & 0xff);
+        }
+        for (int index = 16; index < words.length; index++) {
+            int s0 = Integer.rotateRight(words[index - 15], 7) ^ Integer.rotateRight(words[index - 15], 18) ^ (words[index - 15] >>> 3);
+            int s1 = Integer.rotateRight(words[index - 2], 17) ^ Integer.rotateRight(words[index - 2], 19) ^ (words[index - 2] >>> 10);
+            words[index] = words[index - 16] + s0 + words[index - 7] + s1;
+        }
+
+        int a = hashToUpdate[0];
+        int b = hashToUpdate[1];
+        int c = hashToUpdate[2];
+        int d = hashToUpdate[3];
+        int e = hashToUpdate[4];
+        int f = hashToUpdate[5];
+        int g = hashToUpdate[6];
+        int h = hashToUpdate[7];
+        for (int index = 0; index < words.length; index++) {
+            int s1 = Integer.rotateRight(e, 6) ^ Integer.rotateRight(e, 11) ^ Integer.rotateRight(e, 25);
+            int choice = (e & f) ^ (~e & g);
+            int temp1 = h + s1 + choice + ROUND_CONSTANTS[index] + words[index];
+            int s0 = Integer.rotateRight(a, 2) ^ Integer.rotateRight(a, 13) ^ Integer.rotateRight(a, 22);
+            int majority = (a & b) ^ (a & c) ^ (b & c);
+            int temp2 = s0 + majority;
+
+            h = g;
+            g = f;
+            f = e;
+            e = d + temp1;
+            d = c;
+            c = b;
+            b = a;
+            a = temp1 + temp2;
+        }
+
+        hashToUpdate[0] += a;
+        hashToUpdate[1] += b;
+        hashToUpdate[2] += c;
+        hashToUpdate[3] += d;
+        hashToUpdate[4] += e;
+        hashToUpdate[5] += f;
+        hashToUpdate[6] += g;
+        hashToUpdate[7] += h;
+    }
+}
@@ -0,0 +1,126 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Performs the actions of every throttle of a download manager on a single thread, all of them on the same tick
+ * rather than each on a timer of its own. The tick only runs while an action is scheduled, and the thread is let go
+ * once the scheduler has been idle for a while, so that throttles that stop their updates leave nothing behind.
+ */
+final class SharedTickActionScheduler {
+
+    private static final int SINGLE_THREAD = 1;
+    private static final long IDLE_THREAD_TIMEOUT_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final long FIRST_TICK_DELAY_IN_MILLIS = 0;
+
+    private final ScheduledExecutorService tickExecutor;
+    private final long frequencyInMillis;
+    private final Set<ActionScheduler.Action> actions = new LinkedHashSet<>();
+    private final Object lock = new Object();
+
+    private ScheduledFuture<?> tick;
+
+    static SharedTickActionScheduler newInstance(long frequencyInMillis) {
+        ScheduledThreadPoolExecutor tickExecutor = new ScheduledThreadPoolExecutor(SINGLE_THREAD);
+        tickExecutor.setKeepAliveTime(IDLE_THREAD_TIMEOUT_IN_MILLIS, TimeUnit.MILLISECONDS);
+        tickExecutor.allowCoreThreadTimeOut(true);
+        tickExecutor.setRemoveOnCancelPolicy(true);
+        return new SharedTickActionScheduler(tickExecutor, frequencyInMillis);
+    }
+
+    SharedTickActionScheduler(ScheduledExecutorService tickExecutor, long frequencyInMillis) {
+        this.tickExecutor = tickExecutor;
+        this.frequencyInMillis = frequencyInMillis;
+    }
+
+    /**
+     * @return a scheduler for a single throttle, cancelling all of its actions leaves those of other throttles scheduled.
+     */
+    ActionScheduler newActionScheduler() {
+        return new ThrottleActionScheduler();
+    }
+
+    private void add(ActionScheduler.Action action) {
+        synchronized (lock) {
+            actions.add(action);
+            if (tick == null) {
+                tick = tickExecutor.scheduleAtFixedRate(this::performActions, FIRST_TICK_DELAY_IN_MILLIS, frequencyInMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void removeAll(Set<ActionScheduler.Action> actionsToRemove) {
+        synchronized (lock) {
+            actions.removeAll(actionsToRemove);
+            if (actions.isEmpty() && tick != null) {
+                tick.cancel(false);
+                tick = null;
+            }
+        }
+    }
+
+    // A failing action must not cancel the tick of every other throttle.
+    @SuppressWarnings("PMD.AvoidCatchingGenericException")
+    private void performActions() {
+        List<ActionScheduler.Action> actionsToPerform;
+        synchronized (lock) {
+            actionsToPerform = new ArrayList<>(actions);
+        }
+
+        for (ActionScheduler.Action action : actionsToPerform) {
+            try {
+                action.perform();
+            } catch (RuntimeException e) {
+                Logger.e(e, "failed to perform a scheduled action");
+            }
+        }
+    }
+
+    private final class ThrottleActionScheduler implements ActionScheduler {
+
+        private final Set<Action> scheduledActions = new LinkedHashSet<>();
+
+        @Override
+        public void schedule(Action action) {
+            synchronized (lock) {
+                if (scheduledActions.add(action)) {
+                    add(action);
+                } else {
+                    Logger.v("Already contains action, aborting schedule");
+                }
+            }
+        }
+
+        @Override
+        public void cancel(Action action) {
+            synchronized (lock) {
+                if (scheduledActions.remove(action)) {
+                    removeAll(Collections.singleton(action));
+                }
+            }
+        }
+
+        @Override
+        public void cancelAll() {
+            synchronized (lock) {
+                removeAll(scheduledActions);
+                scheduledActions.clear();
+            }
+        }
+
+        @Override
+        public boolean isScheduled(Action action) {
+            synchronized (lock) {
+                return scheduledActions.contains(action);
+            }
+        }
+    }
+}
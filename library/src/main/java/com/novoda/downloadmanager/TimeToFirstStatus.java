@@ -0,0 +1,38 @@
+package com.novoda.downloadmanager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures how long the stored downloads take to surface, from their first submission until the first status is delivered.
+ */
+class TimeToFirstStatus {
+
+    static final long UNKNOWN = -1;
+
+    private final AtomicBoolean isStarted = new AtomicBoolean();
+    private final AtomicBoolean isStopped = new AtomicBoolean();
+
+    private volatile long startTimeInNanos;
+    private volatile long timeToFirstStatusInMillis = UNKNOWN;
+
+    /**
+     * Only the first submission is a cold start, the later ones are ignored.
+     */
+    void start() {
+        if (isStarted.compareAndSet(false, true)) {
+            startTimeInNanos = System.nanoTime();
+        }
+    }
+
+    void stop() {
+        if (isStarted.get() && isStopped.compareAndSet(false, true)) {
+            timeToFirstStatusInMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTimeInNanos);
+            Logger.v("time to first status after submitting the stored downloads: " + timeToFirstStatusInMillis + "ms");
+        }
+    }
+
+    long inMillis() {
+        return timeToFirstStatusInMillis;
+    }
+}
@@ -30,6 +30,6 @@ class WrappedOkHttpClient implements HttpClient {
 
         Call call = httpClient.newCall(requestBuilder.build());
 
-        return new WrappedOkHttpResponse(call.execute());
+        return new WrappedOkHttpResponse(call, call.execute());
     }
 }
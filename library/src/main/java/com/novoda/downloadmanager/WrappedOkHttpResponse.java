@@ -3,14 +3,17 @@ package com.novoda.downloadmanager;
 import java.io.IOException;
 import java.io.InputStream;
 
+import okhttp3.Call;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
 
 class WrappedOkHttpResponse implements NetworkResponse {
 
+    private final Call call;
     private final Response response;
 
-    WrappedOkHttpResponse(Response response) {
+    WrappedOkHttpResponse(Call call, Response response) {
+        this.call = call;
         this.response = response;
     }
 
@@ -58,4 +61,9 @@ class WrappedOkHttpResponse implements NetworkResponse {
             return body.contentLength();
         }
     }
+
+    @Override
+    public void cancel() {
+        call.cancel();
+    }
 }
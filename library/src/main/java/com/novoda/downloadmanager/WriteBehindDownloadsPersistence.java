@@ -0,0 +1,667 @@
+package com.novoda.downloadmanager;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.database.sqlite.SQLiteException;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes behind a {@link DownloadsPersistence}, pending writes are coalesced per batch and flushed in a single transaction.
+ * Terminal statuses, deletions and reads flush synchronously, updates of batches not known to be stored are written synchronously.
+ */
+// Implements the whole of DownloadsPersistence, most methods only flush before delegating.
+@SuppressWarnings({"PMD.GodClass", "PMD.CyclomaticComplexity"})
+class WriteBehindDownloadsPersistence implements DownloadsPersistence {
+
+    private static final int MAXIMUM_WRITE_ATTEMPTS = 3;
+
+    private final DownloadsPersistence downloadsPersistence;
+    private final ScheduledExecutorService flushExecutor;
+    private final long flushDelayInMillis;
+    private final int maximumPendingWrites;
+    private final Object pendingLock = new Object();
+    private final Object flushLock = new Object();
+
+    private final Set<String> storedBatchIds = new HashSet<>();
+
+    private Map<String, PendingBatchWrites> pendingBatches = new LinkedHashMap<>();
+    private int pendingWrites;
+    private boolean isDelayedFlushScheduled;
+    private boolean isImmediateFlushScheduled;
+
+    static WriteBehindDownloadsPersistence newInstance(DownloadsPersistence downloadsPersistence,
+                                                       long flushDelayInMillis,
+                                                       int maximumPendingWrites) {
+        return new WriteBehindDownloadsPersistence(
+                downloadsPersistence,
+                Executors.newSingleThreadScheduledExecutor(),
+                flushDelayInMillis,
+                maximumPendingWrites
+        );
+    }
+
+    WriteBehindDownloadsPersistence(DownloadsPersistence downloadsPersistence,
+                                    ScheduledExecutorService flushExecutor,
+                                    long flushDelayInMillis,
+                                    int maximumPendingWrites) {
+        this.downloadsPersistence = downloadsPersistence;
+        this.flushExecutor = flushExecutor;
+        this.flushDelayInMillis = flushDelayInMillis;
+        this.maximumPendingWrites = maximumPendingWrites;
+    }
+
+    /**
+     * Flushes synchronously when the process shuts down, and ahead of time once the process is in the background
+     * and may be killed without notice.
+     */
+    void flushOnProcessShutdown(Context applicationContext) {
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush));
+        applicationContext.registerComponentCallbacks(new ComponentCallbacks2() {
+            @Override
+            public void onTrimMemory(int level) {
+                if (level >= TRIM_MEMORY_BACKGROUND) {
+                    flushExecutor.execute(WriteBehindDownloadsPersistence.this::flush);
+                }
+            }
+
+            @Override
+            public void onConfigurationChanged(@NonNull Configuration newConfig) {
+                // Not related to pending writes.
+            }
+
+            @Override
+            public void onLowMemory() {
+                flushExecutor.execute(WriteBehindDownloadsPersistence.this::flush);
+            }
+        });
+    }
+
+    @Override
+    public void startTransaction() {
+        // Pending writes are flushed in a transaction of their own.
+    }
+
+    @Override
+    public void endTransaction() {
+        // Pending writes are flushed in a transaction of their own.
+    }
+
+    @Override
+    public void transactionSuccess() {
+        // Pending writes are flushed in a transaction of their own.
+    }
+
+    @Override
+    public void persistBatch(DownloadsBatchPersisted batchPersisted) {
+        synchronized (pendingLock) {
+            pendingWritesOf(batchPersisted.downloadBatchId()).persistBatch(batchPersisted);
+        }
+        onWritePending(batchPersisted.downloadBatchStatus().isTerminal());
+    }
+
+    @Override
+    public List<DownloadsBatchPersisted> loadBatches() {
+        flush();
+        List<DownloadsBatchPersisted> batchesPersisted = downloadsPersistence.loadBatches();
+        rememberStored(batchesPersisted);
+        return batchesPersisted;
+    }
+
+    @Override
+    public List<DownloadsBatchProgressPersisted> loadBatches(DownloadBatchQuery query) {
+        flush();
+        List<DownloadsBatchProgressPersisted> batchesPersisted = downloadsPersistence.loadBatches(query);
+        rememberStored(batchesPersisted);
+        return batchesPersisted;
+    }
+
+    @Override
+    public int countBatches(DownloadBatchQuery query) {
+        flush();
+        return downloadsPersistence.countBatches(query);
+    }
+
+    @Override
+    public void persistFile(DownloadsFilePersisted filePersisted) {
+        synchronized (pendingLock) {
+            pendingWritesOf(filePersisted.downloadBatchId()).persistFile(filePersisted);
+        }
+        onWritePending(false);
+    }
+
+    @Override
+    public List<DownloadsFilePersisted> loadAllFiles() {
+        flush();
+        return downloadsPersistence.loadAllFiles();
+    }
+
+    @Override
+    public List<DownloadsFilePersisted> loadFiles(DownloadBatchId batchId) {
+        flush();
+        return downloadsPersistence.loadFiles(batchId);
+    }
+
+    @Override
+    public void persistFileSegment(DownloadsFileSegmentPersisted segmentPersisted) {
+        synchronized (pendingLock) {
+            pendingWritesOf(segmentPersisted.downloadBatchId()).persistFileSegment(segmentPersisted);
+        }
+        onWritePending(false);
+    }
+
+    @Override
+    public List<DownloadsFileSegmentPersisted> loadFileSegments(DownloadBatchId batchId, DownloadFileId fileId) {
+        flush();
+        return downloadsPersistence.loadFileSegments(batchId, fileId);
+    }
+
+    @Override
+    public void loadBatchesWithFiles(DownloadsPersistedRowsCallback callback) {
+        flush();
+        downloadsPersistence.loadBatchesWithFiles(new DownloadsPersistedRowsCallback() {
+            @Override
+            public void onBatch(DownloadsBatchPersisted batchPersisted) {
+                rememberStored(batchPersisted.downloadBatchId());
+                callback.onBatch(batchPersisted);
+            }
+
+            @Override
+            @SuppressWarnings({"checkstyle:parameternumber", "PMD.ExcessiveParameterList"})
+            public void onFile(DownloadFileId downloadFileId,
+                               FilePath filePath,
+                               long totalFileSize,
+                               String url,
+                               long bytesDownloaded,
+                               @Nullable DownloadFileStatus.Status fileStatus,
+                               @Nullable FileDigest expectedDigest,
+                               @Nullable String digestState,
+                               @Nullable String rangeValidator) {
+                callback.onFile(
+                        downloadFileId,
+                        filePath,
+                        totalFileSize,
+                        url,
+                        bytesDownloaded,
+                        fileStatus,
+                        expectedDigest,
+                        digestState,
+                        rangeValidator
+                );
+            }
+
+            @Override
+            public void onFileSegment(int segmentIndex, long startByte, long endByte, long bytesDownloaded) {
+                callback.onFileSegment(segmentIndex, startByte, endByte, bytesDownloaded);
+            }
+        });
+    }
+
+    @Override
+    public boolean delete(DownloadBatchId downloadBatchId) {
+        synchronized (flushLock) {
+            synchronized (pendingLock) {
+                pendingBatches.remove(downloadBatchId.rawId());
+                storedBatchIds.remove(downloadBatchId.rawId());
+            }
+            flushPendingWrites();
+            return downloadsPersistence.delete(downloadBatchId);
+        }
+    }
+
+    @Override
+    public boolean deleteFileSegments(DownloadBatchId batchId, DownloadFileId fileId) {
+        synchronized (flushLock) {
+            synchronized (pendingLock) {
+                PendingBatchWrites pendingBatchWrites = pendingBatches.get(batchId.rawId());
+                if (pendingBatchWrites != null) {
+                    pendingBatchWrites.dropFileSegments(fileId);
+                }
+            }
+            flushPendingWrites();
+            return downloadsPersistence.deleteFileSegments(batchId, fileId);
+        }
+    }
+
+    @Override
+    public boolean update(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+        boolean isPending;
+        synchronized (pendingLock) {
+            isPending = isStored(downloadBatchId);
+            if (isPending) {
+                pendingWritesOf(downloadBatchId).update(status);
+            }
+        }
+        if (!isPending) {
+            return updateNow(downloadBatchId, status);
+        }
+        onWritePending(status.isTerminal());
+        return true;
+    }
+
+    @Override
+    public boolean update(DownloadBatchId downloadBatchId, boolean notificationSeen) {
+        boolean isPending;
+        synchronized (pendingLock) {
+            isPending = isStored(downloadBatchId);
+            if (isPending) {
+                pendingWritesOf(downloadBatchId).update(notificationSeen);
+            }
+        }
+        if (!isPending) {
+            return updateNow(downloadBatchId, notificationSeen);
+        }
+        onWritePending(false);
+        return true;
+    }
+
+    @Override
+    public int deleteAll(List<DownloadBatchId> downloadBatchIds) {
+        synchronized (flushLock) {
+            synchronized (pendingLock) {
+                for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                    pendingBatches.remove(downloadBatchId.rawId());
+                    storedBatchIds.remove(downloadBatchId.rawId());
+                }
+            }
+            flushPendingWrites();
+            return downloadsPersistence.deleteAll(downloadBatchIds);
+        }
+    }
+
+    @Override
+    public int updateAll(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status) {
+        List<DownloadBatchId> unknownBatchIds = new ArrayList<>();
+        int pendingBatchUpdates = 0;
+        synchronized (pendingLock) {
+            for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                if (isStored(downloadBatchId)) {
+                    pendingWritesOf(downloadBatchId).update(status);
+                    pendingBatchUpdates++;
+                } else {
+                    unknownBatchIds.add(downloadBatchId);
+                }
+            }
+        }
+        int updatedBatches = unknownBatchIds.isEmpty() ? 0 : updateNow(unknownBatchIds, status);
+        if (pendingBatchUpdates > 0) {
+            onWritePending(status.isTerminal());
+        }
+        return pendingBatchUpdates + updatedBatches;
+    }
+
+    @Override
+    public void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
+        synchronized (flushLock) {
+            flushPendingWrites();
+            downloadsPersistence.startTransaction();
+            try {
+                downloadsPersistence.persistCompletedBatch(completedDownloadBatch);
+                downloadsPersistence.transactionSuccess();
+            } finally {
+                downloadsPersistence.endTransaction();
+            }
+        }
+    }
+
+    private boolean isStored(DownloadBatchId downloadBatchId) {
+        if (storedBatchIds.contains(downloadBatchId.rawId())) {
+            return true;
+        }
+        PendingBatchWrites pendingBatchWrites = pendingBatches.get(downloadBatchId.rawId());
+        return pendingBatchWrites != null && pendingBatchWrites.batchPersisted != null;
+    }
+
+    private void rememberStored(List<? extends DownloadsBatchPersisted> batchesPersisted) {
+        synchronized (pendingLock) {
+            for (DownloadsBatchPersisted batchPersisted : batchesPersisted) {
+                storedBatchIds.add(batchPersisted.downloadBatchId().rawId());
+            }
+        }
+    }
+
+    private void rememberStored(DownloadBatchId downloadBatchId) {
+        synchronized (pendingLock) {
+            storedBatchIds.add(downloadBatchId.rawId());
+        }
+    }
+
+    private void forgetStored(DownloadBatchId downloadBatchId) {
+        synchronized (pendingLock) {
+            storedBatchIds.remove(downloadBatchId.rawId());
+        }
+    }
+
+    private boolean updateNow(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+        synchronized (flushLock) {
+            flushPendingWrites();
+            return remember(downloadBatchId, downloadsPersistence.update(downloadBatchId, status));
+        }
+    }
+
+    private boolean updateNow(DownloadBatchId downloadBatchId, boolean notificationSeen) {
+        synchronized (flushLock) {
+            flushPendingWrites();
+            return remember(downloadBatchId, downloadsPersistence.update(downloadBatchId, notificationSeen));
+        }
+    }
+
+    private int updateNow(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status) {
+        synchronized (flushLock) {
+            flushPendingWrites();
+            int updatedBatches = downloadsPersistence.updateAll(downloadBatchIds, status);
+            if (updatedBatches == downloadBatchIds.size()) {
+                for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                    rememberStored(downloadBatchId);
+                }
+            }
+            return updatedBatches;
+        }
+    }
+
+    private boolean remember(DownloadBatchId downloadBatchId, boolean isStored) {
+        if (isStored) {
+            rememberStored(downloadBatchId);
+        }
+        return isStored;
+    }
+
+    private PendingBatchWrites pendingWritesOf(DownloadBatchId downloadBatchId) {
+        PendingBatchWrites pendingBatchWrites = pendingBatches.get(downloadBatchId.rawId());
+        if (pendingBatchWrites == null) {
+            pendingBatchWrites = new PendingBatchWrites(downloadBatchId);
+            pendingBatches.put(downloadBatchId.rawId(), pendingBatchWrites);
+        }
+        pendingWrites++;
+        return pendingBatchWrites;
+    }
+
+    private void onWritePending(boolean isTerminal) {
+        if (isTerminal) {
+            flush();
+            return;
+        }
+
+        synchronized (pendingLock) {
+            if (pendingWrites >= maximumPendingWrites && !isImmediateFlushScheduled) {
+                isImmediateFlushScheduled = true;
+                flushExecutor.execute(this::flush);
+            } else if (!isDelayedFlushScheduled) {
+                isDelayedFlushScheduled = true;
+                flushExecutor.schedule(this::flushAfterDelay, flushDelayInMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void flushAfterDelay() {
+        synchronized (pendingLock) {
+            isDelayedFlushScheduled = false;
+        }
+        flush();
+    }
+
+    /**
+     * Writes every pending write in a single transaction, on the calling thread.
+     */
+    void flush() {
+        synchronized (flushLock) {
+            flushPendingWrites();
+        }
+    }
+
+    private void flushPendingWrites() {
+        Map<String, PendingBatchWrites> batchesToWrite;
+        synchronized (pendingLock) {
+            isImmediateFlushScheduled = false;
+            if (pendingBatches.isEmpty()) {
+                return;
+            }
+            batchesToWrite = pendingBatches;
+            pendingBatches = new LinkedHashMap<>();
+            pendingWrites = 0;
+        }
+
+        List<PendingBatchWrites> failedBatches = new ArrayList<>();
+        try {
+            writeInTransaction(batchesToWrite, failedBatches);
+        } catch (SQLiteException e) {
+            Logger.e("failure to write behind " + batchesToWrite.size() + " batches: " + e.getMessage());
+            failedBatches = new ArrayList<>(batchesToWrite.values());
+        }
+        retry(failedBatches);
+    }
+
+    private void writeInTransaction(Map<String, PendingBatchWrites> batchesToWrite, List<PendingBatchWrites> failedBatches) {
+        downloadsPersistence.startTransaction();
+        try {
+            Map<DownloadBatchStatus.Status, List<PendingBatchWrites>> statusOnlyBatches = new EnumMap<>(DownloadBatchStatus.Status.class);
+            for (PendingBatchWrites pendingBatchWrites : batchesToWrite.values()) {
+                if (pendingBatchWrites.isStatusOnly()) {
+                    batchesWith(pendingBatchWrites.status, statusOnlyBatches).add(pendingBatchWrites);
+                } else {
+                    write(pendingBatchWrites, failedBatches);
+                }
+            }
+            for (Map.Entry<DownloadBatchStatus.Status, List<PendingBatchWrites>> entry : statusOnlyBatches.entrySet()) {
+                writeStatus(entry.getValue(), entry.getKey(), failedBatches);
+            }
+            downloadsPersistence.transactionSuccess();
+        } finally {
+            downloadsPersistence.endTransaction();
+        }
+    }
+
+    private void write(PendingBatchWrites pendingBatchWrites, List<PendingBatchWrites> failedBatches) {
+        try {
+            if (pendingBatchWrites.writeTo(downloadsPersistence)) {
+                rememberStored(pendingBatchWrites.downloadBatchId);
+            } else {
+                forgetStored(pendingBatchWrites.downloadBatchId);
+            }
+        } catch (SQLiteException e) {
+            Logger.e("failure to write behind batch " + pendingBatchWrites.downloadBatchId.rawId() + ": " + e.getMessage());
+            failedBatches.add(pendingBatchWrites);
+        }
+    }
+
+    private static List<PendingBatchWrites> batchesWith(DownloadBatchStatus.Status status,
+                                                        Map<DownloadBatchStatus.Status, List<PendingBatchWrites>> batchesByStatus) {
+        List<PendingBatchWrites> batches = batchesByStatus.get(status);
+        if (batches == null) {
+            batches = new ArrayList<>();
+            batchesByStatus.put(status, batches);
+        }
+        return batches;
+    }
+
+    // When some of the batches are not updated, none of them are known to be stored any longer.
+    private void writeStatus(List<PendingBatchWrites> batches, DownloadBatchStatus.Status status, List<PendingBatchWrites> failedBatches) {
+        if (batches.size() == 1) {
+            write(batches.get(0), failedBatches);
+            return;
+        }
+
+        List<DownloadBatchId> downloadBatchIds = new ArrayList<>(batches.size());
+        for (PendingBatchWrites pendingBatchWrites : batches) {
+            downloadBatchIds.add(pendingBatchWrites.downloadBatchId);
+        }
+        try {
+            int updatedBatches = downloadsPersistence.updateAll(downloadBatchIds, status);
+            if (updatedBatches < downloadBatchIds.size()) {
+                Logger.e("could not write behind status " + status + " of " + (downloadBatchIds.size() - updatedBatches) + " batches");
+                for (DownloadBatchId downloadBatchId : downloadBatchIds) {
+                    forgetStored(downloadBatchId);
+                }
+            }
+        } catch (SQLiteException e) {
+            Logger.e("failure to write behind status " + status + ": " + e.getMessage());
+            failedBatches.addAll(batches);
+        }
+    }
+
+    // Failed writes go beneath any write made to the same batch since they were taken.
+    private void retry(List<PendingBatchWrites> failedBatches) {
+        if (failedBatches.isEmpty()) {
+            return;
+        }
+
+        synchronized (pendingLock) {
+            for (PendingBatchWrites failedBatchWrites : failedBatches) {
+                String rawBatchId = failedBatchWrites.downloadBatchId.rawId();
+                if (failedBatchWrites.onWriteFailed() >= MAXIMUM_WRITE_ATTEMPTS) {
+                    Logger.e("dropping writes of batch " + rawBatchId + " after " + MAXIMUM_WRITE_ATTEMPTS + " failed attempts");
+                    continue;
+                }
+                PendingBatchWrites newerBatchWrites = pendingBatches.remove(rawBatchId);
+                if (newerBatchWrites != null) {
+                    failedBatchWrites.takeIn(newerBatchWrites);
+                }
+                pendingBatches.put(rawBatchId, failedBatchWrites);
+                pendingWrites++;
+            }
+            if (!pendingBatches.isEmpty() && !isDelayedFlushScheduled) {
+                isDelayedFlushScheduled = true;
+                flushExecutor.schedule(this::flushAfterDelay, flushDelayInMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private static final class PendingBatchWrites {
+
+        private final DownloadBatchId downloadBatchId;
+        private final Map<String, DownloadsFilePersisted> files = new LinkedHashMap<>();
+        private final Map<String, DownloadsFileSegmentPersisted> fileSegments = new LinkedHashMap<>();
+
+        @Nullable
+        private DownloadsBatchPersisted batchPersisted;
+        @Nullable
+        private DownloadBatchStatus.Status status;
+        @Nullable
+        private Boolean notificationSeen;
+        private int failedAttempts;
+
+        PendingBatchWrites(DownloadBatchId downloadBatchId) {
+            this.downloadBatchId = downloadBatchId;
+        }
+
+        void persistBatch(DownloadsBatchPersisted batchPersisted) {
+            this.batchPersisted = batchPersisted;
+            status = null;
+            notificationSeen = null;
+        }
+
+        void persistFile(DownloadsFilePersisted filePersisted) {
+            files.put(filePersisted.downloadFileId().rawId(), filePersisted);
+        }
+
+        void persistFileSegment(DownloadsFileSegmentPersisted segmentPersisted) {
+            fileSegments.put(segmentPersisted.downloadFileId().rawId() + '/' + segmentPersisted.segmentIndex(), segmentPersisted);
+        }
+
+        void dropFileSegments(DownloadFileId downloadFileId) {
+            Iterator<DownloadsFileSegmentPersisted> segments = fileSegments.values().iterator();
+            while (segments.hasNext()) {
+                if (segments.next().downloadFileId().rawId().equals(downloadFileId.rawId())) {
+                    segments.remove();
+                }
+            }
+        }
+
+        void update(DownloadBatchStatus.Status status) {
+            if (batchPersisted == null) {
+                this.status = status;
+                return;
+            }
+
+            batchPersisted = new LiteDownloadsBatchPersisted(
+                    batchPersisted.downloadBatchTitle(),
+                    downloadBatchId,
+                    status,
+                    batchPersisted.downloadedDateTimeInMillis(),
+                    batchPersisted.notificationSeen(),
+                    batchPersisted.storageRoot()
+            );
+        }
+
+        void update(boolean notificationSeen) {
+            if (batchPersisted == null) {
+                this.notificationSeen = notificationSeen;
+                return;
+            }
+
+            batchPersisted = new LiteDownloadsBatchPersisted(
+                    batchPersisted.downloadBatchTitle(),
+                    downloadBatchId,
+                    batchPersisted.downloadBatchStatus(),
+                    batchPersisted.downloadedDateTimeInMillis(),
+                    notificationSeen,
+                    batchPersisted.storageRoot()
+            );
+        }
+
+        int onWriteFailed() {
+            failedAttempts++;
+            return failedAttempts;
+        }
+
+        /**
+         * Replays newer writes of the same batch on top of these ones.
+         */
+        void takeIn(PendingBatchWrites newerBatchWrites) {
+            if (newerBatchWrites.batchPersisted != null) {
+                persistBatch(newerBatchWrites.batchPersisted);
+            }
+            files.putAll(newerBatchWrites.files);
+            fileSegments.putAll(newerBatchWrites.fileSegments);
+            if (newerBatchWrites.status != null) {
+                update(newerBatchWrites.status);
+            }
+            if (newerBatchWrites.notificationSeen != null) {
+                update(newerBatchWrites.notificationSeen);
+            }
+        }
+
+        boolean isStatusOnly() {
+            return status != null && batchPersisted == null && notificationSeen == null && files.isEmpty() && fileSegments.isEmpty();
+        }
+
+        /**
+         * @return false when the batch was not there to be updated.
+         */
+        boolean writeTo(DownloadsPersistence downloadsPersistence) {
+            boolean isStored = true;
+            if (batchPersisted != null) {
+                downloadsPersistence.persistBatch(batchPersisted);
+            }
+            for (DownloadsFilePersisted filePersisted : files.values()) {
+                downloadsPersistence.persistFile(filePersisted);
+            }
+            for (DownloadsFileSegmentPersisted segmentPersisted : fileSegments.values()) {
+                downloadsPersistence.persistFileSegment(segmentPersisted);
+            }
+            if (status != null && !downloadsPersistence.update(downloadBatchId, status)) {
+                Logger.e("could not write behind status " + status + " of batch " + downloadBatchId.rawId());
+                isStored = false;
+            }
+            if (notificationSeen != null && !downloadsPersistence.update(downloadBatchId, notificationSeen)) {
+                Logger.e("could not write behind notification seen of batch " + downloadBatchId.rawId());
+                isStored = false;
+            }
+            return isStored;
+        }
+    }
+}
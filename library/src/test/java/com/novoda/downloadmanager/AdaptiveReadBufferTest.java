@@ -0,0 +1,102 @@
+package com.novoda.downloadmanager;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class AdaptiveReadBufferTest {
+
+    private static final int MINIMUM_SIZE = ReadBufferPool.MINIMUM_BUFFER_SIZE_IN_BYTES;
+    private static final int MAXIMUM_SIZE = ReadBufferPool.MAXIMUM_BUFFER_SIZE_IN_BYTES;
+
+    private final ReadBufferPool readBufferPool = new ReadBufferPool(ReadBufferPool.DEFAULT_MEMORY_BUDGET_IN_BYTES);
+    private final AdaptiveReadBuffer readBuffer = new AdaptiveReadBuffer(readBufferPool);
+
+    @Test
+    public void startsWithTheMinimumSize() {
+        assertThat(readBuffer.bytes().length).isEqualTo(MINIMUM_SIZE);
+    }
+
+    @Test
+    public void growsUpToTheMaximumSize_whenReadsFillTheBuffer() throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(new byte[4 * MAXIMUM_SIZE]);
+
+        for (int size = MINIMUM_SIZE; size <= MAXIMUM_SIZE; size *= 2) {
+            readBuffer.read(inputStream);
+        }
+
+        assertThat(readBuffer.bytes().length).isEqualTo(MAXIMUM_SIZE);
+    }
+
+    @Test
+    public void returnsTheBytesProduced_withoutWaitingForTheBufferToFill() throws IOException {
+        InputStream inputStream = new TricklingInputStream(10);
+
+        int bytesRead = readBuffer.read(inputStream);
+
+        assertThat(bytesRead).isEqualTo(10);
+    }
+
+    @Test
+    public void shrinksDownToTheMinimumSize_whenReadsFillLittleOfTheBuffer() throws IOException {
+        InputStream fastInputStream = new ByteArrayInputStream(new byte[4 * MINIMUM_SIZE]);
+        readBuffer.read(fastInputStream);
+        readBuffer.read(fastInputStream);
+        InputStream slowInputStream = new TricklingInputStream(10);
+
+        readBuffer.read(slowInputStream);
+        readBuffer.read(slowInputStream);
+        readBuffer.read(slowInputStream);
+
+        assertThat(readBuffer.bytes().length).isEqualTo(MINIMUM_SIZE);
+    }
+
+    @Test
+    public void readsNoMoreThanTheMaximumBytes() throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(new byte[MINIMUM_SIZE]);
+
+        int bytesRead = readBuffer.read(inputStream, 10);
+
+        assertThat(bytesRead).isEqualTo(10);
+    }
+
+    @Test
+    public void emitsEndOfStream_whenNothingIsLeftToRead() throws IOException {
+        InputStream inputStream = new ByteArrayInputStream(new byte[0]);
+
+        int bytesRead = readBuffer.read(inputStream);
+
+        assertThat(bytesRead).isEqualTo(AdaptiveReadBuffer.END_OF_STREAM);
+    }
+
+    @Test
+    public void returnsBufferToThePool_whenReleased() {
+        readBuffer.release();
+
+        assertThat(readBufferPool.acquiredBytes()).isEqualTo(0);
+        assertThat(readBufferPool.pooledBytes()).isEqualTo(MINIMUM_SIZE);
+    }
+
+    private static class TricklingInputStream extends InputStream {
+
+        private final int bytesPerRead;
+
+        TricklingInputStream(int bytesPerRead) {
+            this.bytesPerRead = bytesPerRead;
+        }
+
+        @Override
+        public int read() {
+            return 0;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            return Math.min(bytesPerRead, length);
+        }
+    }
+}
@@ -36,6 +36,19 @@ public class BatchBuilderTest {
         assertThat(batch).isEqualTo(expectedBatch);
     }
 
+    @Test
+    public void returnsBatch_whenPriorityIsSupplied() {
+        Batch batch = Batch.with(TestStorageRootFactory.create(), DOWNLOAD_BATCH_ID, DOWNLOAD_BATCH_TITLE)
+                .withPriority(5)
+                .downloadFrom("http://example.com/5mb.zip").apply()
+                .build();
+
+        BatchFile expectedBatchFile = new BatchFile("http://example.com/5mb.zip", "root/download_batch_id/5mb.zip", Optional.absent(), Optional.absent());
+        Batch expectedBatch = new Batch(TestStorageRootFactory.create(), DOWNLOAD_BATCH_ID, DOWNLOAD_BATCH_TITLE, Collections.singletonList(expectedBatchFile), 5);
+
+        assertThat(batch).isEqualTo(expectedBatch);
+    }
+
     @Test
     public void acceptsRoot_asBasePath() {
         Batch batch = Batch.with(TestStorageRootFactory.create(), DOWNLOAD_BATCH_ID, DOWNLOAD_BATCH_TITLE)
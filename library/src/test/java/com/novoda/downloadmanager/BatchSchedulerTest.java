@@ -0,0 +1,260 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class BatchSchedulerTest {
+
+    private static final int TWO_BATCHES = 2;
+    private static final int SINGLE_BATCH = 1;
+    private static final boolean ALLOW_PREEMPTION = true;
+    private static final boolean DISALLOW_PREEMPTION = false;
+    private static final int HIGH_PRIORITY = 10;
+    private static final long NO_STOP_LATENCY = -1;
+
+    private final ExecutorService executor = mock(ExecutorService.class);
+    private final List<Runnable> startedDownloads = new ArrayList<>();
+    private final List<DownloadBatchId> downloadedBatchIds = new ArrayList<>();
+
+    private final DownloadBatch firstBatch = aDownloadBatch("first", 100, 0);
+    private final DownloadBatch secondBatch = aDownloadBatch("second", 100, 90);
+    private final DownloadBatch thirdBatch = aDownloadBatch("third", 100, 50);
+
+    @Before
+    public void setUp() {
+        willAnswer(invocation -> {
+            startedDownloads.add(invocation.getArgument(0));
+            return null;
+        }).given(executor).submit(any(Runnable.class));
+    }
+
+    @Test
+    public void startsNoMoreThanTheMaximumConcurrentBatches() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, TWO_BATCHES, BatchSchedulingPolicy.FIFO, DISALLOW_PREEMPTION);
+
+        schedule(batchScheduler, firstBatch, secondBatch, thirdBatch);
+
+        DownloadQueueState queueState = batchScheduler.queueState();
+        assertThat(queueState.downloadingBatchIds()).containsExactly(firstBatch.getId(), secondBatch.getId()).inOrder();
+        assertThat(queueState.queuedBatchIds()).containsExactly(thirdBatch.getId());
+    }
+
+    @Test
+    public void startsNextQueuedBatch_whenADownloadStops() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, DISALLOW_PREEMPTION);
+        schedule(batchScheduler, firstBatch, secondBatch);
+
+        runStartedDownloads();
+
+        assertThat(downloadedBatchIds).containsExactly(firstBatch.getId(), secondBatch.getId()).inOrder();
+        assertThat(batchScheduler.queueState().downloadingBatchIds()).isEmpty();
+    }
+
+    @Test
+    public void startsBatchesWithHigherPriorityFirst() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, DISALLOW_PREEMPTION);
+        batchScheduler.prioritise(thirdBatch.getId(), HIGH_PRIORITY);
+
+        schedule(batchScheduler, firstBatch, secondBatch, thirdBatch);
+
+        assertThat(batchScheduler.queueState().queuedBatchIds()).containsExactly(thirdBatch.getId(), secondBatch.getId()).inOrder();
+    }
+
+    @Test
+    public void startsBatchesWithFewestRemainingBytesFirst_whenPolicyIsShortestRemainingBytesFirst() {
+        BatchScheduler batchScheduler = new BatchScheduler(
+                executor,
+                SINGLE_BATCH,
+                BatchSchedulingPolicy.SHORTEST_REMAINING_BYTES_FIRST,
+                DISALLOW_PREEMPTION
+        );
+
+        schedule(batchScheduler, firstBatch, thirdBatch, secondBatch);
+
+        assertThat(batchScheduler.queueState().queuedBatchIds()).containsExactly(secondBatch.getId(), thirdBatch.getId()).inOrder();
+    }
+
+    @Test
+    public void doesNotQueueABatchTwice() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, DISALLOW_PREEMPTION);
+
+        schedule(batchScheduler, firstBatch, secondBatch, secondBatch);
+
+        assertThat(batchScheduler.queueState().queuedBatchIds()).containsExactly(secondBatch.getId());
+    }
+
+    @Test
+    public void pausesBatchWithLowerPriority_whenPreemptionIsAllowed() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, ALLOW_PREEMPTION);
+        batchScheduler.prioritise(secondBatch.getId(), HIGH_PRIORITY);
+
+        schedule(batchScheduler, firstBatch, secondBatch);
+
+        verify(firstBatch).preempt();
+    }
+
+    @Test
+    public void doesNotPauseBatchWithLowerPriority_whenPreemptionIsNotAllowed() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, DISALLOW_PREEMPTION);
+        batchScheduler.prioritise(secondBatch.getId(), HIGH_PRIORITY);
+
+        schedule(batchScheduler, firstBatch, secondBatch);
+
+        verify(firstBatch, never()).preempt();
+    }
+
+    @Test
+    public void queuesPreemptedBatchAgain_whenItHasStopped() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, ALLOW_PREEMPTION);
+        batchScheduler.prioritise(secondBatch.getId(), HIGH_PRIORITY);
+        schedule(batchScheduler, firstBatch, secondBatch);
+        given(firstBatch.status().status()).willReturn(DownloadBatchStatus.Status.PAUSED);
+        given(firstBatch.isPreempted()).willReturn(true);
+
+        startedDownloads.remove(0).run();
+
+        verify(firstBatch).resume();
+        DownloadQueueState queueState = batchScheduler.queueState();
+        assertThat(queueState.downloadingBatchIds()).containsExactly(secondBatch.getId());
+        assertThat(queueState.queuedBatchIds()).containsExactly(firstBatch.getId());
+    }
+
+    @Test
+    public void doesNotQueuePreemptedBatchAgain_whenItIsStoppedBeforeItHasStopped() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, ALLOW_PREEMPTION);
+        batchScheduler.prioritise(secondBatch.getId(), HIGH_PRIORITY);
+        schedule(batchScheduler, firstBatch, secondBatch);
+        given(firstBatch.status().status()).willReturn(DownloadBatchStatus.Status.PAUSED);
+        given(firstBatch.isPreempted()).willReturn(true);
+
+        batchScheduler.stop(firstBatch.getId());
+        startedDownloads.remove(0).run();
+
+        verify(firstBatch, never()).resume();
+        assertThat(batchScheduler.queueState().queuedBatchIds()).isEmpty();
+    }
+
+    @Test
+    public void doesNotQueuePreemptedBatchAgain_whenItIsPausedBeforeItHasStopped() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, ALLOW_PREEMPTION);
+        batchScheduler.prioritise(secondBatch.getId(), HIGH_PRIORITY);
+        schedule(batchScheduler, firstBatch, secondBatch);
+        given(firstBatch.status().status()).willReturn(DownloadBatchStatus.Status.PAUSED);
+
+        startedDownloads.remove(0).run();
+
+        verify(firstBatch, never()).resume();
+        assertThat(batchScheduler.queueState().queuedBatchIds()).isEmpty();
+    }
+
+    @Test
+    public void notifiesQueueState_whenBatchIsScheduled() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, DISALLOW_PREEMPTION);
+        List<DownloadQueueState> queueStates = new ArrayList<>();
+        batchScheduler.setQueueStateListener(queueStates::add);
+
+        schedule(batchScheduler, firstBatch);
+
+        DownloadQueueState expectedQueueState = new LiteDownloadQueueState(
+                SINGLE_BATCH,
+                Collections.singletonList(firstBatch.getId()),
+                Collections.emptyList(),
+                NO_STOP_LATENCY
+        );
+        assertThat(queueStates).containsExactly(expectedQueueState);
+    }
+
+    @Test
+    public void notifiesQueueStateOnce_whenManyBatchesAreScheduled() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, DISALLOW_PREEMPTION);
+        List<DownloadQueueState> queueStates = new ArrayList<>();
+        batchScheduler.setQueueStateListener(queueStates::add);
+
+        batchScheduler.scheduleAll(Arrays.asList(firstBatch, secondBatch, thirdBatch), downloadBatch -> downloadedBatchIds.add(downloadBatch.getId()));
+        runStartedDownloads();
+
+        assertThat(queueStates.get(0).downloadingBatchIds()).containsExactly(firstBatch.getId());
+        assertThat(queueStates.get(0).queuedBatchIds()).containsExactly(secondBatch.getId(), thirdBatch.getId()).inOrder();
+        assertThat(downloadedBatchIds).containsExactly(firstBatch.getId(), secondBatch.getId(), thirdBatch.getId()).inOrder();
+    }
+
+    @Test
+    public void removesEveryQueuedBatch_whenTheyAreAllStopped() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, DISALLOW_PREEMPTION);
+        schedule(batchScheduler, firstBatch, secondBatch, thirdBatch);
+
+        batchScheduler.stopAll(Arrays.asList(secondBatch.getId(), thirdBatch.getId()));
+
+        assertThat(batchScheduler.queueState().queuedBatchIds()).isEmpty();
+        assertThat(batchScheduler.queueState().downloadingBatchIds()).containsExactly(firstBatch.getId());
+    }
+
+    @Test
+    public void startsNextQueuedBatch_whenADownloadingBatchIsStopped() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, DISALLOW_PREEMPTION);
+        schedule(batchScheduler, firstBatch, secondBatch);
+
+        batchScheduler.stop(firstBatch.getId());
+
+        assertThat(startedDownloads).hasSize(2);
+        assertThat(batchScheduler.queueState().downloadingBatchIds()).containsExactly(secondBatch.getId());
+    }
+
+    @Test
+    public void removesQueuedBatch_whenItIsStopped() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, DISALLOW_PREEMPTION);
+        schedule(batchScheduler, firstBatch, secondBatch);
+
+        batchScheduler.stop(secondBatch.getId());
+
+        assertThat(batchScheduler.queueState().queuedBatchIds()).isEmpty();
+    }
+
+    @Test
+    public void reportsStopLatency_whenAStoppedBatchHasStopped() {
+        BatchScheduler batchScheduler = new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, DISALLOW_PREEMPTION);
+        schedule(batchScheduler, firstBatch);
+        batchScheduler.stop(firstBatch.getId());
+
+        startedDownloads.remove(0).run();
+
+        assertThat(batchScheduler.queueState().lastStopLatencyInMillis()).isAtLeast(0L);
+    }
+
+    private void schedule(BatchScheduler batchScheduler, DownloadBatch... downloadBatches) {
+        for (DownloadBatch downloadBatch : Arrays.asList(downloadBatches)) {
+            batchScheduler.schedule(downloadBatch, () -> downloadedBatchIds.add(downloadBatch.getId()));
+        }
+    }
+
+    private void runStartedDownloads() {
+        while (!startedDownloads.isEmpty()) {
+            startedDownloads.remove(0).run();
+        }
+    }
+
+    private static DownloadBatch aDownloadBatch(String rawId, long bytesTotalSize, long bytesDownloaded) {
+        DownloadBatch downloadBatch = mock(DownloadBatch.class, Mockito.RETURNS_DEEP_STUBS);
+        DownloadBatchId downloadBatchId = DownloadBatchIdCreator.createSanitizedFrom(rawId);
+        given(downloadBatch.getId()).willReturn(downloadBatchId);
+        given(downloadBatch.status().bytesTotalSize()).willReturn(bytesTotalSize);
+        given(downloadBatch.status().bytesDownloaded()).willReturn(bytesDownloaded);
+        given(downloadBatch.status().status()).willReturn(DownloadBatchStatus.Status.QUEUED);
+        return downloadBatch;
+    }
+}
@@ -0,0 +1,128 @@
+package com.novoda.downloadmanager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ChannelFilePersistenceTest {
+
+    private static final int FLUSH_INTERVAL_IN_BYTES = 4;
+    private static final long SYNC_INTERVAL_IN_BYTES = 8;
+    private static final FileSize FILE_SIZE = FileSizeCreator.createFromTotalSize(8);
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File file;
+    private FilePath filePath;
+    private ChannelFilePersistence filePersistence;
+
+    @Before
+    public void setUp() {
+        file = new File(temporaryFolder.getRoot(), "file.dat");
+        filePath = new LiteFilePath(file.getAbsolutePath());
+        filePersistence = new ChannelFilePersistence(new ByteBufferPool(FLUSH_INTERVAL_IN_BYTES, 2), SYNC_INTERVAL_IN_BYTES);
+        filePersistence.initialiseWith(null, mock(StorageRequirementRule.class));
+    }
+
+    @After
+    public void tearDown() {
+        filePersistence.close();
+    }
+
+    @Test
+    public void coalescesWrites_untilFlushIntervalIsReached() {
+        filePersistence.create(filePath, FILE_SIZE);
+
+        filePersistence.write("abc".getBytes(), 0, 3);
+
+        assertThat(file.length()).isEqualTo(0);
+    }
+
+    @Test
+    public void writesSequentialBytes_whenFlushIntervalIsReached() throws IOException {
+        filePersistence.create(filePath, FILE_SIZE);
+
+        filePersistence.write("abc".getBytes(), 0, 3);
+        filePersistence.write("def".getBytes(), 0, 3);
+
+        assertThat(contentOf(file)).isEqualTo("abcd");
+    }
+
+    @Test
+    public void writesPendingBytes_whenFlushing() throws IOException {
+        filePersistence.create(filePath, FILE_SIZE);
+        filePersistence.write("abcdef".getBytes(), 0, 6);
+
+        filePersistence.flush();
+
+        assertThat(contentOf(file)).isEqualTo("abcdef");
+    }
+
+    @Test
+    public void appendsToExistingFile_whenWritingSequentially() throws IOException {
+        Files.write(file.toPath(), "ab".getBytes());
+        filePersistence.create(filePath, FILE_SIZE);
+
+        filePersistence.write("cd".getBytes(), 0, 2);
+        filePersistence.close();
+
+        assertThat(contentOf(file)).isEqualTo("abcd");
+    }
+
+    @Test
+    public void preallocatesFile_whenWritingAtPosition() {
+        filePersistence.create(filePath, FILE_SIZE);
+
+        filePersistence.write("gh".getBytes(), 0, 2, 6);
+
+        assertThat(file.length()).isEqualTo(FILE_SIZE.totalSize());
+    }
+
+    @Test
+    public void writesEachRunAtItsPosition_whenWritingOutOfOrder() throws IOException {
+        filePersistence.create(filePath, FILE_SIZE);
+
+        filePersistence.write("ef".getBytes(), 0, 2, 4);
+        filePersistence.write("ab".getBytes(), 0, 2, 0);
+        filePersistence.write("gh".getBytes(), 0, 2, 6);
+        filePersistence.write("cd".getBytes(), 0, 2, 2);
+        filePersistence.close();
+
+        assertThat(contentOf(file)).isEqualTo("abcdefgh");
+    }
+
+    @Test
+    public void writesPendingBytes_whenSyncing() throws IOException {
+        filePersistence.create(filePath, FILE_SIZE);
+        filePersistence.write("abc".getBytes(), 0, 3);
+
+        boolean synced = filePersistence.sync();
+
+        assertThat(synced).isTrue();
+        assertThat(contentOf(file)).isEqualTo("abc");
+    }
+
+    @Test
+    public void dropsTheTail_whenTruncatingToACheckpoint() throws IOException {
+        Files.write(file.toPath(), "abcdef".getBytes());
+
+        boolean truncated = filePersistence.truncate(filePath, 4);
+
+        assertThat(truncated).isTrue();
+        assertThat(contentOf(file)).isEqualTo("abcd");
+    }
+
+    private static String contentOf(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()));
+    }
+}
@@ -0,0 +1,114 @@
+package com.novoda.downloadmanager;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadFileFixtures.aDownloadFile;
+
+public class ConcurrentFileSizeRequesterTest {
+
+    private static final int NUMBER_OF_FILES = 6;
+    private static final int MAXIMUM_REQUESTS_PER_HOST = 2;
+    private static final long TOTAL_FILE_SIZE = 1000;
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(NUMBER_OF_FILES);
+    private final ConcurrentFileSizeRequester concurrentFileSizeRequester = new ConcurrentFileSizeRequester(
+            executor,
+            NUMBER_OF_FILES,
+            MAXIMUM_REQUESTS_PER_HOST
+    );
+    private final CountingFileSizeRequester fileSizeRequester = new CountingFileSizeRequester();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void requestsEveryUnknownSize() {
+        List<DownloadFile> downloadFiles = downloadFilesWithUnknownSizeFrom("http://example.com/");
+
+        ConcurrentFileSizeRequester.awaitAll(concurrentFileSizeRequester.requestSizes(downloadFiles));
+
+        for (DownloadFile downloadFile : downloadFiles) {
+            assertThat(downloadFile.getKnownTotalSize()).isEqualTo(TOTAL_FILE_SIZE);
+        }
+    }
+
+    @Test
+    public void boundsConcurrentRequests_whenFilesShareAHost() {
+        List<DownloadFile> downloadFiles = downloadFilesWithUnknownSizeFrom("http://example.com/");
+
+        ConcurrentFileSizeRequester.awaitAll(concurrentFileSizeRequester.requestSizes(downloadFiles));
+
+        assertThat(fileSizeRequester.maximumConcurrentRequests.get()).isAtMost(MAXIMUM_REQUESTS_PER_HOST);
+    }
+
+    @Test
+    public void requestsConcurrently_whenFilesAreOnDifferentHosts() {
+        List<DownloadFile> downloadFiles = new ArrayList<>();
+        downloadFiles.addAll(downloadFilesWithUnknownSizeFrom("http://first.example.com/"));
+        downloadFiles.addAll(downloadFilesWithUnknownSizeFrom("http://second.example.com/"));
+
+        ConcurrentFileSizeRequester.awaitAll(concurrentFileSizeRequester.requestSizes(downloadFiles));
+
+        assertThat(fileSizeRequester.maximumConcurrentRequests.get()).isGreaterThan(MAXIMUM_REQUESTS_PER_HOST);
+    }
+
+    @Test
+    public void requestsTheSizesOfOtherHosts_whileAHostIsAtItsLimit() {
+        ExecutorService twoThreads = Executors.newFixedThreadPool(2);
+        ConcurrentFileSizeRequester requester = new ConcurrentFileSizeRequester(twoThreads, 2, 1);
+        List<DownloadFile> downloadFiles = new ArrayList<>();
+        downloadFiles.addAll(downloadFilesWithUnknownSizeFrom("http://first.example.com/"));
+        downloadFiles.addAll(downloadFilesWithUnknownSizeFrom("http://second.example.com/"));
+
+        try {
+            ConcurrentFileSizeRequester.awaitAll(requester.requestSizes(downloadFiles));
+        } finally {
+            twoThreads.shutdownNow();
+        }
+
+        assertThat(fileSizeRequester.maximumConcurrentRequests.get()).isEqualTo(2);
+    }
+
+    private List<DownloadFile> downloadFilesWithUnknownSizeFrom(String baseUrl) {
+        List<DownloadFile> downloadFiles = new ArrayList<>(NUMBER_OF_FILES / 2);
+        for (int i = 0; i < NUMBER_OF_FILES / 2; i++) {
+            downloadFiles.add(aDownloadFile()
+                                      .withUrl(baseUrl + i)
+                                      .withFileSize(InternalFileSizeCreator.unknownFileSize())
+                                      .withFileSizeRequester(fileSizeRequester)
+                                      .build());
+        }
+        return downloadFiles;
+    }
+
+    private static class CountingFileSizeRequester implements FileSizeRequester {
+
+        private static final long REQUEST_DURATION_IN_MILLIS = 50;
+
+        private final AtomicInteger concurrentRequests = new AtomicInteger();
+        private final AtomicInteger maximumConcurrentRequests = new AtomicInteger();
+
+        @Override
+        public FileSize requestFileSize(String url) {
+            int requests = concurrentRequests.incrementAndGet();
+            maximumConcurrentRequests.accumulateAndGet(requests, Math::max);
+            try {
+                Thread.sleep(REQUEST_DURATION_IN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            concurrentRequests.decrementAndGet();
+            return FileSizeCreator.createFromTotalSize(TOTAL_FILE_SIZE);
+        }
+    }
+}
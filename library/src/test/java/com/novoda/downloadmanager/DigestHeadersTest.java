@@ -0,0 +1,51 @@
+package com.novoda.downloadmanager;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+
+public class DigestHeadersTest {
+
+    private static final FileDigest SHA_256 = FileDigest.sha256("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+    private static final FileDigest CRC32C = FileDigest.crc32c("e3069283");
+
+    private final NetworkResponse response = mock(NetworkResponse.class);
+
+    @Before
+    public void setUp() {
+        given(response.header(anyString(), anyString())).willReturn("");
+    }
+
+    @Test
+    public void readsTheSha256OfTheDigestHeader() {
+        given(response.header("Digest", "")).willReturn("MD5=kAFQmDzST7DWlj99KOF/cg==, SHA-256=ungWv48Bz+pBQUDeXa4iI7ADYaOWF3qctBD/YfIAFa0=");
+
+        assertThat(DigestHeaders.declaredDigestOf(response).get()).isEqualTo(SHA_256);
+    }
+
+    @Test
+    public void readsTheCrc32cOfTheGoogHashHeader() {
+        given(response.header("x-goog-hash", "")).willReturn("crc32c=4waSgw==,md5=kAFQmDzST7DWlj99KOF/cg==");
+
+        assertThat(DigestHeaders.declaredDigestOf(response).get()).isEqualTo(CRC32C);
+    }
+
+    @Test
+    public void prefersTheSha256_whenBothAreDeclared() {
+        given(response.header("Digest", "")).willReturn("sha-256=ungWv48Bz+pBQUDeXa4iI7ADYaOWF3qctBD/YfIAFa0=");
+        given(response.header("x-goog-hash", "")).willReturn("crc32c=4waSgw==");
+
+        assertThat(DigestHeaders.declaredDigestOf(response).get()).isEqualTo(SHA_256);
+    }
+
+    @Test
+    public void ignoresMalformedDigests() {
+        given(response.header("Digest", "")).willReturn("sha-256=not*base64, sha-256=4waSgw==");
+
+        assertThat(DigestHeaders.declaredDigestOf(response).isAbsent()).isTrue();
+    }
+}
@@ -0,0 +1,50 @@
+package com.novoda.downloadmanager;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadFileFixtures.aDownloadFile;
+import static com.novoda.downloadmanager.DownloadFileStatusFixtures.aDownloadFileStatus;
+import static com.novoda.downloadmanager.InternalFileSizeFixtures.aFileSize;
+
+public class DownloadBatchProgressTest {
+
+    private static final DownloadFileId FIRST_FILE_ID = DownloadFileIdCreator.createFrom("first");
+    private static final DownloadFileId SECOND_FILE_ID = DownloadFileIdCreator.createFrom("second");
+
+    private final DownloadBatchProgress downloadBatchProgress = new DownloadBatchProgress(Arrays.asList(
+            aDownloadFileWith(FIRST_FILE_ID, 100),
+            aDownloadFileWith(SECOND_FILE_ID, 50)
+    ));
+
+    @Test
+    public void startsFromTheBytesAlreadyDownloaded() {
+        assertThat(downloadBatchProgress.totalBytesDownloaded()).isEqualTo(150);
+    }
+
+    @Test
+    public void addsOnlyTheDifference_whenAFileIsUpdated() {
+        downloadBatchProgress.update(FIRST_FILE_ID, 120);
+
+        long totalBytesDownloaded = downloadBatchProgress.update(SECOND_FILE_ID, 80);
+
+        assertThat(totalBytesDownloaded).isEqualTo(200);
+    }
+
+    @Test
+    public void ignoresFilesThatAreNotPartOfTheBatch() {
+        long totalBytesDownloaded = downloadBatchProgress.update(DownloadFileIdCreator.createFrom("unknown"), 1000);
+
+        assertThat(totalBytesDownloaded).isEqualTo(150);
+    }
+
+    private static DownloadFile aDownloadFileWith(DownloadFileId downloadFileId, long bytesDownloaded) {
+        return aDownloadFile()
+                .withDownloadFileId(downloadFileId)
+                .withDownloadFileStatus(aDownloadFileStatus().withDownloadFileId(downloadFileId).build())
+                .withFileSize(aFileSize().withCurrentSize(bytesDownloaded).build())
+                .build();
+    }
+}
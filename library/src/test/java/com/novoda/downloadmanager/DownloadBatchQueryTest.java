@@ -0,0 +1,48 @@
+package com.novoda.downloadmanager;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class DownloadBatchQueryTest {
+
+    @Test
+    public void selectsEveryBatchNewestFirst_byDefault() {
+        DownloadBatchQuery query = DownloadBatchQuery.newBuilder().build();
+
+        assertThat(query.statuses()).isEmpty();
+        assertThat(query.sortOrder()).isEqualTo(DownloadBatchSortOrder.NEWEST_FIRST);
+        assertThat(query.limit()).isEqualTo(DownloadBatchQuery.NO_LIMIT);
+        assertThat(query.offset()).isEqualTo(0);
+    }
+
+    @Test
+    public void keepsGivenStatusesSortOrderAndPage() {
+        DownloadBatchQuery query = DownloadBatchQuery.newBuilder()
+                .withStatuses(DownloadBatchStatus.Status.DOWNLOADED, DownloadBatchStatus.Status.ERROR)
+                .withSortOrder(DownloadBatchSortOrder.TITLE_ASCENDING)
+                .withLimit(50)
+                .withOffset(100)
+                .build();
+
+        assertThat(query.statuses()).containsExactly(DownloadBatchStatus.Status.DOWNLOADED, DownloadBatchStatus.Status.ERROR);
+        assertThat(query.sortOrder()).isEqualTo(DownloadBatchSortOrder.TITLE_ASCENDING);
+        assertThat(query.limit()).isEqualTo(50);
+        assertThat(query.offset()).isEqualTo(100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsException_whenNoStatusIsGiven() {
+        DownloadBatchQuery.newBuilder().withStatuses();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsException_whenLimitIsNotPositive() {
+        DownloadBatchQuery.newBuilder().withLimit(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsException_whenOffsetIsNegative() {
+        DownloadBatchQuery.newBuilder().withOffset(-1);
+    }
+}
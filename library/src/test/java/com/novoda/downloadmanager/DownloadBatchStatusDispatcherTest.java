@@ -0,0 +1,109 @@
+package com.novoda.downloadmanager;
+
+import android.os.Handler;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DownloadBatchStatusDispatcherTest {
+
+    private static final long DRAIN_INTERVAL_IN_MILLIS = 100;
+
+    private final Handler callbackHandler = mock(Handler.class);
+    private final DownloadBatchId batchId = DownloadBatchIdFixtures.aDownloadBatchId().withRawDownloadBatchId("batch").build();
+    private final DownloadBatchId otherBatchId = DownloadBatchIdFixtures.aDownloadBatchId().withRawDownloadBatchId("other").build();
+    private final List<List<DownloadBatchStatus>> drains = new ArrayList<>();
+
+    private DownloadBatchStatusDispatcher dispatcher;
+
+    @Before
+    public void setUp() {
+        dispatcher = new DownloadBatchStatusDispatcher(callbackHandler, DRAIN_INTERVAL_IN_MILLIS);
+        dispatcher.setListener(drains::add);
+    }
+
+    @Test
+    public void postsASingleDrain_forEveryStatusDispatchedBeforeIt() {
+        dispatcher.dispatch(statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADING));
+        dispatcher.dispatch(statusOf(otherBatchId, DownloadBatchStatus.Status.DOWNLOADING));
+        dispatcher.dispatch(statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADING));
+
+        verify(callbackHandler, times(1)).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void drainsTheLatestStatusOfEveryBatch() {
+        DownloadBatchStatus latestStatus = statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADING);
+        DownloadBatchStatus otherStatus = statusOf(otherBatchId, DownloadBatchStatus.Status.QUEUED);
+        dispatcher.dispatch(statusOf(batchId, DownloadBatchStatus.Status.QUEUED));
+        dispatcher.dispatch(otherStatus);
+        dispatcher.dispatch(latestStatus);
+
+        drain();
+
+        assertThat(drains).hasSize(1);
+        assertThat(drains.get(0)).containsExactly(latestStatus, otherStatus);
+    }
+
+    @Test
+    public void drainsTerminalStatuses_aheadOfTheStatusesThatFollowThem() {
+        DownloadBatchStatus errorStatus = statusOf(batchId, DownloadBatchStatus.Status.ERROR);
+        DownloadBatchStatus queuedStatus = statusOf(batchId, DownloadBatchStatus.Status.QUEUED);
+        dispatcher.dispatch(statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADING));
+        dispatcher.dispatch(errorStatus);
+        dispatcher.dispatch(queuedStatus);
+
+        drain();
+
+        assertThat(drains.get(0)).containsExactly(errorStatus, queuedStatus).inOrder();
+    }
+
+    @Test
+    public void postsTheNextDrain_whenStatusesAreDispatchedAfterADrain() {
+        dispatcher.dispatch(statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADING));
+        drain();
+
+        dispatcher.dispatch(statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADED));
+
+        ArgumentCaptor<Long> delayCaptor = ArgumentCaptor.forClass(Long.class);
+        verify(callbackHandler, times(2)).postDelayed(any(Runnable.class), delayCaptor.capture());
+        assertThat(delayCaptor.getValue()).isAtMost(DRAIN_INTERVAL_IN_MILLIS);
+    }
+
+    @Test
+    public void doesNotNotifyTheListener_whenNothingIsLeftToDrain() {
+        dispatcher.dispatch(statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADING));
+        Runnable drain = drain();
+
+        drain.run();
+
+        assertThat(drains).hasSize(1);
+    }
+
+    private Runnable drain() {
+        ArgumentCaptor<Runnable> drainCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(callbackHandler).postDelayed(drainCaptor.capture(), anyLong());
+        Runnable drain = drainCaptor.getValue();
+        drain.run();
+        return drain;
+    }
+
+    private static DownloadBatchStatus statusOf(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+        return anInternalDownloadsBatchStatus()
+                .withDownloadBatchId(downloadBatchId)
+                .withStatus(status)
+                .build();
+    }
+}
@@ -81,6 +81,29 @@ public class DownloadBatchStatusFilterTest {
         assertThat(shouldFilterOut).isTrue();
     }
 
+    @Test
+    public void returnsFalse_whenTheSameStatusHasChangedSince() {
+        InternalDownloadBatchStatus downloadingStatus = anInternalDownloadsBatchStatus().build();
+        givenPreviousUpdate(downloadingStatus);
+        downloadingStatus.updateDownloaded(500);
+
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(downloadingStatus);
+
+        assertThat(shouldFilterOut).isFalse();
+    }
+
+    @Test
+    public void returnsTrue_whenTheStatusIsOlderThanThePreviousOne() {
+        InternalDownloadBatchStatus downloadingStatus = anInternalDownloadsBatchStatus().build();
+        InternalDownloadBatchStatus olderSnapshot = downloadingStatus.snapshot();
+        downloadingStatus.updateDownloaded(500);
+        givenPreviousUpdate(downloadingStatus);
+
+        boolean shouldFilterOut = downloadBatchStatusFilter.shouldFilterOut(olderSnapshot);
+
+        assertThat(shouldFilterOut).isTrue();
+    }
+
     private void givenPreviousUpdate(InternalDownloadBatchStatus downloadBatchStatus) {
         downloadBatchStatusFilter.shouldFilterOut(downloadBatchStatus);
     }
@@ -1,26 +1,45 @@
 package com.novoda.downloadmanager;
 
 import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.same;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoInteractions;
 
+import android.os.Handler;
+
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.util.HashSet;
 
 public class DownloadBatchStatusNotificationDispatcherTest {
 
+    private static final long UPDATE_INTERVAL_IN_MILLIS = 60_000;
+    private static final long SHORT_UPDATE_INTERVAL_IN_MILLIS = 200;
+
     private final ServiceNotificationDispatcher<DownloadBatchStatus> notificationDispatcher = mock(ServiceNotificationDispatcher.class);
     private final DownloadsNotificationSeenPersistence persistence = mock(DownloadsNotificationSeenPersistence.class);
+    private final Handler callbackHandler = mock(Handler.class);
+    private final DownloadBatchId downloadBatchId = DownloadBatchIdFixtures.aDownloadBatchId().build();
+    private final DownloadBatchTitle downloadBatchTitle = DownloadBatchTitleFixtures.aDownloadBatchTitle().build();
 
     private DownloadBatchStatusNotificationDispatcher downloadBatchStatusNotificationDispatcher;
 
     @Before
     public void setUp() {
         HashSet<String> downloadBatchIdNotificationSeen = new HashSet<>();
-        downloadBatchStatusNotificationDispatcher = new DownloadBatchStatusNotificationDispatcher(persistence, notificationDispatcher, downloadBatchIdNotificationSeen);
+        downloadBatchStatusNotificationDispatcher = new DownloadBatchStatusNotificationDispatcher(
+                persistence,
+                notificationDispatcher,
+                downloadBatchIdNotificationSeen,
+                callbackHandler,
+                UPDATE_INTERVAL_IN_MILLIS
+        );
     }
 
     @Test
@@ -58,4 +77,102 @@ public class DownloadBatchStatusNotificationDispatcherTest {
 
         verify(notificationDispatcher).setService(downloadService);
     }
+
+    @Test
+    public void doesNotUpdateNotification_whenContentIsUnchanged() {
+        InternalDownloadBatchStatus status = aDownloadingStatus(10);
+        InternalDownloadBatchStatus sameContentStatus = aDownloadingStatus(10);
+
+        downloadBatchStatusNotificationDispatcher.updateNotification(status);
+        downloadBatchStatusNotificationDispatcher.updateNotification(sameContentStatus);
+
+        verify(notificationDispatcher, never()).updateNotification(same(sameContentStatus));
+        verify(callbackHandler, never()).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void defersProgress_untilUpdateIntervalHasElapsed() {
+        InternalDownloadBatchStatus status = aDownloadingStatus(10);
+        InternalDownloadBatchStatus progressedStatus = aDownloadingStatus(20);
+
+        downloadBatchStatusNotificationDispatcher.updateNotification(status);
+        downloadBatchStatusNotificationDispatcher.updateNotification(progressedStatus);
+
+        verify(notificationDispatcher, never()).updateNotification(same(progressedStatus));
+        verify(callbackHandler).postDelayed(any(Runnable.class), anyLong());
+    }
+
+    @Test
+    public void updatesNotificationWithLatestProgress_whenDeferredUpdateRuns() throws InterruptedException {
+        DownloadBatchStatusNotificationDispatcher dispatcher = new DownloadBatchStatusNotificationDispatcher(
+                persistence,
+                notificationDispatcher,
+                new HashSet<>(),
+                callbackHandler,
+                SHORT_UPDATE_INTERVAL_IN_MILLIS
+        );
+        InternalDownloadBatchStatus progressedStatus = aDownloadingStatus(20);
+        InternalDownloadBatchStatus latestStatus = aDownloadingStatus(30);
+        dispatcher.updateNotification(aDownloadingStatus(10));
+        dispatcher.updateNotification(progressedStatus);
+        dispatcher.updateNotification(latestStatus);
+        ArgumentCaptor<Runnable> deferredUpdateCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(callbackHandler).postDelayed(deferredUpdateCaptor.capture(), anyLong());
+
+        Thread.sleep(SHORT_UPDATE_INTERVAL_IN_MILLIS);
+        deferredUpdateCaptor.getValue().run();
+
+        verify(notificationDispatcher, never()).updateNotification(same(progressedStatus));
+        verify(notificationDispatcher).updateNotification(same(latestStatus));
+    }
+
+    @Test
+    public void updatesNotificationImmediately_whenStatusChanges() {
+        InternalDownloadBatchStatus status = aDownloadingStatus(10);
+        InternalDownloadBatchStatus pausedStatus = aStatus(DownloadBatchStatus.Status.PAUSED, 10);
+
+        downloadBatchStatusNotificationDispatcher.updateNotification(status);
+        downloadBatchStatusNotificationDispatcher.updateNotification(pausedStatus);
+
+        verify(notificationDispatcher).updateNotification(same(pausedStatus));
+    }
+
+    @Test
+    public void updatesNotificationImmediately_whenStatusIsTerminal() {
+        InternalDownloadBatchStatus status = aStatus(DownloadBatchStatus.Status.ERROR, 10);
+        InternalDownloadBatchStatus sameContentStatus = aStatus(DownloadBatchStatus.Status.ERROR, 10);
+
+        downloadBatchStatusNotificationDispatcher.updateNotification(status);
+        downloadBatchStatusNotificationDispatcher.updateNotification(sameContentStatus);
+
+        verify(notificationDispatcher).updateNotification(same(sameContentStatus));
+    }
+
+    @Test
+    public void doesNotUpdateNotificationWithDeferredProgress_whenStatusBecameTerminal() {
+        InternalDownloadBatchStatus progressedStatus = aDownloadingStatus(20);
+        downloadBatchStatusNotificationDispatcher.updateNotification(aDownloadingStatus(10));
+        downloadBatchStatusNotificationDispatcher.updateNotification(progressedStatus);
+        ArgumentCaptor<Runnable> deferredUpdateCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(callbackHandler).postDelayed(deferredUpdateCaptor.capture(), anyLong());
+
+        downloadBatchStatusNotificationDispatcher.updateNotification(aStatus(DownloadBatchStatus.Status.ERROR, 20));
+        deferredUpdateCaptor.getValue().run();
+
+        verify(notificationDispatcher, never()).updateNotification(same(progressedStatus));
+    }
+
+    private InternalDownloadBatchStatus aDownloadingStatus(int percentageDownloaded) {
+        return aStatus(DownloadBatchStatus.Status.DOWNLOADING, percentageDownloaded);
+    }
+
+    private InternalDownloadBatchStatus aStatus(DownloadBatchStatus.Status status, int percentageDownloaded) {
+        return anInternalDownloadsBatchStatus()
+                .withDownloadBatchId(downloadBatchId)
+                .withDownloadBatchTitle(downloadBatchTitle)
+                .withStatus(status)
+                .withBytesDownloaded(percentageDownloaded)
+                .withBytesTotalSize(100)
+                .build();
+    }
 }
@@ -0,0 +1,151 @@
+package com.novoda.downloadmanager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
+
+public class DownloadBatchStatusObserversTest {
+
+    private static final DownloadBatchPredicate EVERY_STATUS = downloadBatchStatus -> true;
+
+    private final DownloadBatchId batchId = DownloadBatchIdFixtures.aDownloadBatchId().withRawDownloadBatchId("batch").build();
+    private final DownloadBatchId otherBatchId = DownloadBatchIdFixtures.aDownloadBatchId().withRawDownloadBatchId("other").build();
+    private final PendingExecutor deliveryExecutor = new PendingExecutor();
+    private final List<DownloadBatchStatus> receivedStatuses = new ArrayList<>();
+
+    private final DownloadBatchStatusObservers observers = new DownloadBatchStatusObservers();
+
+    @Test
+    public void deliversTheLatestStatusOfEachBatch_whenConflating() {
+        observers.observe(EVERY_STATUS, DownloadBatchStatusBackpressure.conflate(), deliveryExecutor, receivedStatuses::add);
+        DownloadBatchStatus latestStatus = statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADING);
+        DownloadBatchStatus otherStatus = statusOf(otherBatchId, DownloadBatchStatus.Status.QUEUED);
+
+        observers.publish(statusOf(batchId, DownloadBatchStatus.Status.QUEUED));
+        observers.publish(otherStatus);
+        observers.publish(latestStatus);
+        deliveryExecutor.runAll();
+
+        assertThat(receivedStatuses).containsExactly(latestStatus, otherStatus);
+    }
+
+    @Test
+    public void deliversTheNewestStatusesInOrder_whenTheBufferOverflows() {
+        observers.observe(EVERY_STATUS, DownloadBatchStatusBackpressure.buffer(2), deliveryExecutor, receivedStatuses::add);
+        DownloadBatchStatus downloadingStatus = statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADING);
+        DownloadBatchStatus downloadedStatus = statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADED);
+
+        observers.publish(statusOf(batchId, DownloadBatchStatus.Status.QUEUED));
+        observers.publish(downloadingStatus);
+        observers.publish(downloadedStatus);
+        deliveryExecutor.runAll();
+
+        assertThat(receivedStatuses).containsExactly(downloadingStatus, downloadedStatus).inOrder();
+    }
+
+    @Test
+    public void keepsTerminalStatuses_whenTheBufferOverflows() {
+        observers.observe(EVERY_STATUS, DownloadBatchStatusBackpressure.buffer(2), deliveryExecutor, receivedStatuses::add);
+        DownloadBatchStatus downloadedStatus = statusOf(otherBatchId, DownloadBatchStatus.Status.DOWNLOADED);
+        DownloadBatchStatus errorStatus = statusOf(batchId, DownloadBatchStatus.Status.ERROR);
+
+        observers.publish(downloadedStatus);
+        observers.publish(statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADING));
+        observers.publish(errorStatus);
+        observers.publish(statusOf(batchId, DownloadBatchStatus.Status.QUEUED));
+        deliveryExecutor.runAll();
+
+        assertThat(receivedStatuses).containsExactly(downloadedStatus, errorStatus).inOrder();
+    }
+
+    @Test
+    public void schedulesASingleDelivery_whileTheObserverIsBehind() {
+        observers.observe(EVERY_STATUS, DownloadBatchStatusBackpressure.buffer(10), deliveryExecutor, receivedStatuses::add);
+
+        observers.publish(statusOf(batchId, DownloadBatchStatus.Status.QUEUED));
+        observers.publish(statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADING));
+
+        assertThat(deliveryExecutor.pendingDeliveries).hasSize(1);
+    }
+
+    @Test
+    public void deliversOnlyTheStatusesMatchingTheFilter() {
+        DownloadBatchPredicate terminalStatuses = downloadBatchStatus -> downloadBatchStatus.status() == DownloadBatchStatus.Status.DOWNLOADED;
+        observers.observe(terminalStatuses, DownloadBatchStatusBackpressure.conflate(), deliveryExecutor, receivedStatuses::add);
+        DownloadBatchStatus downloadedStatus = statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADED);
+
+        observers.publish(statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADING));
+        observers.publish(downloadedStatus);
+        deliveryExecutor.runAll();
+
+        assertThat(receivedStatuses).containsExactly(downloadedStatus);
+    }
+
+    @Test
+    public void deliversNothing_onceCancelled() {
+        DownloadBatchStatusSubscription subscription = observers.observe(
+                EVERY_STATUS,
+                DownloadBatchStatusBackpressure.conflate(),
+                deliveryExecutor,
+                receivedStatuses::add
+        );
+        observers.publish(statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADING));
+
+        subscription.cancel();
+        observers.publish(statusOf(otherBatchId, DownloadBatchStatus.Status.DOWNLOADING));
+        deliveryExecutor.runAll();
+
+        assertThat(receivedStatuses).isEmpty();
+        assertThat(subscription.isCancelled()).isTrue();
+    }
+
+    @Test
+    public void keepsDelivering_whenTheObserverFails() {
+        DownloadBatchStatus downloadedStatus = statusOf(batchId, DownloadBatchStatus.Status.DOWNLOADED);
+        observers.observe(EVERY_STATUS, DownloadBatchStatusBackpressure.buffer(10), deliveryExecutor, downloadBatchStatus -> {
+            if (downloadBatchStatus.status() == DownloadBatchStatus.Status.ERROR) {
+                throw new IllegalStateException("failed");
+            }
+            receivedStatuses.add(downloadBatchStatus);
+        });
+
+        observers.publish(statusOf(batchId, DownloadBatchStatus.Status.ERROR));
+        observers.publish(downloadedStatus);
+        deliveryExecutor.runAll();
+
+        assertThat(receivedStatuses).containsExactly(downloadedStatus);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void throwsException_whenTheBufferHasNoCapacity() {
+        DownloadBatchStatusBackpressure.buffer(0);
+    }
+
+    private static DownloadBatchStatus statusOf(DownloadBatchId downloadBatchId, DownloadBatchStatus.Status status) {
+        return anInternalDownloadsBatchStatus()
+                .withDownloadBatchId(downloadBatchId)
+                .withStatus(status)
+                .build();
+    }
+
+    private static class PendingExecutor implements Executor {
+
+        private final List<Runnable> pendingDeliveries = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable delivery) {
+            pendingDeliveries.add(delivery);
+        }
+
+        void runAll() {
+            while (!pendingDeliveries.isEmpty()) {
+                pendingDeliveries.remove(0).run();
+            }
+        }
+    }
+}
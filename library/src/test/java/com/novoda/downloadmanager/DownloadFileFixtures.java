@@ -1,5 +1,8 @@
 package com.novoda.downloadmanager;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
 import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
 import static com.novoda.downloadmanager.DownloadFileStatusFixtures.aDownloadFileStatus;
@@ -16,10 +19,15 @@ class DownloadFileFixtures {
     private InternalDownloadFileStatus downloadFileStatus = aDownloadFileStatus().build();
     private FilePath filePath = aFilePath().build();
     private InternalFileSize fileSize = aFileSize().build();
+    private List<FileSegment> fileSegments = new ArrayList<>();
     private FileDownloader fileDownloader = mock(FileDownloader.class);
+    private Optional<SegmentedNetworkFileDownloader> segmentedFileDownloader = Optional.absent();
     private FileSizeRequester fileSizeRequester = new InMemoryFileSizeRequester();
+    private boolean learnsTotalSizeFromDownloadResponse;
     private FilePersistence filePersistence = aFilePersistence().build();
     private DownloadsFilePersistence downloadsFilePersistence = mock(DownloadsFilePersistence.class);
+    private FileIntegrity fileIntegrity = FileIntegrity.unverified();
+    private String rangeValidator;
 
     static DownloadFileFixtures aDownloadFile() {
         return new DownloadFileFixtures();
@@ -55,16 +63,31 @@ class DownloadFileFixtures {
         return this;
     }
 
+    DownloadFileFixtures withFileSegments(List<FileSegment> fileSegments) {
+        this.fileSegments = fileSegments;
+        return this;
+    }
+
     DownloadFileFixtures withFileDownloader(FileDownloader fileDownloader) {
         this.fileDownloader = fileDownloader;
         return this;
     }
 
+    DownloadFileFixtures withSegmentedFileDownloader(SegmentedNetworkFileDownloader segmentedFileDownloader) {
+        this.segmentedFileDownloader = Optional.of(segmentedFileDownloader);
+        return this;
+    }
+
     DownloadFileFixtures withFileSizeRequester(FileSizeRequester fileSizeRequester) {
         this.fileSizeRequester = fileSizeRequester;
         return this;
     }
 
+    DownloadFileFixtures withLearnsTotalSizeFromDownloadResponse(boolean learnsTotalSizeFromDownloadResponse) {
+        this.learnsTotalSizeFromDownloadResponse = learnsTotalSizeFromDownloadResponse;
+        return this;
+    }
+
     DownloadFileFixtures withFilePersistence(FilePersistence filePersistence) {
         this.filePersistence = filePersistence;
         return this;
@@ -75,6 +98,16 @@ class DownloadFileFixtures {
         return this;
     }
 
+    DownloadFileFixtures withFileIntegrity(FileIntegrity fileIntegrity) {
+        this.fileIntegrity = fileIntegrity;
+        return this;
+    }
+
+    DownloadFileFixtures withRangeValidator(String rangeValidator) {
+        this.rangeValidator = rangeValidator;
+        return this;
+    }
+
     DownloadFile build() {
         return new DownloadFile(
                 downloadBatchId,
@@ -83,10 +116,16 @@ class DownloadFileFixtures {
                 downloadFileStatus,
                 filePath,
                 fileSize,
+                fileSegments,
                 fileDownloader,
+                segmentedFileDownloader,
                 fileSizeRequester,
+                learnsTotalSizeFromDownloadResponse,
                 filePersistence,
-                downloadsFilePersistence
+                Optional.absent(),
+                downloadsFilePersistence,
+                fileIntegrity,
+                rangeValidator
         );
     }
 }
@@ -0,0 +1,373 @@
+package com.novoda.downloadmanager;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadFileFixtures.aDownloadFile;
+import static com.novoda.downloadmanager.DownloadFileStatusFixtures.aDownloadFileStatus;
+import static com.novoda.downloadmanager.FilePathFixtures.aFilePath;
+import static com.novoda.downloadmanager.InternalFileSizeFixtures.aFileSize;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.nullable;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class DownloadFileTest {
+
+    private static final long CHECKPOINTED_BYTES = 100;
+    private static final long BYTES_ON_DISK = 150;
+    private static final FilePath FILE_PATH = aFilePath().build();
+    private static final byte[] CONTENT = "abc".getBytes();
+    private static final FileDigest CONTENT_DIGEST = FileDigest.sha256("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad");
+
+    private final FilePersistence filePersistence = mock(FilePersistence.class);
+    private final FileDownloader fileDownloader = mock(FileDownloader.class);
+    private final DownloadsFilePersistence downloadsFilePersistence = mock(DownloadsFilePersistence.class);
+    private final DownloadFile.Callback callback = mock(DownloadFile.Callback.class);
+
+    private InternalFileSize fileSize;
+    private DownloadFile downloadFile;
+
+    @Before
+    public void setUp() {
+        given(filePersistence.create(any(FilePath.class), any(FileSize.class))).willReturn(FilePersistenceResult.SUCCESS);
+        given(filePersistence.write(any(byte[].class), anyInt(), anyInt())).willReturn(true);
+        given(filePersistence.truncate(any(FilePath.class), anyLong())).willReturn(true);
+        given(filePersistence.syncIntervalInBytes()).willReturn(FilePersistence.DEFAULT_SYNC_INTERVAL_IN_BYTES);
+        given(downloadsFilePersistence.persistSync(
+                any(DownloadBatchId.class),
+                any(FilePath.class),
+                any(FileSize.class),
+                anyString(),
+                any(DownloadFileStatus.class),
+                nullable(FileDigest.class),
+                nullable(String.class),
+                nullable(String.class)
+        )).willReturn(true);
+
+        fileSize = aFileSize().withCurrentSize(CHECKPOINTED_BYTES).build();
+        downloadFile = aDownloadFile()
+                .withFilePath(FILE_PATH)
+                .withFileSize(fileSize)
+                .withFileDownloader(fileDownloader)
+                .withFilePersistence(filePersistence)
+                .withDownloadsFilePersistence(downloadsFilePersistence)
+                .build();
+    }
+
+    @Test
+    public void truncatesTheFileToItsCheckpoint_whenResuming() {
+        given(filePersistence.getCurrentSize(FILE_PATH)).willReturn(BYTES_ON_DISK);
+
+        downloadFile.download(callback);
+
+        verify(filePersistence).truncate(FILE_PATH, CHECKPOINTED_BYTES);
+        assertThat(fileSize.currentSize()).isEqualTo(CHECKPOINTED_BYTES);
+    }
+
+    @Test
+    public void truncatesTheFileToItsFirstByte_whenItNeverReachedItsFirstCheckpoint() {
+        given(filePersistence.getCurrentSize(FILE_PATH)).willReturn(BYTES_ON_DISK);
+        InternalFileSize uncheckpointedFileSize = InternalFileSizeCreator.createFromCurrentAndTotalSize(0, BYTES_ON_DISK * 2);
+        DownloadFile uncheckpointedFile = aDownloadFile()
+                .withFilePath(FILE_PATH)
+                .withFileSize(uncheckpointedFileSize)
+                .withFileDownloader(fileDownloader)
+                .withFilePersistence(filePersistence)
+                .withDownloadsFilePersistence(downloadsFilePersistence)
+                .build();
+
+        uncheckpointedFile.download(callback);
+
+        verify(filePersistence).truncate(FILE_PATH, 0);
+        assertThat(uncheckpointedFileSize.currentSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void deletesTheFile_whenItCannotBeTruncatedToItsFirstByte() {
+        given(filePersistence.truncate(any(FilePath.class), anyLong())).willReturn(false);
+        given(filePersistence.getCurrentSize(FILE_PATH)).willReturn(BYTES_ON_DISK, 0L);
+        InternalFileSize uncheckpointedFileSize = InternalFileSizeCreator.createFromCurrentAndTotalSize(0, BYTES_ON_DISK * 2);
+        DownloadFile uncheckpointedFile = aDownloadFile()
+                .withFilePath(FILE_PATH)
+                .withFileSize(uncheckpointedFileSize)
+                .withFileDownloader(fileDownloader)
+                .withFilePersistence(filePersistence)
+                .withDownloadsFilePersistence(downloadsFilePersistence)
+                .build();
+
+        uncheckpointedFile.download(callback);
+
+        verify(filePersistence).delete(FILE_PATH);
+        assertThat(uncheckpointedFileSize.currentSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void doesNotTruncate_whenTheFileEndsAtItsCheckpoint() {
+        given(filePersistence.getCurrentSize(FILE_PATH)).willReturn(CHECKPOINTED_BYTES);
+
+        downloadFile.download(callback);
+
+        verify(filePersistence, never()).truncate(any(FilePath.class), anyLong());
+    }
+
+    @Test
+    public void persistsOnlyCheckpointedBytes_untilTheFileIsSynced() {
+        given(filePersistence.getCurrentSize(FILE_PATH)).willReturn(CHECKPOINTED_BYTES);
+        given(filePersistence.sync()).willReturn(true);
+        downloadFile.download(callback);
+        FileDownloader.Callback downloaderCallback = downloaderCallback();
+
+        downloaderCallback.onBytesRead(new byte[50], 50);
+        downloadFile.persist();
+        long persistedBeforeSync = lastPersistedCurrentSize();
+        downloaderCallback.onDownloadFinished();
+
+        assertThat(persistedBeforeSync).isEqualTo(CHECKPOINTED_BYTES);
+        assertThat(lastPersistedCurrentSize()).isEqualTo(CHECKPOINTED_BYTES + 50);
+    }
+
+    @Test
+    public void checkpoints_onceTheFilePersistenceSyncIntervalIsWritten() {
+        given(filePersistence.getCurrentSize(FILE_PATH)).willReturn(CHECKPOINTED_BYTES);
+        given(filePersistence.syncIntervalInBytes()).willReturn(50L);
+        given(filePersistence.sync()).willReturn(true);
+        downloadFile.download(callback);
+        FileDownloader.Callback downloaderCallback = downloaderCallback();
+
+        downloaderCallback.onBytesRead(new byte[30], 30);
+        verify(filePersistence, never()).sync();
+        downloaderCallback.onBytesRead(new byte[30], 30);
+        downloadFile.persist();
+
+        verify(filePersistence).sync();
+        assertThat(lastPersistedCurrentSize()).isEqualTo(CHECKPOINTED_BYTES + 60);
+    }
+
+    @Test
+    public void completes_whenTheFileMatchesItsExpectedDigest() {
+        InternalDownloadFileStatus downloadFileStatus = aDownloadFileStatus().build();
+        DownloadFile verifiedFile = verifiedDownloadFile(downloadFileStatus);
+        verifiedFile.download(callback);
+
+        downloaderCallback().onBytesRead(CONTENT, CONTENT.length);
+
+        assertThat(downloadFileStatus.status()).isEqualTo(DownloadFileStatus.Status.DOWNLOADED);
+        assertThat(downloadFileStatus.error().isAbsent()).isTrue();
+        verify(filePersistence, never()).delete(FILE_PATH);
+    }
+
+    @Test
+    public void failsWithDigestMismatch_andDeletesTheFile_whenTheFileDoesNotMatchItsExpectedDigest() {
+        InternalDownloadFileStatus downloadFileStatus = aDownloadFileStatus().build();
+        DownloadFile verifiedFile = verifiedDownloadFile(downloadFileStatus);
+        verifiedFile.download(callback);
+
+        downloaderCallback().onBytesRead("abd".getBytes(), CONTENT.length);
+
+        assertThat(downloadFileStatus.error().get().type()).isEqualTo(DownloadError.Type.FILE_DIGEST_MISMATCH);
+        verify(filePersistence).delete(FILE_PATH);
+        assertThat(lastPersistedCurrentSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void restartsFromTheFirstByte_andVerifiesTheFile_whenResumedWithoutTheStateOfItsHash() {
+        InternalDownloadFileStatus downloadFileStatus = aDownloadFileStatus().build();
+        given(filePersistence.getCurrentSize(FILE_PATH)).willReturn(1L);
+        DownloadFile verifiedFile = aDownloadFile()
+                .withDownloadFileStatus(downloadFileStatus)
+                .withFilePath(FILE_PATH)
+                .withFileSize(InternalFileSizeCreator.createFromCurrentAndTotalSize(1, CONTENT.length))
+                .withFileDownloader(fileDownloader)
+                .withFilePersistence(filePersistence)
+                .withDownloadsFilePersistence(downloadsFilePersistence)
+                .withFileIntegrity(FileIntegrity.expecting(CONTENT_DIGEST, null))
+                .build();
+        verifiedFile.download(callback);
+
+        downloaderCallback().onBytesRead(CONTENT, CONTENT.length);
+
+        verify(filePersistence).truncate(FILE_PATH, 0);
+        assertThat(downloadFileStatus.status()).isEqualTo(DownloadFileStatus.Status.DOWNLOADED);
+    }
+
+    @Test
+    public void persistsTheDigestStateOfTheCheckpointedBytes() {
+        given(filePersistence.sync()).willReturn(true);
+        DownloadFile verifiedFile = verifiedDownloadFile(aDownloadFileStatus().build());
+        verifiedFile.download(callback);
+
+        downloaderCallback().onBytesRead(CONTENT, CONTENT.length);
+
+        verify(downloadsFilePersistence, atLeastOnce()).persistSync(
+                any(DownloadBatchId.class),
+                any(FilePath.class),
+                any(FileSize.class),
+                anyString(),
+                any(DownloadFileStatus.class),
+                eq(CONTENT_DIGEST),
+                eq(digestStateOf(CONTENT)),
+                nullable(String.class)
+        );
+    }
+
+    @Test
+    public void discardsTheBytesDownloaded_whenRestartedFromTheFirstByte() {
+        given(filePersistence.getCurrentSize(FILE_PATH)).willReturn(CHECKPOINTED_BYTES);
+        downloadFile.download(callback);
+
+        downloaderCallback().onRestartedFromFirstByte();
+
+        verify(filePersistence).truncate(FILE_PATH, 0);
+        verify(filePersistence, times(2)).create(FILE_PATH, fileSize);
+        assertThat(fileSize.currentSize()).isEqualTo(0);
+        assertThat(lastPersistedCurrentSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void takesTheTotalSizeOfTheRestartingResponse_whenRestartedFromTheFirstByte() {
+        InternalFileSize knownFileSize = InternalFileSizeCreator.createFromCurrentAndTotalSize(CHECKPOINTED_BYTES, 1000);
+        given(filePersistence.getCurrentSize(FILE_PATH)).willReturn(CHECKPOINTED_BYTES);
+        DownloadFile changedFile = aDownloadFile()
+                .withFilePath(FILE_PATH)
+                .withFileSize(knownFileSize)
+                .withFileDownloader(fileDownloader)
+                .withFilePersistence(filePersistence)
+                .withDownloadsFilePersistence(downloadsFilePersistence)
+                .build();
+        changedFile.download(callback);
+        FileDownloader.Callback downloaderCallback = downloaderCallback();
+
+        downloaderCallback.onRestartedFromFirstByte();
+        downloaderCallback.onTotalSizeKnown(2000);
+
+        assertThat(knownFileSize.totalSize()).isEqualTo(2000);
+        verify(callback).onTotalSizeKnown();
+    }
+
+    @Test
+    public void persistsTheRangeValidatorOfTheResponse() {
+        given(filePersistence.getCurrentSize(FILE_PATH)).willReturn(CHECKPOINTED_BYTES);
+        downloadFile.download(callback);
+        FileDownloader.Callback downloaderCallback = downloaderCallback();
+
+        downloaderCallback.onRangeValidatorKnown("\"etag\"");
+        downloadFile.persist();
+
+        assertThat(downloaderCallback.rangeValidator()).isEqualTo("\"etag\"");
+        verify(downloadsFilePersistence).persistSync(
+                any(DownloadBatchId.class),
+                any(FilePath.class),
+                any(FileSize.class),
+                anyString(),
+                any(DownloadFileStatus.class),
+                nullable(FileDigest.class),
+                nullable(String.class),
+                eq("\"etag\"")
+        );
+    }
+
+    @Test
+    public void restartsFromTheFirstByte_whenStartedInSegmentsButSegmentedDownloadingIsDisabled() {
+        given(downloadsFilePersistence.deleteSegmentsSync(any(DownloadBatchId.class), any(DownloadFileId.class))).willReturn(true);
+        DownloadFile segmentedFile = downloadFileStartedInSegments();
+
+        segmentedFile.download(callback);
+
+        verify(filePersistence).truncate(FILE_PATH, 0);
+        verify(downloadsFilePersistence).deleteSegmentsSync(any(DownloadBatchId.class), any(DownloadFileId.class));
+        verify(fileDownloader).startDownloading(anyString(), any(FileSize.class), any(FileDownloader.Callback.class));
+        assertThat(fileSize.currentSize()).isEqualTo(0);
+    }
+
+    @Test
+    public void failsWithoutResuming_whenStartedInSegmentsAndTheSegmentsCannotBeDeleted() {
+        InternalDownloadFileStatus downloadFileStatus = aDownloadFileStatus().build();
+        given(downloadsFilePersistence.deleteSegmentsSync(any(DownloadBatchId.class), any(DownloadFileId.class))).willReturn(false);
+        DownloadFile segmentedFile = aDownloadFile()
+                .withDownloadFileStatus(downloadFileStatus)
+                .withFilePath(FILE_PATH)
+                .withFileSize(fileSize)
+                .withFileSegments(segmentsWithBytesDownloaded())
+                .withFileDownloader(fileDownloader)
+                .withFilePersistence(filePersistence)
+                .withDownloadsFilePersistence(downloadsFilePersistence)
+                .build();
+
+        segmentedFile.download(callback);
+
+        assertThat(downloadFileStatus.error().get().type()).isEqualTo(DownloadError.Type.FILE_CANNOT_BE_WRITTEN);
+        verify(fileDownloader, never()).startDownloading(anyString(), any(FileSize.class), any(FileDownloader.Callback.class));
+    }
+
+    private DownloadFile downloadFileStartedInSegments() {
+        return aDownloadFile()
+                .withFilePath(FILE_PATH)
+                .withFileSize(fileSize)
+                .withFileSegments(segmentsWithBytesDownloaded())
+                .withFileDownloader(fileDownloader)
+                .withFilePersistence(filePersistence)
+                .withDownloadsFilePersistence(downloadsFilePersistence)
+                .build();
+    }
+
+    private static List<FileSegment> segmentsWithBytesDownloaded() {
+        return new ArrayList<>(Arrays.asList(
+                new FileSegment(0, 0, 499, 50),
+                new FileSegment(1, 500, 999, 50)
+        ));
+    }
+
+    private DownloadFile verifiedDownloadFile(InternalDownloadFileStatus downloadFileStatus) {
+        return aDownloadFile()
+                .withDownloadFileStatus(downloadFileStatus)
+                .withFilePath(FILE_PATH)
+                .withFileSize(aFileSize().withTotalSize(CONTENT.length).build())
+                .withFileDownloader(fileDownloader)
+                .withFilePersistence(filePersistence)
+                .withDownloadsFilePersistence(downloadsFilePersistence)
+                .withFileIntegrity(FileIntegrity.expecting(CONTENT_DIGEST, null))
+                .build();
+    }
+
+    private static String digestStateOf(byte[] bytes) {
+        FileDigester digester = FileDigester.create(FileDigest.Algorithm.SHA_256);
+        digester.update(bytes, 0, bytes.length);
+        return digester.state();
+    }
+
+    private FileDownloader.Callback downloaderCallback() {
+        ArgumentCaptor<FileDownloader.Callback> captor = ArgumentCaptor.forClass(FileDownloader.Callback.class);
+        verify(fileDownloader).startDownloading(anyString(), any(FileSize.class), captor.capture());
+        return captor.getValue();
+    }
+
+    private long lastPersistedCurrentSize() {
+        ArgumentCaptor<FileSize> captor = ArgumentCaptor.forClass(FileSize.class);
+        verify(downloadsFilePersistence, atLeastOnce()).persistSync(
+                any(DownloadBatchId.class),
+                any(FilePath.class),
+                captor.capture(),
+                anyString(),
+                any(DownloadFileStatus.class),
+                nullable(FileDigest.class),
+                nullable(String.class),
+                nullable(String.class)
+        );
+        return captor.getValue().currentSize();
+    }
+}
@@ -8,6 +8,11 @@ class DownloadsFilePersistedFixtures {
     private long totalFileSize;
     private String url;
     private DownloadFileId downloadFileId;
+    private long bytesDownloaded;
+    private DownloadFileStatus.Status fileStatus;
+    private FileDigest expectedDigest;
+    private String digestState;
+    private String rangeValidator;
 
     private DownloadsFilePersistedFixtures() {
         // use aFile() to get an instance of this class
@@ -42,6 +47,31 @@ class DownloadsFilePersistedFixtures {
         return this;
     }
 
+    DownloadsFilePersistedFixtures withBytesDownloaded(long bytesDownloaded) {
+        this.bytesDownloaded = bytesDownloaded;
+        return this;
+    }
+
+    DownloadsFilePersistedFixtures withFileStatus(DownloadFileStatus.Status fileStatus) {
+        this.fileStatus = fileStatus;
+        return this;
+    }
+
+    DownloadsFilePersistedFixtures withExpectedDigest(FileDigest expectedDigest) {
+        this.expectedDigest = expectedDigest;
+        return this;
+    }
+
+    DownloadsFilePersistedFixtures withDigestState(String digestState) {
+        this.digestState = digestState;
+        return this;
+    }
+
+    DownloadsFilePersistedFixtures withRangeValidator(String rangeValidator) {
+        this.rangeValidator = rangeValidator;
+        return this;
+    }
+
     DownloadsFilePersisted build() {
         return new DownloadsFilePersisted() {
             @Override
@@ -69,6 +99,31 @@ class DownloadsFilePersistedFixtures {
                 return downloadFileId;
             }
 
+            @Override
+            public long bytesDownloaded() {
+                return bytesDownloaded;
+            }
+
+            @Override
+            public DownloadFileStatus.Status fileStatus() {
+                return fileStatus;
+            }
+
+            @Override
+            public FileDigest expectedDigest() {
+                return expectedDigest;
+            }
+
+            @Override
+            public String digestState() {
+                return digestState;
+            }
+
+            @Override
+            public String rangeValidator() {
+                return rangeValidator;
+            }
+
         };
     }
 }
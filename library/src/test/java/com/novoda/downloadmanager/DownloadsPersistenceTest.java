@@ -0,0 +1,75 @@
+package com.novoda.downloadmanager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.DownloadsBatchPersistedFixtures.aDownloadsBatchPersisted;
+import static com.novoda.downloadmanager.DownloadsFilePersistedFixtures.aDownloadsFilePersisted;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class DownloadsPersistenceTest {
+
+    private static final DownloadBatchId FIRST_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("first").build();
+    private static final DownloadBatchId SECOND_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("second").build();
+
+    private final DownloadsPersistence persistence = mock(DownloadsPersistence.class, CALLS_REAL_METHODS);
+
+    @Test
+    public void deletesBatchesOneByOne_byDefault() {
+        given(persistence.delete(FIRST_BATCH_ID)).willReturn(true);
+        given(persistence.delete(SECOND_BATCH_ID)).willReturn(false);
+
+        int deletedBatches = persistence.deleteAll(Arrays.asList(FIRST_BATCH_ID, SECOND_BATCH_ID));
+
+        assertThat(deletedBatches).isEqualTo(1);
+        verify(persistence).delete(SECOND_BATCH_ID);
+    }
+
+    @Test
+    public void updatesBatchesOneByOne_byDefault() {
+        given(persistence.update(FIRST_BATCH_ID, DownloadBatchStatus.Status.PAUSED)).willReturn(true);
+        given(persistence.update(SECOND_BATCH_ID, DownloadBatchStatus.Status.PAUSED)).willReturn(true);
+
+        int updatedBatches = persistence.updateAll(Arrays.asList(FIRST_BATCH_ID, SECOND_BATCH_ID), DownloadBatchStatus.Status.PAUSED);
+
+        assertThat(updatedBatches).isEqualTo(2);
+    }
+
+    @Test
+    public void loadsPageOfBatchesWithTheirProgress_byDefault() {
+        DownloadsBatchPersisted firstBatch = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("first")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.PAUSED)
+                .withDownloadedDateTimeInMillis(1)
+                .build();
+        DownloadsBatchPersisted secondBatch = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId("second")
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.PAUSED)
+                .withDownloadedDateTimeInMillis(2)
+                .build();
+        given(persistence.loadBatches()).willReturn(Arrays.asList(firstBatch, secondBatch));
+        given(persistence.loadFiles(secondBatch.downloadBatchId())).willReturn(Collections.singletonList(
+                aDownloadsFilePersisted().withDownloadBatchId(secondBatch.downloadBatchId()).withBytesDownloaded(50).withTotalFileSize(100).build()
+        ));
+        DownloadBatchQuery query = DownloadBatchQuery.newBuilder()
+                .withStatuses(DownloadBatchStatus.Status.PAUSED)
+                .withSortOrder(DownloadBatchSortOrder.NEWEST_FIRST)
+                .withLimit(1)
+                .build();
+
+        List<DownloadsBatchProgressPersisted> batches = persistence.loadBatches(query);
+
+        assertThat(batches).hasSize(1);
+        assertThat(batches.get(0).downloadBatchId()).isSameInstanceAs(secondBatch.downloadBatchId());
+        assertThat(batches.get(0).bytesDownloaded()).isEqualTo(50);
+        assertThat(persistence.countBatches(query)).isEqualTo(2);
+    }
+}
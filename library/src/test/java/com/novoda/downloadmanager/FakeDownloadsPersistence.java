@@ -64,6 +64,26 @@ class FakeDownloadsPersistence implements DownloadsPersistence {
         return Collections.emptyList();
     }
 
+    @Override
+    public void persistFileSegment(DownloadsFileSegmentPersisted segmentPersisted) {
+        // no-op.
+    }
+
+    @Override
+    public List<DownloadsFileSegmentPersisted> loadFileSegments(DownloadBatchId batchId, DownloadFileId fileId) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public void loadBatchesWithFiles(DownloadsPersistedRowsCallback callback) {
+        for (Map.Entry<DownloadsBatchPersisted, List<DownloadsFilePersisted>> batchWithFiles : filesByBatches.entrySet()) {
+            callback.onBatch(batchWithFiles.getKey());
+            for (DownloadsFilePersisted filePersisted : batchWithFiles.getValue()) {
+                callback.onFile(filePersisted);
+            }
+        }
+    }
+
     @Override
     public boolean delete(DownloadBatchId downloadBatchId) {
         return true;
@@ -79,6 +99,26 @@ class FakeDownloadsPersistence implements DownloadsPersistence {
         return true;
     }
 
+    @Override
+    public List<DownloadsBatchProgressPersisted> loadBatches(DownloadBatchQuery query) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int countBatches(DownloadBatchQuery query) {
+        return 0;
+    }
+
+    @Override
+    public int deleteAll(List<DownloadBatchId> downloadBatchIds) {
+        return downloadBatchIds.size();
+    }
+
+    @Override
+    public int updateAll(List<DownloadBatchId> downloadBatchIds, DownloadBatchStatus.Status status) {
+        return downloadBatchIds.size();
+    }
+
     @Override
     public void persistCompletedBatch(CompletedDownloadBatch completedDownloadBatch) {
         // no-op
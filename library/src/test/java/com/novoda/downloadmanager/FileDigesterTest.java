@@ -0,0 +1,56 @@
+package com.novoda.downloadmanager;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class FileDigesterTest {
+
+    private static final byte[] CHECK_BYTES = "123456789".getBytes();
+
+    @Test
+    public void computesTheSha256OfTheBytes() {
+        FileDigest digest = digestOf(FileDigester.create(FileDigest.Algorithm.SHA_256), "abc".getBytes());
+
+        assertThat(digest).isEqualTo(FileDigest.sha256("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad"));
+    }
+
+    @Test
+    public void computesTheSha256OfBytesSpanningSeveralBlocks() {
+        byte[] bytes = "abcdbcdecdefdefgefghfghighijhijkijkljklmklmnlmnomnopnopq".getBytes();
+
+        FileDigest digest = digestOf(FileDigester.create(FileDigest.Algorithm.SHA_256), bytes);
+
+        assertThat(digest).isEqualTo(FileDigest.sha256("248d6a61d20638b8e5c026930c3e6039a33ce45964ff2167f6ecedd419db06c1"));
+    }
+
+    @Test
+    public void computesTheCrc32cOfTheBytes() {
+        FileDigest digest = digestOf(FileDigester.create(FileDigest.Algorithm.CRC32C), CHECK_BYTES);
+
+        assertThat(digest).isEqualTo(FileDigest.crc32c("e3069283"));
+    }
+
+    @Test
+    public void carriesOnFromARestoredState() {
+        for (FileDigest.Algorithm algorithm : FileDigest.Algorithm.values()) {
+            FileDigester digester = FileDigester.create(algorithm);
+            digester.update(CHECK_BYTES, 0, 4);
+
+            FileDigester restored = FileDigester.restore(algorithm, digester.state());
+            restored.update(CHECK_BYTES, 4, CHECK_BYTES.length - 4);
+
+            assertThat(restored.digest()).isEqualTo(digestOf(FileDigester.create(algorithm), CHECK_BYTES));
+        }
+    }
+
+    @Test
+    public void doesNotRestoreAMalformedState() {
+        assertThat(FileDigester.restore(FileDigest.Algorithm.SHA_256, "not hex")).isNull();
+    }
+
+    private static FileDigest digestOf(FileDigester digester, byte[] bytes) {
+        digester.update(bytes, 0, bytes.length);
+        return digester.digest();
+    }
+}
@@ -0,0 +1,171 @@
+package com.novoda.downloadmanager;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class FileDownloadSchedulerTest {
+
+    private static final long TIMEOUT_IN_SECONDS = 5;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger runningDownloads = new AtomicInteger();
+    private final AtomicInteger maximumRunningDownloads = new AtomicInteger();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void limitsConcurrentDownloadsPerHost() throws InterruptedException {
+        FileDownloadScheduler scheduler = new FileDownloadScheduler(executor, 4, 2);
+        List<DownloadFile> downloadFiles = Arrays.asList(
+                aDownloadFile("http://example.com/1"),
+                aDownloadFile("http://example.com/2"),
+                aDownloadFile("http://example.com/3")
+        );
+
+        downloadAllReleasingOnce(scheduler, downloadFiles, 2);
+
+        assertThat(maximumRunningDownloads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void limitsConcurrentDownloads() throws InterruptedException {
+        FileDownloadScheduler scheduler = new FileDownloadScheduler(executor, 2, 2);
+        List<DownloadFile> downloadFiles = Arrays.asList(
+                aDownloadFile("http://example.com/1"),
+                aDownloadFile("http://example.org/2"),
+                aDownloadFile("http://example.net/3")
+        );
+
+        downloadAllReleasingOnce(scheduler, downloadFiles, 2);
+
+        assertThat(maximumRunningDownloads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void startsFilesOfAnotherHost_whenAHostReachedItsLimit() throws InterruptedException {
+        FileDownloadScheduler scheduler = new FileDownloadScheduler(executor, 2, 1);
+        List<DownloadFile> downloadFiles = Arrays.asList(
+                aDownloadFile("http://example.com/1"),
+                aDownloadFile("http://example.com/2"),
+                aDownloadFile("http://example.org/3")
+        );
+
+        downloadAllReleasingOnce(scheduler, downloadFiles, 2);
+
+        assertThat(maximumRunningDownloads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void keepsDownloading_whenADownloadFails() throws InterruptedException {
+        FileDownloadScheduler scheduler = new FileDownloadScheduler(executor, 1, 1);
+        AtomicInteger completedDownloads = new AtomicInteger();
+
+        scheduler.downloadAll(
+                Arrays.asList(aDownloadFile("http://example.com/1"), aDownloadFile("http://example.com/2")),
+                downloadFile -> {
+                    if (completedDownloads.incrementAndGet() == 1) {
+                        throw new IllegalStateException("failed download");
+                    }
+                }
+        );
+
+        assertThat(completedDownloads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void pausesRunningFiles_andDiscardsPendingOnes_beforeRethrowingAnInterruption() throws InterruptedException {
+        FileDownloadScheduler scheduler = new FileDownloadScheduler(executor, 1, 1);
+        DownloadFile runningFile = aDownloadFile("http://example.com/1");
+        DownloadFile pendingFile = aDownloadFile("http://example.com/2");
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch paused = new CountDownLatch(1);
+        willAnswer(invocation -> {
+            paused.countDown();
+            return null;
+        }).given(runningFile).pause();
+        AtomicInteger stoppedDownloads = new AtomicInteger();
+        AtomicInteger stoppedDownloadsWhenRethrown = new AtomicInteger(-1);
+
+        Thread batchThread = new Thread(() -> {
+            try {
+                scheduler.downloadAll(Arrays.asList(runningFile, pendingFile), downloadFile -> {
+                    started.countDown();
+                    awaitQuietly(paused);
+                    stoppedDownloads.incrementAndGet();
+                });
+            } catch (InterruptedException e) {
+                stoppedDownloadsWhenRethrown.set(stoppedDownloads.get());
+            }
+        });
+        batchThread.start();
+        assertThat(started.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)).isTrue();
+
+        batchThread.interrupt();
+        batchThread.join(TimeUnit.SECONDS.toMillis(TIMEOUT_IN_SECONDS));
+
+        verify(runningFile).pause();
+        verify(pendingFile, never()).pause();
+        assertThat(stoppedDownloadsWhenRethrown.get()).isEqualTo(1);
+    }
+
+    private void downloadAllReleasingOnce(FileDownloadScheduler scheduler,
+                                          List<DownloadFile> downloadFiles,
+                                          int expectedConcurrentDownloads) throws InterruptedException {
+        CountDownLatch startedDownloads = new CountDownLatch(expectedConcurrentDownloads);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+
+        Thread batchThread = new Thread(() -> {
+            try {
+                scheduler.downloadAll(downloadFiles, downloadFile -> {
+                    int running = runningDownloads.incrementAndGet();
+                    maximumRunningDownloads.set(Math.max(maximumRunningDownloads.get(), running));
+                    startedDownloads.countDown();
+                    awaitQuietly(release);
+                    runningDownloads.decrementAndGet();
+                });
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            finished.countDown();
+        });
+        batchThread.start();
+
+        assertThat(startedDownloads.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)).isTrue();
+        release.countDown();
+        assertThat(finished.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static DownloadFile aDownloadFile(String url) {
+        DownloadFile downloadFile = mock(DownloadFile.class);
+        given(downloadFile.url()).willReturn(url);
+        given(downloadFile.id()).willReturn(new LiteDownloadFileId(url));
+        return downloadFile;
+    }
+}
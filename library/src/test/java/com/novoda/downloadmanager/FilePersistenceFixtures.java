@@ -44,6 +44,26 @@ class FilePersistenceFixtures {
                 return writeResult;
             }
 
+            @Override
+            public boolean write(byte[] buffer, int offset, int numberOfBytesToWrite, long position) {
+                return writeResult;
+            }
+
+            @Override
+            public boolean flush() {
+                return writeResult;
+            }
+
+            @Override
+            public boolean sync() {
+                return writeResult;
+            }
+
+            @Override
+            public boolean truncate(FilePath absoluteFilePath, long size) {
+                return true;
+            }
+
             @Override
             public void delete(FilePath absoluteFilePath) {
                 // do nothing.
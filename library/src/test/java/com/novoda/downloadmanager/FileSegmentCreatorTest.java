@@ -0,0 +1,50 @@
+package com.novoda.downloadmanager;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class FileSegmentCreatorTest {
+
+    private static final long FOUR_MEGABYTES = 4 * 1024 * 1024;
+
+    @Test
+    public void returnsNoSegments_whenFileIsTooSmallToSplit() {
+        List<FileSegment> segments = FileSegmentCreator.createSegmentsFor(FOUR_MEGABYTES, 4);
+
+        assertThat(segments).isEmpty();
+    }
+
+    @Test
+    public void returnsNoSegments_whenOnlyOneSegmentIsAllowed() {
+        List<FileSegment> segments = FileSegmentCreator.createSegmentsFor(FOUR_MEGABYTES * 10, 1);
+
+        assertThat(segments).isEmpty();
+    }
+
+    @Test
+    public void limitsSegments_toMinimumSegmentSize() {
+        List<FileSegment> segments = FileSegmentCreator.createSegmentsFor(FOUR_MEGABYTES * 2, 4);
+
+        assertThat(segments).isEqualTo(Arrays.asList(
+                new FileSegment(0, 0, FOUR_MEGABYTES, 0),
+                new FileSegment(1, FOUR_MEGABYTES, FOUR_MEGABYTES * 2, 0)
+        ));
+    }
+
+    @Test
+    public void coversWholeFile_whenSizeIsNotDivisibleBySegments() {
+        long totalSize = FOUR_MEGABYTES * 3 + 2;
+
+        List<FileSegment> segments = FileSegmentCreator.createSegmentsFor(totalSize, 3);
+
+        assertThat(segments).isEqualTo(Arrays.asList(
+                new FileSegment(0, 0, FOUR_MEGABYTES, 0),
+                new FileSegment(1, FOUR_MEGABYTES, FOUR_MEGABYTES * 2, 0),
+                new FileSegment(2, FOUR_MEGABYTES * 2, totalSize, 0)
+        ));
+    }
+}
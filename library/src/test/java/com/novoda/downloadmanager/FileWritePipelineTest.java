@@ -0,0 +1,130 @@
+package com.novoda.downloadmanager;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willAnswer;
+import static org.mockito.Mockito.mock;
+
+public class FileWritePipelineTest {
+
+    private static final int CAPACITY = 2;
+    private static final long TIMEOUT_IN_SECONDS = 5;
+    private static final byte[] BYTES = "pipelined bytes".getBytes();
+
+    private final ExecutorService writerExecutor = Executors.newCachedThreadPool();
+    private final ReadBufferPool readBufferPool = new ReadBufferPool(ReadBufferPool.DEFAULT_MEMORY_BUDGET_IN_BYTES);
+    private final FilePersistence filePersistence = mock(FilePersistence.class);
+    private final FileWriteQueueCounters counters = new FileWriteQueueCounters();
+    private final ByteArrayOutputStream writtenBytes = new ByteArrayOutputStream();
+    private final AtomicInteger bytesWrittenCount = new AtomicInteger();
+    private final AtomicInteger failedWrites = new AtomicInteger();
+
+    private FileWritePipeline pipeline;
+
+    @Before
+    public void setUp() {
+        willAnswer(invocation -> {
+            byte[] buffer = invocation.getArgument(0);
+            writtenBytes.write(buffer, invocation.getArgument(1), invocation.getArgument(2));
+            return true;
+        }).given(filePersistence).write(any(byte[].class), anyInt(), anyInt());
+        pipeline = new FileWritePipeline(writerExecutor, readBufferPool, filePersistence, counters, CAPACITY);
+    }
+
+    @After
+    public void tearDown() {
+        writerExecutor.shutdownNow();
+    }
+
+    @Test
+    public void writesAllOfferedBytesInOrder() {
+        pipeline.start(new CountingListener());
+
+        pipeline.offer(BYTES, 9);
+        pipeline.offer(BYTES, BYTES.length);
+        pipeline.finish();
+
+        ByteArrayOutputStream expectedBytes = new ByteArrayOutputStream();
+        expectedBytes.write(BYTES, 0, 9);
+        expectedBytes.write(BYTES, 0, BYTES.length);
+        assertThat(writtenBytes.toByteArray()).isEqualTo(expectedBytes.toByteArray());
+        assertThat(bytesWrittenCount.get()).isEqualTo(9 + BYTES.length);
+    }
+
+    @Test
+    public void stopsAcceptingBytes_whenAWriteFails() throws InterruptedException {
+        given(filePersistence.write(any(byte[].class), anyInt(), anyInt())).willReturn(false);
+        CountDownLatch writeFailed = new CountDownLatch(1);
+        pipeline.start(new CountingListener() {
+            @Override
+            public void onWriteFailed() {
+                super.onWriteFailed();
+                writeFailed.countDown();
+            }
+        });
+
+        pipeline.offer(BYTES, BYTES.length);
+        assertThat(writeFailed.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS)).isTrue();
+        boolean accepted = pipeline.offer(BYTES, BYTES.length);
+        pipeline.finish();
+
+        assertThat(accepted).isFalse();
+        assertThat(failedWrites.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void reportsQueueState_whileBytesAreQueued() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        willAnswer(invocation -> release.await(TIMEOUT_IN_SECONDS, TimeUnit.SECONDS))
+                .given(filePersistence).write(any(byte[].class), anyInt(), anyInt());
+        pipeline.start(new CountingListener());
+
+        pipeline.offer(BYTES, BYTES.length);
+        pipeline.offer(BYTES, BYTES.length);
+        FileWriteQueueState queueState = counters.queueState();
+        release.countDown();
+        pipeline.finish();
+
+        assertThat(queueState.activePipelines()).isEqualTo(1);
+        assertThat(queueState.capacity()).isEqualTo(CAPACITY);
+        assertThat(queueState.queuedBuffers()).isAtLeast(1);
+        assertThat(counters.queueState().queuedBuffers()).isEqualTo(0);
+        assertThat(counters.queueState().activePipelines()).isEqualTo(0);
+    }
+
+    @Test
+    public void returnsBuffersToThePool_whenFinished() {
+        pipeline.start(new CountingListener());
+
+        pipeline.offer(BYTES, BYTES.length);
+        pipeline.finish();
+
+        assertThat(readBufferPool.acquiredBytes()).isEqualTo(0);
+    }
+
+    private class CountingListener implements FileWritePipeline.Listener {
+
+        @Override
+        public void onBytesWritten(byte[] bytes, int bytesWritten) {
+            bytesWrittenCount.addAndGet(bytesWritten);
+        }
+
+        @Override
+        public void onWriteFailed() {
+            failedWrites.incrementAndGet();
+        }
+    }
+}
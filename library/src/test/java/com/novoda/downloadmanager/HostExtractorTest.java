@@ -0,0 +1,28 @@
+package com.novoda.downloadmanager;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class HostExtractorTest {
+
+    @Test
+    public void extractsTheHost() {
+        assertThat(HostExtractor.extractFrom("https://example.com:8080/files/10MB.zip?token=1")).isEqualTo("example.com");
+    }
+
+    @Test
+    public void extractsTheHost_ofUrlsWithUnescapedCharacters() {
+        assertThat(HostExtractor.extractFrom("https://example.com/files/10 MB.zip")).isEqualTo("example.com");
+    }
+
+    @Test
+    public void fallsBackToTheUrl_whenItHasNoHost() {
+        assertThat(HostExtractor.extractFrom("file:/files/10MB.zip")).isEqualTo("file:/files/10MB.zip");
+    }
+
+    @Test
+    public void fallsBackToTheUrl_whenItIsMalformed() {
+        assertThat(HostExtractor.extractFrom("not a url")).isEqualTo("not a url");
+    }
+}
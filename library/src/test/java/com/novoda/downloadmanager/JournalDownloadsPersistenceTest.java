@@ -0,0 +1,236 @@
+package com.novoda.downloadmanager;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
+import static com.novoda.downloadmanager.DownloadsBatchPersistedFixtures.aDownloadsBatchPersisted;
+import static com.novoda.downloadmanager.DownloadsFilePersistedFixtures.aDownloadsFilePersisted;
+
+public class JournalDownloadsPersistenceTest {
+
+    private static final long NO_COMPACTION = Long.MAX_VALUE;
+    private static final DownloadBatchId BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch").build();
+    private static final DownloadBatchId OTHER_BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("other batch").build();
+    private static final DownloadFileId FILE_ID = aDownloadFileId().withRawDownloadFileId("file").build();
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File directory;
+    private DownloadsJournal journal;
+    private JournalDownloadsPersistence persistence;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = temporaryFolder.newFolder("journal");
+        journal = new DownloadsJournal(directory);
+        persistence = new JournalDownloadsPersistence(journal, NO_COMPACTION);
+    }
+
+    @Test
+    public void restoresCommittedRows_whenReopened() {
+        DownloadsFileSegmentPersisted segmentPersisted = new LiteDownloadsFileSegmentPersisted(BATCH_ID, FILE_ID, 1, 100, 199, 42);
+        persistence.persistBatch(batchWith(BATCH_ID, "title"));
+        persistence.persistFile(fileOf(BATCH_ID));
+        persistence.persistFileSegment(segmentPersisted);
+        persistence.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+        persistence.update(BATCH_ID, true);
+
+        JournalDownloadsPersistence reopened = reopen(NO_COMPACTION);
+
+        DownloadsBatchPersisted batchPersisted = reopened.loadBatches().get(0);
+        assertThat(batchPersisted.downloadBatchId().rawId()).isEqualTo(BATCH_ID.rawId());
+        assertThat(batchPersisted.downloadBatchTitle().asString()).isEqualTo("title");
+        assertThat(batchPersisted.downloadBatchStatus()).isEqualTo(DownloadBatchStatus.Status.PAUSED);
+        assertThat(batchPersisted.notificationSeen()).isTrue();
+        assertThat(reopened.loadFiles(BATCH_ID).get(0).bytesDownloaded()).isEqualTo(50);
+        assertThat(reopened.loadFiles(BATCH_ID).get(0).expectedDigest()).isEqualTo(FileDigest.crc32c("e3069283"));
+        assertThat(reopened.loadFiles(BATCH_ID).get(0).digestState()).isEqualTo("0a0b0c0d");
+        assertThat(reopened.loadFileSegments(BATCH_ID, FILE_ID).get(0).bytesDownloaded()).isEqualTo(42);
+    }
+
+    @Test
+    public void dropsTheWritesOfATransaction_whenItIsNotCommitted() {
+        persistence.persistBatch(batchWith(BATCH_ID, "title"));
+
+        persistence.startTransaction();
+        persistence.persistBatch(batchWith(OTHER_BATCH_ID, "other title"));
+        JournalDownloadsPersistence reopened = reopen(NO_COMPACTION);
+
+        assertThat(rawIdsOf(reopened.loadBatches())).containsExactly(BATCH_ID.rawId());
+    }
+
+    @Test
+    public void rollsBackTheWritesOfATransaction_whenItIsNotSuccessful() {
+        persistence.persistBatch(batchWith(BATCH_ID, "title"));
+
+        persistence.startTransaction();
+        persistence.persistBatch(batchWith(OTHER_BATCH_ID, "other title"));
+        persistence.delete(BATCH_ID);
+        persistence.endTransaction();
+
+        assertThat(rawIdsOf(persistence.loadBatches())).containsExactly(BATCH_ID.rawId());
+        assertThat(rawIdsOf(reopen(NO_COMPACTION).loadBatches())).containsExactly(BATCH_ID.rawId());
+    }
+
+    @Test
+    public void rollsBackTheWritesOfATransaction_withoutReplayingTheJournal() throws IOException {
+        persistence.persistBatch(batchWith(BATCH_ID, "title"));
+        persistence.persistBatch(batchWith(OTHER_BATCH_ID, "other title"));
+        corruptByteAt(journal.sizeInBytes() - 1);
+
+        persistence.startTransaction();
+        persistence.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+        persistence.delete(BATCH_ID);
+        persistence.endTransaction();
+
+        List<DownloadsBatchPersisted> batchesPersisted = persistence.loadBatches();
+        assertThat(rawIdsOf(batchesPersisted)).containsExactly(BATCH_ID.rawId(), OTHER_BATCH_ID.rawId()).inOrder();
+        assertThat(batchesPersisted.get(0).downloadBatchStatus()).isEqualTo(DownloadBatchStatus.Status.QUEUED);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void failsToLoad_whenTheJournalCannotBeOpened() throws IOException {
+        persistence = new JournalDownloadsPersistence(new DownloadsJournal(temporaryFolder.newFile("not a directory")), NO_COMPACTION);
+
+        persistence.loadBatches();
+    }
+
+    @Test
+    public void dropsATornFrame_andKeepsAppendingAfterTheLastIntactFrame() throws IOException {
+        persistence.persistBatch(batchWith(BATCH_ID, "title"));
+        long intactSizeInBytes = journal.sizeInBytes();
+        persistence.persistBatch(batchWith(OTHER_BATCH_ID, "other title"));
+        corruptByteAt((intactSizeInBytes + journal.sizeInBytes()) / 2);
+
+        JournalDownloadsPersistence reopened = reopen(NO_COMPACTION);
+        reopened.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+
+        List<DownloadsBatchPersisted> batchesPersisted = reopen(NO_COMPACTION).loadBatches();
+        assertThat(rawIdsOf(batchesPersisted)).containsExactly(BATCH_ID.rawId());
+        assertThat(batchesPersisted.get(0).downloadBatchStatus()).isEqualTo(DownloadBatchStatus.Status.PAUSED);
+    }
+
+    @Test
+    public void restoresRows_whenJournalWasCompactedIntoASnapshot() {
+        persistence = new JournalDownloadsPersistence(journal, 1);
+        persistence.persistBatch(batchWith(BATCH_ID, "title"));
+        persistence.persistFile(fileOf(BATCH_ID));
+        persistence.persistBatch(batchWith(OTHER_BATCH_ID, "other title"));
+        persistence.delete(OTHER_BATCH_ID);
+
+        JournalDownloadsPersistence reopened = reopen(NO_COMPACTION);
+
+        assertThat(rawIdsOf(reopened.loadBatches())).containsExactly(BATCH_ID.rawId());
+        assertThat(reopened.loadFiles(BATCH_ID)).hasSize(1);
+        assertThat(new File(directory, "snapshot").exists()).isTrue();
+    }
+
+    @Test
+    public void ignoresTheJournalOfAPreviousGeneration_whenASnapshotReplacedIt() throws IOException {
+        persistence.persistBatch(batchWith(BATCH_ID, "title"));
+        persistence.loadBatches();
+        File previousJournal = new File(directory, "journal-0");
+        File previousJournalCopy = temporaryFolder.newFile("journal-0");
+        Files.copy(previousJournal.toPath(), previousJournalCopy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        JournalDownloadsPersistence compacting = reopen(1);
+        compacting.delete(BATCH_ID);
+        Files.copy(previousJournalCopy.toPath(), previousJournal.toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+        assertThat(reopen(NO_COMPACTION).loadBatches()).isEmpty();
+    }
+
+    @Test
+    public void loadsAPageOfMatchingBatches_inTheRequestedOrder() {
+        persistence.persistBatch(batchWith(BATCH_ID, "b", DownloadBatchStatus.Status.PAUSED));
+        persistence.persistBatch(batchWith(OTHER_BATCH_ID, "a", DownloadBatchStatus.Status.PAUSED));
+        persistence.persistBatch(batchWith(aDownloadBatchId().withRawDownloadBatchId("third").build(), "c", DownloadBatchStatus.Status.DOWNLOADED));
+        DownloadBatchQuery query = DownloadBatchQuery.newBuilder()
+                .withStatuses(DownloadBatchStatus.Status.PAUSED)
+                .withSortOrder(DownloadBatchSortOrder.TITLE_ASCENDING)
+                .withLimit(1)
+                .withOffset(1)
+                .build();
+
+        List<DownloadsBatchProgressPersisted> batchesPersisted = persistence.loadBatches(query);
+
+        assertThat(batchesPersisted).hasSize(1);
+        assertThat(batchesPersisted.get(0).downloadBatchId().rawId()).isEqualTo(BATCH_ID.rawId());
+        assertThat(persistence.countBatches(query)).isEqualTo(2);
+    }
+
+    @Test
+    public void deletesFilesAndSegments_alongWithTheirBatch() {
+        persistence.persistBatch(batchWith(BATCH_ID, "title"));
+        persistence.persistFile(fileOf(BATCH_ID));
+        persistence.persistFileSegment(new LiteDownloadsFileSegmentPersisted(BATCH_ID, FILE_ID, 0, 0, 99, 99));
+
+        int deletedCount = persistence.deleteAll(Arrays.asList(BATCH_ID, OTHER_BATCH_ID));
+
+        assertThat(deletedCount).isEqualTo(1);
+        JournalDownloadsPersistence reopened = reopen(NO_COMPACTION);
+        assertThat(reopened.loadAllFiles()).isEmpty();
+        assertThat(reopened.loadFileSegments(BATCH_ID, FILE_ID)).isEmpty();
+    }
+
+    private JournalDownloadsPersistence reopen(long compactionThresholdInBytes) {
+        return new JournalDownloadsPersistence(new DownloadsJournal(directory), compactionThresholdInBytes);
+    }
+
+    private void corruptByteAt(long position) throws IOException {
+        try (RandomAccessFile file = new RandomAccessFile(new File(directory, "journal-0"), "rw")) {
+            file.seek(position);
+            int value = file.read();
+            file.seek(position);
+            file.write(~value);
+        }
+    }
+
+    private static DownloadsBatchPersisted batchWith(DownloadBatchId downloadBatchId, String title) {
+        return batchWith(downloadBatchId, title, DownloadBatchStatus.Status.QUEUED);
+    }
+
+    private static DownloadsBatchPersisted batchWith(DownloadBatchId downloadBatchId, String title, DownloadBatchStatus.Status status) {
+        return aDownloadsBatchPersisted()
+                .withRawDownloadBatchId(downloadBatchId.rawId())
+                .withDownloadBatchTitle(title)
+                .withDownloadBatchStatus(status)
+                .build();
+    }
+
+    private static DownloadsFilePersisted fileOf(DownloadBatchId downloadBatchId) {
+        return aDownloadsFilePersisted()
+                .withDownloadBatchId(downloadBatchId)
+                .withDownloadFileId(FILE_ID)
+                .withFilePath(new LiteFilePath("/storage/root/file"))
+                .withTotalFileSize(100)
+                .withUrl("http://example.com/file")
+                .withBytesDownloaded(50)
+                .withFileStatus(DownloadFileStatus.Status.DOWNLOADING)
+                .withExpectedDigest(FileDigest.crc32c("e3069283"))
+                .withDigestState("0a0b0c0d")
+                .build();
+    }
+
+    private static List<String> rawIdsOf(List<DownloadsBatchPersisted> batchesPersisted) {
+        String[] rawIds = new String[batchesPersisted.size()];
+        for (int index = 0; index < rawIds.length; index++) {
+            rawIds[index] = batchesPersisted.get(index).downloadBatchId().rawId();
+        }
+        return Arrays.asList(rawIds);
+    }
+}
@@ -0,0 +1,57 @@
+package com.novoda.downloadmanager;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anInternalDownloadsBatchStatus;
+import static org.mockito.Mockito.mock;
+
+public class LiteDownloadBatchStatusTest {
+
+    private final DownloadsBatchStatusPersistence persistence = mock(DownloadsBatchStatusPersistence.class);
+    private final InternalDownloadBatchStatus downloadBatchStatus = anInternalDownloadsBatchStatus()
+            .withBytesDownloaded(100)
+            .withStatus(DownloadBatchStatus.Status.DOWNLOADING)
+            .build();
+
+    @Test
+    public void keepsItsVersion_whenNothingChanges() {
+        long version = downloadBatchStatus.version();
+
+        downloadBatchStatus.updateDownloaded(100);
+        downloadBatchStatus.markAsDownloading(persistence);
+
+        assertThat(downloadBatchStatus.version()).isEqualTo(version);
+    }
+
+    @Test
+    public void increasesItsVersion_whenAFieldChanges() {
+        long version = downloadBatchStatus.version();
+
+        downloadBatchStatus.updateDownloaded(200);
+
+        assertThat(downloadBatchStatus.version()).isGreaterThan(version);
+    }
+
+    @Test
+    public void returnsTheSameSnapshot_untilTheStatusChanges() {
+        InternalDownloadBatchStatus snapshot = downloadBatchStatus.snapshot();
+
+        downloadBatchStatus.updateDownloaded(100);
+
+        assertThat(downloadBatchStatus.snapshot()).isSameInstanceAs(snapshot);
+    }
+
+    @Test
+    public void returnsANewSnapshot_whenTheStatusChanges() {
+        InternalDownloadBatchStatus snapshot = downloadBatchStatus.snapshot();
+
+        downloadBatchStatus.markAsPaused(persistence);
+
+        InternalDownloadBatchStatus newSnapshot = downloadBatchStatus.snapshot();
+        assertThat(newSnapshot).isNotSameInstanceAs(snapshot);
+        assertThat(newSnapshot.status()).isEqualTo(DownloadBatchStatus.Status.PAUSED);
+        assertThat(snapshot.status()).isEqualTo(DownloadBatchStatus.Status.DOWNLOADING);
+        assertThat(newSnapshot.version()).isEqualTo(downloadBatchStatus.version());
+    }
+}
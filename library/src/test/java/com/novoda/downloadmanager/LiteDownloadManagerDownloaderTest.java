@@ -14,7 +14,6 @@ import org.mockito.Mockito;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.Mockito.mock;
@@ -23,6 +22,8 @@ import static org.mockito.Mockito.verify;
 public class LiteDownloadManagerDownloaderTest {
 
     private static final boolean DISABLED_CONCURRENT_FILE_DOWNLOADING = false;
+    private static final int SINGLE_BATCH = 1;
+    private static final boolean DISABLED_PREEMPTION = false;
 
     private final Object waitForDownloadService = new Object();
     private final Object waitForDownloadBatchStatusCallback = new Object();
@@ -68,7 +69,10 @@ public class LiteDownloadManagerDownloaderTest {
                 callbackThrottleCreator,
                 downloadBatchStatusFilter,
                 serviceCriteria,
-                DISABLED_CONCURRENT_FILE_DOWNLOADING
+                DISABLED_CONCURRENT_FILE_DOWNLOADING,
+                new BatchScheduler(executor, SINGLE_BATCH, BatchSchedulingPolicy.FIFO, DISABLED_PREEMPTION),
+                new DownloadBatchStatusDispatcher(callbackHandler, DownloadBatchStatusDispatcher.FRAME_INTERVAL_IN_MILLIS),
+                downloadingBatches
         );
 
         downloader.setDownloadService(downloadService);
@@ -110,7 +114,7 @@ public class LiteDownloadManagerDownloaderTest {
 
         downloader.download(downloadBatch, downloadingBatches);
 
-        verify(downloadService).download(eq(downloadBatch), any());
+        verify(downloadService).download(downloadBatch);
     }
 
     @Test
@@ -119,6 +123,6 @@ public class LiteDownloadManagerDownloaderTest {
 
         downloader.download(downloadBatch, downloadingBatches);
 
-        verify(downloadService).download(eq(anotherDownloadBatchWithTheSameId), any());
+        verify(downloadService).download(anotherDownloadBatchWithTheSameId);
     }
 }
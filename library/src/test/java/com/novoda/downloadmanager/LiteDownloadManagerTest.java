@@ -4,6 +4,7 @@ import android.os.Handler;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +34,7 @@ import static com.novoda.downloadmanager.InternalDownloadBatchStatusFixtures.anI
 import static org.mockito.BDDMockito.given;
 import static org.mockito.BDDMockito.willAnswer;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.eq;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -120,6 +122,24 @@ public class LiteDownloadManagerTest {
             verify(allStoredDownloadsSubmittedCallback).onAllDownloadsSubmitted();
         }
 
+        @Test
+        public void reconcilesStoredProgress_afterNotifyingThatAllDownloadsAreSubmitted() {
+            given(downloadBatch.getId()).willReturn(DOWNLOAD_BATCH_ID);
+
+            liteDownloadManager.submitAllStoredDownloads(allStoredDownloadsSubmittedCallback);
+
+            InOrder inOrder = inOrder(allStoredDownloadsSubmittedCallback, downloadBatch);
+            inOrder.verify(allStoredDownloadsSubmittedCallback).onAllDownloadsSubmitted();
+            inOrder.verify(downloadBatch).reconcileStoredProgress();
+        }
+
+        @Test
+        public void startsMeasuringTimeToFirstStatus_whenSubmittingAllStoredDownloads() {
+            liteDownloadManager.submitAllStoredDownloads(allStoredDownloadsSubmittedCallback);
+
+            verify(downloadManagerDownloader).startMeasuringTimeToFirstStatus();
+        }
+
         @Test
         public void downloadGivenBatch_whenBatchIsNotAlreadyBeingDownloaded() {
             downloadingBatches.clear();
@@ -211,6 +231,89 @@ public class LiteDownloadManagerTest {
             assertThat(downloadingBatches).containsKey(DOWNLOAD_BATCH_ID);
         }
 
+        @Test
+        public void pausesEveryKnownBatchWithASingleBulkWrite() {
+            liteDownloadManager.pauseAll(Arrays.asList(DOWNLOAD_BATCH_ID, ADDITIONAL_DOWNLOAD_BATCH_ID), allBatchesUpdatedCallback);
+
+            verify(downloadBatch).pause(bulkWrite);
+            verify(additionalDownloadBatch).pause(bulkWrite);
+            verify(downloadManagerDownloader).stopAll(Arrays.asList(DOWNLOAD_BATCH_ID, ADDITIONAL_DOWNLOAD_BATCH_ID));
+            verify(bulkWrite).commitAsync(any(Runnable.class));
+        }
+
+        @Test
+        public void notifiesOnceWithThePausedBatches_whenBulkWriteIsCommitted() {
+            liteDownloadManager.pauseAll(Arrays.asList(DOWNLOAD_BATCH_ID, new LiteDownloadBatchId("unknown")), allBatchesUpdatedCallback);
+
+            verify(allBatchesUpdatedCallback).onUpdated(Collections.singletonList(DOWNLOAD_BATCH_ID));
+        }
+
+        @Test
+        public void pausesOnlyBatchesMatchingThePredicate() {
+            given(downloadBatch.getId()).willReturn(DOWNLOAD_BATCH_ID);
+            given(additionalDownloadBatch.getId()).willReturn(ADDITIONAL_DOWNLOAD_BATCH_ID);
+
+            liteDownloadManager.pauseAll(downloadBatchStatus -> downloadBatchStatus == BATCH_STATUS, allBatchesUpdatedCallback);
+
+            verify(downloadBatch).pause(bulkWrite);
+            verify(additionalDownloadBatch, never()).pause(any(DownloadsBatchStatusPersistence.class));
+        }
+
+        @Test
+        public void submitsResumedBatchesTogether() {
+            given(downloadBatch.status()).willReturn(anInternalDownloadsBatchStatus().build());
+            given(additionalDownloadBatch.status()).willReturn(anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.DOWNLOADING).build());
+
+            liteDownloadManager.resumeAll(Arrays.asList(DOWNLOAD_BATCH_ID, ADDITIONAL_DOWNLOAD_BATCH_ID), allBatchesUpdatedCallback);
+
+            verify(downloadBatch).resume(bulkWrite);
+            verify(additionalDownloadBatch, never()).resume(any(DownloadsBatchStatusPersistence.class));
+            verify(downloadManagerDownloader).submitAll(
+                    eq(Collections.singletonList(downloadBatch)),
+                    eq(downloadingBatches),
+                    eq(bulkWrite),
+                    any(Runnable.class)
+            );
+        }
+
+        @Test
+        public void deletesEveryKnownBatchWithASingleBulkWrite() {
+            liteDownloadManager.deleteAll(Arrays.asList(DOWNLOAD_BATCH_ID, ADDITIONAL_DOWNLOAD_BATCH_ID), allBatchesUpdatedCallback);
+
+            verify(downloadBatch).delete(bulkWrite);
+            verify(additionalDownloadBatch).delete(bulkWrite);
+            verify(bulkWrite).commitAsync(any(Runnable.class));
+        }
+
+        @Test
+        public void downloadsOnlyUnknownBatches_whenDownloadingMany() {
+            Batch unknownBatch = Batch.with(TestStorageRootFactory.create(), aDownloadBatchId().withRawDownloadBatchId("id03").build(), "title")
+                    .build();
+
+            liteDownloadManager.downloadAll(Arrays.asList(BATCH, unknownBatch), allBatchesUpdatedCallback);
+
+            verify(downloadManagerDownloader).downloadAll(
+                    eq(Collections.singletonList(unknownBatch)),
+                    eq(downloadingBatches),
+                    eq(bulkWrite),
+                    any(Runnable.class)
+            );
+        }
+
+        @Test
+        public void givesKnownBatchesTheirCurrentStatus_whenQueryingStoredStatuses() {
+            DownloadBatchQuery query = DownloadBatchQuery.newBuilder().withLimit(2).build();
+            InternalDownloadBatchStatus storedStatus = anInternalDownloadsBatchStatus().withDownloadBatchId(DOWNLOAD_BATCH_ID).build();
+            InternalDownloadBatchStatus storedOnlyStatus = anInternalDownloadsBatchStatus()
+                    .withDownloadBatchId(aDownloadBatchId().withRawDownloadBatchId("id03").build())
+                    .build();
+            given(downloadsBatchPersistence.loadStatuses(query)).willReturn(new ArrayList<>(Arrays.asList(storedStatus, storedOnlyStatus)));
+
+            List<DownloadBatchStatus> statuses = liteDownloadManager.getDownloadBatchStatuses(query);
+
+            assertThat(statuses).containsExactly(BATCH_STATUS, storedOnlyStatus).inOrder();
+        }
+
         @Test
         public void addsCallbackToInternalList() {
             DownloadBatchStatusCallback additionalDownloadBatchCallback = mock(DownloadBatchStatusCallback.class);
@@ -304,6 +407,8 @@ public class LiteDownloadManagerTest {
         final FileDownloader fileDownloader = mock(FileDownloader.class);
         final FileDownloaderCreator fileDownloaderCreator = mock(FileDownloaderCreator.class);
         final DownloadsBatchPersistence downloadsBatchPersistence = mock(DownloadsBatchPersistence.class);
+        final DownloadsBatchPersistence.BulkWrite bulkWrite = mock(DownloadsBatchPersistence.BulkWrite.class);
+        final AllBatchesUpdatedCallback allBatchesUpdatedCallback = mock(AllBatchesUpdatedCallback.class);
         final LiteDownloadManagerDownloader downloadManagerDownloader = mock(LiteDownloadManagerDownloader.class);
         final ConnectionChecker connectionChecker = mock(ConnectionChecker.class);
         final Wait.Criteria serviceCriteria = new Wait.Criteria();
@@ -337,6 +442,7 @@ public class LiteDownloadManagerTest {
             );
 
             setupDownloadBatchesResponse();
+            setupBulkWrite();
             setupDownloadBatchStatusesResponse();
             setupDownloadStatusResponse();
             setupNetworkRecoveryCreator();
@@ -366,6 +472,14 @@ public class LiteDownloadManagerTest {
             }).given(downloadsBatchPersistence).loadAsync(any(FileOperations.class), any(DownloadsBatchPersistence.LoadBatchesCallback.class));
         }
 
+        private void setupBulkWrite() {
+            given(downloadsBatchPersistence.newBulkWrite()).willReturn(bulkWrite);
+            willAnswer(invocation -> {
+                ((Runnable) invocation.getArgument(0)).run();
+                return null;
+            }).given(bulkWrite).commitAsync(any(Runnable.class));
+        }
+
         private void setupDownloadBatchStatusesResponse() {
             willAnswer(invocation -> {
                 downloadBatchStatuses = invocation.getArgument(0);
@@ -1,7 +1,10 @@
 package com.novoda.downloadmanager;
 
+import static com.google.common.truth.Truth.assertThat;
 import static com.novoda.downloadmanager.InternalFileSizeFixtures.aFileSize;
 import static com.novoda.downloadmanager.NetworkResponseFixtures.aNetworkResponse;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -14,6 +17,7 @@ import org.junit.Test;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 
 public class NetworkFileDownloaderTest {
 
@@ -26,17 +30,25 @@ public class NetworkFileDownloaderTest {
     private static final String ANY_RAW_URL = "http://example.com";
     private static final FileSize KNOWN_FILE_SIZE = aFileSize().withAreBytesDownloadedKnown(true).build();
     private static final FileSize UNKNOWN_FILE_SIZE = aFileSize().withAreBytesDownloadedKnown(false).build();
+    private static final FileSize PARTIAL_FILE_SIZE = aFileSize().withCurrentSize(100).withAreBytesDownloadedKnown(true).build();
+    private static final String RANGE_VALIDATOR = "\"etag\"";
     private static final NetworkResponse INVALID_RESPONSE = aNetworkResponse().withCode(418).build();
 
     private final FileDownloader.Callback callback = mock(FileDownloader.Callback.class);
     private final HttpClient httpClient = mock(HttpClient.class);
     private final NetworkRequestCreator requestCreator = new NetworkRequestCreator();
+    private final ByteRangeSupport byteRangeSupport = new ByteRangeSupport();
 
     private NetworkFileDownloader networkFileDownloader;
 
     @Before
     public void setUp() {
-        networkFileDownloader = new NetworkFileDownloader(httpClient, requestCreator);
+        networkFileDownloader = new NetworkFileDownloader(
+                httpClient,
+                requestCreator,
+                new ReadBufferPool(ReadBufferPool.DEFAULT_MEMORY_BUDGET_IN_BYTES),
+                byteRangeSupport
+        );
     }
 
     @Test
@@ -51,6 +63,68 @@ public class NetworkFileDownloaderTest {
         verify(callback).onBytesRead(expectedBytes, 1);
     }
 
+    @Test
+    public void emitsTotalSize_fromContentLengthOfFullResponse() throws IOException {
+        NetworkResponse fullResponse = aNetworkResponse().withCode(200).withHeader("1000").build();
+        given(httpClient.execute(requestCreator.createDownloadRequest(ANY_RAW_URL))).willReturn(fullResponse);
+
+        networkFileDownloader.startDownloading(ANY_RAW_URL, UNKNOWN_FILE_SIZE, callback);
+
+        verify(callback).onTotalSizeKnown(1000);
+    }
+
+    @Test
+    public void emitsTotalSize_fromContentRangeOfPartialResponse() throws IOException {
+        NetworkResponse partialResponse = aNetworkResponse().withCode(206).withHeader("bytes 100-999/1000").build();
+        given(httpClient.execute(requestCreator.createDownloadRequest(ANY_RAW_URL))).willReturn(partialResponse);
+
+        networkFileDownloader.startDownloading(ANY_RAW_URL, UNKNOWN_FILE_SIZE, callback);
+
+        verify(callback).onTotalSizeKnown(1000);
+    }
+
+    @Test
+    public void doesNotEmitTotalSize_whenResponseDoesNotDeclareIt() throws IOException {
+        NetworkResponse chunkedResponse = aNetworkResponse().withCode(206).withHeader("bytes 100-999/*").build();
+        given(httpClient.execute(requestCreator.createDownloadRequest(ANY_RAW_URL))).willReturn(chunkedResponse);
+
+        networkFileDownloader.startDownloading(ANY_RAW_URL, UNKNOWN_FILE_SIZE, callback);
+
+        verify(callback, never()).onTotalSizeKnown(anyLong());
+    }
+
+    @Test
+    public void sendsTheRangeValidator_whenResuming() throws IOException {
+        given(callback.rangeValidator()).willReturn(RANGE_VALIDATOR);
+        NetworkRequest resumeRequest = requestCreator.createDownloadRequestWithDownloadedBytesHeader(
+                ANY_RAW_URL,
+                PARTIAL_FILE_SIZE.currentSize(),
+                PARTIAL_FILE_SIZE.totalSize(),
+                RANGE_VALIDATOR
+        );
+        given(httpClient.execute(resumeRequest)).willReturn(aNetworkResponse().withCode(206).withHeader(RANGE_VALIDATOR).build());
+
+        networkFileDownloader.startDownloading(ANY_RAW_URL, PARTIAL_FILE_SIZE, callback);
+
+        verify(callback, never()).onRestartedFromFirstByte();
+        verify(callback).onRangeValidatorKnown(RANGE_VALIDATOR);
+    }
+
+    @Test
+    public void restartsFromFirstByte_whenTheWholeFileIsSentRatherThanTheRange() throws IOException {
+        NetworkRequest resumeRequest = requestCreator.createDownloadRequestWithDownloadedBytesHeader(
+                ANY_RAW_URL,
+                PARTIAL_FILE_SIZE.currentSize(),
+                PARTIAL_FILE_SIZE.totalSize()
+        );
+        given(httpClient.execute(resumeRequest)).willReturn(aNetworkResponse().withCode(200).build());
+
+        networkFileDownloader.startDownloading(ANY_RAW_URL, PARTIAL_FILE_SIZE, callback);
+
+        verify(callback).onRestartedFromFirstByte();
+        assertThat(byteRangeSupport.acceptsByteRanges(ANY_RAW_URL).get()).isFalse();
+    }
+
     @Test
     public void closesByteStream_whenDownloaded() throws IOException {
         NetworkResponse networkResponse = spy(aNetworkResponse().build());
@@ -100,6 +174,27 @@ public class NetworkFileDownloaderTest {
         verify(callback).onDownloadFinished();
     }
 
+    @Test
+    public void cancelsResponse_whenStoppingDownload() throws IOException {
+        NetworkResponse networkResponse = spy(aNetworkResponse().withInputStream(new StoppingInputStream()).build());
+        given(httpClient.execute(requestCreator.createDownloadRequest(ANY_RAW_URL))).willReturn(networkResponse);
+
+        networkFileDownloader.startDownloading(ANY_RAW_URL, UNKNOWN_FILE_SIZE, callback);
+
+        verify(networkResponse).cancel();
+    }
+
+    @Test
+    public void doesNotEmitError_whenReadFailsBecauseDownloadWasStopped() throws IOException {
+        NetworkResponse networkResponse = aNetworkResponse().withInputStream(new StoppingInputStream()).build();
+        given(httpClient.execute(requestCreator.createDownloadRequest(ANY_RAW_URL))).willReturn(networkResponse);
+
+        networkFileDownloader.startDownloading(ANY_RAW_URL, UNKNOWN_FILE_SIZE, callback);
+
+        verify(callback, never()).onError(anyString());
+        verify(callback).onDownloadFinished();
+    }
+
     @Ignore("How can we test the `canDownload` flag?")
     @Test
     public void stopsEmittingBytes_whenStoppingDownload() {
@@ -109,4 +204,16 @@ public class NetworkFileDownloaderTest {
 
         verify(callback, never()).onBytesRead(new byte[10], 0);
     }
+
+    /**
+     * Stops the download while a read is blocked, which fails the read as a cancelled request does.
+     */
+    private class StoppingInputStream extends InputStream {
+
+        @Override
+        public int read() throws IOException {
+            networkFileDownloader.stopDownloading();
+            throw new IOException("Canceled");
+        }
+    }
 }
@@ -64,6 +64,23 @@ public class NetworkRequestCreatorTest {
         assertThatNetworkRequestsAreEqual(networkRequest, expectedNetworkRequest);
     }
 
+    @Test
+    public void createsResumeRequestToTheEnd_whenTotalSizeIsUnknown() {
+        NetworkRequest networkRequest = networkRequestCreator.createDownloadRequestWithDownloadedBytesHeader(
+                "http://www.google.com",
+                100,
+                0
+        );
+
+        NetworkRequest expectedNetworkRequest = aNetworkRequest()
+                .withHeader("Range", "bytes=100-")
+                .withUrl("http://www.google.com")
+                .withMethod(NetworkRequest.Method.GET)
+                .build();
+
+        assertThatNetworkRequestsAreEqual(networkRequest, expectedNetworkRequest);
+    }
+
     private void assertThatNetworkRequestsAreEqual(NetworkRequest networkRequest, NetworkRequest expectedNetworkRequest) {
         assertThat(networkRequest.headers()).isEqualTo(expectedNetworkRequest.headers());
         assertThat(networkRequest.method()).isEqualTo(expectedNetworkRequest.method());
@@ -73,6 +73,11 @@ class NetworkResponseFixtures {
             public long bodyContentLength() {
                 return bodyContentLength;
             }
+
+            @Override
+            public void cancel() {
+                // Nothing to cancel, the response is already complete.
+            }
         };
     }
 }
@@ -0,0 +1,29 @@
+package com.novoda.downloadmanager;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+public class NetworkResponseTest {
+
+    private final NetworkResponse networkResponse = mock(NetworkResponse.class, CALLS_REAL_METHODS);
+
+    @Test
+    public void closesByteStream_whenCancelledByDefault() throws IOException {
+        networkResponse.cancel();
+
+        verify(networkResponse).closeByteStream();
+    }
+
+    @Test
+    public void doesNotThrow_whenClosingTheByteStreamOfACancelledResponseFails() throws IOException {
+        willThrow(new IOException("closed")).given(networkResponse).closeByteStream();
+
+        networkResponse.cancel();
+    }
+}
@@ -0,0 +1,65 @@
+package com.novoda.downloadmanager;
+
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class ReadBufferPoolTest {
+
+    private static final int SMALL_BUFFER_SIZE = ReadBufferPool.MINIMUM_BUFFER_SIZE_IN_BYTES;
+    private static final int LARGE_BUFFER_SIZE = ReadBufferPool.MAXIMUM_BUFFER_SIZE_IN_BYTES;
+
+    @Test
+    public void reusesReleasedBuffers() {
+        ReadBufferPool readBufferPool = new ReadBufferPool(LARGE_BUFFER_SIZE);
+        byte[] releasedBuffer = readBufferPool.acquire(LARGE_BUFFER_SIZE);
+        readBufferPool.release(releasedBuffer);
+
+        byte[] buffer = readBufferPool.acquire(LARGE_BUFFER_SIZE);
+
+        assertThat((Object) buffer).isSameInstanceAs(releasedBuffer);
+    }
+
+    @Test
+    public void roundsPreferredSizeDownToAPowerOfTwo() {
+        ReadBufferPool readBufferPool = new ReadBufferPool(LARGE_BUFFER_SIZE);
+
+        byte[] buffer = readBufferPool.acquire(3 * SMALL_BUFFER_SIZE);
+
+        assertThat(buffer.length).isEqualTo(2 * SMALL_BUFFER_SIZE);
+    }
+
+    @Test
+    public void returnsSmallerBuffer_whenPreferredSizeExceedsTheBudget() {
+        ReadBufferPool readBufferPool = new ReadBufferPool(LARGE_BUFFER_SIZE);
+        readBufferPool.acquire(LARGE_BUFFER_SIZE / 2);
+
+        byte[] buffer = readBufferPool.acquire(LARGE_BUFFER_SIZE);
+
+        assertThat(buffer.length).isEqualTo(LARGE_BUFFER_SIZE / 2);
+    }
+
+    @Test
+    public void dropsPooledBuffers_whenTheyAreNeededForAnotherSize() {
+        ReadBufferPool readBufferPool = new ReadBufferPool(LARGE_BUFFER_SIZE);
+        readBufferPool.release(readBufferPool.acquire(LARGE_BUFFER_SIZE));
+
+        byte[] buffer = readBufferPool.acquire(SMALL_BUFFER_SIZE);
+
+        assertThat(buffer.length).isEqualTo(SMALL_BUFFER_SIZE);
+        assertThat(readBufferPool.pooledBytes()).isEqualTo(0);
+    }
+
+    @Test
+    public void doesNotPoolBuffers_whenTheBudgetIsExhausted() {
+        ReadBufferPool readBufferPool = new ReadBufferPool(SMALL_BUFFER_SIZE);
+        byte[] firstBuffer = readBufferPool.acquire(SMALL_BUFFER_SIZE);
+        byte[] unpooledBuffer = readBufferPool.acquire(SMALL_BUFFER_SIZE);
+
+        readBufferPool.release(firstBuffer);
+        readBufferPool.release(unpooledBuffer);
+
+        assertThat(readBufferPool.pooledBytes()).isEqualTo(SMALL_BUFFER_SIZE);
+        assertThat(readBufferPool.acquiredBytes()).isEqualTo(0);
+    }
+}
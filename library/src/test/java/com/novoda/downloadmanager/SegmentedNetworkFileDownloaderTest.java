@@ -0,0 +1,128 @@
+package com.novoda.downloadmanager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.NetworkResponseFixtures.aNetworkResponse;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class SegmentedNetworkFileDownloaderTest {
+
+    private static final String ANY_RAW_URL = "http://example.com";
+    private static final int MAXIMUM_SEGMENTS = 2;
+    private static final NetworkResponse INVALID_RESPONSE = aNetworkResponse().withCode(200).build();
+
+    private final SegmentedNetworkFileDownloader.Callback callback = mock(SegmentedNetworkFileDownloader.Callback.class);
+    private final HttpClient httpClient = mock(HttpClient.class);
+    private final NetworkRequestCreator requestCreator = new NetworkRequestCreator();
+    private final ExecutorService executor = Executors.newFixedThreadPool(MAXIMUM_SEGMENTS);
+    private final ByteRangeSupport byteRangeSupport = new ByteRangeSupport();
+
+    private SegmentedNetworkFileDownloader segmentedFileDownloader;
+
+    @Before
+    public void setUp() {
+        segmentedFileDownloader = new SegmentedNetworkFileDownloader(
+                httpClient,
+                requestCreator,
+                executor,
+                new ReadBufferPool(ReadBufferPool.DEFAULT_MEMORY_BUDGET_IN_BYTES),
+                byteRangeSupport,
+                MAXIMUM_SEGMENTS
+        );
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void acceptsByteRanges_whenServerAdvertisesBytes() throws IOException {
+        given(httpClient.execute(requestCreator.createFileSizeHeadRequest(ANY_RAW_URL))).willReturn(aNetworkResponse().withHeader("bytes").build());
+
+        assertThat(segmentedFileDownloader.acceptsByteRanges(ANY_RAW_URL)).isTrue();
+    }
+
+    @Test
+    public void doesNotAcceptByteRanges_whenServerAdvertisesNone() throws IOException {
+        given(httpClient.execute(requestCreator.createFileSizeHeadRequest(ANY_RAW_URL))).willReturn(aNetworkResponse().withHeader("none").build());
+
+        assertThat(segmentedFileDownloader.acceptsByteRanges(ANY_RAW_URL)).isFalse();
+    }
+
+    @Test
+    public void doesNotRequestByteRanges_whenTheyAreKnownForTheHost() throws IOException {
+        byteRangeSupport.remember(ANY_RAW_URL, true);
+
+        assertThat(segmentedFileDownloader.acceptsByteRanges(ANY_RAW_URL)).isTrue();
+        verify(httpClient, never()).execute(any(NetworkRequest.class));
+    }
+
+    @Test
+    public void doesNotAcceptByteRanges_whenRequestFails() throws IOException {
+        given(httpClient.execute(requestCreator.createFileSizeHeadRequest(ANY_RAW_URL))).willThrow(IOException.class);
+
+        assertThat(segmentedFileDownloader.acceptsByteRanges(ANY_RAW_URL)).isFalse();
+    }
+
+    @Test
+    public void requestsRemainingRangeOfEachSegment() throws IOException {
+        FileSegment firstSegment = new FileSegment(0, 0, 4, 1);
+        FileSegment secondSegment = new FileSegment(1, 4, 8, 0);
+        given(httpClient.execute(requestCreator.createDownloadRequestWithDownloadedBytesHeader(ANY_RAW_URL, 1, 4)))
+                .willReturn(partialResponseWith("abc"));
+        given(httpClient.execute(requestCreator.createDownloadRequestWithDownloadedBytesHeader(ANY_RAW_URL, 4, 8)))
+                .willReturn(partialResponseWith("defg"));
+
+        segmentedFileDownloader.startDownloading(ANY_RAW_URL, Arrays.asList(firstSegment, secondSegment), callback);
+
+        verify(callback).onBytesRead(any(FileSegment.class), any(byte[].class), eq(3));
+        verify(callback).onBytesRead(any(FileSegment.class), any(byte[].class), eq(4));
+        verify(callback).onDownloadFinished();
+    }
+
+    @Test
+    public void skipsCompletedSegments() throws IOException {
+        FileSegment completedSegment = new FileSegment(0, 0, 4, 4);
+
+        segmentedFileDownloader.startDownloading(ANY_RAW_URL, Collections.singletonList(completedSegment), callback);
+
+        verify(httpClient, never()).execute(any(NetworkRequest.class));
+        verify(callback).onDownloadFinished();
+    }
+
+    @Test
+    public void emitsError_whenServerIgnoresRange() throws IOException {
+        FileSegment segment = new FileSegment(0, 0, 4, 0);
+        given(httpClient.execute(requestCreator.createDownloadRequestWithDownloadedBytesHeader(ANY_RAW_URL, 0, 4))).willReturn(INVALID_RESPONSE);
+
+        segmentedFileDownloader.startDownloading(ANY_RAW_URL, Collections.singletonList(segment), callback);
+
+        verify(callback).onError("Request: http://example.com for segment 0 with response code: 200 failed.");
+        verify(callback, never()).onBytesRead(any(FileSegment.class), any(byte[].class), anyInt());
+        verify(callback).onDownloadFinished();
+    }
+
+    private static NetworkResponse partialResponseWith(String body) {
+        return aNetworkResponse()
+                .withCode(206)
+                .withInputStream(new ByteArrayInputStream(body.getBytes()))
+                .build();
+    }
+}
@@ -25,6 +25,7 @@ import static com.novoda.downloadmanager.NotificationCustomizer.NotificationDisp
 import static com.novoda.downloadmanager.NotificationCustomizer.NotificationDisplayState.STACK_NOTIFICATION_NOT_DISMISSIBLE;
 import static com.novoda.downloadmanager.NotificationInformationFixtures.notificationInformation;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.BDDMockito.given;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
@@ -77,6 +78,56 @@ public class ServiceNotificationDispatcherTest {
             verify(downloadService).start(notificationInfo.getId(), notificationInfo.getNotification());
         }
 
+        @Test
+        public void updatesStartedPersistentNotification_withoutStartingServiceAgain() {
+            NotificationInformation notificationInfo = createNotificationInfo(SINGLE_PERSISTENT_NOTIFICATION, 100);
+            given(notificationCreator.createNotification(DOWNLOAD_BATCH_STATUS)).willReturn(notificationInfo);
+
+            notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
+            notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
+
+            verify(downloadService).start(notificationInfo.getId(), notificationInfo.getNotification());
+            verify(notificationManager).notify(notificationInfo.getId(), notificationInfo.getNotification());
+        }
+
+        @Test
+        public void startsNewService_withPersistentNotification_whenServiceIsReplaced() {
+            NotificationInformation notificationInfo = createNotificationInfo(SINGLE_PERSISTENT_NOTIFICATION, 100);
+            given(notificationCreator.createNotification(DOWNLOAD_BATCH_STATUS)).willReturn(notificationInfo);
+            DownloadManagerService newDownloadService = mock(DownloadManagerService.class);
+            notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
+
+            notificationDispatcher.setService(newDownloadService);
+            notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
+
+            verify(newDownloadService).start(notificationInfo.getId(), notificationInfo.getNotification());
+        }
+
+        @Test
+        public void showsGroupSummary_whenSeveralNotificationsAreOngoing() {
+            NotificationInformation persistentNotificationInfo = createNotificationInfo(SINGLE_PERSISTENT_NOTIFICATION, 100);
+            given(notificationCreator.createNotification(DOWNLOAD_BATCH_STATUS)).willReturn(persistentNotificationInfo);
+            NotificationInformation stackNotificationInfo = createNotificationInfo(STACK_NOTIFICATION_NOT_DISMISSIBLE, 200);
+            given(notificationCreator.createNotification(ANOTHER_DOWNLOAD_BATCH_STATUS)).willReturn(stackNotificationInfo);
+            Notification groupSummary = new Notification();
+            given(notificationCreator.createGroupSummary(stackNotificationInfo.getNotification(), 2)).willReturn(groupSummary);
+
+            notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
+            notificationDispatcher.updateNotification(ANOTHER_DOWNLOAD_BATCH_STATUS);
+
+            verify(notificationManager).notify(GROUP_SUMMARY_TAG, 0, groupSummary);
+        }
+
+        @Test
+        public void doesNotShowGroupSummary_whenASingleNotificationIsOngoing() {
+            NotificationInformation notificationInfo = createNotificationInfo(SINGLE_PERSISTENT_NOTIFICATION, 100);
+            given(notificationCreator.createNotification(DOWNLOAD_BATCH_STATUS)).willReturn(notificationInfo);
+
+            notificationDispatcher.updateNotification(DOWNLOAD_BATCH_STATUS);
+
+            verify(notificationCreator, never()).createGroupSummary(any(Notification.class), anyInt());
+        }
+
         @Test
         public void stacksDismissibleNotification() {
             NotificationInformation notificationInfo = createNotificationInfo(STACK_NOTIFICATION_DISMISSIBLE, 100);
@@ -186,6 +237,7 @@ public class ServiceNotificationDispatcherTest {
     public abstract static class BaseTest {
 
         static final String NOTIFICATION_TAG = "download-manager";
+        static final String GROUP_SUMMARY_TAG = "download-manager-summary";
 
         static final DownloadBatchStatus DOWNLOAD_BATCH_STATUS = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.QUEUED).build();
         static final DownloadBatchStatus ANOTHER_DOWNLOAD_BATCH_STATUS = anInternalDownloadsBatchStatus().withStatus(DownloadBatchStatus.Status.QUEUED).build();
@@ -0,0 +1,129 @@
+package com.novoda.downloadmanager;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class SharedTickActionSchedulerTest {
+
+    private static final long FREQUENCY = 100;
+
+    private final ScheduledExecutorService tickExecutor = mock(ScheduledExecutorService.class);
+    private final ScheduledFuture tick = mock(ScheduledFuture.class);
+    private final ActionScheduler.Action anyAction = mock(ActionScheduler.Action.class);
+    private final ActionScheduler.Action otherAction = mock(ActionScheduler.Action.class);
+
+    private SharedTickActionScheduler sharedScheduler;
+    private ActionScheduler scheduler;
+    private ActionScheduler otherScheduler;
+
+    @Before
+    public void setUp() {
+        given(tickExecutor.scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class))).willReturn(tick);
+
+        sharedScheduler = new SharedTickActionScheduler(tickExecutor, FREQUENCY);
+        scheduler = sharedScheduler.newActionScheduler();
+        otherScheduler = sharedScheduler.newActionScheduler();
+    }
+
+    @Test
+    public void performsTheActionsOfEveryThrottle_onASingleTick() {
+        scheduler.schedule(anyAction);
+        otherScheduler.schedule(otherAction);
+
+        tickRunnable().run();
+
+        verify(anyAction).perform();
+        verify(otherAction).perform();
+        verify(tickExecutor, times(1)).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void doesNotPerformTheActions_ofAThrottleThatCancelledAll() {
+        scheduler.schedule(anyAction);
+        otherScheduler.schedule(otherAction);
+
+        scheduler.cancelAll();
+        tickRunnable().run();
+
+        verify(anyAction, never()).perform();
+        verify(otherAction).perform();
+    }
+
+    @Test
+    public void keepsTicking_whileAnotherThrottleHasActions() {
+        scheduler.schedule(anyAction);
+        otherScheduler.schedule(otherAction);
+
+        scheduler.cancelAll();
+
+        verify(tick, never()).cancel(false);
+    }
+
+    @Test
+    public void stopsTicking_whenTheLastActionIsCancelled() {
+        scheduler.schedule(anyAction);
+        otherScheduler.schedule(otherAction);
+
+        scheduler.cancel(anyAction);
+        otherScheduler.cancelAll();
+
+        verify(tick).cancel(false);
+    }
+
+    @Test
+    public void startsTickingAgain_whenAnActionIsScheduledAfterStopping() {
+        scheduler.schedule(anyAction);
+        scheduler.cancelAll();
+
+        scheduler.schedule(anyAction);
+
+        verify(tickExecutor, times(2)).scheduleAtFixedRate(any(Runnable.class), anyLong(), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void keepsPerformingActions_whenOneOfThemFails() {
+        ActionScheduler.Action failingAction = () -> {
+            throw new IllegalStateException("failed");
+        };
+        scheduler.schedule(failingAction);
+        otherScheduler.schedule(otherAction);
+
+        tickRunnable().run();
+
+        verify(otherAction).perform();
+    }
+
+    @Test
+    public void returnsTrue_whenActionIsScheduled() {
+        scheduler.schedule(anyAction);
+
+        assertThat(scheduler.isScheduled(anyAction)).isTrue();
+    }
+
+    @Test
+    public void returnsFalse_whenActionIsScheduledByAnotherThrottle() {
+        otherScheduler.schedule(anyAction);
+
+        assertThat(scheduler.isScheduled(anyAction)).isFalse();
+    }
+
+    private Runnable tickRunnable() {
+        ArgumentCaptor<Runnable> tickCaptor = ArgumentCaptor.forClass(Runnable.class);
+        verify(tickExecutor).scheduleAtFixedRate(tickCaptor.capture(), anyLong(), anyLong(), any(TimeUnit.class));
+        return tickCaptor.getValue();
+    }
+}
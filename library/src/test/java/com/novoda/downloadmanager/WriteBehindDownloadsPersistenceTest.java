@@ -0,0 +1,247 @@
+package com.novoda.downloadmanager;
+
+import android.database.sqlite.SQLiteException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+
+import static com.google.common.truth.Truth.assertThat;
+import static com.novoda.downloadmanager.DownloadBatchIdFixtures.aDownloadBatchId;
+import static com.novoda.downloadmanager.DownloadFileIdFixtures.aDownloadFileId;
+import static com.novoda.downloadmanager.DownloadsBatchPersistedFixtures.aDownloadsBatchPersisted;
+import static com.novoda.downloadmanager.DownloadsFilePersistedFixtures.aDownloadsFilePersisted;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.BDDMockito.given;
+import static org.mockito.BDDMockito.willReturn;
+import static org.mockito.BDDMockito.willThrow;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+public class WriteBehindDownloadsPersistenceTest {
+
+    private static final long FLUSH_DELAY_IN_MILLIS = 500;
+    private static final int MAXIMUM_PENDING_WRITES = 3;
+    private static final DownloadBatchId BATCH_ID = aDownloadBatchId().withRawDownloadBatchId("batch").build();
+
+    private final DownloadsPersistence downloadsPersistence = mock(DownloadsPersistence.class);
+    private final ScheduledExecutorService flushExecutor = mock(ScheduledExecutorService.class);
+
+    private WriteBehindDownloadsPersistence writeBehindPersistence;
+
+    @Before
+    public void setUp() {
+        writeBehindPersistence = new WriteBehindDownloadsPersistence(
+                downloadsPersistence,
+                flushExecutor,
+                FLUSH_DELAY_IN_MILLIS,
+                MAXIMUM_PENDING_WRITES
+        );
+    }
+
+    @Test
+    public void doesNotWrite_untilFlushed() {
+        givenStoredBatches(BATCH_ID);
+        writeBehindPersistence.update(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING);
+
+        verifyNoInteractions(downloadsPersistence);
+        verify(flushExecutor).schedule(any(Runnable.class), eq(FLUSH_DELAY_IN_MILLIS), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void writesOnlyTheLatestStatus_whenStatusesArePending() {
+        givenStoredBatches(BATCH_ID);
+        writeBehindPersistence.update(BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+        writeBehindPersistence.update(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING);
+        writeBehindPersistence.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+
+        writeBehindPersistence.flush();
+
+        InOrder inOrder = inOrder(downloadsPersistence);
+        inOrder.verify(downloadsPersistence).startTransaction();
+        inOrder.verify(downloadsPersistence).update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+        inOrder.verify(downloadsPersistence).transactionSuccess();
+        inOrder.verify(downloadsPersistence).endTransaction();
+        verify(downloadsPersistence, never()).update(BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+        verify(downloadsPersistence, never()).update(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADING);
+    }
+
+    @Test
+    public void writesStatusIntoThePendingBatch() {
+        DownloadsBatchPersisted batchPersisted = aDownloadsBatchPersisted()
+                .withRawDownloadBatchId(BATCH_ID.rawId())
+                .withDownloadBatchStatus(DownloadBatchStatus.Status.QUEUED)
+                .build();
+        writeBehindPersistence.persistBatch(batchPersisted);
+        writeBehindPersistence.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+
+        writeBehindPersistence.flush();
+
+        ArgumentCaptor<DownloadsBatchPersisted> captor = ArgumentCaptor.forClass(DownloadsBatchPersisted.class);
+        verify(downloadsPersistence).persistBatch(captor.capture());
+        assertThat(captor.getValue().downloadBatchStatus()).isEqualTo(DownloadBatchStatus.Status.PAUSED);
+        verify(downloadsPersistence, never()).update(any(DownloadBatchId.class), any(DownloadBatchStatus.Status.class));
+    }
+
+    @Test
+    public void flushesSynchronously_whenBatchReachesATerminalStatus() {
+        writeBehindPersistence.update(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADED);
+
+        verify(downloadsPersistence).update(BATCH_ID, DownloadBatchStatus.Status.DOWNLOADED);
+    }
+
+    @Test
+    public void flushesPendingWrites_beforeLoading() {
+        DownloadsFilePersisted filePersisted = aDownloadsFilePersisted()
+                .withDownloadBatchId(BATCH_ID)
+                .withDownloadFileId(aDownloadFileId().withRawDownloadFileId("file").build())
+                .build();
+        writeBehindPersistence.persistFile(filePersisted);
+
+        writeBehindPersistence.loadFiles(BATCH_ID);
+
+        InOrder inOrder = inOrder(downloadsPersistence);
+        inOrder.verify(downloadsPersistence).persistFile(filePersisted);
+        inOrder.verify(downloadsPersistence).loadFiles(BATCH_ID);
+    }
+
+    @Test
+    public void dropsPendingWrites_whenBatchIsDeleted() {
+        givenStoredBatches(BATCH_ID);
+        writeBehindPersistence.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+
+        writeBehindPersistence.delete(BATCH_ID);
+
+        verify(downloadsPersistence).delete(BATCH_ID);
+        verify(downloadsPersistence, never()).update(any(DownloadBatchId.class), any(DownloadBatchStatus.Status.class));
+    }
+
+    @Test
+    public void writesStatusesOfManyBatchesInOneStatement_whenOnlyTheirStatusIsPending() {
+        DownloadBatchId otherBatchId = aDownloadBatchId().withRawDownloadBatchId("other batch").build();
+        List<DownloadBatchId> batchIds = Arrays.asList(BATCH_ID, otherBatchId);
+        givenStoredBatches(BATCH_ID, otherBatchId);
+        writeBehindPersistence.updateAll(batchIds, DownloadBatchStatus.Status.PAUSED);
+
+        writeBehindPersistence.flush();
+
+        verify(downloadsPersistence).updateAll(batchIds, DownloadBatchStatus.Status.PAUSED);
+        verify(downloadsPersistence, never()).update(any(DownloadBatchId.class), any(DownloadBatchStatus.Status.class));
+    }
+
+    @Test
+    public void dropsPendingWritesOfEveryBatch_whenBatchesAreDeleted() {
+        DownloadBatchId otherBatchId = aDownloadBatchId().withRawDownloadBatchId("other batch").build();
+        List<DownloadBatchId> batchIds = Arrays.asList(BATCH_ID, otherBatchId);
+        givenStoredBatches(BATCH_ID, otherBatchId);
+        writeBehindPersistence.updateAll(batchIds, DownloadBatchStatus.Status.PAUSED);
+
+        writeBehindPersistence.deleteAll(batchIds);
+
+        verify(downloadsPersistence).deleteAll(batchIds);
+        verify(downloadsPersistence, never()).updateAll(anyList(), any(DownloadBatchStatus.Status.class));
+    }
+
+    @Test
+    public void flushesRightAway_whenMaximumPendingWritesIsReached() {
+        givenStoredBatches(BATCH_ID);
+        for (int write = 0; write < MAXIMUM_PENDING_WRITES; write++) {
+            writeBehindPersistence.update(BATCH_ID, write % 2 == 0);
+        }
+
+        verify(flushExecutor).execute(any(Runnable.class));
+        verify(flushExecutor).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void updatesSynchronously_whenBatchIsNotKnownToBeStored() {
+        given(downloadsPersistence.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED)).willReturn(false);
+
+        boolean updated = writeBehindPersistence.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+
+        assertThat(updated).isFalse();
+        verify(flushExecutor, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void updatesOnlyTheUnknownBatchesSynchronously() {
+        DownloadBatchId otherBatchId = aDownloadBatchId().withRawDownloadBatchId("other batch").build();
+        givenStoredBatches(BATCH_ID);
+        List<DownloadBatchId> unknownBatchIds = Collections.singletonList(otherBatchId);
+        given(downloadsPersistence.updateAll(unknownBatchIds, DownloadBatchStatus.Status.PAUSED)).willReturn(0);
+
+        int updatedBatches = writeBehindPersistence.updateAll(Arrays.asList(BATCH_ID, otherBatchId), DownloadBatchStatus.Status.PAUSED);
+
+        assertThat(updatedBatches).isEqualTo(1);
+        verify(downloadsPersistence).updateAll(unknownBatchIds, DownloadBatchStatus.Status.PAUSED);
+    }
+
+    @Test
+    public void retriesWrites_whenFlushFails() {
+        givenStoredBatches(BATCH_ID);
+        willThrow(mock(SQLiteException.class))
+                .willReturn(true)
+                .given(downloadsPersistence).update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+        writeBehindPersistence.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+
+        writeBehindPersistence.flush();
+        writeBehindPersistence.flush();
+
+        verify(downloadsPersistence, times(2)).update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+    }
+
+    @Test
+    public void keepsNewerWrites_whenFailedWritesAreRetried() {
+        givenStoredBatches(BATCH_ID);
+        willThrow(mock(SQLiteException.class))
+                .given(downloadsPersistence).update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+        writeBehindPersistence.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+        writeBehindPersistence.flush();
+        writeBehindPersistence.update(BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+
+        writeBehindPersistence.flush();
+
+        verify(downloadsPersistence).update(BATCH_ID, DownloadBatchStatus.Status.QUEUED);
+        verify(downloadsPersistence, times(1)).update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+    }
+
+    @Test
+    public void dropsWrites_whenTheyFailedTooManyTimes() {
+        givenStoredBatches(BATCH_ID);
+        willThrow(mock(SQLiteException.class))
+                .given(downloadsPersistence).update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+        writeBehindPersistence.update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+
+        for (int flush = 0; flush < 5; flush++) {
+            writeBehindPersistence.flush();
+        }
+
+        verify(downloadsPersistence, times(3)).update(BATCH_ID, DownloadBatchStatus.Status.PAUSED);
+    }
+
+    private void givenStoredBatches(DownloadBatchId... batchIds) {
+        List<DownloadsBatchPersisted> batchesPersisted = new ArrayList<>();
+        for (DownloadBatchId batchId : batchIds) {
+            batchesPersisted.add(aDownloadsBatchPersisted().withRawDownloadBatchId(batchId.rawId()).build());
+        }
+        willReturn(batchesPersisted).given(downloadsPersistence).loadBatches();
+        writeBehindPersistence.loadBatches();
+        clearInvocations(downloadsPersistence, flushExecutor);
+    }
+}